@@ -0,0 +1,43 @@
+package org.compass.gdet.benchmarks;
+
+import org.compass.gdet.*;
+import org.openjdk.jmh.annotations.*;
+import java.util.concurrent.TimeUnit;
+
+/**GDETAggregationBenchmark
+* Time and allocation of the get*CountPerUser aggregators over <size>
+* records.  Every login is already resolved, so this measures the counting
+* itself rather than profile lookups.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class GDETAggregationBenchmark {
+
+  @Benchmark
+  public GDETUserCounter commitCountPerUser(GDETFixtures fixtures) {
+    return GithubDataExtractionTool.getCommitCountPerUser(fixtures.commits);
+  }
+
+  @Benchmark
+  public GDETUserCounter issueCountPerUser(GDETFixtures fixtures) {
+    return GithubDataExtractionTool.getIssueCountPerUser(fixtures.issues);
+  }
+
+  @Benchmark
+  public GDETUserCounter pullRequestOpenedCountPerUser(GDETFixtures fixtures) {
+    return GithubDataExtractionTool.getPullRequestCountPerUser(fixtures.pullRequests, false);
+  }
+
+  @Benchmark
+  public GDETUserCounter pullRequestMergedCountPerUser(GDETFixtures fixtures) {
+    return GithubDataExtractionTool.getPullRequestCountPerUser(fixtures.pullRequests, true);
+  }
+
+  @Benchmark
+  public GDETUserCounter pullRequestDetailsCountPerUser(GDETFixtures fixtures) {
+    return GDETPullRequestDetails.countPerUser(fixtures.pullRequestDetails, true);
+  }
+}
@@ -0,0 +1,30 @@
+package org.compass.gdet.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**GDETBenchmarks
+* Runs the benchmarks with the GC profiler always on, so every result comes
+* with its allocation rate and bytes allocated per operation
+* (gc.alloc.rate.norm).  Takes the usual JMH command line, for example
+*
+*   java -jar target/benchmarks.jar GDETRender -p size=1000,100000
+*
+* runs only the renderer benchmarks at two sizes.
+*/
+public class GDETBenchmarks {
+
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    CommandLineOptions commandLine = new CommandLineOptions(args);
+    Options options = new OptionsBuilder()
+      .parent(commandLine)
+      .addProfiler(GCProfiler.class)
+      .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,96 @@
+package org.compass.gdet.benchmarks;
+
+import org.compass.gdet.*;
+import org.kohsuke.github.HttpConnector;
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**GDETExtractionBenchmark
+* End to end extraction throughput: a whole repository of about <items>
+* records, fetched from a GDETStandInServer by a fresh client, the way
+* GitHubAPIDemo extracts one.  Each repository has <items> commits, a fifth
+* as many issues, a tenth as many pull requests with two review comments
+* each, and every response is delayed by <latencyMillis>.  With <prefetch>,
+* listing pages are fetched ahead through a GDETPrefetchingConnector.
+* <transport> sends the requests through HttpURLConnections ("urlconnection")
+* or a GDETHttpClientConnector ("httpclient").
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class GDETExtractionBenchmark {
+
+  private static final String REPOSITORY = "bench/extraction";
+  private static final int PARALLELISM = 8;
+
+  @Param({"10000", "100000"})
+  public int items;
+
+  @Param({"0"})
+  public int latencyMillis;
+
+  @Param({"true", "false"})
+  public boolean prefetch;
+
+  @Param({"urlconnection", "httpclient"})
+  public String transport;
+
+  private GDETStandInServer server;
+
+  @Setup(Level.Trial)
+  public void startServer() throws IOException {
+    server = new GDETStandInServer()
+      .addRepository(new GDETStandInServer.Repository(REPOSITORY)
+        .setCommits(items)
+        .setIssues(items / 5)
+        .setPullRequests(items / 10)
+        .setReviewComments(2)
+        .setBranches(30)
+        .setUsers(500))
+      .setRateLimit(Integer.MAX_VALUE, GDETStandInServer.DEFAULT_RATE_LIMIT_WINDOW_SECONDS)
+      .setLatency(latencyMillis, 0)
+      .start();
+  }
+
+  @TearDown(Level.Trial)
+  public void stopServer() {
+    server.close();
+  }
+
+  /* every extraction starts without any user profiles cached */
+  @Setup(Level.Invocation)
+  public void clearProfiles() {
+    GithubDataExtractionTool.setUserProfileCache(new GDETUserProfileCache());
+  }
+
+  @Benchmark
+  public int extractRepository() {
+    HttpConnector connector = transport.equals("httpclient")
+      ? GDETHttpClientConnector.getDefault()
+      : HttpConnector.DEFAULT;
+    GDETPrefetchingConnector prefetcher = null;
+    if (prefetch) {
+      prefetcher = new GDETPrefetchingConnector(connector);
+      connector = prefetcher;
+    }
+    try {
+      GithubDataExtractionTool tool =
+        new GithubDataExtractionTool(connector, server.getEndpoint());
+      GDETRepositorySnapshot snapshot =
+        new GDETRepositorySnapshot(tool.getRepository(REPOSITORY), PARALLELISM);
+      snapshot.prefetchUserProfiles(GithubDataExtractionTool.getUserProfileCache());
+      return snapshot.getCommitDetails().size() + snapshot.getIssueDetails().size()
+        + snapshot.getPullRequestDetails().size()
+        + snapshot.getReviewCommentDetails().size() + snapshot.getBranches().size();
+    }
+    finally {
+      if (prefetcher != null) {
+        prefetcher.close();
+      }
+    }
+  }
+}
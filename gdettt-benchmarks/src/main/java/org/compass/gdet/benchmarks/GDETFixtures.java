@@ -0,0 +1,228 @@
+package org.compass.gdet.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.compass.gdet.*;
+import org.kohsuke.github.*;
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**GDETFixtures
+* Synthetic, in-memory records for the benchmarks, <size> of each type.
+*
+* The records are real github-api objects: a fixture server on the loopback
+* interface serves POOL_SIZE generated commits, issues, pull requests, review
+* comments and branches plus the profiles of USERS logins, and they are read
+* back once per trial through the same GithubDataExtractionTool calls the
+* tool uses.  Every user profile is fetched during setup, so nothing touches
+* the network while a benchmark is measured.
+*
+* Lists larger than the pool cycle over it instead of holding <size> distinct
+* objects, which keeps the 10M record runs within an ordinary heap while the
+* per record work stays the same.
+*/
+@State(Scope.Benchmark)
+public class GDETFixtures {
+
+  public static final int POOL_SIZE = 10000;
+  public static final int USERS = 500;
+  private static final String REPOSITORY = "bench/fixtures";
+
+  @Param({"1000", "100000", "1000000", "10000000"})
+  public int size;
+
+  public List<GHCommit> commits;
+  public List<GHIssue> issues;
+  public List<GHPullRequest> pullRequests;
+  public List<GDETPullRequestDetails> pullRequestDetails;
+  public List<GHPullRequestReviewComment> reviewComments;
+  public List<GHBranch> branches;
+
+  private HttpServer server;
+
+  @Setup(Level.Trial)
+  public void load() throws IOException {
+    server = startServer();
+    try {
+      GitHub github = new GitHubBuilder()
+        .withEndpoint("http://127.0.0.1:" + server.getAddress().getPort())
+        .build();
+      GHRepository repo = github.getRepository(REPOSITORY);
+      List<GHPullRequest> prs = GithubDataExtractionTool.getPullRequests(repo, GHIssueState.ALL);
+      List<GDETPullRequestDetails> details = new ArrayList<GDETPullRequestDetails>();
+      for (GHPullRequest pr : prs) {
+        details.add(GDETPullRequestDetails.of(pr));
+      }
+      commits = cycle(GithubDataExtractionTool.getCommits(repo), size);
+      issues = cycle(GithubDataExtractionTool.getIssues(repo), size);
+      pullRequests = cycle(prs, size);
+      pullRequestDetails = cycle(details, size);
+      reviewComments = cycle(prs.get(0).listReviewComments().asList(), size);
+      branches = cycle(GithubDataExtractionTool.getBranches(repo), size);
+      warmUp();
+    }
+    catch (RuntimeException e) {
+      throw new IOException("Could not load the benchmark fixtures", e);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    server.stop(0);
+  }
+
+  /* resolves every login once so that later lookups are cache hits */
+  private void warmUp() {
+    int pool = Math.min(size, POOL_SIZE);
+    for (int i = 0; i < pool; i++) {
+      GithubDataExtractionTool.commitToString(commits.get(i));
+      GithubDataExtractionTool.issueToString(issues.get(i));
+      GithubDataExtractionTool.pullRequestToString(pullRequests.get(i));
+      GithubDataExtractionTool.pullRequestReviewCommentsToString(reviewComments.get(i));
+    }
+    GithubDataExtractionTool.getCommitCountPerUser(commits.subList(0, pool));
+  }
+
+  /**cycle
+  * @return a read only list of <size> elements that repeats the first
+  *   min(<size>, POOL_SIZE) elements of <pool>.
+  */
+  static <T> List<T> cycle(final List<T> pool, final int size) {
+    if (pool == null || pool.isEmpty()) {
+      throw new IllegalStateException("The fixture server returned no records");
+    }
+    final List<T> distinct = new ArrayList<T>(pool.subList(0, Math.min(size, pool.size())));
+    class Cycle extends AbstractList<T> implements RandomAccess {
+      public T get(int index) {
+        if (index < 0 || index >= size) {
+          throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return distinct.get(index % distinct.size());
+      }
+
+      public int size() {
+        return size;
+      }
+    }
+    return new Cycle();
+  }
+
+  private static HttpServer startServer() throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    final Map<String, byte[]> routes =
+      routes("http://127.0.0.1:" + server.getAddress().getPort());
+    server.createContext("/", (HttpExchange exchange) -> {
+      byte[] body = routes.get(exchange.getRequestURI().getPath());
+      int code = 200;
+      if (body == null) {
+        code = 404;
+        body = "{\"message\":\"Not Found\"}".getBytes(StandardCharsets.UTF_8);
+      }
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(code, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    return server;
+  }
+
+  /* every listing is served as a single page of POOL_SIZE records */
+  private static Map<String, byte[]> routes(String endpoint) {
+    String base = "/repos/" + REPOSITORY;
+    Map<String, byte[]> routes = new HashMap<String, byte[]>();
+    routes.put(base, bytes("{\"name\":\"fixtures\",\"full_name\":\"" + REPOSITORY
+      + "\",\"owner\":" + user(endpoint, "bench") + "}"));
+
+    StringBuilder commits = new StringBuilder("[");
+    StringBuilder issues = new StringBuilder("[");
+    StringBuilder pulls = new StringBuilder("[");
+    StringBuilder comments = new StringBuilder("[");
+    StringBuilder branches = new StringBuilder("[");
+    for (int i = 0; i < POOL_SIZE; i++) {
+      String separator = i == 0 ? "" : ",";
+      String login = login(i);
+      String date = String.format("\"2018-%02d-%02dT%02d:%02d:00Z\"",
+        1 + i % 12, 1 + i % 28, i % 24, i % 60);
+      commits.append(separator)
+        .append("{\"sha\":\"").append(sha(i)).append("\",\"commit\":{")
+        .append("\"author\":{\"name\":\"").append(name(i)).append("\",\"email\":\"")
+        .append(login).append("@example.com\",\"date\":").append(date).append("},")
+        .append("\"committer\":{\"name\":\"").append(name(i)).append("\",\"email\":\"")
+        .append(login).append("@example.com\",\"date\":").append(date).append("},")
+        .append("\"message\":\"Change number ").append(i)
+        .append("\\n\\nTouches the synthetic fixture data.\"},")
+        .append("\"author\":").append(user(endpoint, login)).append('}');
+      issues.append(separator)
+        .append("{\"number\":").append(i + 1)
+        .append(",\"title\":\"Issue number ").append(i + 1)
+        .append("\",\"state\":\"").append(i % 3 == 0 ? "closed" : "open")
+        .append("\",\"created_at\":").append(date)
+        .append(",\"user\":").append(user(endpoint, login)).append('}');
+      boolean merged = i % 4 != 0;
+      pulls.append(separator)
+        .append("{\"number\":").append(i + 1)
+        .append(",\"title\":\"Pull request number ").append(i + 1)
+        .append("\",\"state\":\"").append(i % 5 == 0 ? "open" : "closed")
+        .append("\",\"created_at\":").append(date)
+        .append(",\"user\":").append(user(endpoint, login))
+        .append(",\"mergeable_state\":\"clean\",\"merged\":").append(merged);
+      if (merged) {
+        pulls.append(",\"merged_at\":").append(date)
+          .append(",\"merged_by\":").append(user(endpoint, login(i * 7 + 3)));
+      }
+      pulls.append(",\"additions\":").append(i % 400)
+        .append(",\"deletions\":").append(i % 150)
+        .append(",\"commits\":").append(1 + i % 9).append('}');
+      comments.append(separator)
+        .append("{\"id\":").append(i + 1)
+        .append(",\"body\":\"Review comment number ").append(i + 1)
+        .append("\\n\",\"user\":").append(user(endpoint, login)).append('}');
+      branches.append(separator)
+        .append("{\"name\":\"branch-").append(i)
+        .append("\",\"commit\":{\"sha\":\"").append(sha(i)).append("\"}}");
+    }
+    routes.put(base + "/commits", bytes(commits.append(']')));
+    routes.put(base + "/issues", bytes(issues.append(']')));
+    routes.put(base + "/pulls", bytes(pulls.append(']')));
+    routes.put(base + "/pulls/1/comments", bytes(comments.append(']')));
+    routes.put(base + "/branches", bytes(branches.append(']')));
+
+    for (int i = 0; i < USERS; i++) {
+      routes.put("/users/" + login(i), bytes("{\"login\":\"" + login(i) + "\",\"name\":\""
+        + name(i) + "\",\"created_at\":\"2015-01-01T00:00:00Z\"}"));
+    }
+    return routes;
+  }
+
+  /* a reference to a user, as listings embed them */
+  private static String user(String endpoint, String login) {
+    return "{\"login\":\"" + login + "\",\"url\":\"" + endpoint + "/users/" + login + "\"}";
+  }
+
+  private static String login(int i) {
+    return "user" + (i % USERS);
+  }
+
+  private static String name(int i) {
+    return "User Number " + (i % USERS);
+  }
+
+  private static String sha(int i) {
+    return String.format("%040x", 0x9e3779b97f4a7c15L * (i + 1) & Long.MAX_VALUE);
+  }
+
+  private static byte[] bytes(CharSequence json) {
+    return json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,76 @@
+package org.compass.gdet.benchmarks;
+
+import org.compass.gdet.*;
+import org.kohsuke.github.*;
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**GDETOutputHandlerBenchmark
+* Time and allocation of writing <size> records through a GDETOutputHandler
+* whose sink discards the encoded bytes: rendered to strings and written, the
+* way callers of the *ToString methods do; rendered straight into the
+* handler; and exported as NDJSON.  Returns the bytes written so that none of
+* the work can be optimized away.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class GDETOutputHandlerBenchmark {
+
+  private static final OutputStream DISCARD = new OutputStream() {
+    public void write(int b) {}
+
+    public void write(byte[] b, int off, int len) {}
+  };
+
+  private static GDETOutputHandler handler() {
+    return new GDETOutputHandler(
+      GDETChannelSink.toStream(DISCARD, GDETChannelSink.FILE_BUFFER_SIZE));
+  }
+
+  @Benchmark
+  public long writeRenderedCommits(GDETFixtures fixtures) throws IOException {
+    GDETOutputHandler out = handler();
+    for (GHCommit commit : fixtures.commits) {
+      out.write(GithubDataExtractionTool.commitToString(commit));
+    }
+    out.close();
+    return out.getBytesWritten();
+  }
+
+  @Benchmark
+  public long renderCommitsIntoHandler(GDETFixtures fixtures) throws IOException {
+    GDETOutputHandler out = handler();
+    for (GHCommit commit : fixtures.commits) {
+      GDETRecordRenderer.renderCommit(commit, out);
+    }
+    out.close();
+    return out.getBytesWritten();
+  }
+
+  @Benchmark
+  public long renderPullRequestDetailsIntoHandler(GDETFixtures fixtures) throws IOException {
+    GDETOutputHandler out = handler();
+    for (GDETPullRequestDetails pr : fixtures.pullRequestDetails) {
+      GDETRecordRenderer.renderPullRequest(pr, out);
+    }
+    out.close();
+    return out.getBytesWritten();
+  }
+
+  @Benchmark
+  public long exportCommitsAsNdjson(GDETFixtures fixtures) throws IOException {
+    GDETOutputHandler out = handler();
+    GDETRecordExporter exporter = GDETRecordExporter.forFormat("ndjson", out);
+    for (GHCommit commit : fixtures.commits) {
+      exporter.exportCommit(commit);
+    }
+    exporter.flush();
+    out.close();
+    return out.getBytesWritten();
+  }
+}
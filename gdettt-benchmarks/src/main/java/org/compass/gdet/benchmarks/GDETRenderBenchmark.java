@@ -0,0 +1,54 @@
+package org.compass.gdet.benchmarks;
+
+import org.compass.gdet.*;
+import org.kohsuke.github.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import java.util.concurrent.TimeUnit;
+
+/**GDETRenderBenchmark
+* Time and allocation of the *ToString renderers, each called once per
+* record for <size> records.
+*/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class GDETRenderBenchmark {
+
+  @Benchmark
+  public void commitToString(GDETFixtures fixtures, Blackhole blackhole) {
+    for (GHCommit commit : fixtures.commits) {
+      blackhole.consume(GithubDataExtractionTool.commitToString(commit));
+    }
+  }
+
+  @Benchmark
+  public void issueToString(GDETFixtures fixtures, Blackhole blackhole) {
+    for (GHIssue issue : fixtures.issues) {
+      blackhole.consume(GithubDataExtractionTool.issueToString(issue));
+    }
+  }
+
+  @Benchmark
+  public void pullRequestToString(GDETFixtures fixtures, Blackhole blackhole) {
+    for (GHPullRequest pr : fixtures.pullRequests) {
+      blackhole.consume(GithubDataExtractionTool.pullRequestToString(pr));
+    }
+  }
+
+  @Benchmark
+  public void pullRequestReviewCommentsToString(GDETFixtures fixtures, Blackhole blackhole) {
+    for (GHPullRequestReviewComment comment : fixtures.reviewComments) {
+      blackhole.consume(GithubDataExtractionTool.pullRequestReviewCommentsToString(comment));
+    }
+  }
+
+  @Benchmark
+  public void branchToString(GDETFixtures fixtures, Blackhole blackhole) {
+    for (GHBranch branch : fixtures.branches) {
+      blackhole.consume(GithubDataExtractionTool.branchToString(branch));
+    }
+  }
+}
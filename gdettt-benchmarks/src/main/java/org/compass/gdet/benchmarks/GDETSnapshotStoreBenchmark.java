@@ -0,0 +1,65 @@
+package org.compass.gdet.benchmarks;
+
+import org.compass.gdet.*;
+import org.openjdk.jmh.annotations.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**GDETSnapshotStoreBenchmark
+* Re-analysing a stored repository of <commits> distinct commits by USERS
+* authors: opening the store, mapping its segments and counting commits per
+* user, with no API calls.
+*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class GDETSnapshotStoreBenchmark {
+
+  private static final String REPOSITORY = "bench/store";
+  private static final int USERS = 500;
+
+  @Param({"100000", "1000000", "10000000"})
+  public int commits;
+
+  private Path directory;
+
+  @Setup(Level.Trial)
+  public void store() throws IOException {
+    directory = Files.createTempDirectory("gdet-store-bench");
+    char[] sha = new char[40];
+    long date = 1500000000000L;
+    try (GDETSnapshotStore store = new GDETSnapshotStore(directory);
+        GDETSnapshotStore.Writer writer = store.writer(REPOSITORY)) {
+      for (int i = 0; i < commits; i++) {
+        long mixed = 0x9e3779b97f4a7c15L * (i + 1);
+        for (int c = 0; c < 40; c++) {
+          sha[c] = Character.forDigit((int) (mixed >>> (4 * (c % 16))) & 0xf, 16);
+        }
+        sha[39] = Character.forDigit(i & 0xf, 16);
+        writer.writeCommit(new String(sha), "user" + (i % USERS), new Date(date + i * 60000L));
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void delete() throws IOException {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public GDETUserCounter reopenAndCountCommitsPerUser() throws IOException {
+    try (GDETSnapshotStore store = new GDETSnapshotStore(directory)) {
+      return store.read(REPOSITORY).getCommitCountPerUser();
+    }
+  }
+}
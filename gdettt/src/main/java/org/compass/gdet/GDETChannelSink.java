@@ -0,0 +1,193 @@
+package org.compass.gdet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**GDETChannelSink
+* A GDETOutputSink that encodes text as UTF-8 into one large buffer and only
+* writes to its channel when the buffer fills up or is flushed.  Files are
+* written through a FileChannel with a direct buffer; standard output is
+* written in explicit batches instead of once per record.
+*/
+public class GDETChannelSink implements GDETOutputSink {
+
+  public static final int FILE_BUFFER_SIZE = 1 << 20;
+  public static final int CONSOLE_BUFFER_SIZE = 64 << 10;
+
+  private final WritableByteChannel channel;
+  private final OutputStream stream;
+  private final boolean closeChannel;
+  private final ByteBuffer buffer;
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+    .onMalformedInput(CodingErrorAction.REPLACE)
+    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+  /* a high surrogate that ended the last write, encoded with the next one */
+  private char pending;
+  private long bytesWritten;
+  private long flushCount;
+  private long flushNanos;
+  private long maxFlushNanos;
+  private boolean closed;
+
+  /**Constructor
+  * @params:
+  *   channel - where encoded output is written
+  *   buffer - the buffer output is collected in between writes to <channel>
+  *   closeChannel - whether close() should also close <channel>
+  */
+  public GDETChannelSink( WritableByteChannel channel, ByteBuffer buffer, boolean closeChannel ) {
+    this(channel, null, buffer, closeChannel);
+  }
+
+  private GDETChannelSink( WritableByteChannel channel, OutputStream stream,
+      ByteBuffer buffer, boolean closeChannel ) {
+    this.channel = channel;
+    this.stream = stream;
+    this.buffer = buffer;
+    this.closeChannel = closeChannel;
+  }
+
+  /**toFile
+  * @return a sink that truncates or creates <path> and writes to it through a
+  *   1MB direct buffer.
+  */
+  public static GDETChannelSink toFile( Path path ) throws IOException {
+    return toFile(path, FILE_BUFFER_SIZE);
+  }
+
+  /**toFile
+  * @return a sink that truncates or creates <path> and writes to it through a
+  *   direct buffer of <bufferSize> bytes.
+  */
+  public static GDETChannelSink toFile( Path path, int bufferSize ) throws IOException {
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    return new GDETChannelSink(channel, ByteBuffer.allocateDirect(bufferSize), true);
+  }
+
+  /**toStream
+  * @return a sink that writes batches of <bufferSize> bytes to <out>, leaving
+  *   <out> open when the sink is closed.
+  */
+  public static GDETChannelSink toStream( OutputStream out, int bufferSize ) {
+    return new GDETChannelSink(Channels.newChannel(out), out,
+        ByteBuffer.allocate(bufferSize), false);
+  }
+
+  /**toStandardOutput
+  * @return a sink that writes to System.out in 64KB batches.
+  */
+  public static GDETChannelSink toStandardOutput() {
+    return toStream(System.out, CONSOLE_BUFFER_SIZE);
+  }
+
+  public synchronized void write( CharSequence csq, int start, int end ) throws IOException {
+    if ( closed ) {
+      throw new IOException("Sink is closed");
+    }
+    if ( start == end ) {
+      return;
+    }
+    CharBuffer chars;
+    if ( pending != 0 ) {
+      chars = CharBuffer.wrap(new StringBuilder(end - start + 1)
+          .append(pending).append(csq, start, end));
+      pending = 0;
+    } else {
+      chars = CharBuffer.wrap(csq, start, end);
+    }
+    encode(chars, false);
+    /* the encoder leaves a high surrogate that may be paired by the next write */
+    if ( chars.hasRemaining() ) {
+      pending = chars.get();
+    }
+  }
+
+  private void encode( CharBuffer chars, boolean endOfInput ) throws IOException {
+    while ( true ) {
+      int before = buffer.position();
+      CoderResult result = encoder.encode(chars, buffer, endOfInput);
+      bytesWritten += buffer.position() - before;
+      if ( result.isOverflow() ) {
+        drain();
+      } else {
+        break;
+      }
+    }
+  }
+
+  public synchronized void flush() throws IOException {
+    if ( closed ) {
+      return;
+    }
+    drain();
+  }
+
+  public synchronized void close() throws IOException {
+    if ( closed ) {
+      return;
+    }
+    try {
+      /* a high surrogate nothing followed is encoded as a replacement */
+      encode(pending != 0 ? CharBuffer.wrap(new char[] { pending })
+          : CharBuffer.allocate(0), true);
+      pending = 0;
+      while ( encoder.flush(buffer).isOverflow() ) {
+        drain();
+      }
+      drain();
+    } finally {
+      closed = true;
+      if ( closeChannel ) {
+        channel.close();
+      }
+    }
+  }
+
+  private void drain() throws IOException {
+    if ( buffer.position() == 0 ) {
+      return;
+    }
+    long start = System.nanoTime();
+    buffer.flip();
+    while ( buffer.hasRemaining() ) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+    if ( stream != null ) {
+      stream.flush();
+    }
+    long elapsed = System.nanoTime() - start;
+    flushCount++;
+    flushNanos += elapsed;
+    maxFlushNanos = Math.max(maxFlushNanos, elapsed);
+  }
+
+  public synchronized long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  public synchronized long getFlushCount() {
+    return flushCount;
+  }
+
+  public synchronized long getFlushNanos() {
+    return flushNanos;
+  }
+
+  public synchronized long getMaxFlushNanos() {
+    return maxFlushNanos;
+  }
+}
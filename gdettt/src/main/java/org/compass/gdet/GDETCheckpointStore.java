@@ -0,0 +1,160 @@
+package org.compass.gdet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**GDETCheckpointStore
+* Keeps one checkpoint per repository on local disk so that later runs only
+* have to fetch what changed.  Checkpoints are plain properties files, the
+* same format as the ~/.github credentials file.
+*/
+public class GDETCheckpointStore {
+
+  private final Path directory;
+
+  /**Constructor
+  * @params:
+  *   directory - where checkpoint files are kept; created if missing.
+  */
+  public GDETCheckpointStore( Path directory ) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory);
+  }
+
+  /**defaultDirectory
+  * @return the checkpoint location used by default, ~/.gdet/checkpoints
+  */
+  public static Path defaultDirectory() {
+    return Paths.get(System.getProperty("user.home"), ".gdet", "checkpoints");
+  }
+
+  private Path checkpointPath( String repoName ) {
+    return directory.resolve(repoName.replace('/', '_') + ".properties");
+  }
+
+  /**load
+  * Loads the checkpoint for <repoName>.
+  *
+  * @params:
+  *   repoName - the repository in <username>/<reponame> format
+  *
+  * @return:
+  *   Checkpoint - the saved checkpoint, or an empty one if none exists.
+  */
+  public Checkpoint load( String repoName ) throws IOException {
+    Checkpoint checkpoint = new Checkpoint(repoName);
+    Path path = checkpointPath(repoName);
+    if ( !Files.exists(path) ) {
+      return checkpoint;
+    }
+    Properties props = new Properties();
+    try ( InputStream in = Files.newInputStream(path) ) {
+      props.load(in);
+    }
+    checkpoint.issuesUpdatedAt = Long.parseLong(props.getProperty("issues.updated", "0"));
+    checkpoint.pullRequestsUpdatedAt = Long.parseLong(props.getProperty("pulls.updated", "0"));
+    for ( String key : props.stringPropertyNames() ) {
+      String value = props.getProperty(key);
+      if ( key.startsWith("branch.") ) {
+        checkpoint.branchHeads.put(key.substring(7), value);
+      } else if ( key.startsWith("commits.") ) {
+        checkpoint.commitCounts.add(key.substring(8), Integer.parseInt(value));
+      } else if ( key.startsWith("issues.user.") ) {
+        checkpoint.issueCounts.add(key.substring(12), Integer.parseInt(value));
+      } else if ( key.startsWith("pulls.opened.") ) {
+        checkpoint.pullRequestOpenedCounts.add(key.substring(13), Integer.parseInt(value));
+      } else if ( key.startsWith("pulls.merged.") ) {
+        checkpoint.pullRequestMergedCounts.add(key.substring(13), Integer.parseInt(value));
+      }
+    }
+    return checkpoint;
+  }
+
+  /**save
+  * Atomically replaces the stored checkpoint for checkpoint's repository.
+  */
+  public void save( Checkpoint checkpoint ) throws IOException {
+    Properties props = new Properties();
+    props.setProperty("issues.updated", Long.toString(checkpoint.issuesUpdatedAt));
+    props.setProperty("pulls.updated", Long.toString(checkpoint.pullRequestsUpdatedAt));
+    for ( Map.Entry<String, String> head : checkpoint.branchHeads.entrySet() ) {
+      props.setProperty("branch." + head.getKey(), head.getValue());
+    }
+    putCounts(props, "commits.", checkpoint.commitCounts);
+    putCounts(props, "issues.user.", checkpoint.issueCounts);
+    putCounts(props, "pulls.opened.", checkpoint.pullRequestOpenedCounts);
+    putCounts(props, "pulls.merged.", checkpoint.pullRequestMergedCounts);
+    Path path = checkpointPath(checkpoint.repoName);
+    Path tmp = Files.createTempFile(directory, "checkpoint", ".tmp");
+    try ( OutputStream out = Files.newOutputStream(tmp) ) {
+      props.store(out, checkpoint.repoName);
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void putCounts( Properties props, String prefix, GDETUserCounter counts ) {
+    for ( GDETUserCounter.Entry count : counts.entries() ) {
+      props.setProperty(prefix + count.getLogin(), Integer.toString(count.getCount()));
+    }
+  }
+
+  /**Checkpoint
+  * What was seen of one repository as of its last extraction: the head SHA
+  * of each branch, the newest updated_at of its issues and pull requests,
+  * and the per-login aggregates accumulated so far.
+  */
+  public static class Checkpoint {
+    final String repoName;
+    final Map<String, String> branchHeads = new TreeMap<String, String>();
+    long issuesUpdatedAt;
+    long pullRequestsUpdatedAt;
+    GDETUserCounter commitCounts = new GDETUserCounter();
+    final GDETUserCounter issueCounts = new GDETUserCounter();
+    final GDETUserCounter pullRequestOpenedCounts = new GDETUserCounter();
+    final GDETUserCounter pullRequestMergedCounts = new GDETUserCounter();
+
+    Checkpoint( String repoName ) {
+      this.repoName = repoName;
+    }
+
+    public String getRepoName() {
+      return repoName;
+    }
+
+    public Map<String, String> getBranchHeads() {
+      return branchHeads;
+    }
+
+    public long getIssuesUpdatedAt() {
+      return issuesUpdatedAt;
+    }
+
+    public long getPullRequestsUpdatedAt() {
+      return pullRequestsUpdatedAt;
+    }
+
+    public GDETUserCounter getCommitCounts() {
+      return commitCounts;
+    }
+
+    public GDETUserCounter getIssueCounts() {
+      return issueCounts;
+    }
+
+    public GDETUserCounter getPullRequestOpenedCounts() {
+      return pullRequestOpenedCounts;
+    }
+
+    public GDETUserCounter getPullRequestMergedCounts() {
+      return pullRequestMergedCounts;
+    }
+  }
+}
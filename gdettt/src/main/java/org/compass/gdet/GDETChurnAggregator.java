@@ -0,0 +1,229 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.GHRepository;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**GDETChurnAggregator
+* Totals the lines added and deleted per author and per week.  A commit's
+* stats are not part of the commit listing, so each commit whose stats are
+* not in the GDETCommitStatsCache is fetched on its own, with at most
+* <parallelism> requests in flight.  Fetched stats go into the cache, so a
+* commit is only ever fetched once.
+*
+* Commits are attributed to their author's login, or GDETUserCounter's
+* UNKNOWN_LOGIN if the author is not linked to an account, and to the week,
+* starting on Monday in UTC, of their commit date.  Commits whose stats
+* cannot be fetched are left out of the totals and counted as failed.
+*/
+public class GDETChurnAggregator {
+
+  public static final int DEFAULT_PARALLELISM = 8;
+
+  private final GDETCommitStatsCache cache;
+  private final int parallelism;
+
+  public GDETChurnAggregator(GDETCommitStatsCache cache) {
+    this(cache, DEFAULT_PARALLELISM);
+  }
+
+  /**Constructor
+  * @params:
+  *   cache - where commit stats are looked up and remembered
+  *   parallelism - the maximum number of commits fetched at once
+  */
+  public GDETChurnAggregator(GDETCommitStatsCache cache, int parallelism) {
+    this.cache = cache;
+    this.parallelism = parallelism;
+  }
+
+  public GDETCommitStatsCache getCache() {
+    return cache;
+  }
+
+  /**aggregate
+  * Totals the churn of <commits>, fetching the stats of those not cached
+  * from <repo>.
+  *
+  * @return:
+  *   Churn - the totals per author and per week.
+  */
+  public Churn aggregate(GHRepository repo, List<GDETCommitDetails> commits) {
+    List<GDETCommitDetails> missing = new ArrayList<GDETCommitDetails>();
+    for (GDETCommitDetails commit : commits) {
+      if (cache.get(commit.getSha()) == null) {
+        missing.add(commit);
+      }
+    }
+    fetch(repo, missing);
+    Churn churn = new Churn();
+    for (GDETCommitDetails commit : commits) {
+      GDETCommitStatsCache.Stats stats = cache.get(commit.getSha());
+      if (stats == null) {
+        churn.failed++;
+      }
+      else {
+        churn.add(commit, stats);
+      }
+    }
+    churn.sort();
+    return churn;
+  }
+
+  /* fetches the stats of <commits> into the cache, leaving out any that fail */
+  private void fetch(final GHRepository repo, List<GDETCommitDetails> commits) {
+    if (commits.isEmpty()) {
+      return;
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(
+      Math.max(1, Math.min(parallelism, commits.size())));
+    try {
+      List<Future<GDETCommitStatsCache.Stats>> pending =
+        new ArrayList<Future<GDETCommitStatsCache.Stats>>(commits.size());
+      for (GDETCommitDetails commit : commits) {
+        final String sha = commit.getSha();
+        pending.add(pool.submit(() -> cache.fetch(repo, sha)));
+      }
+      for (Future<GDETCommitStatsCache.Stats> stats : pending) {
+        try {
+          stats.get();
+        }
+        catch (ExecutionException e) {}
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**weekOf
+  * @return the Monday, in UTC, of the week <date> falls in, or null if there
+  *   is no date.
+  */
+  public static LocalDate weekOf(Date date) {
+    if (date == null) {
+      return null;
+    }
+    return date.toInstant().atOffset(ZoneOffset.UTC).toLocalDate()
+      .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+  }
+
+  /**Totals
+  * The number of commits and lines added and deleted in one group.
+  */
+  public static final class Totals {
+    private int commits;
+    private long additions;
+    private long deletions;
+
+    void add(GDETCommitStatsCache.Stats stats) {
+      commits++;
+      additions += stats.getAdditions();
+      deletions += stats.getDeletions();
+    }
+
+    public int getCommits() {
+      return commits;
+    }
+
+    public long getAdditions() {
+      return additions;
+    }
+
+    public long getDeletions() {
+      return deletions;
+    }
+
+    /**getChurn
+    * @return the lines added plus the lines deleted.
+    */
+    public long getChurn() {
+      return additions + deletions;
+    }
+  }
+
+  /**Churn
+  * The result of one aggregation.
+  */
+  public static final class Churn {
+    private Map<String, Totals> perAuthor = new LinkedHashMap<String, Totals>();
+    private final TreeMap<LocalDate, Totals> perWeek = new TreeMap<LocalDate, Totals>();
+    private final Totals total = new Totals();
+    private int failed;
+
+    void add(GDETCommitDetails commit, GDETCommitStatsCache.Stats stats) {
+      String login = commit.getAuthorLogin();
+      totals(perAuthor, login == null ? GDETUserCounter.UNKNOWN_LOGIN : login).add(stats);
+      LocalDate week = weekOf(commit.getCommitDate());
+      if (week != null) {
+        totals(perWeek, week).add(stats);
+      }
+      total.add(stats);
+    }
+
+    private static <K> Totals totals(Map<K, Totals> totals, K key) {
+      Totals group = totals.get(key);
+      if (group == null) {
+        group = new Totals();
+        totals.put(key, group);
+      }
+      return group;
+    }
+
+    /* orders the authors by churn, most first, then by login */
+    void sort() {
+      List<Map.Entry<String, Totals>> authors =
+        new ArrayList<Map.Entry<String, Totals>>(perAuthor.entrySet());
+      authors.sort((a, b) -> {
+        int byChurn = Long.compare(b.getValue().getChurn(), a.getValue().getChurn());
+        return byChurn != 0 ? byChurn : a.getKey().compareTo(b.getKey());
+      });
+      Map<String, Totals> sorted = new LinkedHashMap<String, Totals>();
+      for (Map.Entry<String, Totals> author : authors) {
+        sorted.put(author.getKey(), author.getValue());
+      }
+      perAuthor = sorted;
+    }
+
+    /**getPerAuthor
+    * @return the totals per author login, most churn first.
+    */
+    public Map<String, Totals> getPerAuthor() {
+      return Collections.unmodifiableMap(perAuthor);
+    }
+
+    /**getPerWeek
+    * @return the totals per week, keyed by its Monday, oldest first.
+    */
+    public Map<LocalDate, Totals> getPerWeek() {
+      return Collections.unmodifiableMap(perWeek);
+    }
+
+    public Totals getTotal() {
+      return total;
+    }
+
+    /**getFailedCount
+    * @return the number of commits whose stats could not be fetched.
+    */
+    public int getFailedCount() {
+      return failed;
+    }
+  }
+}
@@ -0,0 +1,191 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Date;
+
+/**GDETCommitDetails
+* The fields of a commit that the report renders, exports and counts, read
+* out of a GHCommit as its listing page is parsed so that the GHCommit, with
+* its embedded users, trees, parents and URLs, can be dropped.
+*
+* The SHA is packed into three primitives, logins, names and emails are ids
+* in GDETDictionary.SHARED and the commit date is kept in epoch milliseconds,
+* so a commit costs little more than its message.  The author's GHUser is
+* registered with GithubDataExtractionTool's user profile cache, which keeps
+* one per login, so that their name can still be fetched.
+*/
+public final class GDETCommitDetails {
+
+  private final long shaHigh;
+  private final long shaMiddle;
+  private final int shaLow;
+  /* the SHA as given, only kept when it is not 40 lowercase hex digits */
+  private final String shaText;
+  private final int authorLogin;
+  private final int authorName;
+  private final int authorEmail;
+  private final long commitDate;
+  private final String message;
+
+  /* where GHCommit keeps the author login of the listing */
+  private static final Field LISTED_AUTHOR = field(GHCommit.class, "author");
+  private static final Field LISTED_LOGIN =
+    LISTED_AUTHOR == null ? null : field(LISTED_AUTHOR.getType(), "login");
+
+  GDETCommitDetails(String sha, String authorLogin, String authorName, String authorEmail,
+      Date commitDate, String message) {
+    boolean packed = isPackable(sha);
+    this.shaHigh = packed ? Long.parseUnsignedLong(sha.substring(0, 16), 16) : 0;
+    this.shaMiddle = packed ? Long.parseUnsignedLong(sha.substring(16, 32), 16) : 0;
+    this.shaLow = packed ? Integer.parseUnsignedInt(sha.substring(32), 16) : 0;
+    this.shaText = packed ? null : sha;
+    this.authorLogin = GDETDictionary.SHARED.id(authorLogin);
+    this.authorName = GDETDictionary.SHARED.id(authorName);
+    this.authorEmail = GDETDictionary.SHARED.id(authorEmail);
+    this.commitDate = GDETIssueDetails.toMillis(commitDate);
+    this.message = message;
+  }
+
+  /**of
+  * Reads the details of <commit> from its listing.  Looking up the author's
+  * login fetches their account once per login, as GHCommit.getAuthor() does.
+  * If the account cannot be found, say because it has since been deleted,
+  * the commit keeps the login the listing gave, the login is remembered as
+  * missing in the user profile cache so that it is not fetched again, and
+  * it is reported on stderr once.  Other failures keep the commit without a
+  * login and are reported for each commit.
+  */
+  public static GDETCommitDetails of(GHCommit commit) throws IOException {
+    GHCommit.ShortInfo info = commit.getCommitShortInfo();
+    GitUser author = info.getAuthor();
+    GDETUserProfileCache profiles = GithubDataExtractionTool.getUserProfileCache();
+    String login = listedLogin(commit);
+    GHUser user = null;
+    if (login == null || !profiles.isMissing(login)) {
+      try {
+        user = commit.getAuthor();
+        login = user == null ? null : user.getLogin();
+      }
+      catch (FileNotFoundException e) {
+        if (login == null || profiles.reportMissing(login)) {
+          System.err.println("Could not find the account of " + login + ", the author of commit "
+            + commit.getSHA1() + ", keeping their commits under that login: " + e);
+        }
+      }
+      catch (IOException e) {
+        System.err.println("Could not look up the author of commit " + commit.getSHA1() + ": " + e);
+        login = null;
+      }
+    }
+    profiles.register(user);
+    return new GDETCommitDetails(commit.getSHA1(), login,
+      author == null ? null : author.getName(), author == null ? null : author.getEmail(),
+      info.getCommitDate(), info.getMessage());
+  }
+
+  /**listedLogin
+  * @return the author login the commit listing gave for <commit>, or null if
+  *   it gave none or it cannot be read.  github-api keeps it in a package
+  *   private field and only exposes it through getAuthor(), which fetches the
+  *   author's account.
+  */
+  static String listedLogin(GHCommit commit) {
+    if (LISTED_LOGIN == null) {
+      return null;
+    }
+    try {
+      Object author = LISTED_AUTHOR.get(commit);
+      return author == null ? null : (String) LISTED_LOGIN.get(author);
+    }
+    catch (IllegalAccessException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static Field field(Class<?> type, String name) {
+    try {
+      Field field = type.getDeclaredField(name);
+      field.setAccessible(true);
+      return field;
+    }
+    catch (NoSuchFieldException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**countPerUser
+  * Counts <commits> per login of their author.  Commits whose author is not
+  * linked to an account are counted under GDETUserCounter.UNKNOWN_LOGIN.
+  */
+  public static GDETUserCounter countPerUser(Iterable<GDETCommitDetails> commits) {
+    GDETUserCounter counter = new GDETUserCounter();
+    for (GDETCommitDetails commit : commits) {
+      String login = commit.getAuthorLogin();
+      counter.increment(login == null ? GDETUserCounter.UNKNOWN_LOGIN : login);
+    }
+    return counter;
+  }
+
+  private static boolean isPackable(String sha) {
+    if (sha == null || sha.length() != 40) {
+      return false;
+    }
+    for (int i = 0; i < 40; i++) {
+      char c = sha.charAt(i);
+      if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**getSha
+  * @return the commit's SHA-1 as GitHub gave it.
+  */
+  public String getSha() {
+    if (shaText != null) {
+      return shaText;
+    }
+    StringBuilder sha = new StringBuilder(40);
+    appendHex(sha, shaHigh, 16);
+    appendHex(sha, shaMiddle, 16);
+    appendHex(sha, shaLow & 0xffffffffL, 8);
+    return sha.toString();
+  }
+
+  private static void appendHex(StringBuilder out, long value, int digits) {
+    for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+      out.append(Character.forDigit((int) (value >>> shift) & 0xf, 16));
+    }
+  }
+
+  /**getAuthorLogin
+  * @return the login of the account the commit is linked to, or null if its
+  *   author email is not linked to one.
+  */
+  public String getAuthorLogin() {
+    return GDETDictionary.SHARED.get(authorLogin);
+  }
+
+  /**getAuthorName
+  * @return the author name recorded in the commit itself.
+  */
+  public String getAuthorName() {
+    return GDETDictionary.SHARED.get(authorName);
+  }
+
+  public String getAuthorEmail() {
+    return GDETDictionary.SHARED.get(authorEmail);
+  }
+
+  public Date getCommitDate() {
+    return GDETIssueDetails.toDate(commitDate);
+  }
+
+  public String getMessage() {
+    return message;
+  }
+}
@@ -0,0 +1,141 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.GHCommit;
+import org.kohsuke.github.GHRepository;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**GDETCommitStatsCache
+* Remembers how many lines each commit added and deleted, by SHA.  Listings
+* do not carry a commit's stats, so reading them costs one request per
+* commit; a commit never changes once it has a SHA, so its stats never need
+* to be fetched again.  Entries never expire.
+*
+* The cache can be saved to and loaded from a properties file so that stats
+* survive between runs.  It is safe to share between threads; two threads
+* asking for the same unknown commit at once may both fetch it.
+*/
+public class GDETCommitStatsCache {
+
+  private final Map<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+  private final AtomicLong fetched = new AtomicLong();
+
+  /**defaultFile
+  * @return the location GitHubAPIDemo persists stats to,
+  *   ~/.gdet/commit-stats.properties
+  */
+  public static Path defaultFile() {
+    return Paths.get(System.getProperty("user.home"), ".gdet", "commit-stats.properties");
+  }
+
+  /**get
+  * @return the stats of the commit <sha>, or null if they have not been
+  *   fetched.
+  */
+  public Stats get(String sha) {
+    return stats.get(sha);
+  }
+
+  /**fetch
+  * Returns the stats of the commit <sha> of <repo>, fetching the commit only
+  * if they are not cached.
+  *
+  * @return:
+  *   Stats - the lines the commit added and deleted.
+  */
+  public Stats fetch(GHRepository repo, String sha) throws IOException {
+    Stats cached = stats.get(sha);
+    if (cached != null) {
+      return cached;
+    }
+    GHCommit commit = repo.getCommit(sha);
+    Stats fetchedStats = new Stats(commit.getLinesAdded(), commit.getLinesDeleted());
+    fetched.incrementAndGet();
+    Stats raced = stats.putIfAbsent(sha, fetchedStats);
+    return raced != null ? raced : fetchedStats;
+  }
+
+  public void put(String sha, Stats commitStats) {
+    stats.put(sha, commitStats);
+  }
+
+  public int size() {
+    return stats.size();
+  }
+
+  /**getFetchCount
+  * @return the number of commits fetched because their stats were not cached.
+  */
+  public long getFetchCount() {
+    return fetched.get();
+  }
+
+  /**load
+  * Adds the entries saved in <file>, if it exists.
+  */
+  public void load(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      return;
+    }
+    Properties props = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      props.load(in);
+    }
+    for (String sha : props.stringPropertyNames()) {
+      String value = props.getProperty(sha);
+      int comma = value.indexOf(',');
+      if (comma > 0) {
+        stats.put(sha, new Stats(Integer.parseInt(value.substring(0, comma)),
+          Integer.parseInt(value.substring(comma + 1))));
+      }
+    }
+  }
+
+  /**save
+  * Writes every entry to <file>, replacing it atomically.
+  */
+  public void save(Path file) throws IOException {
+    Properties props = new Properties();
+    for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+      props.setProperty(entry.getKey(),
+        entry.getValue().getAdditions() + "," + entry.getValue().getDeletions());
+    }
+    Path dir = file.toAbsolutePath().getParent();
+    Files.createDirectories(dir);
+    Path tmp = Files.createTempFile(dir, "commit-stats", ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp)) {
+      props.store(out, "GDET commit stats cache");
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**Stats
+  * The lines one commit added and deleted.
+  */
+  public static final class Stats {
+    private final int additions;
+    private final int deletions;
+
+    public Stats(int additions, int deletions) {
+      this.additions = additions;
+      this.deletions = deletions;
+    }
+
+    public int getAdditions() {
+      return additions;
+    }
+
+    public int getDeletions() {
+      return deletions;
+    }
+  }
+}
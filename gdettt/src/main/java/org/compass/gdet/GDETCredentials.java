@@ -0,0 +1,102 @@
+package org.compass.gdet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+/**GDETCredentials
+* Reads the credentials this package authenticates with, the same way
+* GitHubBuilder.fromCredentials() does: the oauth token, or else the login
+* and password, from ~/.github, or from the GITHUB_OAUTH, GITHUB_LOGIN and
+* GITHUB_PASSWORD environment variables.  Extra tokens to spread requests
+* over can be listed one per line in ~/.gdet/tokens.
+*/
+final class GDETCredentials {
+
+  private final Properties props;
+
+  private GDETCredentials(Properties props) {
+    this.props = props;
+  }
+
+  /**load
+  * @return the settings in ~/.github, which may be empty.
+  */
+  static GDETCredentials load() throws IOException {
+    Properties props = new Properties();
+    Path file = Paths.get(System.getProperty("user.home"), ".github");
+    if (Files.exists(file)) {
+      try (InputStream in = Files.newInputStream(file)) {
+        props.load(in);
+      }
+    }
+    return new GDETCredentials(props);
+  }
+
+  /**tokensFile
+  * @return ~/.gdet/tokens, the file extra tokens are read from.
+  */
+  static Path tokensFile() {
+    return Paths.get(System.getProperty("user.home"), ".gdet", "tokens");
+  }
+
+  String setting(String key, String variable) {
+    String value = props.getProperty(key);
+    return value != null ? value : System.getenv(variable);
+  }
+
+  /**endpoint
+  * @return the REST endpoint configured in ~/.github, or null for github.com.
+  */
+  String endpoint() {
+    return setting("endpoint", "GITHUB_ENDPOINT");
+  }
+
+  /**authorization
+  * @return the Authorization header for the configured credentials, or null
+  *   if there are none.
+  */
+  String authorization() {
+    String oauth = setting("oauth", "GITHUB_OAUTH");
+    String login = setting("login", "GITHUB_LOGIN");
+    String password = setting("password", "GITHUB_PASSWORD");
+    if (oauth != null) {
+      return "token " + oauth;
+    }
+    if (login != null && password != null) {
+      return "Basic " + Base64.getEncoder().encodeToString(
+        (login + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+    return null;
+  }
+
+  /**pool
+  * @return the Authorization headers of every distinct credential: the one
+  *   from ~/.github first, then each token in <tokens> (blank lines and lines
+  *   starting with # are skipped).
+  */
+  List<String> pool(Path tokens) throws IOException {
+    Set<String> pool = new LinkedHashSet<String>();
+    if (authorization() != null) {
+      pool.add(authorization());
+    }
+    if (Files.exists(tokens)) {
+      for (String line : Files.readAllLines(tokens, StandardCharsets.UTF_8)) {
+        String token = line.trim();
+        if (!token.isEmpty() && !token.startsWith("#")) {
+          pool.add("token " + token);
+        }
+      }
+    }
+    return new ArrayList<String>(pool);
+  }
+}
@@ -0,0 +1,84 @@
+package org.compass.gdet;
+
+import java.io.IOException;
+
+/**GDETCsvExporter
+* Exports records as RFC 4180 CSV: CRLF line endings, and fields containing a
+* comma, a double quote or a line break enclosed in double quotes with inner
+* quotes doubled.  Every row starts with the record type.  A header row is
+* written before the first record and again whenever the record type changes,
+* so an export of several record types reads as consecutive tables.  It is
+* also repeated at the start of every file and indexed block of a
+* GDETRotatingSink, so that each can be read on its own.  Missing values are
+* written as empty fields.
+*/
+public class GDETCsvExporter extends GDETRecordExporter {
+
+  private static final String LINE_END = "\r\n";
+
+  private String currentType;
+
+  public GDETCsvExporter(GDETOutputHandler out) {
+    super(out);
+  }
+
+  protected void beginRecord(String type, String[] fields) throws IOException {
+    if (!type.equals(currentType) || out.startsSection()) {
+      currentType = type;
+      out.write("type");
+      for (String field : fields) {
+        out.write(',');
+        out.write(field);
+      }
+      out.write(LINE_END);
+    }
+    out.write(type);
+  }
+
+  protected void string(String value) throws IOException {
+    out.write(',');
+    if (value != null) {
+      writeQuoted(value);
+    }
+  }
+
+  protected void number(long value) throws IOException {
+    out.write(',');
+    out.write(Long.toString(value));
+  }
+
+  protected void endRecord() throws IOException {
+    out.write(LINE_END);
+  }
+
+  /**writeQuoted
+  * Writes <value>, quoting it only if it needs to be, without copying it.
+  */
+  private void writeQuoted(String value) throws IOException {
+    if (!needsQuotes(value)) {
+      out.write(value);
+      return;
+    }
+    out.write('"');
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) == '"') {
+        out.write(value, start, i + 1 - start);
+        out.write('"');
+        start = i + 1;
+      }
+    }
+    out.write(value, start, value.length() - start);
+    out.write('"');
+  }
+
+  private static boolean needsQuotes(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,72 @@
+package org.compass.gdet;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**GDETDictionary
+* Numbers distinct strings, such as logins, names and emails, so that records
+* can hold an int instead of their own copy of a string that thousands of
+* other records repeat.  Ids are dense and start at 0; they are only
+* meaningful within the dictionary that handed them out.
+*
+* SHARED is the dictionary the extracted record types use.  Strings are
+* never removed, so it grows with the number of distinct users seen, not
+* with the number of records.  Safe to use from several threads.
+*/
+public final class GDETDictionary {
+
+  /** the id of a missing (null) string. */
+  public static final int NONE = -1;
+
+  public static final GDETDictionary SHARED = new GDETDictionary();
+
+  private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+  private volatile String[] strings = new String[256];
+  private int size;
+
+  /**id
+  * @return the id of <value>, adding it if it is new, or NONE for null.
+  */
+  public int id(String value) {
+    if (value == null) {
+      return NONE;
+    }
+    Integer id = ids.get(value);
+    return id != null ? id : add(value);
+  }
+
+  private synchronized int add(String value) {
+    Integer id = ids.get(value);
+    if (id != null) {
+      return id;
+    }
+    String[] current = strings;
+    if (size == current.length) {
+      current = Arrays.copyOf(current, size * 2);
+    }
+    current[size] = value;
+    /* publish the string before its id, so get() always finds it */
+    strings = current;
+    ids.put(value, size);
+    return size++;
+  }
+
+  /**get
+  * @return the string numbered <id>, or null for NONE.
+  */
+  public String get(int id) {
+    return id == NONE ? null : strings[id];
+  }
+
+  /**intern
+  * @return the dictionary's copy of <value>, so that equal strings kept by
+  *   many records share one instance.
+  */
+  public String intern(String value) {
+    return get(id(value));
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+}
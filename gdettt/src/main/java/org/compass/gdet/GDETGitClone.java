@@ -0,0 +1,280 @@
+package org.compass.gdet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**GDETGitClone
+* Reads commit history from a local clone or mirror instead of the REST API.
+* The history is read by the git executable straight from the clone's object
+* and pack files, so a full history takes seconds and no API quota, where
+* the API pages through it a hundred commits per request.
+*
+* Commits are read as GDETCommitDetails, with the same SHA, author name and
+* email, commit date and message the API gives, in the order `git log`
+* lists them from HEAD, which is the order GitHub lists the default branch
+* in.  Git does not know GitHub logins, so a commit's login comes from its
+* author email: GitHub's noreply addresses carry the login, and other
+* addresses can be taught with setLogin() or learnLogins().  Commits by
+* other emails have no login, as commits whose email is not linked to an
+* account have none through the API either.
+*
+* update() fetches new commits from the clone's remote, and
+* startUpdating() does so periodically.
+*/
+public class GDETGitClone {
+
+  private static final Pattern NOREPLY =
+    Pattern.compile("(?:[0-9]+\\+)?([A-Za-z0-9-]+)@users\\.noreply\\.github\\.com");
+
+  /* unit and record separators, which commit messages do not contain */
+  private static final char FIELD = '\u001f';
+  private static final char RECORD = '\u001e';
+  private static final String FORMAT = "--format=%H%x1f%an%x1f%ae%x1f%ct%x1f%B%x1e";
+
+  private final Path directory;
+  private final String git;
+  private final Map<String, String> logins = new ConcurrentHashMap<String, String>();
+  private final AtomicLong updates = new AtomicLong();
+  private ScheduledExecutorService updater;
+
+  public GDETGitClone(Path directory) {
+    this(directory, "git");
+  }
+
+  /**Constructor
+  * @params:
+  *   directory - the clone, bare or not
+  *   git - the git executable to run
+  */
+  public GDETGitClone(Path directory, String git) {
+    this.directory = directory;
+    this.git = git;
+  }
+
+  /**mirror
+  * Creates a bare mirror of <url> in <directory>, which must not exist yet.
+  *
+  * @return:
+  *   GDETGitClone - the new mirror.
+  */
+  public static GDETGitClone mirror(String url, Path directory) throws IOException {
+    run(null, "git", "clone", "--mirror", "--quiet", url, directory.toString());
+    return new GDETGitClone(directory);
+  }
+
+  /**open
+  * Opens the mirror of <url> in <directory>, creating it if the directory
+  * does not exist yet and fetching new commits if it does.
+  */
+  public static GDETGitClone open(String url, Path directory) throws IOException {
+    if (!Files.exists(directory)) {
+      return mirror(url, directory);
+    }
+    GDETGitClone clone = new GDETGitClone(directory);
+    clone.update();
+    return clone;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  /**setLogin
+  * Attributes commits authored with <email> to <login>.
+  */
+  public void setLogin(String email, String login) {
+    logins.put(email.toLowerCase(), login);
+  }
+
+  /**learnLogins
+  * Learns the login of every author email in <commits>, such as the
+  * commits of an earlier API extraction.
+  */
+  public void learnLogins(Iterable<GDETCommitDetails> commits) {
+    for (GDETCommitDetails commit : commits) {
+      if (commit.getAuthorEmail() != null && commit.getAuthorLogin() != null) {
+        setLogin(commit.getAuthorEmail(), commit.getAuthorLogin());
+      }
+    }
+  }
+
+  /**learnLogins
+  * Learns the login of the author email of every commit of the clone whose
+  * SHA is a key of <loginsBySha>, such as the commits of a
+  * GDETSnapshotStore, which keep their login but not their email.
+  */
+  public void learnLogins(Map<String, String> loginsBySha) throws IOException {
+    for (GDETCommitDetails commit : getCommitDetails()) {
+      String login = loginsBySha.get(commit.getSha());
+      if (commit.getAuthorEmail() != null && login != null) {
+        setLogin(commit.getAuthorEmail(), login);
+      }
+    }
+  }
+
+  /**loginOf
+  * @return the login of the account <email> belongs to, or null if it is not
+  *   known.
+  */
+  public String loginOf(String email) {
+    if (email == null) {
+      return null;
+    }
+    String login = logins.get(email.toLowerCase());
+    if (login != null) {
+      return login;
+    }
+    Matcher noreply = NOREPLY.matcher(email);
+    return noreply.matches() ? noreply.group(1) : null;
+  }
+
+  /**getCommitDetails
+  * @return the details of every commit reachable from HEAD, newest first.
+  */
+  public List<GDETCommitDetails> getCommitDetails() throws IOException {
+    Process process = start(directory, git, "log", FORMAT, "HEAD");
+    List<GDETCommitDetails> commits = new ArrayList<GDETCommitDetails>();
+    try (Reader out = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+      StringBuilder field = new StringBuilder(256);
+      String[] fields = new String[5];
+      int next = 0;
+      for (int c = out.read(); c != -1; c = out.read()) {
+        if (c == FIELD && next < fields.length - 1) {
+          fields[next++] = field.toString();
+          field.setLength(0);
+        }
+        else if (c == RECORD) {
+          fields[next] = field.toString();
+          field.setLength(0);
+          if (next == fields.length - 1) {
+            commits.add(commit(fields));
+          }
+          next = 0;
+        }
+        else if (c != '\n' || next > 0 || field.length() > 0) {
+          /* git ends each record with a newline after the separator */
+          field.append((char) c);
+        }
+      }
+    }
+    finish(process, "git log");
+    return commits;
+  }
+
+  /**getCommitCountPerUser
+  * @return the number of commits reachable from HEAD per author login, as
+  *   GithubDataExtractionTool.getCommitCountPerUser() counts them.
+  */
+  public GDETUserCounter getCommitCountPerUser() throws IOException {
+    return GDETCommitDetails.countPerUser(getCommitDetails());
+  }
+
+  private GDETCommitDetails commit(String[] fields) {
+    String message = fields[4];
+    int end = message.length();
+    while (end > 0 && message.charAt(end - 1) == '\n') {
+      end--;
+    }
+    Date date = new Date(Long.parseLong(fields[3]) * 1000L);
+    return new GDETCommitDetails(fields[0], loginOf(fields[2]), fields[1], fields[2], date,
+      message.substring(0, end));
+  }
+
+  /**update
+  * Fetches new commits from the clone's remote, pruning deleted branches.
+  */
+  public void update() throws IOException {
+    run(directory, git, "remote", "update", "--prune");
+    updates.incrementAndGet();
+  }
+
+  /**getUpdateCount
+  * @return the number of successful update() calls.
+  */
+  public long getUpdateCount() {
+    return updates.get();
+  }
+
+  /**startUpdating
+  * Calls update() every <intervalMillis> on a daemon thread until
+  * stopUpdating() is called.  Failed updates are reported on stderr and
+  * retried at the next interval.
+  */
+  public synchronized void startUpdating(long intervalMillis) {
+    stopUpdating();
+    updater = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "gdet-git-update");
+      thread.setDaemon(true);
+      return thread;
+    });
+    updater.scheduleWithFixedDelay(() -> {
+      try {
+        update();
+      }
+      catch (IOException e) {
+        System.err.println("Could not update " + directory + ": " + e.getMessage());
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public synchronized void stopUpdating() {
+    if (updater != null) {
+      updater.shutdownNow();
+      updater = null;
+    }
+  }
+
+  private static Process start(Path directory, String... command) throws IOException {
+    ProcessBuilder builder = new ProcessBuilder(command)
+      .redirectError(ProcessBuilder.Redirect.INHERIT)
+      .redirectInput(ProcessBuilder.Redirect.PIPE);
+    if (directory != null) {
+      builder.directory(directory.toFile());
+    }
+    Process process = builder.start();
+    process.getOutputStream().close();
+    return process;
+  }
+
+  /* runs a git command that prints nothing of interest */
+  private static void run(Path directory, String... command) throws IOException {
+    Process process = start(directory, command);
+    try (InputStream out = process.getInputStream()) {
+      byte[] discard = new byte[4096];
+      while (out.read(discard) != -1) {}
+    }
+    finish(process, String.join(" ", Arrays.asList(command).subList(0, 2)));
+  }
+
+  private static void finish(Process process, String what) throws IOException {
+    try {
+      int status = process.waitFor();
+      if (status != 0) {
+        throw new IOException(what + " failed with exit status " + status);
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for " + what, e);
+    }
+  }
+}
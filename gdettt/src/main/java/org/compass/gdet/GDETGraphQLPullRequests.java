@@ -0,0 +1,274 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.GHIssueState;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.HttpConnector;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**GDETGraphQLPullRequests
+* Fetches pull request details through GitHub's GraphQL API, a hundred pull
+* requests per request.  Listing pull requests through the REST API leaves out
+* their size and who merged them, so reading those costs one more request per
+* pull request; this backend gets everything the report needs in the listing.
+*
+* Requests go through an HttpConnector, so they can share the connector the
+* GitHub client uses.  The display names that come back are remembered in
+* GithubDataExtractionTool's user profile cache, so later sections do not
+* fetch those users' profiles again.
+*/
+public class GDETGraphQLPullRequests {
+
+  public static final String DEFAULT_ENDPOINT = "https://api.github.com/graphql";
+  public static final int PAGE_SIZE = 100;
+
+  static final String QUERY =
+    "query($owner: String!, $name: String!, $states: [PullRequestState!], "
+    + "$first: Int!, $after: String) {"
+    + " repository(owner: $owner, name: $name) {"
+    + "  pullRequests(first: $first, after: $after, states: $states,"
+    + "   orderBy: {field: CREATED_AT, direction: DESC}) {"
+    + "   pageInfo { hasNextPage endCursor }"
+    + "   nodes {"
+    + "    number title state merged createdAt mergedAt additions deletions"
+    + "    commits { totalCount }"
+    + "    author { login ... on User { name } }"
+    + "    mergedBy { login ... on User { name } }"
+    + "   }"
+    + "  }"
+    + " }"
+    + "}";
+
+  private final HttpConnector connector;
+  private final URL endpoint;
+  private final String authorization;
+  private final AtomicInteger requests = new AtomicInteger();
+
+  /**Constructor
+  * @params:
+  *   connector - sends the requests, e.g. HttpConnector.DEFAULT
+  *   endpoint - the GraphQL endpoint URL
+  *   authorization - the Authorization header to send, e.g. "token <oauth>"
+  */
+  public GDETGraphQLPullRequests(HttpConnector connector, String endpoint,
+      String authorization) throws IOException {
+    this.connector = connector;
+    this.endpoint = new URL(endpoint);
+    this.authorization = authorization;
+  }
+
+  /**fromCredentials
+  * Creates a backend authenticated the same way GitHubBuilder.fromCredentials()
+  * is: with the oauth token, or else the login and password, from ~/.github,
+  * or from the GITHUB_OAUTH, GITHUB_LOGIN and GITHUB_PASSWORD environment
+  * variables.  An endpoint in ~/.github is mapped to its GraphQL endpoint.
+  *
+  * @return:
+  *   GDETGraphQLPullRequests - the backend, or null if no credentials are set;
+  *     the GraphQL API does not allow anonymous requests.
+  */
+  public static GDETGraphQLPullRequests fromCredentials(HttpConnector connector)
+      throws IOException {
+    return fromCredentials(connector, null);
+  }
+
+  /**fromCredentials
+  * Works like fromCredentials(HttpConnector), but uses the GraphQL endpoint
+  * belonging to the REST API URL <apiUrl> if it is set.
+  */
+  public static GDETGraphQLPullRequests fromCredentials(HttpConnector connector,
+      String apiUrl) throws IOException {
+    GDETCredentials credentials = GDETCredentials.load();
+    String authorization = credentials.authorization();
+    if (authorization == null) {
+      return null;
+    }
+    return new GDETGraphQLPullRequests(connector,
+      graphQLEndpoint(apiUrl != null ? apiUrl : credentials.endpoint()), authorization);
+  }
+
+  /**graphQLEndpoint
+  * @return the GraphQL endpoint belonging to the REST endpoint <rest>, e.g.
+  *   https://host/api/graphql for https://host/api/v3.
+  */
+  static String graphQLEndpoint(String rest) {
+    if (rest == null) {
+      return DEFAULT_ENDPOINT;
+    }
+    String base = rest.endsWith("/") ? rest.substring(0, rest.length() - 1) : rest;
+    if (base.endsWith("/v3")) {
+      base = base.substring(0, base.length() - 3);
+    }
+    return base + "/graphql";
+  }
+
+  /**getRequestCount
+  * @return the number of GraphQL requests sent so far.
+  */
+  public int getRequestCount() {
+    return requests.get();
+  }
+
+  /**getPullRequests
+  * @see getPullRequests(String, String, GHIssueState)
+  */
+  public List<GDETPullRequestDetails> getPullRequests(GHRepository repo, GHIssueState state)
+      throws IOException {
+    return getPullRequests(repo.getOwnerName(), repo.getName(), state);
+  }
+
+  /**getPullRequests
+  * Fetches every pull request of owner/name in <state>, newest first, in the
+  * same order the REST listing returns them.
+  *
+  * @params:
+  *   owner - the login of the repository's owner
+  *   name - the repository's name
+  *   state - OPEN, CLOSED (which includes merged pull requests) or ALL
+  *
+  * @return:
+  *   List<GDETPullRequestDetails> - the pull requests.
+  */
+  public List<GDETPullRequestDetails> getPullRequests(String owner, String name,
+      GHIssueState state) throws IOException {
+    List<GDETPullRequestDetails> prs = new ArrayList<GDETPullRequestDetails>();
+    String cursor = null;
+    do {
+      JsonObject variables = new JsonObject();
+      variables.addProperty("owner", owner);
+      variables.addProperty("name", name);
+      variables.add("states", states(state));
+      variables.addProperty("first", PAGE_SIZE);
+      variables.addProperty("after", cursor);
+      JsonObject repository = query(variables).getAsJsonObject("repository");
+      if (repository == null) {
+        throw new IOException("Repository not found: " + owner + "/" + name);
+      }
+      JsonObject page = repository.getAsJsonObject("pullRequests");
+      for (JsonElement node : page.getAsJsonArray("nodes")) {
+        prs.add(toDetails(node.getAsJsonObject()));
+      }
+      JsonObject pageInfo = page.getAsJsonObject("pageInfo");
+      cursor = pageInfo.get("hasNextPage").getAsBoolean()
+        ? pageInfo.get("endCursor").getAsString() : null;
+    } while (cursor != null);
+    return prs;
+  }
+
+  private static JsonElement states(GHIssueState state) {
+    JsonArray states = new JsonArray();
+    if (state == GHIssueState.OPEN) {
+      states.add("OPEN");
+    }
+    else if (state == GHIssueState.CLOSED) {
+      states.add("CLOSED");
+      states.add("MERGED");
+    }
+    else {
+      return null;
+    }
+    return states;
+  }
+
+  /**query
+  * Sends QUERY with <variables> and returns the "data" object of the response.
+  */
+  private JsonObject query(JsonObject variables) throws IOException {
+    JsonObject request = new JsonObject();
+    request.addProperty("query", QUERY);
+    request.add("variables", variables);
+    byte[] body = request.toString().getBytes(StandardCharsets.UTF_8);
+
+    requests.incrementAndGet();
+    HttpURLConnection connection = connector.connect(endpoint);
+    connection.setRequestMethod("POST");
+    connection.setDoOutput(true);
+    connection.setRequestProperty("Authorization", authorization);
+    connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+    connection.setRequestProperty("Accept", "application/json");
+    try (OutputStream out = connection.getOutputStream()) {
+      out.write(body);
+    }
+    int code = connection.getResponseCode();
+    if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
+      throw new IOException("GraphQL request failed with HTTP " + code + " "
+        + connection.getResponseMessage());
+    }
+    JsonObject response;
+    try (Reader in = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+      response = new JsonParser().parse(in).getAsJsonObject();
+    }
+    JsonElement errors = response.get("errors");
+    if (errors != null && errors.isJsonArray() && errors.getAsJsonArray().size() > 0) {
+      JsonElement message = errors.getAsJsonArray().get(0).getAsJsonObject().get("message");
+      throw new IOException("GraphQL request failed: "
+        + (message == null ? errors.toString() : message.getAsString()));
+    }
+    JsonElement data = response.get("data");
+    if (data == null || !data.isJsonObject()) {
+      throw new IOException("GraphQL response has no data");
+    }
+    return data.getAsJsonObject();
+  }
+
+  private static GDETPullRequestDetails toDetails(JsonObject node) {
+    JsonObject author = object(node, "author");
+    JsonObject mergedBy = object(node, "mergedBy");
+    remember(author);
+    remember(mergedBy);
+    return new GDETPullRequestDetails(
+      node.get("number").getAsInt(),
+      string(node, "title"),
+      "OPEN".equals(string(node, "state")) ? GHIssueState.OPEN : GHIssueState.CLOSED,
+      node.get("merged").getAsBoolean(),
+      date(node, "createdAt"),
+      date(node, "mergedAt"),
+      author == null ? null : string(author, "login"),
+      author == null ? null : string(author, "name"),
+      mergedBy == null ? null : string(mergedBy, "login"),
+      mergedBy == null ? null : string(mergedBy, "name"),
+      node.get("additions").getAsInt(),
+      node.get("deletions").getAsInt(),
+      object(node, "commits").get("totalCount").getAsInt());
+  }
+
+  /**remember
+  * Adds the name of <actor> to the shared profile cache.  Only users have a
+  * name member; other actors, such as bots, are skipped.
+  */
+  private static void remember(JsonObject actor) {
+    if (actor != null && actor.has("name") && actor.get("login") != null) {
+      GithubDataExtractionTool.getUserProfileCache().remember(
+        string(actor, "login"), string(actor, "name"));
+    }
+  }
+
+  private static JsonObject object(JsonObject parent, String member) {
+    JsonElement value = parent.get(member);
+    return value == null || value.isJsonNull() ? null : value.getAsJsonObject();
+  }
+
+  private static String string(JsonObject parent, String member) {
+    JsonElement value = parent.get(member);
+    return value == null || value.isJsonNull() ? null : value.getAsString();
+  }
+
+  private static Date date(JsonObject parent, String member) {
+    String value = string(parent, member);
+    return value == null ? null : Date.from(Instant.parse(value));
+  }
+}
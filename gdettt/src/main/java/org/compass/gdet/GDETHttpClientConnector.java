@@ -0,0 +1,204 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.HttpConnector;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**GDETHttpClientConnector
+* An HttpConnector that sends requests through one shared java.net.http
+* HttpClient instead of a new HttpURLConnection each.  Over TLS the client
+* negotiates HTTP/2, so the requests of a parallel extraction share one
+* multiplexed connection to the API and pay for one handshake; over HTTP/1.1
+* (and to servers without HTTP/2) connections are kept alive and reused
+* from the client's pool.  Use it innermost, where HttpConnector.DEFAULT
+* would go.
+*
+* Every request asks for a gzipped response.  Responses to callers that
+* asked for an encoding themselves, as github-api does, are handed back
+* still encoded, for the caller to decode; others are decoded here.
+* A connection's read timeout, if it set one, bounds the whole request, and
+* <requestTimeout> bounds it otherwise.
+*/
+public class GDETHttpClientConnector implements HttpConnector {
+
+  public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+  public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+  /* idle HTTP/1.1 connections the JDK keeps per client, which is unlimited
+     by default; enough for every thread of a parallel extraction */
+  private static final String POOL_SIZE_PROPERTY = "jdk.httpclient.connectionPoolSize";
+  private static final String POOL_SIZE = "32";
+
+  /* headers HttpClient sets itself and refuses from callers */
+  private static final Set<String> RESTRICTED_HEADERS =
+    new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+  static {
+    RESTRICTED_HEADERS.addAll(Arrays.asList(
+      "Connection", "Content-Length", "Expect", "Host", "Upgrade"));
+  }
+
+  private static GDETHttpClientConnector shared;
+
+  private final HttpClient client;
+  private final Duration requestTimeout;
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong http2Requests = new AtomicLong();
+  private final AtomicLong gzippedResponses = new AtomicLong();
+
+  public GDETHttpClientConnector() {
+    this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT);
+  }
+
+  /**Constructor
+  * @params:
+  *   connectTimeout - how long to wait for a new connection
+  *   requestTimeout - how long to wait for a whole response, unless the
+  *     connection sets a read timeout of its own
+  */
+  public GDETHttpClientConnector(Duration connectTimeout, Duration requestTimeout) {
+    this(newClient(connectTimeout), requestTimeout);
+  }
+
+  /**Constructor
+  * @params:
+  *   client - sends the requests
+  *   requestTimeout - how long to wait for a whole response, unless the
+  *     connection sets a read timeout of its own
+  */
+  public GDETHttpClientConnector(HttpClient client, Duration requestTimeout) {
+    this.client = client;
+    this.requestTimeout = requestTimeout;
+  }
+
+  /**getDefault
+  * @return a connector with the default timeouts, shared by everything that
+  *   asks for it so that they share its connections.
+  */
+  public static synchronized GDETHttpClientConnector getDefault() {
+    if (shared == null) {
+      shared = new GDETHttpClientConnector();
+    }
+    return shared;
+  }
+
+  private static HttpClient newClient(Duration connectTimeout) {
+    if (System.getProperty(POOL_SIZE_PROPERTY) == null) {
+      System.setProperty(POOL_SIZE_PROPERTY, POOL_SIZE);
+    }
+    return HttpClient.newBuilder()
+      .version(HttpClient.Version.HTTP_2)
+      .followRedirects(HttpClient.Redirect.NORMAL)
+      .connectTimeout(connectTimeout)
+      .build();
+  }
+
+  public HttpClient getClient() {
+    return client;
+  }
+
+  /**getRequestCount
+  * @return the number of responses received.
+  */
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  /**getHttp2RequestCount
+  * @return the number of responses received over HTTP/2.
+  */
+  public long getHttp2RequestCount() {
+    return http2Requests.get();
+  }
+
+  /**getGzippedResponseCount
+  * @return the number of responses received gzipped.
+  */
+  public long getGzippedResponseCount() {
+    return gzippedResponses.get();
+  }
+
+  public HttpURLConnection connect( URL url ) throws IOException {
+    return new ClientConnection(url);
+  }
+
+  private class ClientConnection extends GDETHttpConnection {
+
+    ClientConnection( URL url ) {
+      super(url);
+    }
+
+    protected void execute() throws IOException {
+      HttpRequest.Builder request;
+      try {
+        request = HttpRequest.newBuilder(url.toURI());
+      } catch ( URISyntaxException e ) {
+        throw new IOException("Cannot request " + url, e);
+      }
+      request.timeout(getReadTimeout() > 0 ? Duration.ofMillis(getReadTimeout()) : requestTimeout);
+      for ( Map.Entry<String, List<String>> header : getRequestProperties().entrySet() ) {
+        if ( !RESTRICTED_HEADERS.contains(header.getKey()) ) {
+          for ( String value : header.getValue() ) {
+            request.header(header.getKey(), value);
+          }
+        }
+      }
+      boolean decode = requestHeader("Accept-Encoding") == null;
+      if ( decode ) {
+        request.header("Accept-Encoding", "gzip");
+      }
+      request.method(getRequestMethod(), getDoOutput()
+        ? HttpRequest.BodyPublishers.ofByteArray(requestBody())
+        : HttpRequest.BodyPublishers.noBody());
+
+      HttpResponse<byte[]> response;
+      try {
+        response = client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted requesting " + url, e);
+      } catch ( IllegalArgumentException e ) {
+        throw new IOException("Cannot request " + url, e);
+      }
+      requests.incrementAndGet();
+      if ( response.version() == HttpClient.Version.HTTP_2 ) {
+        http2Requests.incrementAndGet();
+      }
+      Map<String, List<String>> headers =
+        new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+      headers.putAll(response.headers().map());
+      byte[] body = response.body();
+      if ( "gzip".equalsIgnoreCase(header(headers, "Content-Encoding")) ) {
+        gzippedResponses.incrementAndGet();
+        if ( decode ) {
+          body = readFully(new GZIPInputStream(new ByteArrayInputStream(body)));
+          headers.remove("Content-Encoding");
+          headers.put("Content-Length", new ArrayList<String>(
+            Arrays.asList(Integer.toString(body.length))));
+        }
+      }
+      setResponse(response.statusCode(), null, headers, body);
+    }
+  }
+
+  private static String header( Map<String, List<String>> headers, String name ) {
+    List<String> values = headers.get(name);
+    return values == null || values.isEmpty() ? null : values.get(0);
+  }
+}
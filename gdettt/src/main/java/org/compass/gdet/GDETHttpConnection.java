@@ -0,0 +1,262 @@
+package org.compass.gdet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**GDETHttpConnection
+* An HttpURLConnection whose whole response is held in memory.  github-api's
+* HttpConnector hands back HttpURLConnections, so the connectors in this
+* package (caching, metering, pacing) build on this class: they record the
+* request the library sets up, run it however they like in execute(), and
+* hand the buffered response back through setResponse().
+*/
+public abstract class GDETHttpConnection extends HttpURLConnection {
+
+  private final Map<String, List<String>> requestHeaders =
+    new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+  private final ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+
+  private Map<String, List<String>> responseHeaders =
+    new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+  private List<String> responseHeaderKeys = new ArrayList<String>();
+  private byte[] responseBody = new byte[0];
+  private boolean executed;
+
+  protected GDETHttpConnection( URL url ) {
+    super(url);
+  }
+
+  /**execute
+  * Performs the request described by this connection and reports the result
+  * through setResponse().  Called at most once per connection.
+  */
+  protected abstract void execute() throws IOException;
+
+  /**setResponse
+  * Records the response to serve from this connection.
+  *
+  * @params:
+  *   code - the HTTP status code
+  *   message - the HTTP reason phrase, may be null
+  *   headers - the response headers, keyed by header name
+  *   body - the raw (still content-encoded) response body
+  */
+  protected void setResponse( int code, String message,
+      Map<String, List<String>> headers, byte[] body ) {
+    responseCode = code;
+    responseMessage = message;
+    responseHeaders = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+    responseHeaderKeys = new ArrayList<String>();
+    for ( Map.Entry<String, List<String>> header : headers.entrySet() ) {
+      if ( header.getKey() != null ) {
+        responseHeaders.put(header.getKey(), new ArrayList<String>(header.getValue()));
+        responseHeaderKeys.add(header.getKey());
+      }
+    }
+    responseBody = body == null ? new byte[0] : body;
+  }
+
+  /**forward
+  * Replays this connection's request on <target> and returns its fully read
+  * response as an unexecuted copy, so decorators can inspect or store it
+  * before calling setResponse().
+  *
+  * @params:
+  *   target - a fresh connection to the same (or an equivalent) URL
+  *   extraHeaders - additional request headers to send, may be empty
+  *
+  * @return:
+  *   Response - the response received from <target>
+  */
+  protected Response forward( HttpURLConnection target,
+      Map<String, String> extraHeaders ) throws IOException {
+    target.setRequestMethod(getRequestMethod());
+    target.setInstanceFollowRedirects(getInstanceFollowRedirects());
+    target.setConnectTimeout(getConnectTimeout());
+    target.setReadTimeout(getReadTimeout());
+    for ( Map.Entry<String, List<String>> header : requestHeaders.entrySet() ) {
+      for ( String value : header.getValue() ) {
+        target.addRequestProperty(header.getKey(), value);
+      }
+    }
+    for ( Map.Entry<String, String> header : extraHeaders.entrySet() ) {
+      target.setRequestProperty(header.getKey(), header.getValue());
+    }
+    if ( getDoOutput() ) {
+      target.setDoOutput(true);
+      try ( OutputStream out = target.getOutputStream() ) {
+        requestBody.writeTo(out);
+      }
+    }
+    int code = target.getResponseCode();
+    InputStream in = code >= 400 ? target.getErrorStream() : target.getInputStream();
+    byte[] body = in == null ? new byte[0] : readFully(in);
+    Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+    for ( Map.Entry<String, List<String>> header : target.getHeaderFields().entrySet() ) {
+      if ( header.getKey() != null ) {
+        headers.put(header.getKey(), header.getValue());
+      }
+    }
+    return new Response(code, target.getResponseMessage(), headers, body);
+  }
+
+  /**readFully
+  * Reads and closes <in>, returning everything it contained.
+  */
+  static byte[] readFully( InputStream in ) throws IOException {
+    try ( InputStream is = in ) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int n;
+      while ( (n = is.read(buf)) != -1 ) {
+        out.write(buf, 0, n);
+      }
+      return out.toByteArray();
+    }
+  }
+
+  /**requestHeader
+  * @return the first value of the request header <name>, or null.
+  */
+  protected String requestHeader( String name ) {
+    List<String> values = requestHeaders.get(name);
+    return values == null || values.isEmpty() ? null : values.get(0);
+  }
+
+  /**requestBody
+  * @return the bytes written to this connection's output stream.
+  */
+  protected byte[] requestBody() {
+    return requestBody.toByteArray();
+  }
+
+  public void connect() throws IOException {
+    if ( !executed ) {
+      executed = true;
+      connected = true;
+      execute();
+    }
+  }
+
+  public void disconnect() {}
+
+  public boolean usingProxy() {
+    return false;
+  }
+
+  public void setRequestProperty( String key, String value ) {
+    List<String> values = new ArrayList<String>();
+    values.add(value);
+    requestHeaders.put(key, values);
+  }
+
+  public void addRequestProperty( String key, String value ) {
+    requestHeaders.computeIfAbsent(key, k -> new ArrayList<String>()).add(value);
+  }
+
+  public String getRequestProperty( String key ) {
+    return requestHeader(key);
+  }
+
+  public Map<String, List<String>> getRequestProperties() {
+    return Collections.unmodifiableMap(requestHeaders);
+  }
+
+  public OutputStream getOutputStream() throws IOException {
+    if ( executed ) {
+      throw new IllegalStateException("Already connected");
+    }
+    setDoOutput(true);
+    return requestBody;
+  }
+
+  public int getResponseCode() throws IOException {
+    connect();
+    return responseCode;
+  }
+
+  public String getResponseMessage() throws IOException {
+    connect();
+    return responseMessage;
+  }
+
+  public InputStream getInputStream() throws IOException {
+    connect();
+    if ( responseCode == HTTP_NOT_FOUND || responseCode == HTTP_GONE ) {
+      throw new FileNotFoundException(url.toString());
+    }
+    if ( responseCode >= 400 ) {
+      throw new IOException("Server returned HTTP response code: " +
+          responseCode + " for URL: " + url);
+    }
+    return new ByteArrayInputStream(responseBody);
+  }
+
+  public InputStream getErrorStream() {
+    if ( !executed || responseCode < 400 ) {
+      return null;
+    }
+    return new ByteArrayInputStream(responseBody);
+  }
+
+  public String getHeaderField( String name ) {
+    try {
+      connect();
+    } catch ( IOException e ) {
+      return null;
+    }
+    List<String> values = responseHeaders.get(name);
+    return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+  }
+
+  public Map<String, List<String>> getHeaderFields() {
+    try {
+      connect();
+    } catch ( IOException e ) {
+      return Collections.emptyMap();
+    }
+    return Collections.unmodifiableMap(responseHeaders);
+  }
+
+  public String getHeaderFieldKey( int n ) {
+    return n >= 0 && n < responseHeaderKeys.size() ? responseHeaderKeys.get(n) : null;
+  }
+
+  public String getHeaderField( int n ) {
+    String key = getHeaderFieldKey(n);
+    return key == null ? null : getHeaderField(key);
+  }
+
+  /**Response
+  * A fully buffered HTTP response.
+  */
+  protected static class Response {
+    final int code;
+    final String message;
+    final Map<String, List<String>> headers;
+    final byte[] body;
+
+    Response( int code, String message, Map<String, List<String>> headers, byte[] body ) {
+      this.code = code;
+      this.message = message;
+      this.headers = headers;
+      this.body = body;
+    }
+
+    String header( String name ) {
+      List<String> values = headers.get(name);
+      return values == null || values.isEmpty() ? null : values.get(values.size() - 1);
+    }
+  }
+}
@@ -0,0 +1,230 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**GDETIncrementalExtractor
+* Extracts only what changed in a repository since its last checkpoint and
+* merges the per-user counts into the ones saved with that checkpoint.
+*
+* New commits are the ones the compare API lists between the default branch
+* head recorded last time and the current one, so that commits of branches
+* merged since, which may be dated before the old head, are counted too.
+* When the old head is gone or the comparison is truncated, every commit is
+* walked and recounted instead.  Pull requests are listed newest-updated
+* first and the walk stops at the checkpoint.  The issues listing in
+* github-api has no since parameter, so updated issues come from the search
+* API instead, falling back to a full listing when the delta is larger than
+* search will return.
+*/
+public class GDETIncrementalExtractor {
+
+  /* the search API never returns more than this many results */
+  private static final int SEARCH_LIMIT = 1000;
+
+  private final GitHub github;
+  private final GDETCheckpointStore store;
+
+  /**Constructor
+  * @params:
+  *   github - the client used for search queries
+  *   store - where checkpoints are loaded from and saved to
+  */
+  public GDETIncrementalExtractor( GitHub github, GDETCheckpointStore store ) {
+    this.github = github;
+    this.store = store;
+  }
+
+  /**extract
+  * Fetches everything that changed in <repo> since its checkpoint, merges the
+  * per-user counts and saves the new checkpoint.
+  *
+  * @params:
+  *   repo - the repository to extract
+  *
+  * @return:
+  *   Delta - the new commits, the updated issues and pull requests, and the
+  *     checkpoint holding the merged counts.
+  */
+  public Delta extract( GHRepository repo ) throws IOException {
+    GDETCheckpointStore.Checkpoint checkpoint = store.load(repo.getFullName());
+    Delta delta = new Delta(checkpoint);
+    fetchCommits(repo, checkpoint, delta);
+    fetchIssues(repo, checkpoint, delta);
+    fetchPullRequests(repo, checkpoint, delta);
+    store.save(checkpoint);
+    return delta;
+  }
+
+  private void fetchCommits( GHRepository repo, GDETCheckpointStore.Checkpoint checkpoint,
+      Delta delta ) throws IOException {
+    String defaultBranch = repo.getDefaultBranch();
+    String previousHead = checkpoint.branchHeads.get(defaultBranch);
+    Map<String, GHBranch> branches = repo.getBranches();
+    checkpoint.branchHeads.clear();
+    for ( GHBranch branch : branches.values() ) {
+      checkpoint.branchHeads.put(branch.getName(), branch.getSHA1());
+    }
+    GHBranch head = branches.get(defaultBranch);
+    if ( head == null || head.getSHA1().equals(previousHead) ) {
+      return;
+    }
+    List<GHCommit> added = previousHead == null ? null : compare(repo, previousHead, head.getSHA1());
+    if ( added != null ) {
+      delta.commits.addAll(added);
+    }
+    else {
+      /* first run, rewritten history or a delta too long to compare: recount everything */
+      checkpoint.commitCounts = new GDETUserCounter();
+      for ( GHCommit commit : repo.queryCommits().from(head.getSHA1()).list() ) {
+        delta.commits.add(commit);
+      }
+    }
+    for ( GHCommit commit : delta.commits ) {
+      checkpoint.commitCounts.increment(commit.getAuthor());
+    }
+  }
+
+  /**compare
+  * Lists the commits reachable from <head> but not from <base> through the
+  * compare API.  Unlike the commit listing, which is in date order, this
+  * includes commits of branches merged since <base> that are dated before it.
+  *
+  * @return:
+  *   List<GHCommit> - the commits, newest first, or null if <base> is gone or
+  *     no longer an ancestor of <head>, or if the comparison was truncated.
+  */
+  private static List<GHCommit> compare( GHRepository repo, String base, String head )
+      throws IOException {
+    GHCompare compare;
+    try {
+      compare = repo.getCompare(base, head);
+    }
+    catch ( GHFileNotFoundException e ) {
+      return null;
+    }
+    GHCompare.Commit[] commits = compare.getCommits();
+    if ( compare.getStatus() != GHCompare.Status.ahead
+        || commits == null || commits.length < compare.getTotalCommits() ) {
+      return null;
+    }
+    List<GHCommit> added = new ArrayList<GHCommit>(commits.length);
+    for ( int i = commits.length - 1; i >= 0; i-- ) {
+      added.add(commits[i]);
+    }
+    return added;
+  }
+
+  private void fetchIssues( GHRepository repo, GDETCheckpointStore.Checkpoint checkpoint,
+      Delta delta ) throws IOException {
+    long since = checkpoint.issuesUpdatedAt;
+    Iterable<GHIssue> issues = repo.listIssues(GHIssueState.ALL);
+    if ( since > 0 ) {
+      PagedSearchIterable<GHIssue> search = github.searchIssues()
+        .q("repo:" + repo.getFullName())
+        .q("updated:>=" + isoSeconds(since))
+        .sort(GHIssueSearchBuilder.Sort.UPDATED)
+        .order(GHDirection.DESC)
+        .list();
+      if ( search.getTotalCount() < SEARCH_LIMIT ) {
+        issues = search;
+      }
+    }
+    long newest = since;
+    for ( GHIssue issue : issues ) {
+      long updated = issue.getUpdatedAt().getTime();
+      if ( updated < since ) {
+        continue;
+      }
+      delta.issues.add(issue);
+      newest = Math.max(newest, updated);
+      if ( issue.getCreatedAt().getTime() > since ) {
+        checkpoint.issueCounts.increment(issue.getUser());
+      }
+    }
+    checkpoint.issuesUpdatedAt = newest;
+  }
+
+  private void fetchPullRequests( GHRepository repo, GDETCheckpointStore.Checkpoint checkpoint,
+      Delta delta ) throws IOException {
+    long since = checkpoint.pullRequestsUpdatedAt;
+    long newest = since;
+    Iterator<GHPullRequest> prs = repo.queryPullRequests()
+      .state(GHIssueState.ALL)
+      .sort(GHPullRequestQueryBuilder.Sort.UPDATED)
+      .direction(GHDirection.DESC)
+      .list().iterator();
+    while ( prs.hasNext() ) {
+      GHPullRequest pr = prs.next();
+      long updated = pr.getUpdatedAt().getTime();
+      if ( updated < since ) {
+        break;
+      }
+      delta.pullRequests.add(pr);
+      newest = Math.max(newest, updated);
+      if ( pr.getCreatedAt().getTime() > since ) {
+        checkpoint.pullRequestOpenedCounts.increment(pr.getUser());
+      }
+      Date merged = pr.getMergedAt();
+      if ( merged != null && merged.getTime() > since ) {
+        checkpoint.pullRequestMergedCounts.increment(pr.getMergedBy());
+      }
+    }
+    checkpoint.pullRequestsUpdatedAt = newest;
+  }
+
+  private static String isoSeconds( long epochMillis ) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    return format.format(new Date(epochMillis));
+  }
+
+  /**Delta
+  * The result of one incremental extraction.
+  */
+  public static class Delta {
+    private final GDETCheckpointStore.Checkpoint checkpoint;
+    private final List<GHCommit> commits = new ArrayList<GHCommit>();
+    private final List<GHIssue> issues = new ArrayList<GHIssue>();
+    private final List<GHPullRequest> pullRequests = new ArrayList<GHPullRequest>();
+
+    Delta( GDETCheckpointStore.Checkpoint checkpoint ) {
+      this.checkpoint = checkpoint;
+    }
+
+    /**getCommits
+    * @return the default branch commits added since the last checkpoint.
+    */
+    public List<GHCommit> getCommits() {
+      return commits;
+    }
+
+    /**getIssues
+    * @return the issues created or updated since the last checkpoint.
+    */
+    public List<GHIssue> getIssues() {
+      return issues;
+    }
+
+    /**getPullRequests
+    * @return the pull requests created or updated since the last checkpoint.
+    */
+    public List<GHPullRequest> getPullRequests() {
+      return pullRequests;
+    }
+
+    /**getCheckpoint
+    * @return the new checkpoint, including the merged per-login counts.
+    */
+    public GDETCheckpointStore.Checkpoint getCheckpoint() {
+      return checkpoint;
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import java.io.IOException;
+import java.util.Date;
+
+/**GDETIssueDetails
+* The fields of an issue that the report renders, exports and counts, read
+* out of a GHIssue as its listing page is parsed.  The user's login is an id
+* in GDETDictionary.SHARED and dates are kept in epoch milliseconds; the
+* user's GHUser is registered with GithubDataExtractionTool's user profile
+* cache so that their name can be fetched by login.
+*/
+public final class GDETIssueDetails {
+
+  /* the stored form of a missing date */
+  static final long NO_DATE = Long.MIN_VALUE;
+
+  private final int number;
+  private final String title;
+  private final boolean closed;
+  private final int userLogin;
+  private final long createdAt;
+  private final long closedAt;
+
+  GDETIssueDetails(int number, String title, boolean closed, String userLogin,
+      Date createdAt, Date closedAt) {
+    this.number = number;
+    this.title = title;
+    this.closed = closed;
+    this.userLogin = GDETDictionary.SHARED.id(userLogin);
+    this.createdAt = toMillis(createdAt);
+    this.closedAt = toMillis(closedAt);
+  }
+
+  /**of
+  * Reads the details of <issue> from its listing.
+  */
+  public static GDETIssueDetails of(GHIssue issue) throws IOException {
+    GHUser user = issue.getUser();
+    GithubDataExtractionTool.getUserProfileCache().register(user);
+    return new GDETIssueDetails(issue.getNumber(), issue.getTitle(),
+      issue.getState() == GHIssueState.CLOSED, user == null ? null : user.getLogin(),
+      issue.getCreatedAt(), issue.getClosedAt());
+  }
+
+  /**countPerUser
+  * Counts <issues> per login of the user who opened them.  Issues without a
+  * user are counted under GDETUserCounter.UNKNOWN_LOGIN.
+  */
+  public static GDETUserCounter countPerUser(Iterable<GDETIssueDetails> issues) {
+    GDETUserCounter counter = new GDETUserCounter();
+    for (GDETIssueDetails issue : issues) {
+      String login = issue.getUserLogin();
+      counter.increment(login == null ? GDETUserCounter.UNKNOWN_LOGIN : login);
+    }
+    return counter;
+  }
+
+  static long toMillis(Date date) {
+    return date == null ? NO_DATE : date.getTime();
+  }
+
+  static Date toDate(long millis) {
+    return millis == NO_DATE ? null : new Date(millis);
+  }
+
+  public int getNumber() {
+    return number;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  /**getState
+  * @return OPEN or CLOSED.
+  */
+  public GHIssueState getState() {
+    return closed ? GHIssueState.CLOSED : GHIssueState.OPEN;
+  }
+
+  public String getUserLogin() {
+    return GDETDictionary.SHARED.get(userLogin);
+  }
+
+  public Date getCreatedAt() {
+    return toDate(createdAt);
+  }
+
+  public Date getClosedAt() {
+    return toDate(closedAt);
+  }
+}
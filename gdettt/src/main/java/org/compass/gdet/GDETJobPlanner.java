@@ -0,0 +1,196 @@
+package org.compass.gdet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**GDETJobPlanner
+* Runs named jobs on a shared executor as soon as the jobs they depend on
+* have finished, so that independent fetches overlap and a plan takes about
+* as long as its slowest chain of dependent jobs rather than the sum of all
+* of them.  No thread waits on a dependency, so a small bounded pool cannot
+* deadlock however the jobs depend on each other.
+*
+* A job that fails fails every job that depends on it, which then never run;
+* independent jobs still run.  Jobs must be added before run(), and
+* dependencies must name jobs already added, so a plan cannot have cycles.
+*/
+public class GDETJobPlanner {
+
+  /**Job
+  * One unit of work in a plan.
+  */
+  public interface Job {
+    /**run
+    * @return the number of records the job fetched or produced.
+    */
+    int run() throws Exception;
+  }
+
+  private final Executor executor;
+  private final GDETMetrics metrics;
+  private final Map<String, Planned> jobs = new LinkedHashMap<String, Planned>();
+  private boolean started;
+
+  public GDETJobPlanner(Executor executor) {
+    this(executor, null);
+  }
+
+  /**Constructor
+  * @params:
+  *   executor - where the jobs run
+  *   metrics - where each job's records and time are recorded, as a
+  *     section named "fetch <job>", or null
+  */
+  public GDETJobPlanner(Executor executor, GDETMetrics metrics) {
+    this.executor = executor;
+    this.metrics = metrics;
+  }
+
+  /**add
+  * Adds a job named <name> that runs once every job in <dependsOn> has
+  * finished.
+  *
+  * @return this planner.
+  */
+  public synchronized GDETJobPlanner add(String name, Job job, String... dependsOn) {
+    if (started) {
+      throw new IllegalStateException("Cannot add " + name + " to a running plan");
+    }
+    if (jobs.containsKey(name)) {
+      throw new IllegalArgumentException("Job " + name + " is already planned");
+    }
+    List<Planned> dependencies = new ArrayList<Planned>(dependsOn.length);
+    for (String dependency : dependsOn) {
+      Planned planned = jobs.get(dependency);
+      if (planned == null) {
+        throw new IllegalArgumentException(name + " depends on unknown job " + dependency);
+      }
+      dependencies.add(planned);
+    }
+    jobs.put(name, new Planned(name, job, dependencies));
+    return this;
+  }
+
+  /**run
+  * Starts every job whose dependencies are met, and the others as their
+  * dependencies finish.  Returns without waiting for them.
+  *
+  * @return this planner.
+  */
+  public synchronized GDETJobPlanner run() {
+    if (!started) {
+      started = true;
+      for (Planned planned : jobs.values()) {
+        planned.start();
+      }
+    }
+    return this;
+  }
+
+  /**await
+  * Runs the plan if it has not been started and waits for every job.
+  *
+  * @throws IOException with the first failure, in the order the jobs were
+  *   added, as its cause.
+  */
+  public void await() throws IOException {
+    run();
+    IOException failure = null;
+    for (Planned planned : jobs.values()) {
+      try {
+        planned.done.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted waiting for " + planned.name, e);
+      }
+      catch (ExecutionException e) {
+        if (failure == null) {
+          failure = new IOException("Job " + planned.name + " failed", cause(e));
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**getElapsedNanos
+  * @return how long each job that has finished took to run, by name, in the
+  *   order the jobs were added.
+  */
+  public Map<String, Long> getElapsedNanos() {
+    Map<String, Long> elapsed = new LinkedHashMap<String, Long>();
+    for (Planned planned : jobs.values()) {
+      if (planned.elapsed >= 0) {
+        elapsed.put(planned.name, planned.elapsed);
+      }
+    }
+    return Collections.unmodifiableMap(elapsed);
+  }
+
+  private static Throwable cause(Throwable e) {
+    while ((e instanceof CompletionException || e instanceof ExecutionException)
+        && e.getCause() != null) {
+      e = e.getCause();
+    }
+    return e;
+  }
+
+  private class Planned {
+    final String name;
+    final Job job;
+    final List<Planned> dependencies;
+    final CompletableFuture<Void> done = new CompletableFuture<Void>();
+    volatile long elapsed = -1;
+
+    Planned(String name, Job job, List<Planned> dependencies) {
+      this.name = name;
+      this.job = job;
+      this.dependencies = dependencies;
+    }
+
+    void start() {
+      CompletableFuture<?>[] waits = new CompletableFuture<?>[dependencies.size()];
+      for (int i = 0; i < waits.length; i++) {
+        waits[i] = dependencies.get(i).done;
+      }
+      CompletableFuture.allOf(waits).whenComplete((ignored, failed) -> {
+        if (failed != null) {
+          done.completeExceptionally(cause(failed));
+          return;
+        }
+        try {
+          executor.execute(this::execute);
+        }
+        catch (RuntimeException e) {
+          done.completeExceptionally(e);
+        }
+      });
+    }
+
+    private void execute() {
+      long start = System.nanoTime();
+      try {
+        int records = job.run();
+        elapsed = System.nanoTime() - start;
+        if (metrics != null) {
+          metrics.recordSection("fetch " + name, records, elapsed);
+        }
+        done.complete(null);
+      }
+      catch (Throwable e) {
+        elapsed = System.nanoTime() - start;
+        done.completeExceptionally(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package org.compass.gdet;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+
+/**GDETJsonExporter
+* Exports records as newline delimited JSON: one object per line, written with
+* Gson's streaming JsonWriter straight into the output handler.  Each object
+* starts with a "type" member naming the record type, followed by the record's
+* fields; missing values are written as null so every record of a type has
+* the same members.
+*/
+public class GDETJsonExporter extends GDETRecordExporter {
+
+  private final JsonWriter json;
+  private String[] fields;
+  private int next;
+
+  public GDETJsonExporter(GDETOutputHandler out) {
+    super(out);
+    json = new JsonWriter(out);
+    /* lenient so that the writer accepts one top level object per line */
+    json.setLenient(true);
+    json.setSerializeNulls(true);
+  }
+
+  protected void beginRecord(String type, String[] fields) throws IOException {
+    this.fields = fields;
+    this.next = 0;
+    json.beginObject();
+    json.name("type").value(type);
+  }
+
+  protected void string(String value) throws IOException {
+    json.name(fields[next++]).value(value);
+  }
+
+  protected void number(long value) throws IOException {
+    json.name(fields[next++]).value(value);
+  }
+
+  protected void endRecord() throws IOException {
+    json.endObject();
+    out.write('\n');
+  }
+}
@@ -0,0 +1,54 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.HttpConnector;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+
+/**GDETMeteredConnector
+* An HttpConnector that times every request made through <delegate> and
+* records it in a GDETMetrics.  Put it outermost, around the response cache
+* and the scheduler, so that the latencies it records are the ones the tool
+* actually waits for.
+*/
+public class GDETMeteredConnector implements HttpConnector {
+
+  private final HttpConnector delegate;
+  private final GDETMetrics metrics;
+
+  public GDETMeteredConnector( HttpConnector delegate, GDETMetrics metrics ) {
+    this.delegate = delegate;
+    this.metrics = metrics;
+  }
+
+  public GDETMetrics getMetrics() {
+    return metrics;
+  }
+
+  public HttpURLConnection connect( URL url ) throws IOException {
+    return new MeteredConnection(url);
+  }
+
+  private class MeteredConnection extends GDETHttpConnection {
+
+    MeteredConnection( URL url ) {
+      super(url);
+    }
+
+    protected void execute() throws IOException {
+      long start = System.nanoTime();
+      Response response;
+      try {
+        response = forward(delegate.connect(url), Collections.<String, String>emptyMap());
+      } catch ( IOException e ) {
+        metrics.recordFailure(getRequestMethod(), url, System.nanoTime() - start);
+        throw e;
+      }
+      metrics.recordRequest(getRequestMethod(), url, response.code, response.headers,
+        response.body, System.nanoTime() - start);
+      setResponse(response.code, response.message, response.headers, response.body);
+    }
+  }
+}
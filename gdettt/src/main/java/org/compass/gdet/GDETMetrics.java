@@ -0,0 +1,551 @@
+package org.compass.gdet;
+
+import com.google.gson.stream.JsonWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**GDETMetrics
+* Counters for where an extraction spends its time: requests, errors, bytes
+* and listing pages per endpoint with a latency histogram for each, the
+* latest rate limit seen per resource, records written and time spent per
+* report section, and, when watched, the response cache's hit ratio and the
+* output handler's flushes.
+*
+* Requests are recorded by a GDETMeteredConnector, sections by GDETReport
+* and GDETRecordExporter.  Every counter is safe to update from many threads
+* without locking.  The metrics can be read over JMX once registered, and
+* written as one JSON object per line, at the end of a run or periodically.
+*/
+public class GDETMetrics implements GDETMetricsMXBean {
+
+  private static final Pattern NUMBER = Pattern.compile("[0-9]+");
+  private static final Pattern SHA = Pattern.compile("[0-9a-f]{40}");
+
+  private final String name;
+  private final long startMillis = System.currentTimeMillis();
+  private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+  private final Map<String, RateLimit> rateLimits = new ConcurrentHashMap<String, RateLimit>();
+  private final Map<String, Section> sections = new ConcurrentHashMap<String, Section>();
+
+  private volatile GDETResponseCache cache;
+  private volatile GDETOutputHandler output;
+  private ScheduledExecutorService reporter;
+  private ObjectName objectName;
+
+  /**Constructor
+  * @params:
+  *   name - tells these metrics apart from others registered over JMX
+  */
+  public GDETMetrics(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**watch
+  * Includes the hits and misses of <cache> in the metrics.
+  */
+  public GDETMetrics watch(GDETResponseCache cache) {
+    this.cache = cache;
+    return this;
+  }
+
+  /**watch
+  * Includes the bytes written and time spent flushing by <output>.
+  */
+  public GDETMetrics watch(GDETOutputHandler output) {
+    this.output = output;
+    return this;
+  }
+
+  /**recordRequest
+  * Records a response to <method> <url>.
+  *
+  * @params:
+  *   code - the HTTP status code
+  *   headers - the response headers, to read the rate limit from
+  *   body - the response body, gzipped or not; JSON arrays are counted as
+  *     listing pages
+  *   nanos - how long the request took until its body was read
+  */
+  public void recordRequest(String method, URL url, int code,
+      Map<String, List<String>> headers, byte[] body, long nanos) {
+    Endpoint endpoint = endpoint(method, url);
+    endpoint.requests.increment();
+    endpoint.status(code).increment();
+    if (code >= 400) {
+      endpoint.errors.increment();
+    }
+    endpoint.bytes.add(body.length);
+    if (code < 300 && isArray(headers, body)) {
+      endpoint.pages.increment();
+    }
+    endpoint.latency.record(nanos);
+    recordRateLimit(url, headers);
+  }
+
+  /**recordFailure
+  * Records a request to <method> <url> that got no response at all.
+  */
+  public void recordFailure(String method, URL url, long nanos) {
+    Endpoint endpoint = endpoint(method, url);
+    endpoint.requests.increment();
+    endpoint.errors.increment();
+    endpoint.latency.record(nanos);
+  }
+
+  /**recordSection
+  * Records that writing the section <section> took <nanos> and wrote
+  * <records> records.  A section recorded several times adds up.
+  */
+  public void recordSection(String section, long records, long nanos) {
+    Section counters = sections.computeIfAbsent(section, s -> new Section());
+    counters.records.add(records);
+    counters.nanos.add(nanos);
+  }
+
+  private Endpoint endpoint(String method, URL url) {
+    return endpoints.computeIfAbsent(endpointOf(method, url), e -> new Endpoint());
+  }
+
+  /**endpointOf
+  * @return <method> and the path of <url> with its owner, repository, user,
+  *   number and SHA segments replaced by placeholders, so that requests for
+  *   different records of the same kind are counted together.
+  */
+  static String endpointOf(String method, URL url) {
+    String[] parts = url.getPath().split("/");
+    StringBuilder template = new StringBuilder(method).append(' ');
+    int repos = -1;
+    String previous = "";
+    for (int i = 1; i < parts.length; i++) {
+      String part = parts[i];
+      if (repos >= 0 && i == repos + 1) {
+        part = "{owner}";
+      }
+      else if (repos >= 0 && i == repos + 2) {
+        part = "{repo}";
+      }
+      else if (previous.equals("users") || previous.equals("orgs")) {
+        part = previous.equals("users") ? "{login}" : "{org}";
+      }
+      else if (previous.equals("branches")) {
+        part = "{branch}";
+      }
+      else if (NUMBER.matcher(part).matches()) {
+        part = "{number}";
+      }
+      else if (SHA.matcher(part).matches()) {
+        part = "{sha}";
+      }
+      else if (part.equals("repos") && repos < 0) {
+        repos = i;
+      }
+      template.append('/').append(part);
+      previous = parts[i];
+    }
+    if (parts.length <= 1) {
+      template.append('/');
+    }
+    return template.toString();
+  }
+
+  /* gzipped bodies are decompressed only as far as their first character */
+  private static boolean isArray(Map<String, List<String>> headers, byte[] body) {
+    if (!"gzip".equalsIgnoreCase(header(headers, "Content-Encoding"))) {
+      return isArray(new ByteArrayInputStream(body));
+    }
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body), 512)) {
+      return isArray(in);
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static boolean isArray(InputStream body) {
+    try {
+      for (int b = body.read(); b != -1; b = body.read()) {
+        if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+          return b == '[';
+        }
+      }
+    }
+    catch (IOException e) {}
+    return false;
+  }
+
+  private void recordRateLimit(URL url, Map<String, List<String>> headers) {
+    String remaining = header(headers, "X-RateLimit-Remaining");
+    if (remaining == null) {
+      return;
+    }
+    String resource = header(headers, "X-RateLimit-Resource");
+    try {
+      rateLimits.put(resource != null ? resource : GDETRateLimitScheduler.resourceOf(url),
+        new RateLimit(parse(header(headers, "X-RateLimit-Limit")), Long.parseLong(remaining),
+          parse(header(headers, "X-RateLimit-Reset"))));
+    }
+    catch (NumberFormatException e) {}
+  }
+
+  private static String header(Map<String, List<String>> headers, String name) {
+    List<String> values = headers.get(name);
+    return values == null || values.isEmpty() ? null : values.get(0);
+  }
+
+  private static long parse(String value) {
+    return value == null ? -1 : Long.parseLong(value);
+  }
+
+  public long getRequestCount() {
+    long total = 0;
+    for (Endpoint endpoint : endpoints.values()) {
+      total += endpoint.requests.sum();
+    }
+    return total;
+  }
+
+  public long getErrorCount() {
+    long total = 0;
+    for (Endpoint endpoint : endpoints.values()) {
+      total += endpoint.errors.sum();
+    }
+    return total;
+  }
+
+  public long getBytesReceived() {
+    long total = 0;
+    for (Endpoint endpoint : endpoints.values()) {
+      total += endpoint.bytes.sum();
+    }
+    return total;
+  }
+
+  public long getPagesFetched() {
+    long total = 0;
+    for (Endpoint endpoint : endpoints.values()) {
+      total += endpoint.pages.sum();
+    }
+    return total;
+  }
+
+  public double getCacheHitRatio() {
+    GDETResponseCache watched = cache;
+    if (watched == null) {
+      return -1;
+    }
+    long hits = watched.getHitCount();
+    long total = hits + watched.getMissCount();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  public Map<String, Long> getRequestsPerEndpoint() {
+    Map<String, Long> requests = new TreeMap<String, Long>();
+    for (Map.Entry<String, Endpoint> endpoint : endpoints.entrySet()) {
+      requests.put(endpoint.getKey(), endpoint.getValue().requests.sum());
+    }
+    return requests;
+  }
+
+  public Map<String, Double> getMeanLatencyMillisPerEndpoint() {
+    Map<String, Double> latencies = new TreeMap<String, Double>();
+    for (Map.Entry<String, Endpoint> endpoint : endpoints.entrySet()) {
+      latencies.put(endpoint.getKey(), endpoint.getValue().latency.meanMillis());
+    }
+    return latencies;
+  }
+
+  public Map<String, Double> getP99LatencyMillisPerEndpoint() {
+    Map<String, Double> latencies = new TreeMap<String, Double>();
+    for (Map.Entry<String, Endpoint> endpoint : endpoints.entrySet()) {
+      latencies.put(endpoint.getKey(), endpoint.getValue().latency.percentileMillis(0.99));
+    }
+    return latencies;
+  }
+
+  public Map<String, Long> getRateLimitRemaining() {
+    Map<String, Long> remaining = new TreeMap<String, Long>();
+    for (Map.Entry<String, RateLimit> limit : rateLimits.entrySet()) {
+      remaining.put(limit.getKey(), limit.getValue().remaining);
+    }
+    return remaining;
+  }
+
+  public Map<String, Long> getRecordsPerSection() {
+    Map<String, Long> records = new TreeMap<String, Long>();
+    for (Map.Entry<String, Section> section : sections.entrySet()) {
+      records.put(section.getKey(), section.getValue().records.sum());
+    }
+    return records;
+  }
+
+  public String getReport() {
+    StringWriter report = new StringWriter();
+    try {
+      writeReport(report);
+    }
+    catch (IOException e) {
+      return "";
+    }
+    return report.toString();
+  }
+
+  /**writeReport
+  * Writes every metric to <out> as one line of JSON, without a newline.
+  */
+  public void writeReport(Writer out) throws IOException {
+    JsonWriter json = new JsonWriter(out);
+    long now = System.currentTimeMillis();
+    json.beginObject();
+    json.name("name").value(name);
+    json.name("timestamp").value(Instant.ofEpochMilli(now).toString());
+    json.name("elapsedMillis").value(now - startMillis);
+    json.name("requests").value(getRequestCount());
+    json.name("errors").value(getErrorCount());
+    json.name("bytesReceived").value(getBytesReceived());
+    json.name("pagesFetched").value(getPagesFetched());
+
+    json.name("endpoints").beginObject();
+    for (Map.Entry<String, Endpoint> entry : new TreeMap<String, Endpoint>(endpoints).entrySet()) {
+      Endpoint endpoint = entry.getValue();
+      json.name(entry.getKey()).beginObject();
+      json.name("requests").value(endpoint.requests.sum());
+      json.name("errors").value(endpoint.errors.sum());
+      json.name("bytesReceived").value(endpoint.bytes.sum());
+      json.name("pages").value(endpoint.pages.sum());
+      json.name("status").beginObject();
+      for (Map.Entry<Integer, LongAdder> status
+          : new TreeMap<Integer, LongAdder>(endpoint.statuses).entrySet()) {
+        json.name(status.getKey().toString()).value(status.getValue().sum());
+      }
+      json.endObject();
+      endpoint.latency.write(json.name("latencyMillis"));
+      json.endObject();
+    }
+    json.endObject();
+
+    json.name("rateLimits").beginObject();
+    for (Map.Entry<String, RateLimit> entry : new TreeMap<String, RateLimit>(rateLimits).entrySet()) {
+      json.name(entry.getKey()).beginObject();
+      json.name("limit").value(entry.getValue().limit);
+      json.name("remaining").value(entry.getValue().remaining);
+      json.name("reset").value(entry.getValue().reset);
+      json.endObject();
+    }
+    json.endObject();
+
+    json.name("sections").beginObject();
+    for (Map.Entry<String, Section> entry : new TreeMap<String, Section>(sections).entrySet()) {
+      json.name(entry.getKey()).beginObject();
+      json.name("records").value(entry.getValue().records.sum());
+      json.name("millis").value(entry.getValue().nanos.sum() / 1e6);
+      json.endObject();
+    }
+    json.endObject();
+
+    GDETResponseCache watchedCache = cache;
+    if (watchedCache != null) {
+      json.name("cache").beginObject();
+      json.name("hits").value(watchedCache.getHitCount());
+      json.name("misses").value(watchedCache.getMissCount());
+      json.name("hitRatio").value(getCacheHitRatio());
+      json.endObject();
+    }
+    GDETOutputHandler watchedOutput = output;
+    if (watchedOutput != null) {
+      json.name("output").beginObject();
+      json.name("bytes").value(watchedOutput.getBytesWritten());
+      json.name("flushes").value(watchedOutput.getFlushCount());
+      json.name("flushMillis").value(watchedOutput.getFlushNanos() / 1e6);
+      json.endObject();
+    }
+    json.endObject();
+    json.flush();
+  }
+
+  /**appendReport
+  * Appends the report to <file> as one line, creating the file if needed.
+  */
+  public void appendReport(Path file) throws IOException {
+    String line = getReport() + "\n";
+    Files.write(file, line.getBytes(StandardCharsets.UTF_8),
+      StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+  }
+
+  /**startReporting
+  * Appends the report to <file> every <intervalMillis> on a background
+  * thread, until stopReporting() is called.
+  */
+  public synchronized void startReporting(final Path file, long intervalMillis) {
+    stopReporting();
+    reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "gdet-metrics-" + name);
+      thread.setDaemon(true);
+      return thread;
+    });
+    reporter.scheduleAtFixedRate(() -> {
+      try {
+        appendReport(file);
+      }
+      catch (IOException e) {
+        System.err.println("Could not write metrics: " + e);
+      }
+    }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public synchronized void stopReporting() {
+    if (reporter != null) {
+      reporter.shutdownNow();
+      reporter = null;
+    }
+  }
+
+  /**register
+  * Registers these metrics with the platform MBean server.
+  *
+  * @return:
+  *   ObjectName - org.compass.gdet:type=Metrics,name=<name>.
+  */
+  public synchronized ObjectName register() throws JMException {
+    if (objectName == null) {
+      ObjectName candidate =
+        new ObjectName("org.compass.gdet:type=Metrics,name=" + ObjectName.quote(name));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+      objectName = candidate;
+    }
+    return objectName;
+  }
+
+  public synchronized void unregister() throws JMException {
+    if (objectName != null) {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      server.unregisterMBean(objectName);
+      objectName = null;
+    }
+  }
+
+  private static final class Endpoint {
+    final LongAdder requests = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder bytes = new LongAdder();
+    final LongAdder pages = new LongAdder();
+    final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<Integer, LongAdder>();
+    final Histogram latency = new Histogram();
+
+    LongAdder status(int code) {
+      return statuses.computeIfAbsent(code, c -> new LongAdder());
+    }
+  }
+
+  private static final class Section {
+    final LongAdder records = new LongAdder();
+    final LongAdder nanos = new LongAdder();
+  }
+
+  private static final class RateLimit {
+    final long limit;
+    final long remaining;
+    final long reset;
+
+    RateLimit(long limit, long remaining, long reset) {
+      this.limit = limit;
+      this.remaining = remaining;
+      this.reset = reset;
+    }
+  }
+
+  /**Histogram
+  * Latencies counted into fixed buckets from 1 ms to 30 s.  Percentiles are
+  * reported as the upper bound of the bucket they fall in.
+  */
+  static final class Histogram {
+    static final long[] BOUNDS_MILLIS =
+      {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000};
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MILLIS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+      int bucket = 0;
+      while (bucket < BOUNDS_MILLIS.length && nanos > BOUNDS_MILLIS[bucket] * 1000000) {
+        bucket++;
+      }
+      counts.incrementAndGet(bucket);
+      count.increment();
+      totalNanos.add(nanos);
+      maxNanos.accumulate(nanos);
+    }
+
+    double meanMillis() {
+      long n = count.sum();
+      return n == 0 ? 0 : totalNanos.sum() / 1e6 / n;
+    }
+
+    double maxMillis() {
+      return maxNanos.get() / 1e6;
+    }
+
+    double percentileMillis(double quantile) {
+      long n = count.sum();
+      if (n == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(quantile * n);
+      long seen = 0;
+      for (int bucket = 0; bucket < BOUNDS_MILLIS.length; bucket++) {
+        seen += counts.get(bucket);
+        if (seen >= rank) {
+          return Math.min(BOUNDS_MILLIS[bucket], maxMillis());
+        }
+      }
+      return maxMillis();
+    }
+
+    void write(JsonWriter json) throws IOException {
+      json.beginObject();
+      json.name("count").value(count.sum());
+      json.name("mean").value(meanMillis());
+      json.name("p50").value(percentileMillis(0.5));
+      json.name("p90").value(percentileMillis(0.9));
+      json.name("p99").value(percentileMillis(0.99));
+      json.name("max").value(maxMillis());
+      json.name("buckets").beginObject();
+      for (int bucket = 0; bucket <= BOUNDS_MILLIS.length; bucket++) {
+        json.name(bucket < BOUNDS_MILLIS.length ? "le" + BOUNDS_MILLIS[bucket] : "inf")
+          .value(counts.get(bucket));
+      }
+      json.endObject();
+      json.endObject();
+    }
+  }
+}
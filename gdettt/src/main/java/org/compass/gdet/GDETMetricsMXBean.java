@@ -0,0 +1,36 @@
+package org.compass.gdet;
+
+import java.util.Map;
+
+/**GDETMetricsMXBean
+* The attributes GDETMetrics exposes over JMX, under
+* org.compass.gdet:type=Metrics,name=<name>.  Endpoints are request
+* templates such as "GET /repos/{owner}/{repo}/commits".
+*/
+public interface GDETMetricsMXBean {
+
+  long getRequestCount();
+
+  long getErrorCount();
+
+  long getBytesReceived();
+
+  long getPagesFetched();
+
+  /** @return the share of requests answered from the response cache, or -1. */
+  double getCacheHitRatio();
+
+  Map<String, Long> getRequestsPerEndpoint();
+
+  Map<String, Double> getMeanLatencyMillisPerEndpoint();
+
+  Map<String, Double> getP99LatencyMillisPerEndpoint();
+
+  /** @return the requests left per rate limit resource (core, search, graphql). */
+  Map<String, Long> getRateLimitRemaining();
+
+  Map<String, Long> getRecordsPerSection();
+
+  /** @return the full report, as one line of JSON. */
+  String getReport();
+}
@@ -0,0 +1,332 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**GDETOrganizationExtractor
+* Extracts many repositories at once, such as every repository of an
+* organization.  Repositories are extracted concurrently on a work stealing
+* pool of a fixed size: each repository is one task, and it forks the
+* listings of its snapshot (commits, issues, pull requests, review comments,
+* branches) as subtasks, so when the queue of repositories runs dry the idle
+* threads steal the sections of whichever large repositories are still
+* running instead of waiting on them.
+*
+* A repository that fails is recorded and skipped without affecting the
+* others.  Each repository's report can be written to its own file, and the
+* per user counts of all repositories are merged into one set of totals.
+*/
+public class GDETOrganizationExtractor {
+
+  public static final int DEFAULT_PARALLELISM = 16;
+  /* threads each repository may use for its review comments and profiles */
+  private static final int SECTION_PARALLELISM = 4;
+
+  private final GitHub github;
+  private final int parallelism;
+  private GDETGraphQLPullRequests graphQL;
+  private Path outputDirectory;
+  private String format = "text";
+  private boolean archive;
+  private boolean compress;
+  private long maxBytes;
+  private long maxRecords;
+
+  /**Constructor
+  * @params:
+  *   github - the client to extract with
+  *   parallelism - how many threads extract repositories at once
+  */
+  public GDETOrganizationExtractor(GitHub github, int parallelism) {
+    this.github = github;
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  /**setGraphQL
+  * Fetches pull request details through <graphQL> instead of one REST
+  * request per pull request.
+  */
+  public GDETOrganizationExtractor setGraphQL(GDETGraphQLPullRequests graphQL) {
+    this.graphQL = graphQL;
+    return this;
+  }
+
+  /**setOutput
+  * Writes each repository's records to <directory>/<owner>/<name>.<ext>.
+  *
+  * @params:
+  *   directory - where the files go, or null to only merge the counts
+  *   format - "text" for the report, or an export format ("ndjson", "csv")
+  */
+  public GDETOrganizationExtractor setOutput(Path directory, String format) {
+    if (!"text".equals(format) && !GDETRecordExporter.isSupported(format)) {
+      throw new IllegalArgumentException("Unknown output format: " + format);
+    }
+    this.outputDirectory = directory;
+    this.format = format;
+    return this;
+  }
+
+  /**setArchive
+  * Writes each repository's records to a GDETRotatingSink series instead
+  * of a single file, <owner>/<name>-00000.<ext>.gz and on.
+  *
+  * @params:
+  *   compress - whether to gzip the files
+  *   maxBytes - the text per file, or 0 for no limit
+  *   maxRecords - the records per file, or 0 for no limit
+  */
+  public GDETOrganizationExtractor setArchive(boolean compress, long maxBytes, long maxRecords) {
+    this.archive = true;
+    this.compress = compress;
+    this.maxBytes = maxBytes;
+    this.maxRecords = maxRecords;
+    return this;
+  }
+
+  /**extractOrganization
+  * Extracts every repository of the organization <org>.  Repositories are
+  * queued as their listing pages arrive.
+  *
+  * @return:
+  *   Result - what happened to each repository and the merged counts.
+  */
+  public Result extractOrganization(String org) throws IOException {
+    GHOrganization organization = github.getOrganization(org);
+    Result result = new Result();
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+    try {
+      for (GHRepository repo : organization.listRepositories(100)) {
+        tasks.add(pool.submit(new RepositoryTask(repo.getFullName(), repo, result)));
+      }
+    }
+    catch (RuntimeException e) {
+      throw new IOException("Could not list the repositories of " + org, e);
+    }
+    finally {
+      awaitAll(tasks);
+      pool.shutdown();
+    }
+    return result;
+  }
+
+  /**extract
+  * Extracts every repository in <names>, each given as owner/name.
+  *
+  * @return:
+  *   Result - what happened to each repository and the merged counts.
+  */
+  public Result extract(List<String> names) {
+    Result result = new Result();
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+    try {
+      for (String name : names) {
+        tasks.add(pool.submit(new RepositoryTask(name, null, result)));
+      }
+    }
+    finally {
+      awaitAll(tasks);
+      pool.shutdown();
+    }
+    return result;
+  }
+
+  private static void awaitAll(List<ForkJoinTask<?>> tasks) {
+    for (ForkJoinTask<?> task : tasks) {
+      task.quietlyJoin();
+    }
+  }
+
+  private Path outputFile(String fullName) {
+    String extension = "text".equals(format) ? "txt" : format;
+    return outputDirectory.resolve(fullName + "." + extension);
+  }
+
+  private class RepositoryTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final Result result;
+    private GHRepository repo;
+
+    RepositoryTask(String name, GHRepository repo, Result result) {
+      this.name = name;
+      this.repo = repo;
+      this.result = result;
+    }
+
+    protected void compute() {
+      long start = System.nanoTime();
+      Path output = null;
+      try {
+        if (repo == null) {
+          repo = github.getRepository(name);
+        }
+        GDETRepositorySnapshot snapshot =
+          new GDETRepositorySnapshot(repo, SECTION_PARALLELISM, graphQL);
+        invokeAll(section(snapshot::getCommitDetails), section(snapshot::getIssueDetails),
+          section(snapshot::getPullRequestDetails), section(snapshot::getBranches),
+          section(snapshot::getReviewCommentDetails));
+        snapshot.prefetchUserProfiles(GithubDataExtractionTool.getUserProfileCache());
+        if (outputDirectory != null) {
+          output = write(snapshot);
+        }
+        result.merge(new RepositoryResult(name, output, null, elapsedMillis(start)),
+          snapshot.getCommitCountPerUser(), snapshot.getIssueCountPerUser(),
+          snapshot.getPullRequestCountPerUser(false), snapshot.getPullRequestCountPerUser(true));
+      }
+      catch (IOException | RuntimeException e) {
+        result.merge(new RepositoryResult(name, output, e, elapsedMillis(start)),
+          null, null, null, null);
+      }
+    }
+
+    private ForkJoinTask<?> section(Runnable fetch) {
+      return ForkJoinTask.adapt(fetch);
+    }
+
+    private Path write(GDETRepositorySnapshot snapshot) throws IOException {
+      Path file = outputFile(repo.getFullName());
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      GDETOutputHandler out = archive
+        ? GDETOutputHandler.toRotatingFiles(file, compress, maxBytes, maxRecords)
+        : GDETOutputHandler.toFile(file);
+      try (out) {
+        if ("text".equals(format)) {
+          GDETReport.write(out, snapshot);
+        }
+        else {
+          GDETRecordExporter.forFormat(format, out).exportSnapshot(snapshot);
+        }
+      }
+      if (archive) {
+        /* the series' first file, once it is complete */
+        return ((GDETRotatingSink) out.getSink()).getFiles().get(0);
+      }
+      return file;
+    }
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return (System.nanoTime() - startNanos) / 1000000;
+  }
+
+  /**RepositoryResult
+  * The outcome of extracting one repository.
+  */
+  public static class RepositoryResult {
+    private final String name;
+    private final Path output;
+    private final Exception error;
+    private final long elapsedMillis;
+
+    RepositoryResult(String name, Path output, Exception error, long elapsedMillis) {
+      this.name = name;
+      this.output = output;
+      this.error = error;
+      this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**getOutput
+    * @return the file the repository was written to, or null if none was.
+    */
+    public Path getOutput() {
+      return output;
+    }
+
+    public boolean isSuccessful() {
+      return error == null;
+    }
+
+    /**getError
+    * @return why the repository could not be extracted, or null.
+    */
+    public Exception getError() {
+      return error;
+    }
+
+    public long getElapsedMillis() {
+      return elapsedMillis;
+    }
+  }
+
+  /**Result
+  * The outcome of every repository, in the order they finished, and the per
+  * user counts merged over the successful ones.
+  */
+  public static class Result {
+    private final List<RepositoryResult> repositories = new ArrayList<RepositoryResult>();
+    private final GDETUserCounter commits = new GDETUserCounter();
+    private final GDETUserCounter issues = new GDETUserCounter();
+    private final GDETUserCounter pullRequestsOpened = new GDETUserCounter();
+    private final GDETUserCounter pullRequestsMerged = new GDETUserCounter();
+
+    synchronized void merge(RepositoryResult repository, GDETUserCounter commitCounts,
+        GDETUserCounter issueCounts, GDETUserCounter openedCounts, GDETUserCounter mergedCounts) {
+      repositories.add(repository);
+      if (repository.isSuccessful()) {
+        commits.addAll(commitCounts);
+        issues.addAll(issueCounts);
+        pullRequestsOpened.addAll(openedCounts);
+        pullRequestsMerged.addAll(mergedCounts);
+      }
+    }
+
+    public synchronized List<RepositoryResult> getRepositories() {
+      return Collections.unmodifiableList(new ArrayList<RepositoryResult>(repositories));
+    }
+
+    public synchronized List<RepositoryResult> getFailures() {
+      List<RepositoryResult> failures = new ArrayList<RepositoryResult>();
+      for (RepositoryResult repository : repositories) {
+        if (!repository.isSuccessful()) {
+          failures.add(repository);
+        }
+      }
+      return failures;
+    }
+
+    /**getCommitCountPerUser
+    * @return a copy of the merged counts of commits per user.
+    */
+    public synchronized GDETUserCounter getCommitCountPerUser() {
+      return copy(commits);
+    }
+
+    /**getIssueCountPerUser
+    * @return a copy of the merged counts of issues per user.
+    */
+    public synchronized GDETUserCounter getIssueCountPerUser() {
+      return copy(issues);
+    }
+
+    /**getPullRequestCountPerUser
+    * @return a copy of the merged counts of pull requests opened per user,
+    *   or merged per user if <mergedBy> is set.
+    */
+    public synchronized GDETUserCounter getPullRequestCountPerUser(boolean mergedBy) {
+      return copy(mergedBy ? pullRequestsMerged : pullRequestsOpened);
+    }
+
+    /* GDETUserCounter is not thread safe, so callers get their own */
+    private static GDETUserCounter copy(GDETUserCounter counter) {
+      GDETUserCounter copy = new GDETUserCounter(counter.size());
+      copy.addAll(counter);
+      return copy;
+    }
+  }
+}
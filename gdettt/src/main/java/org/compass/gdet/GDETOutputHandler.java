@@ -1,99 +1,157 @@
 package org.compass.gdet;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.io.Writer;
-
-import java.lang.reflect.Constructor;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
 
 import java.util.InputMismatchException;
 
+/**GDETOutputHandler
+* The Writer all extraction output goes through.  The text itself is handed to
+* a pluggable GDETOutputSink, which decides where it ends up and how it is
+* buffered; the handler keeps track of how much was written and how long
+* flushing took.  Write failures are reported to the caller as IOExceptions.
+*/
 public class GDETOutputHandler extends Writer {
 
-  private Writer w;
-
-  public GDETOutputHandler( Class<?> writerClass ) throws Exception {
-    try {
-      Constructor<?> writerConstructor;
-      if ( writerClass == OutputStreamWriter.class ) {
-        writerConstructor = writerClass.getConstructor( OutputStream.class );
-        w = (OutputStreamWriter) writerConstructor.newInstance( System.out );
-      } else {
-        throw new Exception();
-      }
-    } catch ( Exception e ) {
+  private final GDETOutputSink sink;
+
+  /**Constructor
+  * Creates a handler for one of the supported Writer classes.  Only
+  * OutputStreamWriter (standard output) is supported.
+  */
+  public GDETOutputHandler( Class<?> writerClass ) {
+    if ( writerClass != OutputStreamWriter.class ) {
       throw new InputMismatchException( "Unsupported or Invalid Writer Class: " +
-          writerClass.getTypeName() + "\nDetails:\n" + e.getStackTrace() );
+          (writerClass == null ? null : writerClass.getTypeName()) );
     }
+    sink = GDETChannelSink.toStandardOutput();
   }
 
-  public Writer append( char c ) {
-    try {
-      w = w.append(c);
-    } finally {
-      return this.w;
-    }
+  /**Constructor
+  * Creates a handler that writes to <sink>.
+  */
+  public GDETOutputHandler( GDETOutputSink sink ) {
+    this.sink = sink;
   }
 
-  public Writer append( CharSequence csq ) {
-    try {
-      w = w.append(csq);
-    } finally {
-      return this.w;
-    }
+  /**toStandardOutput
+  * @return a handler that writes to System.out in large batches.
+  */
+  public static GDETOutputHandler toStandardOutput() {
+    return new GDETOutputHandler( GDETChannelSink.toStandardOutput() );
   }
 
-  public Writer append( CharSequence csq, int start, int end ) {
-    try {
-      w = w.append(csq, start, end);
-    } finally {
-      return this.w;
-    }
+  /**toFile
+  * @return a handler that writes to <path> through a FileChannel.
+  */
+  public static GDETOutputHandler toFile( Path path ) throws IOException {
+    return new GDETOutputHandler( GDETChannelSink.toFile(path) );
+  }
+
+  /**toRotatingFiles
+  * @return a handler that writes to a GDETRotatingSink series starting at
+  *   <path>, gzipped if <compress>, starting a new file after <maxBytes> of
+  *   text or <maxRecords> records (0 for no limit).
+  */
+  public static GDETOutputHandler toRotatingFiles( Path path, boolean compress,
+      long maxBytes, long maxRecords ) throws IOException {
+    return new GDETOutputHandler( new GDETRotatingSink(path, compress, maxBytes, maxRecords) );
+  }
+
+  public GDETOutputSink getSink() {
+    return sink;
+  }
+
+  /**getBytesWritten
+  * @return the number of encoded bytes written through this handler.
+  */
+  public long getBytesWritten() {
+    return sink.getBytesWritten();
+  }
+
+  /**getFlushCount
+  * @return the number of times buffered output reached its destination.
+  */
+  public long getFlushCount() {
+    return sink.getFlushCount();
+  }
+
+  /**getFlushNanos
+  * @return the total time spent writing buffered output to its destination.
+  */
+  public long getFlushNanos() {
+    return sink.getFlushNanos();
+  }
+
+  /**getMaxFlushNanos
+  * @return the longest single write of buffered output to its destination.
+  */
+  public long getMaxFlushNanos() {
+    return sink.getMaxFlushNanos();
+  }
+
+  public GDETOutputHandler append( char c ) throws IOException {
+    write(c);
+    return this;
+  }
+
+  public GDETOutputHandler append( CharSequence csq ) throws IOException {
+    CharSequence s = csq == null ? "null" : csq;
+    sink.write(s, 0, s.length());
+    return this;
+  }
+
+  public GDETOutputHandler append( CharSequence csq, int start, int end ) throws IOException {
+    CharSequence s = csq == null ? "null" : csq;
+    sink.write(s, start, end);
+    return this;
+  }
+
+  /**endRecord
+  * Marks the end of a record, so that sinks which split their output into
+  * files never split a record.
+  */
+  public void endRecord() throws IOException {
+    sink.endRecord();
+  }
+
+  /**startsSection
+  * @return true if the next record starts a file or an indexed block of the
+  *   sink, as GDETOutputSink.startsSection() tells.
+  */
+  public boolean startsSection() {
+    return sink.startsSection();
   }
 
-  public void close() {
-    try {
-      w.close();
-    } catch ( Exception e ) {}
+  public void close() throws IOException {
+    sink.close();
   }
 
-  public void flush() {
-    try {
-      w.close();
-    } catch ( Exception e ) {}
+  public void flush() throws IOException {
+    sink.flush();
   }
 
-  public void write( char[] cbuf ) {
-    try {
-      w.write(cbuf);
-    } catch ( Exception e ) {}
+  public void write( char[] cbuf ) throws IOException {
+    write(cbuf, 0, cbuf.length);
   }
 
-  public void write( char[] cbuf, int off, int len ) {
-    try {
-      w.write(cbuf, off, len);
-    } catch ( Exception e ) {}
+  public void write( char[] cbuf, int off, int len ) throws IOException {
+    sink.write(CharBuffer.wrap(cbuf), off, off + len);
   }
 
-  public void write( int c ) {
-    try {
-      w.write(c);
-    } catch ( Exception e ) {}
+  public void write( int c ) throws IOException {
+    sink.write(String.valueOf((char) c), 0, 1);
   }
 
-  public void write( String str ) {
-    try {
-      w.write(str);
-    } catch ( Exception e ) {}
+  public void write( String str ) throws IOException {
+    sink.write(str, 0, str.length());
   }
 
-  public void write( String str, int off, int len ) {
-    try {
-      w.write(str, off, len);
-    } catch ( Exception e ) {}
+  public void write( String str, int off, int len ) throws IOException {
+    sink.write(str, off, off + len);
   }
 
 }
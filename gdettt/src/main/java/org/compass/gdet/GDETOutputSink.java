@@ -0,0 +1,54 @@
+package org.compass.gdet;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**GDETOutputSink
+* Somewhere GDETOutputHandler can send extracted text.  Sinks are free to
+* buffer; nothing is guaranteed to reach its destination until flush() or
+* close() returns.
+*/
+public interface GDETOutputSink extends Closeable, Flushable {
+
+  /**write
+  * Queues the characters of <csq> between <start> and <end> for output.
+  */
+  void write( CharSequence csq, int start, int end ) throws IOException;
+
+  /**endRecord
+  * Marks the end of a record.  Sinks that split or index their output only
+  * do so between records; others ignore it.
+  */
+  default void endRecord() throws IOException {}
+
+  /**startsSection
+  * @return true if the next record will be the first of a file or of an
+  *   indexed block, where a reader may start reading, so that writers can
+  *   repeat a header there.  Sinks that are only read from the start return
+  *   false.
+  */
+  default boolean startsSection() {
+    return false;
+  }
+
+  /**getBytesWritten
+  * @return the number of encoded bytes accepted so far, flushed or not.
+  */
+  long getBytesWritten();
+
+  /**getFlushCount
+  * @return the number of times buffered output was handed to the destination.
+  */
+  long getFlushCount();
+
+  /**getFlushNanos
+  * @return the total time spent handing buffered output to the destination.
+  */
+  long getFlushNanos();
+
+  /**getMaxFlushNanos
+  * @return the longest single hand-off of buffered output.
+  */
+  long getMaxFlushNanos();
+}
@@ -0,0 +1,401 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**GDETPipeline
+* Streams one paged listing to a Writer through four stages, each on its own
+* thread: fetch reads the listing a page at a time, project reads each
+* record's details, render renders a page of details as text and write
+* writes that text.  Stages hand each other whole pages through
+* java.util.concurrent.Flow publishers whose buffers hold at most
+* <bufferPages> pages (rounded up to a power of two), and a stage whose
+* downstream buffer is full waits for it to drain.  Fast fetches therefore
+* overlap slow writes, but however slow the Writer is, no more than a few
+* pages per stage are ever held in memory.
+*
+* Every stage counts the pages and records it handled, the time it spent
+* working on them and the time it spent waiting for the next stage.
+* Records the projection fails on are reported on stderr and left out, as
+* GithubDataExtractionTool.project() does, and so are records the renderer
+* declines.  A failed fetch or write stops the whole pipeline and is thrown
+* by run().  A GDETOutputHandler is told where each record ends, so records
+* streamed to rotating files are never split.
+*/
+public class GDETPipeline<T, R> {
+
+  public static final int DEFAULT_BUFFER_PAGES = 4;
+
+  /**Renderer
+  * Renders a record, such as GDETRecordRenderer::renderCommit.
+  */
+  public interface Renderer<R> {
+    /**render
+    * @return false if the record was left out.
+    */
+    boolean render(R record, Appendable out) throws IOException;
+  }
+
+  /**Stage
+  * The counters of one stage of a pipeline.
+  */
+  public static final class Stage {
+    private final String name;
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    Stage(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**getPages
+    * @return the number of pages this stage has finished.
+    */
+    public long getPages() {
+      return pages.get();
+    }
+
+    /**getRecords
+    * @return the number of records in the pages this stage has finished.
+    */
+    public long getRecords() {
+      return records.get();
+    }
+
+    /**getBusyNanos
+    * @return the time this stage spent working on its pages.
+    */
+    public long getBusyNanos() {
+      return busyNanos.get();
+    }
+
+    /**getWaitNanos
+    * @return the time this stage spent waiting for room in the next stage's
+    *   buffer.
+    */
+    public long getWaitNanos() {
+      return waitNanos.get();
+    }
+
+    /**getRecordsPerSecond
+    * @return the records this stage handled per second it was busy.
+    */
+    public double getRecordsPerSecond() {
+      long nanos = busyNanos.get();
+      return nanos == 0 ? 0 : records.get() * 1e9 / nanos;
+    }
+
+    void record(int count, long busy, long wait) {
+      pages.incrementAndGet();
+      records.addAndGet(count);
+      busyNanos.addAndGet(busy);
+      waitNanos.addAndGet(wait);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%-8s %6d pages %8d records %10.0f records/s %8.1f ms waiting",
+        name, getPages(), getRecords(), getRecordsPerSecond(), getWaitNanos() / 1e6);
+    }
+  }
+
+  private final PagedIterable<T> listing;
+  private final GithubDataExtractionTool.Projection<T, R> projection;
+  private final Renderer<R> renderer;
+  private final Writer out;
+  private final int bufferPages;
+  private final Stage fetch = new Stage("fetch");
+  private final Stage project = new Stage("project");
+  private final Stage render = new Stage("render");
+  private final Stage write = new Stage("write");
+  private final CompletableFuture<Long> done = new CompletableFuture<Long>();
+
+  /**Constructor
+  * @params:
+  *   listing - the records to stream
+  *   projection - reads a record's details, such as GDETCommitDetails::of
+  *   renderer - renders a record's details
+  *   out - where the rendered records are written
+  *   bufferPages - the number of pages each stage may queue for the next
+  */
+  public GDETPipeline(PagedIterable<T> listing, GithubDataExtractionTool.Projection<T, R> projection,
+      Renderer<R> renderer, Writer out, int bufferPages) {
+    this.listing = listing;
+    this.projection = projection;
+    this.renderer = renderer;
+    this.out = out;
+    this.bufferPages = bufferPages;
+  }
+
+  /**ofCommits
+  * @return a pipeline that writes the commits of <repo> as the report does.
+  */
+  public static GDETPipeline<GHCommit, GDETCommitDetails> ofCommits(GHRepository repo,
+      Writer out) {
+    return new GDETPipeline<GHCommit, GDETCommitDetails>(
+      repo.listCommits().withPageSize(GithubDataExtractionTool.MAX_PAGE_SIZE),
+      GDETCommitDetails::of, GDETRecordRenderer::renderCommit, out, DEFAULT_BUFFER_PAGES);
+  }
+
+  /**ofIssues
+  * @return a pipeline that writes the issues of <repo> as the report does.
+  */
+  public static GDETPipeline<GHIssue, GDETIssueDetails> ofIssues(GHRepository repo,
+      Writer out) {
+    return new GDETPipeline<GHIssue, GDETIssueDetails>(
+      repo.listIssues(GHIssueState.ALL).withPageSize(GithubDataExtractionTool.MAX_PAGE_SIZE),
+      GDETIssueDetails::of, GDETRecordRenderer::renderIssue, out, DEFAULT_BUFFER_PAGES);
+  }
+
+  /**getStages
+  * @return the counters of the fetch, project, render and write stages.
+  */
+  public List<Stage> getStages() {
+    return Collections.unmodifiableList(Arrays.asList(fetch, project, render, write));
+  }
+
+  /**recordStages
+  * Records each stage's records and busy time in <metrics>, as a section
+  * named "<name> <stage>".
+  */
+  public void recordStages(GDETMetrics metrics, String name) {
+    for (Stage stage : getStages()) {
+      metrics.recordSection(name + " " + stage.getName(), stage.getRecords(),
+        stage.getBusyNanos());
+    }
+  }
+
+  /**run
+  * Streams the listing to the Writer and waits for the last page to be
+  * written.  The fetch stage runs on the calling thread and the others on
+  * three threads of their own.  The Writer is not flushed.
+  *
+  * @return:
+  *   long - the number of records written.
+  */
+  public long run() throws IOException {
+    ExecutorService pool = Executors.newFixedThreadPool(3, runnable -> {
+      Thread thread = new Thread(runnable, "gdet-pipeline");
+      thread.setDaemon(true);
+      return thread;
+    });
+    try {
+      SubmissionPublisher<List<T>> pages =
+        new SubmissionPublisher<List<T>>(pool, bufferPages);
+      Processor<List<T>, List<R>> details =
+        new Processor<List<T>, List<R>>(project, pool, this::project);
+      Processor<List<R>, Rendered> text =
+        new Processor<List<R>, Rendered>(render, pool, this::render);
+      pages.subscribe(details);
+      details.subscribe(text);
+      text.subscribe(new Writing());
+      fetch(pages);
+      return done.get();
+    }
+    catch (InterruptedException e) {
+      done.cancel(false);
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted streaming records", e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Could not stream records", cause);
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /* the fetch stage, on the calling thread */
+  private void fetch(SubmissionPublisher<List<T>> pages) {
+    try {
+      PagedIterator<T> it = listing.iterator();
+      while (!done.isDone()) {
+        long start = System.nanoTime();
+        if (!it.hasNext()) {
+          break;
+        }
+        List<T> page = it.nextPage();
+        long fetched = System.nanoTime();
+        pages.submit(page);
+        fetch.record(page.size(), fetched - start, System.nanoTime() - fetched);
+      }
+      pages.close();
+    }
+    catch (RuntimeException e) {
+      /* PagedIterator reports failed requests as unchecked exceptions */
+      Throwable cause = e.getCause() instanceof IOException ? e.getCause() : e;
+      pages.closeExceptionally(cause);
+      done.completeExceptionally(cause);
+    }
+  }
+
+  private List<R> project(List<T> page) {
+    List<R> projected = new ArrayList<R>(page.size());
+    for (T record : page) {
+      try {
+        projected.add(projection.of(record));
+      }
+      catch (IOException e) {
+        System.err.println("Could not read the details of a record: " + e);
+      }
+    }
+    return projected;
+  }
+
+  private Rendered render(List<R> page) throws IOException {
+    StringBuilder text = new StringBuilder(page.size() * 256);
+    int[] ends = new int[page.size()];
+    int rendered = 0;
+    for (R record : page) {
+      if (renderer.render(record, text)) {
+        ends[rendered++] = text.length();
+      }
+    }
+    return new Rendered(text, ends, rendered);
+  }
+
+  /* a page of rendered records, and where in its text each one ends */
+  private static final class Rendered {
+    final CharSequence text;
+    final int[] ends;
+    final int records;
+
+    Rendered(CharSequence text, int[] ends, int records) {
+      this.text = text;
+      this.ends = ends;
+      this.records = records;
+    }
+  }
+
+  private static int size(Object page) {
+    if (page instanceof Rendered) {
+      return ((Rendered) page).records;
+    }
+    return ((List<?>) page).size();
+  }
+
+  private interface Step<I, O> {
+    O apply(I page) throws IOException;
+  }
+
+  /* a stage between two others, publishing what it makes of each page */
+  private final class Processor<I, O> extends SubmissionPublisher<O>
+      implements Flow.Processor<I, O> {
+    private final Stage stage;
+    private final Step<I, O> step;
+    private Flow.Subscription upstream;
+
+    Processor(Stage stage, ExecutorService pool, Step<I, O> step) {
+      super(pool, bufferPages);
+      this.stage = stage;
+      this.step = step;
+    }
+
+    public void onSubscribe(Flow.Subscription subscription) {
+      upstream = subscription;
+      subscription.request(1);
+    }
+
+    public void onNext(I page) {
+      if (done.isDone()) {
+        upstream.cancel();
+        close();
+        return;
+      }
+      long start = System.nanoTime();
+      O result;
+      try {
+        result = step.apply(page);
+      }
+      catch (IOException e) {
+        onError(e);
+        upstream.cancel();
+        return;
+      }
+      long made = System.nanoTime();
+      submit(result);
+      stage.record(size(result), made - start, System.nanoTime() - made);
+      upstream.request(1);
+    }
+
+    public void onError(Throwable failure) {
+      closeExceptionally(failure);
+    }
+
+    public void onComplete() {
+      close();
+    }
+  }
+
+  /* the write stage, at the end of the pipeline */
+  private final class Writing implements Flow.Subscriber<Rendered> {
+    private Flow.Subscription upstream;
+    private long written;
+
+    public void onSubscribe(Flow.Subscription subscription) {
+      upstream = subscription;
+      subscription.request(1);
+    }
+
+    public void onNext(Rendered page) {
+      long start = System.nanoTime();
+      try {
+        write(page);
+      }
+      catch (IOException e) {
+        upstream.cancel();
+        done.completeExceptionally(e);
+        return;
+      }
+      written += page.records;
+      write.record(page.records, System.nanoTime() - start, 0);
+      upstream.request(1);
+    }
+
+    /* marks every record for a GDETOutputHandler, as GDETReport does, so
+       that a rotating sink can start its next file between them */
+    private void write(Rendered page) throws IOException {
+      if (!(out instanceof GDETOutputHandler)) {
+        out.append(page.text);
+        return;
+      }
+      GDETOutputHandler handler = (GDETOutputHandler) out;
+      int start = 0;
+      for (int i = 0; i < page.records; i++) {
+        handler.append(page.text, start, page.ends[i]);
+        handler.endRecord();
+        start = page.ends[i];
+      }
+    }
+
+    public void onError(Throwable failure) {
+      done.completeExceptionally(failure);
+    }
+
+    public void onComplete() {
+      done.complete(written);
+    }
+  }
+}
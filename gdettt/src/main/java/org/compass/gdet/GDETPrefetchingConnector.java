@@ -0,0 +1,273 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.HttpConnector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**GDETPrefetchingConnector
+* An HttpConnector that fetches the next pages of a listing while the
+* current one is being processed.  github-api only asks for a page once the
+* previous one has been consumed, so a large listing otherwise costs one
+* full round trip per page.
+*
+* When a listing page comes back with a Link header, the following pages are
+* requested in parallel, up to <window> pages ahead, and handed to github-api
+* when it asks for them.  GitHub's Link header names the last page, so every
+* page of the window can be requested at once; without it, only the next
+* page is.  Prefetched pages go through <delegate>, so they are cached and
+* paced like any other request.  Pages that github-api never asks for (a
+* listing that is abandoned part way) are dropped once MAX_PENDING pages are
+* waiting.  Each connector fetches on <window> threads of its own, which
+* close() stops.
+*/
+public class GDETPrefetchingConnector implements HttpConnector, Closeable {
+
+  public static final int DEFAULT_WINDOW = 8;
+
+  private static final int MAX_PENDING = 64;
+  private static final Pattern LINK =
+    Pattern.compile("<([^>]*)>\\s*;\\s*rel=\"([a-z]+)\"");
+  private static final Pattern PAGE = Pattern.compile("([?&])page=([0-9]+)");
+
+  private final HttpConnector delegate;
+  private final int window;
+  private final ExecutorService pool;
+
+  /* prefetched pages by request key, oldest first */
+  private final LinkedHashMap<String, Future<GDETHttpConnection.Response>> pending =
+    new LinkedHashMap<String, Future<GDETHttpConnection.Response>>();
+
+  private final AtomicLong prefetched = new AtomicLong();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong wasted = new AtomicLong();
+
+  /**Constructor
+  * @params:
+  *   delegate - the connector pages are fetched through
+  *   window - how many pages ahead of the one being read to fetch, which is
+  *     also how many are fetched at once
+  */
+  public GDETPrefetchingConnector( HttpConnector delegate, int window ) {
+    this.delegate = delegate;
+    this.window = window;
+    final AtomicInteger threads = new AtomicInteger();
+    this.pool = Executors.newFixedThreadPool(window, runnable -> {
+      Thread thread = new Thread(runnable, "gdet-prefetch-" + threads.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  public GDETPrefetchingConnector( HttpConnector delegate ) {
+    this(delegate, DEFAULT_WINDOW);
+  }
+
+  public HttpURLConnection connect( URL url ) throws IOException {
+    return new PrefetchingConnection(url);
+  }
+
+  /**close
+  * Stops the prefetching threads and drops the pages still pending.  Pages
+  * asked for afterwards are fetched through <delegate> one at a time.
+  */
+  public synchronized void close() {
+    for ( Future<GDETHttpConnection.Response> page : pending.values() ) {
+      page.cancel(true);
+      wasted.incrementAndGet();
+    }
+    pending.clear();
+    pool.shutdownNow();
+  }
+
+  /**getPrefetchCount
+  * @return the number of pages requested ahead of github-api.
+  */
+  public long getPrefetchCount() {
+    return prefetched.get();
+  }
+
+  /**getHitCount
+  * @return the number of pages github-api read from a prefetch.
+  */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**getWastedCount
+  * @return the number of prefetched pages that were never read, or that
+  *   failed and had to be requested again.
+  */
+  public long getWastedCount() {
+    return wasted.get();
+  }
+
+  private static String key( URL url, String authorization, String accept ) {
+    return url + "\n" + authorization + "\n" + accept;
+  }
+
+  /**links
+  * @return the URLs of a Link header keyed by their rel, such as "next" and
+  *   "last".
+  */
+  static Map<String, String> links( String header ) {
+    Map<String, String> links = new LinkedHashMap<String, String>();
+    if ( header != null ) {
+      Matcher link = LINK.matcher(header);
+      while ( link.find() ) {
+        links.put(link.group(2), link.group(1));
+      }
+    }
+    return links;
+  }
+
+  /**pageOf
+  * @return the page parameter of <url>, or -1 if it has none.
+  */
+  static int pageOf( String url ) {
+    Matcher page = PAGE.matcher(url);
+    return page.find() ? Integer.parseInt(page.group(2)) : -1;
+  }
+
+  /**withPage
+  * @return <url> with its page parameter set to <page>.
+  */
+  static String withPage( String url, int page ) {
+    Matcher matcher = PAGE.matcher(url);
+    return matcher.find()
+      ? url.substring(0, matcher.start()) + matcher.group(1) + "page=" + page
+        + url.substring(matcher.end())
+      : url;
+  }
+
+  /* the prefetched page for <key>, removed from the pending pages */
+  private synchronized Future<GDETHttpConnection.Response> take( String key ) {
+    return pending.remove(key);
+  }
+
+  /* starts fetching the pages after <response>'s that are not pending yet */
+  private void prefetchAfter( GDETHttpConnection.Response response,
+      Map<String, List<String>> requestHeaders ) throws IOException {
+    Map<String, String> links = links(response.header("Link"));
+    String next = links.get("next");
+    if ( next == null ) {
+      return;
+    }
+    int first = pageOf(next);
+    int last = first;
+    if ( first > 0 && links.containsKey("last") ) {
+      last = Math.min(pageOf(links.get("last")), first + window - 1);
+    }
+    String authorization = header(requestHeaders, "Authorization");
+    String accept = header(requestHeaders, "Accept");
+    for ( int page = first; page <= last; page++ ) {
+      final URL url = new URL(page == first ? next : withPage(next, page));
+      String key = key(url, authorization, accept);
+      synchronized ( this ) {
+        if ( pool.isShutdown() ) {
+          return;
+        }
+        if ( pending.containsKey(key) ) {
+          continue;
+        }
+        final PageRequest request = new PageRequest(url, requestHeaders);
+        pending.put(key, pool.submit(request::fetch));
+        prefetched.incrementAndGet();
+        Iterator<Future<GDETHttpConnection.Response>> oldest = pending.values().iterator();
+        while ( pending.size() > MAX_PENDING ) {
+          oldest.next().cancel(true);
+          oldest.remove();
+          wasted.incrementAndGet();
+        }
+      }
+    }
+  }
+
+  private static String header( Map<String, List<String>> headers, String name ) {
+    for ( Map.Entry<String, List<String>> header : headers.entrySet() ) {
+      if ( header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty() ) {
+        return header.getValue().get(0);
+      }
+    }
+    return null;
+  }
+
+  /**PageRequest
+  * A GET for a prefetched page, sent with the headers of the request that
+  * revealed it.
+  */
+  private class PageRequest extends GDETHttpConnection {
+
+    PageRequest( URL url, Map<String, List<String>> headers ) {
+      super(url);
+      for ( Map.Entry<String, List<String>> header : headers.entrySet() ) {
+        for ( String value : header.getValue() ) {
+          addRequestProperty(header.getKey(), value);
+        }
+      }
+    }
+
+    Response fetch() throws IOException {
+      return forward(delegate.connect(url), Collections.<String, String>emptyMap());
+    }
+
+    protected void execute() {}
+  }
+
+  private class PrefetchingConnection extends GDETHttpConnection {
+
+    PrefetchingConnection( URL url ) {
+      super(url);
+    }
+
+    protected void execute() throws IOException {
+      if ( !"GET".equals(getRequestMethod()) ) {
+        Response response = forward(delegate.connect(url), Collections.<String, String>emptyMap());
+        setResponse(response.code, response.message, response.headers, response.body);
+        return;
+      }
+      Response response = null;
+      Future<Response> prefetch =
+        take(key(url, requestHeader("Authorization"), requestHeader("Accept")));
+      if ( prefetch != null ) {
+        try {
+          response = prefetch.get();
+        } catch ( InterruptedException e ) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted waiting for " + url, e);
+        } catch ( ExecutionException e ) {
+          response = null;
+        }
+        if ( response == null || response.code != HTTP_OK ) {
+          /* a failed or refused prefetch is retried by the caller itself */
+          wasted.incrementAndGet();
+          response = null;
+        } else {
+          hits.incrementAndGet();
+        }
+      }
+      if ( response == null ) {
+        response = forward(delegate.connect(url), Collections.<String, String>emptyMap());
+      }
+      if ( response.code == HTTP_OK ) {
+        prefetchAfter(response, getRequestProperties());
+      }
+      setResponse(response.code, response.message, response.headers, response.body);
+    }
+  }
+}
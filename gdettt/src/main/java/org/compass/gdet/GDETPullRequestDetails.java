@@ -0,0 +1,172 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Date;
+
+/**GDETPullRequestDetails
+* The fields of a pull request that the report renders and counts: who opened
+* and merged it, when, and how big it was.  Reading these from a GHPullRequest
+* that came from a listing costs one extra request per pull request, so they
+* can instead be fetched a hundred at a time through GDETGraphQLPullRequests.
+* Both sources produce the same values.  Logins and names are interned in
+* GDETDictionary.SHARED, so pull requests by the same users share them.
+*/
+public class GDETPullRequestDetails {
+
+  private final int number;
+  private final String title;
+  private final GHIssueState state;
+  private final boolean merged;
+  private final Date createdAt;
+  private final Date mergedAt;
+  private final String userLogin;
+  private final String userName;
+  private final String mergedByLogin;
+  private final String mergedByName;
+  private final int additions;
+  private final int deletions;
+  private final int commits;
+
+  GDETPullRequestDetails(int number, String title, GHIssueState state, boolean merged,
+      Date createdAt, Date mergedAt, String userLogin, String userName,
+      String mergedByLogin, String mergedByName, int additions, int deletions, int commits) {
+    this.number = number;
+    this.title = title;
+    this.state = state;
+    this.merged = merged;
+    this.createdAt = createdAt;
+    this.mergedAt = mergedAt;
+    this.userLogin = GDETDictionary.SHARED.intern(userLogin);
+    this.userName = GDETDictionary.SHARED.intern(userName);
+    this.mergedByLogin = GDETDictionary.SHARED.intern(mergedByLogin);
+    this.mergedByName = GDETDictionary.SHARED.intern(mergedByName);
+    this.additions = additions;
+    this.deletions = deletions;
+    this.commits = commits;
+  }
+
+  /**of
+  * Reads the details of <pr> through the REST API, fetching the full pull
+  * request and its users' profiles as needed.  If a user's profile cannot be
+  * fetched, say for an account that has since been deleted, the pull request
+  * is kept with their login and no name, and the failure is reported on
+  * stderr, once per missing account.
+  */
+  public static GDETPullRequestDetails of(GHPullRequest pr) throws IOException {
+    GHUser user = pr.getUser();
+    GHUser mergedBy = pr.getMergedBy();
+    GithubDataExtractionTool.getUserProfileCache().register(user);
+    GithubDataExtractionTool.getUserProfileCache().register(mergedBy);
+    return new GDETPullRequestDetails(pr.getNumber(), pr.getTitle(), pr.getState(),
+      pr.isMerged(), pr.getCreatedAt(), pr.getMergedAt(),
+      user == null ? null : user.getLogin(),
+      user == null ? null : name(user, pr),
+      mergedBy == null ? null : mergedBy.getLogin(),
+      mergedBy == null ? null : name(mergedBy, pr),
+      pr.getAdditions(), pr.getDeletions(), pr.getCommits());
+  }
+
+  /* <user>'s name, or null if it is not set or cannot be fetched */
+  private static String name(GHUser user, GHPullRequest pr) {
+    try {
+      return GithubDataExtractionTool.getGHUserName(user);
+    }
+    catch (FileNotFoundException e) {
+      if (GithubDataExtractionTool.getUserProfileCache().reportMissing(user.getLogin())) {
+        System.err.println("Could not find the account of " + user.getLogin()
+          + ", keeping their pull requests without a name: " + e);
+      }
+      return null;
+    }
+    catch (IOException e) {
+      System.err.println("Could not look up the name of " + user.getLogin()
+        + " for pull request #" + pr.getNumber() + ": " + e);
+      return null;
+    }
+  }
+
+  /**countPerUser
+  * Counts <prs> per login of the user who opened them, or, if <mergedBy> is
+  * set, the merged ones per login of the user who merged them.  Pull requests
+  * without a user are counted under GDETUserCounter.UNKNOWN_LOGIN.
+  */
+  public static GDETUserCounter countPerUser(Iterable<GDETPullRequestDetails> prs,
+      boolean mergedBy) {
+    GDETUserCounter counter = new GDETUserCounter();
+    for (GDETPullRequestDetails pr : prs) {
+      String login = null;
+      if (!mergedBy) {
+        login = pr.getUserLogin();
+      }
+      else if (pr.isMerged()) {
+        login = pr.getMergedByLogin();
+      }
+      else {
+        continue;
+      }
+      counter.increment(login == null ? GDETUserCounter.UNKNOWN_LOGIN : login);
+    }
+    return counter;
+  }
+
+  public int getNumber() {
+    return number;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  /**getState
+  * @return OPEN or CLOSED; merged pull requests are CLOSED.
+  */
+  public GHIssueState getState() {
+    return state;
+  }
+
+  public boolean isMerged() {
+    return merged;
+  }
+
+  public Date getCreatedAt() {
+    return createdAt;
+  }
+
+  public Date getMergedAt() {
+    return mergedAt;
+  }
+
+  public String getUserLogin() {
+    return userLogin;
+  }
+
+  /**getUserName
+  * @return the display name of the user who opened the pull request, or null
+  *   if they have not set one.
+  */
+  public String getUserName() {
+    return userName;
+  }
+
+  public String getMergedByLogin() {
+    return mergedByLogin;
+  }
+
+  public String getMergedByName() {
+    return mergedByName;
+  }
+
+  public int getAdditions() {
+    return additions;
+  }
+
+  public int getDeletions() {
+    return deletions;
+  }
+
+  public int getCommits() {
+    return commits;
+  }
+}
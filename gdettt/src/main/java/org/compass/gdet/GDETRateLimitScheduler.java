@@ -0,0 +1,436 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.HttpConnector;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**GDETRateLimitScheduler
+* An HttpConnector that paces requests so a long extraction runs at the rate
+* limit instead of into it.  Every response's X-RateLimit-Limit, -Remaining
+* and -Reset headers are tracked per credential and per rate limit resource
+* (core, search, graphql), and requests are released through a token bucket
+* that refills at remaining / time-until-reset, so the quota lasts exactly
+* until it is reset.
+*
+* Requests can be spread over a pool of credentials; each request goes to
+* the ready credential with the most quota left.  When a credential runs out
+* (a 403 with no requests remaining) it is parked until its reset, and when
+* GitHub reports a secondary ("abuse") rate limit the credential backs off
+* for the Retry-After period, or exponentially if none is given.  Either way
+* the request is retried, on another credential if one is ready, up to a
+* maximum number of attempts before the error is handed to the caller.
+*/
+public class GDETRateLimitScheduler implements HttpConnector {
+
+  public static final int DEFAULT_BURST = 10;
+  public static final int DEFAULT_MAX_RETRIES = 5;
+  static final long BASE_BACKOFF_MILLIS = 1000;
+  static final long MAX_BACKOFF_MILLIS = 60000;
+
+  private final HttpConnector delegate;
+  private final List<Credential> credentials = new ArrayList<Credential>();
+  private final int burst;
+  private final int maxRetries;
+
+  private long requests;
+  private long retries;
+  private long primaryLimitHits;
+  private long secondaryLimitHits;
+  private long throttleNanos;
+
+  /**Constructor
+  * @params:
+  *   delegate - the connector requests are sent through
+  *   authorizations - the Authorization headers of the credentials to spread
+  *     requests over; if empty, requests keep whatever the caller sent
+  */
+  public GDETRateLimitScheduler( HttpConnector delegate, List<String> authorizations ) {
+    this(delegate, authorizations, DEFAULT_BURST, DEFAULT_MAX_RETRIES);
+  }
+
+  /**Constructor
+  * @params:
+  *   delegate - the connector requests are sent through
+  *   authorizations - the Authorization headers of the credentials to spread
+  *     requests over; if empty, requests keep whatever the caller sent
+  *   burst - how many requests a credential may send back to back before
+  *     pacing applies
+  *   maxRetries - how many times a rate limited request is retried
+  */
+  public GDETRateLimitScheduler( HttpConnector delegate, List<String> authorizations,
+      int burst, int maxRetries ) {
+    this.delegate = delegate;
+    this.burst = Math.max(1, burst);
+    this.maxRetries = maxRetries;
+    if ( authorizations.isEmpty() ) {
+      credentials.add(new Credential(null, "anonymous"));
+    }
+    for ( String authorization : authorizations ) {
+      credentials.add(new Credential(authorization, "credential " + (credentials.size() + 1)
+        + " (..." + authorization.substring(Math.max(0, authorization.length() - 4)) + ")"));
+    }
+  }
+
+  /**fromCredentials
+  * @return a scheduler over the credentials in ~/.github and every token
+  *   listed in ~/.gdet/tokens.
+  */
+  public static GDETRateLimitScheduler fromCredentials( HttpConnector delegate )
+      throws IOException {
+    return new GDETRateLimitScheduler(delegate,
+      GDETCredentials.load().pool(GDETCredentials.tokensFile()));
+  }
+
+  public HttpURLConnection connect( URL url ) throws IOException {
+    return new ScheduledConnection(url);
+  }
+
+  /**resourceOf
+  * @return the rate limit resource a request to <url> counts against.
+  */
+  static String resourceOf( URL url ) {
+    String path = url.getPath();
+    if ( path.endsWith("/graphql") ) {
+      return "graphql";
+    }
+    if ( path.startsWith("/search/") || path.contains("/api/v3/search/") ) {
+      return "search";
+    }
+    return "core";
+  }
+
+  /**acquire
+  * Blocks until some credential may send a request against <resource>, and
+  * takes a token from its bucket.
+  */
+  private synchronized Bucket acquire( String resource ) throws InterruptedIOException {
+    while ( true ) {
+      long now = System.currentTimeMillis();
+      Bucket best = null;
+      long bestAt = Long.MAX_VALUE;
+      for ( Credential credential : credentials ) {
+        Bucket bucket = credential.bucket(resource, burst);
+        bucket.refill(now, burst);
+        long at = bucket.readyAt(now);
+        if ( best == null || at < bestAt
+            || (at == bestAt && at <= now && bucket.headroom() > best.headroom()) ) {
+          best = bucket;
+          bestAt = at;
+        }
+      }
+      if ( bestAt <= now ) {
+        best.tokens -= 1;
+        best.requests++;
+        if ( best.remaining > 0 ) {
+          /* counted until the response reports the real figure */
+          best.remaining--;
+        }
+        requests++;
+        return best;
+      }
+      long start = System.nanoTime();
+      try {
+        wait(Math.max(1, bestAt - now));
+      }
+      catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for rate limit");
+      }
+      throttleNanos += System.nanoTime() - start;
+    }
+  }
+
+  /**record
+  * Updates <bucket> from <response> and decides whether the request should be
+  * retried because it was rate limited.
+  */
+  private synchronized boolean record( Bucket bucket, GDETHttpConnection.Response response,
+      int attempt ) {
+    long now = System.currentTimeMillis();
+    String limit = response.header("X-RateLimit-Limit");
+    String remaining = response.header("X-RateLimit-Remaining");
+    String reset = response.header("X-RateLimit-Reset");
+    try {
+      if ( limit != null ) {
+        bucket.limit = Integer.parseInt(limit.trim());
+      }
+      if ( remaining != null && reset != null ) {
+        bucket.remaining = Integer.parseInt(remaining.trim());
+        bucket.resetMillis = Long.parseLong(reset.trim()) * 1000;
+      }
+    }
+    catch ( NumberFormatException e ) {}
+    boolean retry = false;
+    if ( response.code == HttpURLConnection.HTTP_FORBIDDEN || response.code == 429 ) {
+      if ( "0".equals(remaining == null ? null : remaining.trim()) ) {
+        primaryLimitHits++;
+        bucket.blockedUntilMillis = Math.max(bucket.resetMillis, now + 1000);
+        retry = true;
+      }
+      else if ( isSecondaryLimit(response) ) {
+        secondaryLimitHits++;
+        bucket.credential.blockedUntilMillis = now + backoffMillis(response, attempt);
+        retry = true;
+      }
+    }
+    else if ( bucket.remaining == 0 ) {
+      bucket.blockedUntilMillis = bucket.resetMillis;
+    }
+    if ( retry && attempt < maxRetries ) {
+      retries++;
+    }
+    notifyAll();
+    return retry && attempt < maxRetries;
+  }
+
+  private static boolean isSecondaryLimit( GDETHttpConnection.Response response ) {
+    if ( response.header("Retry-After") != null ) {
+      return true;
+    }
+    String body = new String(response.body, StandardCharsets.UTF_8).toLowerCase();
+    return body.contains("secondary rate limit") || body.contains("abuse");
+  }
+
+  /**backoffMillis
+  * @return how long to back off after a secondary rate limit: Retry-After if
+  *   given, else an exponentially growing, jittered delay.
+  */
+  static long backoffMillis( GDETHttpConnection.Response response, int attempt ) {
+    String retryAfter = response.header("Retry-After");
+    if ( retryAfter != null ) {
+      try {
+        return Long.parseLong(retryAfter.trim()) * 1000;
+      }
+      catch ( NumberFormatException e ) {}
+    }
+    long backoff = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+    return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+  }
+
+  /**getStates
+  * @return a snapshot of every credential's known quota, one entry per
+  *   credential and rate limit resource it has been used for.
+  */
+  public synchronized List<State> getStates() {
+    List<State> states = new ArrayList<State>();
+    long now = System.currentTimeMillis();
+    for ( Credential credential : credentials ) {
+      for ( Bucket bucket : credential.buckets.values() ) {
+        long blocked = Math.max(bucket.blockedUntilMillis, credential.blockedUntilMillis);
+        states.add(new State(credential.label, bucket.resource, bucket.limit,
+          bucket.remaining, bucket.resetMillis, bucket.requests, blocked <= now ? 0 : blocked));
+      }
+    }
+    return Collections.unmodifiableList(states);
+  }
+
+  public int getCredentialCount() {
+    return credentials.size();
+  }
+
+  /**getRequestCount
+  * @return the number of requests sent, including retries.
+  */
+  public synchronized long getRequestCount() {
+    return requests;
+  }
+
+  public synchronized long getRetryCount() {
+    return retries;
+  }
+
+  /**getPrimaryLimitHits
+  * @return how often a credential was found to have no requests remaining.
+  */
+  public synchronized long getPrimaryLimitHits() {
+    return primaryLimitHits;
+  }
+
+  /**getSecondaryLimitHits
+  * @return how often GitHub reported a secondary (abuse) rate limit.
+  */
+  public synchronized long getSecondaryLimitHits() {
+    return secondaryLimitHits;
+  }
+
+  /**getThrottleNanos
+  * @return the total time requests spent waiting for their turn.
+  */
+  public synchronized long getThrottleNanos() {
+    return throttleNanos;
+  }
+
+  /**State
+  * What is known about one credential's quota for one resource.
+  */
+  public static class State {
+    private final String credential;
+    private final String resource;
+    private final int limit;
+    private final int remaining;
+    private final long resetMillis;
+    private final long requests;
+    private final long blockedUntilMillis;
+
+    State( String credential, String resource, int limit, int remaining,
+        long resetMillis, long requests, long blockedUntilMillis ) {
+      this.credential = credential;
+      this.resource = resource;
+      this.limit = limit;
+      this.remaining = remaining;
+      this.resetMillis = resetMillis;
+      this.requests = requests;
+      this.blockedUntilMillis = blockedUntilMillis;
+    }
+
+    /**getCredential
+    * @return a label for the credential that does not reveal it.
+    */
+    public String getCredential() {
+      return credential;
+    }
+
+    public String getResource() {
+      return resource;
+    }
+
+    /**getLimit
+    * @return the requests allowed per window, or -1 if not yet known.
+    */
+    public int getLimit() {
+      return limit;
+    }
+
+    /**getRemaining
+    * @return the requests left in the current window, or -1 if not yet known.
+    */
+    public int getRemaining() {
+      return remaining;
+    }
+
+    /**getReset
+    * @return when the current window ends, or null if not yet known.
+    */
+    public Date getReset() {
+      return resetMillis == 0 ? null : new Date(resetMillis);
+    }
+
+    public long getRequests() {
+      return requests;
+    }
+
+    /**getBlockedUntil
+    * @return when the credential may be used again, or null if it is usable.
+    */
+    public Date getBlockedUntil() {
+      return blockedUntilMillis == 0 ? null : new Date(blockedUntilMillis);
+    }
+
+    public String toString() {
+      return String.format("%s [%s]: %d/%d remaining, %d requests%s", credential, resource,
+        remaining, limit, requests,
+        blockedUntilMillis == 0 ? "" : ", blocked until " + getBlockedUntil());
+    }
+  }
+
+  private static class Credential {
+    final String authorization;
+    final String label;
+    final Map<String, Bucket> buckets = new HashMap<String, Bucket>();
+    long blockedUntilMillis;
+
+    Credential( String authorization, String label ) {
+      this.authorization = authorization;
+      this.label = label;
+    }
+
+    Bucket bucket( String resource, int burst ) {
+      return buckets.computeIfAbsent(resource, r -> new Bucket(this, r, burst));
+    }
+  }
+
+  /**Bucket
+  * The token bucket of one credential for one resource.  Until the quota is
+  * known, or once its window has passed, the bucket is always full.
+  */
+  private static class Bucket {
+    final Credential credential;
+    final String resource;
+    int limit = -1;
+    int remaining = -1;
+    long resetMillis;
+    long blockedUntilMillis;
+    double tokens;
+    long lastRefillMillis;
+    long requests;
+
+    Bucket( Credential credential, String resource, int burst ) {
+      this.credential = credential;
+      this.resource = resource;
+      this.tokens = burst;
+      this.lastRefillMillis = System.currentTimeMillis();
+    }
+
+    void refill( long now, int burst ) {
+      if ( remaining < 0 || now >= resetMillis ) {
+        tokens = burst;
+      }
+      else {
+        tokens = Math.min(burst, tokens + (now - lastRefillMillis) * rate(now));
+      }
+      lastRefillMillis = now;
+    }
+
+    /* tokens per millisecond that spend the remaining quota by the reset */
+    double rate( long now ) {
+      return remaining / (double) Math.max(1, resetMillis - now);
+    }
+
+    long readyAt( long now ) {
+      long blocked = Math.max(blockedUntilMillis, credential.blockedUntilMillis);
+      if ( tokens >= 1 || remaining < 0 || now >= resetMillis ) {
+        return Math.max(now, blocked);
+      }
+      double rate = rate(now);
+      long refilled = rate <= 0 ? resetMillis : now + (long) Math.ceil((1 - tokens) / rate);
+      return Math.max(Math.min(refilled, resetMillis), blocked);
+    }
+
+    /* unknown quota counts as the most headroom, so new credentials get tried */
+    long headroom() {
+      return remaining < 0 ? Long.MAX_VALUE : remaining;
+    }
+  }
+
+  private class ScheduledConnection extends GDETHttpConnection {
+
+    ScheduledConnection( URL url ) {
+      super(url);
+    }
+
+    protected void execute() throws IOException {
+      String resource = resourceOf(url);
+      for ( int attempt = 0; ; attempt++ ) {
+        Bucket bucket = acquire(resource);
+        Map<String, String> headers = bucket.credential.authorization == null
+          ? Collections.<String, String>emptyMap()
+          : Collections.singletonMap("Authorization", bucket.credential.authorization);
+        Response response = forward(delegate.connect(url), headers);
+        if ( !record(bucket, response, attempt) ) {
+          setResponse(response.code, response.message, response.headers, response.body);
+          return;
+        }
+      }
+    }
+  }
+}
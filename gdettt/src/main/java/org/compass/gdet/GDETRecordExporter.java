@@ -0,0 +1,421 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.Date;
+
+/**GDETRecordExporter
+* Writes extracted records in a machine readable format, one record at a time
+* through a GDETOutputHandler, so exports never hold more than the current
+* record in memory.  This class decides which fields each record type has and
+* looks them up; subclasses decide how a record is encoded.
+*
+* Every field of a record is looked up before any of it is written, so a
+* record whose details cannot be fetched is skipped as a whole.  User names go
+* through GithubDataExtractionTool's profile cache; a name that cannot be
+* fetched is exported as missing rather than dropping the record.  Dates are
+* exported as ISO-8601 instants in UTC.
+*/
+public abstract class GDETRecordExporter implements Flushable {
+
+  public static final String COMMIT = "commit";
+  public static final String ISSUE = "issue";
+  public static final String PULL_REQUEST = "pull_request";
+  public static final String REVIEW_COMMENT = "review_comment";
+  public static final String BRANCH = "branch";
+
+  static final String[] COMMIT_FIELDS = {
+    "sha", "author_name", "author_email", "date", "message"
+  };
+  static final String[] ISSUE_FIELDS = {
+    "number", "title", "state", "user_login", "user_name", "created_at", "closed_at"
+  };
+  static final String[] PULL_REQUEST_FIELDS = {
+    "number", "title", "state", "user_login", "user_name", "created_at",
+    "merged_at", "merged_by_login", "merged_by_name", "additions", "deletions", "commits"
+  };
+  static final String[] REVIEW_COMMENT_FIELDS = {
+    "id", "user_login", "user_name", "path", "position", "created_at", "body"
+  };
+  static final String[] BRANCH_FIELDS = {
+    "name", "sha"
+  };
+
+  protected final GDETOutputHandler out;
+
+  protected GDETRecordExporter(GDETOutputHandler out) {
+    this.out = out;
+  }
+
+  /**forFormat
+  * @params:
+  *   format - "ndjson" or "csv"
+  *   out - where the records are written
+  *
+  * @return:
+  *   GDETRecordExporter - an exporter for <format>, or null if it is not one
+  *     of the supported formats.
+  */
+  public static GDETRecordExporter forFormat(String format, GDETOutputHandler out) {
+    if (!isSupported(format)) {
+      return null;
+    }
+    if ("ndjson".equals(format)) {
+      return new GDETJsonExporter(out);
+    }
+    return new GDETCsvExporter(out);
+  }
+
+  /**isSupported
+  * @return true if <format> names an export format, "ndjson" or "csv".
+  */
+  public static boolean isSupported(String format) {
+    return "ndjson".equals(format) || "csv".equals(format);
+  }
+
+  /**exportCommit
+  * @return false if the commit's details could not be fetched.
+  */
+  public boolean exportCommit(GHCommit commit) throws IOException {
+    GHCommit.ShortInfo info = GithubDataExtractionTool.getCommitShortInfo(commit);
+    if (info == null) {
+      return false;
+    }
+    GitUser author = info.getAuthor();
+    beginRecord(COMMIT, COMMIT_FIELDS);
+    string(commit.getSHA1());
+    string(author == null ? null : author.getName());
+    string(author == null ? null : author.getEmail());
+    date(info.getCommitDate());
+    string(info.getMessage());
+    finishRecord();
+    return true;
+  }
+
+  /**exportCommit
+  * Exports a commit exactly as exportCommit(GHCommit) does, from its details.
+  *
+  * @return false if there is no commit.
+  */
+  public boolean exportCommit(GDETCommitDetails commit) throws IOException {
+    if (commit == null) {
+      return false;
+    }
+    beginRecord(COMMIT, COMMIT_FIELDS);
+    string(commit.getSha());
+    string(commit.getAuthorName());
+    string(commit.getAuthorEmail());
+    date(commit.getCommitDate());
+    string(commit.getMessage());
+    finishRecord();
+    return true;
+  }
+
+  /**exportIssue
+  * @return false if the issue's details could not be fetched.
+  */
+  public boolean exportIssue(GHIssue issue) throws IOException {
+    GHUser user;
+    Date createdAt;
+    try {
+      user = issue.getUser();
+      createdAt = issue.getCreatedAt();
+    }
+    catch (IOException e) {
+      return false;
+    }
+    String userName = nameOf(user);
+    beginRecord(ISSUE, ISSUE_FIELDS);
+    number(issue.getNumber());
+    string(issue.getTitle());
+    string(stateOf(issue.getState()));
+    string(loginOf(user));
+    string(userName);
+    date(createdAt);
+    date(issue.getClosedAt());
+    finishRecord();
+    return true;
+  }
+
+  /**exportIssue
+  * Exports an issue exactly as exportIssue(GHIssue) does, from its details.
+  *
+  * @return false if there is no issue.
+  */
+  public boolean exportIssue(GDETIssueDetails issue) throws IOException {
+    if (issue == null) {
+      return false;
+    }
+    String userName = nameOf(issue.getUserLogin());
+    beginRecord(ISSUE, ISSUE_FIELDS);
+    number(issue.getNumber());
+    string(issue.getTitle());
+    string(stateOf(issue.getState()));
+    string(issue.getUserLogin());
+    string(userName);
+    date(issue.getCreatedAt());
+    date(issue.getClosedAt());
+    finishRecord();
+    return true;
+  }
+
+  /**exportPullRequest
+  * @return false if the pull request's details could not be fetched.
+  */
+  public boolean exportPullRequest(GHPullRequest pr) throws IOException {
+    GHUser user;
+    GHUser mergedBy;
+    Date createdAt;
+    int additions;
+    int deletions;
+    int commits;
+    try {
+      user = pr.getUser();
+      createdAt = pr.getCreatedAt();
+      mergedBy = pr.getMergedBy();
+      additions = pr.getAdditions();
+      deletions = pr.getDeletions();
+      commits = pr.getCommits();
+    }
+    catch (IOException e) {
+      return false;
+    }
+    String userName = nameOf(user);
+    String mergedByName = nameOf(mergedBy);
+    beginRecord(PULL_REQUEST, PULL_REQUEST_FIELDS);
+    number(pr.getNumber());
+    string(pr.getTitle());
+    string(stateOf(pr.getState()));
+    string(loginOf(user));
+    string(userName);
+    date(createdAt);
+    date(pr.getMergedAt());
+    string(loginOf(mergedBy));
+    string(mergedByName);
+    number(additions);
+    number(deletions);
+    number(commits);
+    finishRecord();
+    return true;
+  }
+
+  /**exportPullRequest
+  * Exports a pull request exactly as exportPullRequest(GHPullRequest) does,
+  * from details that are already fetched.
+  *
+  * @return false if there is no pull request.
+  */
+  public boolean exportPullRequest(GDETPullRequestDetails pr) throws IOException {
+    if (pr == null) {
+      return false;
+    }
+    beginRecord(PULL_REQUEST, PULL_REQUEST_FIELDS);
+    number(pr.getNumber());
+    string(pr.getTitle());
+    string(stateOf(pr.getState()));
+    string(pr.getUserLogin());
+    string(pr.getUserName());
+    date(pr.getCreatedAt());
+    date(pr.getMergedAt());
+    string(pr.getMergedByLogin());
+    string(pr.getMergedByName());
+    number(pr.getAdditions());
+    number(pr.getDeletions());
+    number(pr.getCommits());
+    finishRecord();
+    return true;
+  }
+
+  /**exportReviewComment
+  * @return false if the comment's details could not be fetched.
+  */
+  public boolean exportReviewComment(GHPullRequestReviewComment prc) throws IOException {
+    GHUser user;
+    Date createdAt;
+    try {
+      user = prc.getUser();
+      createdAt = prc.getCreatedAt();
+    }
+    catch (IOException e) {
+      return false;
+    }
+    String userName = nameOf(user);
+    beginRecord(REVIEW_COMMENT, REVIEW_COMMENT_FIELDS);
+    number(prc.getId());
+    string(loginOf(user));
+    string(userName);
+    string(prc.getPath());
+    number(prc.getPosition());
+    date(createdAt);
+    string(prc.getBody());
+    finishRecord();
+    return true;
+  }
+
+  /**exportReviewComment
+  * Exports a review comment exactly as exportReviewComment(
+  * GHPullRequestReviewComment) does, from its details.
+  *
+  * @return false if there is no comment.
+  */
+  public boolean exportReviewComment(GDETReviewCommentDetails prc) throws IOException {
+    if (prc == null) {
+      return false;
+    }
+    String userName = nameOf(prc.getUserLogin());
+    beginRecord(REVIEW_COMMENT, REVIEW_COMMENT_FIELDS);
+    number(prc.getId());
+    string(prc.getUserLogin());
+    string(userName);
+    string(prc.getPath());
+    number(prc.getPosition());
+    date(prc.getCreatedAt());
+    string(prc.getBody());
+    finishRecord();
+    return true;
+  }
+
+  /**exportBranch
+  * @return false if there is no branch.
+  */
+  public boolean exportBranch(GHBranch branch) throws IOException {
+    if (branch == null) {
+      return false;
+    }
+    beginRecord(BRANCH, BRANCH_FIELDS);
+    string(branch.getName());
+    string(branch.getSHA1());
+    finishRecord();
+    return true;
+  }
+
+  /**exportSnapshot
+  * Exports every commit, issue, pull request, review comment and branch of
+  * <snapshot>, in that order.
+  *
+  * @return:
+  *   int - the number of records exported.
+  */
+  public int exportSnapshot(GDETRepositorySnapshot snapshot) throws IOException {
+    return exportSnapshot(snapshot, null);
+  }
+
+  /**exportSnapshot
+  * Exports <snapshot> like exportSnapshot(snapshot) and, unless <metrics> is
+  * null, records the records exported and time spent per record type.
+  */
+  public int exportSnapshot(GDETRepositorySnapshot snapshot, GDETMetrics metrics)
+      throws IOException {
+    long start = System.nanoTime();
+    int section = 0;
+    for (GDETCommitDetails commit : snapshot.getCommitDetails()) {
+      section += exportCommit(commit) ? 1 : 0;
+    }
+    int exported = section;
+    start = section(metrics, "commits", section, start);
+    section = 0;
+    for (GDETIssueDetails issue : snapshot.getIssueDetails()) {
+      section += exportIssue(issue) ? 1 : 0;
+    }
+    exported += section;
+    start = section(metrics, "issues", section, start);
+    section = 0;
+    for (GDETPullRequestDetails pr : snapshot.getPullRequestDetails()) {
+      section += exportPullRequest(pr) ? 1 : 0;
+    }
+    exported += section;
+    start = section(metrics, "pullRequests", section, start);
+    section = 0;
+    for (GDETReviewCommentDetails prc : snapshot.getReviewCommentDetails()) {
+      section += exportReviewComment(prc) ? 1 : 0;
+    }
+    exported += section;
+    start = section(metrics, "reviewComments", section, start);
+    section = 0;
+    for (GHBranch branch : snapshot.getBranches()) {
+      section += exportBranch(branch) ? 1 : 0;
+    }
+    exported += section;
+    section(metrics, "branches", section, start);
+    return exported;
+  }
+
+  /* records a finished section and returns the start of the next one */
+  private static long section(GDETMetrics metrics, String name, int records, long start) {
+    long now = System.nanoTime();
+    if (metrics != null) {
+      metrics.recordSection(name, records, now - start);
+    }
+    return now;
+  }
+
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  /**beginRecord
+  * Starts a record of <type>.  Its values follow in the order of <fields>.
+  */
+  protected abstract void beginRecord(String type, String[] fields) throws IOException;
+
+  /**string
+  * Writes the next value of the current record; <value> may be null.
+  */
+  protected abstract void string(String value) throws IOException;
+
+  /**number
+  * Writes the next value of the current record.
+  */
+  protected abstract void number(long value) throws IOException;
+
+  /**endRecord
+  * Finishes the current record.
+  */
+  protected abstract void endRecord() throws IOException;
+
+  /* finishes the current record and marks its end for the output's sink */
+  private void finishRecord() throws IOException {
+    endRecord();
+    out.endRecord();
+  }
+
+  /**date
+  * Writes the next value of the current record as an ISO-8601 instant.
+  */
+  protected void date(Date value) throws IOException {
+    string(value == null ? null : value.toInstant().toString());
+  }
+
+  private static String stateOf(GHIssueState state) {
+    return state == null ? null : state.name().toLowerCase();
+  }
+
+  private static String loginOf(GHUser user) {
+    return user == null ? null : user.getLogin();
+  }
+
+  private static String nameOf(GHUser user) {
+    if (user == null) {
+      return null;
+    }
+    try {
+      return GithubDataExtractionTool.getGHUserName(user);
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static String nameOf(String login) {
+    if (login == null) {
+      return null;
+    }
+    try {
+      return GithubDataExtractionTool.getUserName(login);
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,285 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import java.io.IOException;
+import java.util.Date;
+
+/**GDETRecordRenderer
+* Renders extracted records straight into a caller supplied Appendable, such
+* as a GDETOutputHandler or a reused StringBuilder, without building the
+* record up as intermediate strings first.  The *ToString methods of
+* GithubDataExtractionTool are thin wrappers around these.
+*
+* Each render method looks up every field it needs before appending anything,
+* so a record that cannot be rendered (a user lookup fails, a pull request was
+* never merged) leaves the Appendable untouched and the method returns false.
+* IOExceptions thrown by the Appendable itself are passed on to the caller.
+*/
+public final class GDETRecordRenderer {
+
+  static final String SHORT_SEPARATOR = repeat('-', 32) + "\n";
+  static final String SHORT_SEPARATOR_END = SHORT_SEPARATOR + "\n";
+  static final String LONG_SEPARATOR = repeat('-', 64) + "\n";
+  static final String LONG_SEPARATOR_END = LONG_SEPARATOR + "\n";
+
+  private GDETRecordRenderer() {}
+
+  private static String repeat(char c, int count) {
+    StringBuilder line = new StringBuilder(count);
+    for (int i = 0; i < count; i++) {
+      line.append(c);
+    }
+    return line.toString();
+  }
+
+  /**renderCommit
+  * Appends a commit's author, date and message.
+  *
+  * @return true, a commit can always be rendered once its short info is known.
+  */
+  public static boolean renderCommit(GHCommit commit, Appendable out) throws IOException {
+    GHCommit.ShortInfo cinfo = GithubDataExtractionTool.getCommitShortInfo(commit);
+    String author = cinfo.getAuthor().getName();
+    Date date = cinfo.getCommitDate();
+    String message = cinfo.getMessage();
+    out.append(SHORT_SEPARATOR);
+    out.append(author).append('\n');
+    out.append(String.valueOf(date)).append('\n');
+    out.append(message).append('\n');
+    out.append(SHORT_SEPARATOR_END);
+    return true;
+  }
+
+  /**renderCommit
+  * Appends a commit exactly as renderCommit(GHCommit, Appendable) does, from
+  * its details.
+  *
+  * @return false if there is no commit.
+  */
+  public static boolean renderCommit(GDETCommitDetails commit, Appendable out)
+      throws IOException {
+    if (commit == null) {
+      return false;
+    }
+    out.append(SHORT_SEPARATOR);
+    out.append(commit.getAuthorName()).append('\n');
+    out.append(String.valueOf(commit.getCommitDate())).append('\n');
+    out.append(commit.getMessage()).append('\n');
+    out.append(SHORT_SEPARATOR_END);
+    return true;
+  }
+
+  /**renderIssue
+  * Appends an issue's number, title and author.
+  *
+  * @return false if the author's profile could not be fetched.
+  */
+  public static boolean renderIssue(GHIssue issue, Appendable out) throws IOException {
+    String author;
+    try {
+      author = GithubDataExtractionTool.getGHUserName(issue.getUser());
+    }
+    catch (IOException e) {
+      return false;
+    }
+    out.append(SHORT_SEPARATOR);
+    out.append('#');
+    appendInt(out, issue.getNumber());
+    out.append(' ').append(issue.getTitle()).append('\n');
+    out.append(author).append('\n');
+    out.append(SHORT_SEPARATOR_END);
+    return true;
+  }
+
+  /**renderIssue
+  * Appends an issue exactly as renderIssue(GHIssue, Appendable) does, from
+  * its details, looking its author's name up by login.
+  *
+  * @return false if there is no issue or its author could not be fetched.
+  */
+  public static boolean renderIssue(GDETIssueDetails issue, Appendable out) throws IOException {
+    if (issue == null || issue.getUserLogin() == null) {
+      return false;
+    }
+    String author;
+    try {
+      author = GithubDataExtractionTool.getUserName(issue.getUserLogin());
+    }
+    catch (IOException e) {
+      return false;
+    }
+    out.append(SHORT_SEPARATOR);
+    out.append('#');
+    appendInt(out, issue.getNumber());
+    out.append(' ').append(issue.getTitle()).append('\n');
+    out.append(author).append('\n');
+    out.append(SHORT_SEPARATOR_END);
+    return true;
+  }
+
+  /**renderBranch
+  * Appends a branch's name and head SHA.
+  *
+  * @return false if there is no branch.
+  */
+  public static boolean renderBranch(GHBranch branch, Appendable out) throws IOException {
+    if (branch == null) {
+      return false;
+    }
+    out.append(LONG_SEPARATOR);
+    out.append(branch.getName()).append('\n');
+    out.append("SHA: ").append(branch.getSHA1()).append('\n');
+    out.append(LONG_SEPARATOR_END);
+    return true;
+  }
+
+  /**renderPullRequest
+  * Appends a merged pull request's title, authors, dates and size.
+  *
+  * @return false if the pull request was not merged or its details could not
+  *   be fetched.
+  */
+  public static boolean renderPullRequest(GHPullRequest pr, Appendable out) throws IOException {
+    String createdBy;
+    String mergedBy;
+    Date createdAt;
+    int additions;
+    int deletions;
+    int commits;
+    try {
+      createdBy = GithubDataExtractionTool.getGHUserName(pr.getUser());
+      createdAt = pr.getCreatedAt();
+      mergedBy = GithubDataExtractionTool.getGHUserName(pr.getMergedBy());
+      additions = pr.getAdditions();
+      deletions = pr.getDeletions();
+      commits = pr.getCommits();
+    }
+    catch (IOException e) {
+      return false;
+    }
+    catch (NullPointerException e) {
+      return false;
+    }
+    out.append(LONG_SEPARATOR);
+    out.append(pr.getTitle()).append('\n');
+    out.append("Created By: ").append(createdBy).append('\n');
+    out.append("Created Date: ").append(String.valueOf(createdAt)).append('\n');
+    out.append("Merged By: ").append(mergedBy).append('\n');
+    out.append("Merged Date:").append(String.valueOf(pr.getMergedAt())).append('\n');
+    out.append("\nAdditions: ");
+    appendInt(out, additions);
+    out.append("\nDeletions: ");
+    appendInt(out, deletions);
+    out.append("\nNumber of Commits: ");
+    appendInt(out, commits);
+    out.append('\n');
+    out.append(LONG_SEPARATOR_END);
+    return true;
+  }
+
+  /**renderPullRequest
+  * Appends a merged pull request exactly as renderPullRequest(GHPullRequest,
+  * Appendable) does, from details that are already fetched.
+  *
+  * @return false if the pull request has no merging user.
+  */
+  public static boolean renderPullRequest(GDETPullRequestDetails pr, Appendable out)
+      throws IOException {
+    if (pr == null || pr.getMergedByLogin() == null) {
+      return false;
+    }
+    out.append(LONG_SEPARATOR);
+    out.append(pr.getTitle()).append('\n');
+    out.append("Created By: ").append(pr.getUserName()).append('\n');
+    out.append("Created Date: ").append(String.valueOf(pr.getCreatedAt())).append('\n');
+    out.append("Merged By: ").append(pr.getMergedByName()).append('\n');
+    out.append("Merged Date:").append(String.valueOf(pr.getMergedAt())).append('\n');
+    out.append("\nAdditions: ");
+    appendInt(out, pr.getAdditions());
+    out.append("\nDeletions: ");
+    appendInt(out, pr.getDeletions());
+    out.append("\nNumber of Commits: ");
+    appendInt(out, pr.getCommits());
+    out.append('\n');
+    out.append(LONG_SEPARATOR_END);
+    return true;
+  }
+
+  /**renderPullRequestReviewComment
+  * Appends a review comment's author and body.
+  *
+  * @return false if there is no comment or its author could not be fetched.
+  */
+  public static boolean renderPullRequestReviewComment(GHPullRequestReviewComment prc,
+      Appendable out) throws IOException {
+    String author;
+    try {
+      author = GithubDataExtractionTool.getGHUserName(prc.getUser());
+    }
+    catch (IOException e) {
+      return false;
+    }
+    catch (NullPointerException e) {
+      return false;
+    }
+    out.append(LONG_SEPARATOR);
+    out.append("Comment Created By: ").append(author).append('\n');
+    out.append(prc.getBody());
+    out.append(LONG_SEPARATOR_END);
+    return true;
+  }
+
+  /**renderPullRequestReviewComment
+  * Appends a review comment exactly as renderPullRequestReviewComment(
+  * GHPullRequestReviewComment, Appendable) does, from its details.
+  *
+  * @return false if there is no comment or its author could not be fetched.
+  */
+  public static boolean renderPullRequestReviewComment(GDETReviewCommentDetails prc,
+      Appendable out) throws IOException {
+    if (prc == null || prc.getUserLogin() == null) {
+      return false;
+    }
+    String author;
+    try {
+      author = GithubDataExtractionTool.getUserName(prc.getUserLogin());
+    }
+    catch (IOException e) {
+      return false;
+    }
+    out.append(LONG_SEPARATOR);
+    out.append("Comment Created By: ").append(author).append('\n');
+    out.append(prc.getBody());
+    out.append(LONG_SEPARATOR_END);
+    return true;
+  }
+
+  /**renderRepositoryMetaData
+  * Appends a repository's name and owner between separators.
+  *
+  * @return true, the separators are written even without a repository.
+  */
+  public static boolean renderRepositoryMetaData(GHRepository repo, Appendable out)
+      throws IOException {
+    out.append(SHORT_SEPARATOR);
+    if (repo != null) {
+      out.append(repo.getName()).append('\n');
+      out.append("Owned by: ").append(repo.getOwnerName()).append('\n');
+    }
+    out.append(SHORT_SEPARATOR);
+    return true;
+  }
+
+  /**appendInt
+  * Appends the decimal form of <value>, without an intermediate string when
+  * <out> is a StringBuilder.
+  */
+  static void appendInt(Appendable out, int value) throws IOException {
+    if (out instanceof StringBuilder) {
+      ((StringBuilder) out).append(value);
+    }
+    else {
+      out.append(Integer.toString(value));
+    }
+  }
+}
@@ -0,0 +1,190 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**GDETReport
+* The human readable report of one repository: its metadata, then a section
+* for its commits, issues, per user counts, pull requests, review comments
+* and branches.
+*/
+public final class GDETReport {
+
+  private static final String START_SECTION =
+    "\n\n" + GDETRecordRenderer.SHORT_SEPARATOR.replace('-', '*');
+  private static final String END_SECTION =
+    GDETRecordRenderer.SHORT_SEPARATOR.replace('-', '*') + "\n\n";
+
+  private GDETReport() {}
+
+  /**write
+  * Writes the human readable report of <snapshot> to <out>, one section per
+  * record type and per user count.
+  */
+  public static void write( GDETOutputHandler out, GDETRepositorySnapshot snapshot )
+      throws IOException {
+    write(out, snapshot, null);
+  }
+
+  /**write
+  * Writes the report like write(out, snapshot) and, unless <metrics> is
+  * null, records how many records each section wrote and how long it took,
+  * including fetching the records on first use.
+  */
+  public static void write( GDETOutputHandler out, GDETRepositorySnapshot snapshot,
+      GDETMetrics metrics ) throws IOException {
+    long start = System.nanoTime();
+    GDETRecordRenderer.renderRepositoryMetaData(snapshot.getRepository(), out);
+    out.endRecord();
+    start = section(metrics, "repository", 1, start);
+
+    //Print Commits
+    out.write(START_SECTION);
+    out.write("\n");
+    out.write("COMMITS\n");
+    out.write(END_SECTION);
+    int records = 0;
+    for (GDETCommitDetails commit : snapshot.getCommitDetails()) {
+      GDETRecordRenderer.renderCommit(commit, out);
+      out.endRecord();
+      records++;
+    }
+    start = section(metrics, "commits", records, start);
+
+    //Print Issues
+    out.write(START_SECTION);
+    out.write("ISSUES\n");
+    out.write(END_SECTION);
+    records = 0;
+    for (GDETIssueDetails issue : snapshot.getIssueDetails()) {
+      GDETRecordRenderer.renderIssue(issue, out);
+      out.endRecord();
+      records++;
+    }
+    start = section(metrics, "issues", records, start);
+
+    //Print Count Per User
+    records = writeCounts(out, "COMMIT-COUNT-PER-USER", "Commit Count",
+      snapshot.getCommitCountPerUser());
+    records += writeCounts(out, "PULL-REQUEST-OPENED-COUNT-PER-USER", "PR Opened Count",
+      snapshot.getPullRequestCountPerUser(false));
+    records += writeCounts(out, "PULL-REQUEST-MERGED-COUNT-PER-USER", "PR Merged Count",
+      snapshot.getPullRequestCountPerUser(true));
+    records += writeCounts(out, "ISSUE-CREATED-COUNT-PER-USER", "PR Merged Count",
+      snapshot.getIssueCountPerUser());
+    start = section(metrics, "countsPerUser", records, start);
+
+    //Print Pull Requests
+    out.write(START_SECTION);
+    out.write("Pull Requests\n");
+    out.write(END_SECTION);
+
+    records = 0;
+    out.write("Open Pull Requests\n");
+    for (GDETPullRequestDetails opr : snapshot.getPullRequestDetails(GHIssueState.OPEN)) {
+      GDETRecordRenderer.renderPullRequest(opr, out);
+      out.endRecord();
+      records++;
+    }
+    out.write("Closed Pull Requests\n");
+    for (GDETPullRequestDetails cpr : snapshot.getPullRequestDetails(GHIssueState.CLOSED)) {
+      GDETRecordRenderer.renderPullRequest(cpr, out);
+      out.endRecord();
+      records++;
+    }
+    start = section(metrics, "pullRequests", records, start);
+
+    //Print Pull Request Comments
+    out.write(START_SECTION);
+    out.write("Pull Request Review Comments\n");
+    out.write(END_SECTION);
+
+    records = 0;
+    for (GDETReviewCommentDetails pcr : snapshot.getReviewCommentDetails()) {
+      GDETRecordRenderer.renderPullRequestReviewComment(pcr, out);
+      out.endRecord();
+      records++;
+    }
+    start = section(metrics, "reviewComments", records, start);
+
+    out.write(START_SECTION);
+    out.write("Branches\n");
+    out.write(END_SECTION);
+
+    records = 0;
+    for (GHBranch gb : snapshot.getBranches()) {
+      GDETRecordRenderer.renderBranch(gb, out);
+      out.endRecord();
+      records++;
+    }
+    section(metrics, "branches", records, start);
+  }
+
+  /* records a finished section and returns the start of the next one */
+  private static long section( GDETMetrics metrics, String name, int records, long start ) {
+    long now = System.nanoTime();
+    if (metrics != null) {
+      metrics.recordSection(name, records, now - start);
+    }
+    return now;
+  }
+
+  /**writeCounts
+  * Writes a section titled <title> listing each user in <counter>, most
+  * counted first, as "User: <name>    <label>: <count>".
+  *
+  * @return:
+  *   int - the number of users written.
+  */
+  public static int writeCounts( GDETOutputHandler out, String title, String label,
+      GDETUserCounter counter ) throws IOException {
+    out.write(START_SECTION);
+    out.write(title);
+    out.write("\n");
+    out.write(END_SECTION);
+    int written = 0;
+    for (GDETUserCounter.Entry user : counter.sorted()) {
+      out.write(String.format("User: %-20s    %s: %d\n",
+        GithubDataExtractionTool.getUserNameWithFallback(user), label, user.getCount()));
+      out.endRecord();
+      written++;
+    }
+    return written;
+  }
+
+  /**writeChurn
+  * Writes the lines added and deleted per user, most churn first, and per
+  * week, oldest first.
+  *
+  * @return:
+  *   int - the number of users and weeks written.
+  */
+  public static int writeChurn( GDETOutputHandler out, GDETChurnAggregator.Churn churn )
+      throws IOException {
+    out.write(START_SECTION);
+    out.write("CHURN-PER-USER\n");
+    out.write(END_SECTION);
+    int written = 0;
+    for (Map.Entry<String, GDETChurnAggregator.Totals> user : churn.getPerAuthor().entrySet()) {
+      GDETChurnAggregator.Totals totals = user.getValue();
+      out.write(String.format("User: %-20s    Commits: %d    Additions: %d    Deletions: %d\n",
+        GithubDataExtractionTool.getUserNameWithFallback(user.getKey()), totals.getCommits(),
+        totals.getAdditions(), totals.getDeletions()));
+      out.endRecord();
+      written++;
+    }
+    out.write(START_SECTION);
+    out.write("CHURN-PER-WEEK\n");
+    out.write(END_SECTION);
+    for (Map.Entry<LocalDate, GDETChurnAggregator.Totals> week : churn.getPerWeek().entrySet()) {
+      GDETChurnAggregator.Totals totals = week.getValue();
+      out.write(String.format("Week of %s    Commits: %d    Additions: %d    Deletions: %d\n",
+        week.getKey(), totals.getCommits(), totals.getAdditions(), totals.getDeletions()));
+      out.endRecord();
+      written++;
+    }
+    return written;
+  }
+}
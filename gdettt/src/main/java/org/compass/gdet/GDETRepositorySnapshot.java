@@ -0,0 +1,364 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**GDETRepositorySnapshot
+* Everything extracted from one repository, with each listing fetched from
+* github at most once.  Sections that only need part of a listing (open or
+* closed pull requests, merged pull requests) filter the shared copy locally
+* instead of asking github again, and every aggregate is computed over the
+* same data that is printed.  Every listing is read through
+* GithubDataExtractionTool's lazily paged stream* getters.
+*
+* Pull request details (sizes, who merged them) can come from a
+* GDETGraphQLPullRequests backend, which fetches them a hundred at a time,
+* instead of one REST request per pull request.
+*
+* Commits, issues and review comments are kept as GDETCommitDetails,
+* GDETIssueDetails and GDETReviewCommentDetails, read as each listing page
+* arrives, rather than as the GH* objects github-api parses them into; those
+* retain every field and embedded user of the JSON and cost an order of
+* magnitude more heap per record.  The GH* listings can still be fetched, but
+* are fetched separately.
+*
+* With a GDETGitClone of the repository, commit details are read from the
+* clone instead of the API.
+*
+* Each section is fetched under its own lock, so different sections can be
+* fetched from different threads at once; plan() adds a job per section to
+* a GDETJobPlanner to do so.
+*/
+public class GDETRepositorySnapshot {
+
+  private final GHRepository repo;
+  private final int parallelism;
+  private final GDETGraphQLPullRequests graphQL;
+  private volatile GDETGitClone clone;
+
+  /* each section has its own lock, so that sections can be fetched at once */
+  private final Object commitsLock = new Object();
+  private final Object commitDetailsLock = new Object();
+  private final Object issuesLock = new Object();
+  private final Object issueDetailsLock = new Object();
+  private final Object pullRequestsLock = new Object();
+  private final Object pullRequestDetailsLock = new Object();
+  private final Object reviewCommentsLock = new Object();
+  private final Object reviewCommentDetailsLock = new Object();
+  private final Object branchesLock = new Object();
+
+  private List<GHCommit> commits;
+  private List<GDETCommitDetails> commitDetails;
+  private List<GHIssue> issues;
+  private List<GDETIssueDetails> issueDetails;
+  private List<GHPullRequest> pullRequests;
+  private List<GDETPullRequestDetails> pullRequestDetails;
+  private List<GHPullRequestReviewComment> reviewComments;
+  private List<GDETReviewCommentDetails> reviewCommentDetails;
+  private List<GHBranch> branches;
+
+  /**Constructor
+  * @params:
+  *   repo - the repository to snapshot
+  *   parallelism - how many pull requests' review comments to fetch at once
+  */
+  public GDETRepositorySnapshot(GHRepository repo, int parallelism) {
+    this(repo, parallelism, null);
+  }
+
+  /**Constructor
+  * @params:
+  *   repo - the repository to snapshot
+  *   parallelism - how many pull requests' review comments to fetch at once
+  *   graphQL - where pull request details are fetched from, or null to read
+  *     them from each pull request through the REST API
+  */
+  public GDETRepositorySnapshot(GHRepository repo, int parallelism,
+      GDETGraphQLPullRequests graphQL) {
+    this.repo = repo;
+    this.parallelism = parallelism;
+    this.graphQL = graphQL;
+  }
+
+  /**setLocalClone
+  * Reads the snapshot's commit details from <clone> rather than the API.
+  * If the clone cannot be read, they are fetched from the API instead.
+  *
+  * @return this snapshot.
+  */
+  public GDETRepositorySnapshot setLocalClone(GDETGitClone clone) {
+    this.clone = clone;
+    return this;
+  }
+
+  public GHRepository getRepository() {
+    return repo;
+  }
+
+  /**getCommits
+  * @return the repository's commits, fetched on first use.  Prefer
+  *   getCommitDetails(), which the snapshot's sections use.
+  */
+  public List<GHCommit> getCommits() {
+    synchronized (commitsLock) {
+      if (commits == null) {
+        commits = GithubDataExtractionTool.streamCommits(repo).collect(Collectors.toList());
+      }
+      return commits;
+    }
+  }
+
+  /**getCommitDetails
+  * @return the details of the repository's commits, fetched on first use
+  *   from the local clone if there is one.
+  */
+  public List<GDETCommitDetails> getCommitDetails() {
+    synchronized (commitDetailsLock) {
+      if (commitDetails == null && clone != null) {
+        try {
+          commitDetails = clone.getCommitDetails();
+        }
+        catch (IOException e) {
+          System.err.println("Could not read the clone, reading commits from the API: " + e);
+        }
+      }
+      if (commitDetails == null) {
+        commitDetails = GithubDataExtractionTool.getCommitDetails(repo);
+      }
+      return commitDetails;
+    }
+  }
+
+  /**getIssues
+  * @return the repository's issues in every state, fetched on first use.
+  *   Prefer getIssueDetails(), which the snapshot's sections use.
+  */
+  public List<GHIssue> getIssues() {
+    synchronized (issuesLock) {
+      if (issues == null) {
+        issues = GithubDataExtractionTool.streamIssues(repo).collect(Collectors.toList());
+      }
+      return issues;
+    }
+  }
+
+  /**getIssueDetails
+  * @return the details of the repository's issues in every state, fetched
+  *   on first use.
+  */
+  public List<GDETIssueDetails> getIssueDetails() {
+    synchronized (issueDetailsLock) {
+      if (issueDetails == null) {
+        issueDetails = GithubDataExtractionTool.getIssueDetails(repo);
+      }
+      return issueDetails;
+    }
+  }
+
+  /**getPullRequests
+  * @return the repository's pull requests in every state, fetched on first use.
+  */
+  public List<GHPullRequest> getPullRequests() {
+    synchronized (pullRequestsLock) {
+      if (pullRequests == null) {
+        pullRequests = GithubDataExtractionTool.streamPullRequests(repo, GHIssueState.ALL)
+          .collect(Collectors.toList());
+      }
+      return pullRequests;
+    }
+  }
+
+  /**getPullRequests
+  * Filters the snapshot's pull requests by state without refetching them.
+  *
+  * @params:
+  *   state - the state of the pull requests you want
+  *
+  * @return:
+  *   List<GHPullRequest> - the pull requests in <state>.
+  */
+  public List<GHPullRequest> getPullRequests(GHIssueState state) {
+    if (state == GHIssueState.ALL) {
+      return getPullRequests();
+    }
+    List<GHPullRequest> matching = new ArrayList<GHPullRequest>();
+    for (GHPullRequest pr : getPullRequests()) {
+      if (pr.getState() == state) {
+        matching.add(pr);
+      }
+    }
+    return matching;
+  }
+
+  /**getPullRequestDetails
+  * @return the details of the repository's pull requests in every state,
+  *   fetched on first use.  If the GraphQL backend fails, the details are
+  *   read through the REST API instead, <parallelism> pull requests at a
+  *   time; pull requests whose details cannot be read are left out.
+  */
+  public List<GDETPullRequestDetails> getPullRequestDetails() {
+    synchronized (pullRequestDetailsLock) {
+      if (pullRequestDetails == null) {
+        if (graphQL != null) {
+          try {
+            pullRequestDetails = graphQL.getPullRequests(repo, GHIssueState.ALL);
+          }
+          catch (IOException e) {
+            System.err.println("Could not read pull requests through GraphQL, "
+              + "reading them through the REST API: " + e);
+          }
+        }
+        if (pullRequestDetails == null) {
+          pullRequestDetails = GithubDataExtractionTool.getPullRequestDetails(
+            getPullRequests(), parallelism);
+        }
+      }
+      return pullRequestDetails;
+    }
+  }
+
+  /**getPullRequestDetails
+  * Filters the snapshot's pull request details by state without refetching
+  * them.
+  */
+  public List<GDETPullRequestDetails> getPullRequestDetails(GHIssueState state) {
+    if (state == GHIssueState.ALL) {
+      return getPullRequestDetails();
+    }
+    List<GDETPullRequestDetails> matching = new ArrayList<GDETPullRequestDetails>();
+    for (GDETPullRequestDetails pr : getPullRequestDetails()) {
+      if (pr.getState() == state) {
+        matching.add(pr);
+      }
+    }
+    return matching;
+  }
+
+  /**getPullRequestReviewComments
+  * @return the review comments of every pull request in the snapshot, fetched
+  *   on first use, or an empty list if they could not be fetched.  Prefer
+  *   getReviewCommentDetails(), which the snapshot's sections use.
+  */
+  public List<GHPullRequestReviewComment> getPullRequestReviewComments() {
+    synchronized (reviewCommentsLock) {
+      if (reviewComments == null) {
+        reviewComments = GithubDataExtractionTool.getPullRequestReviewComments(
+          getPullRequests(), parallelism);
+        if (reviewComments == null) {
+          reviewComments = Collections.emptyList();
+        }
+      }
+      return reviewComments;
+    }
+  }
+
+  /**getReviewCommentDetails
+  * @return the details of the review comments of every pull request in the
+  *   snapshot, fetched on first use, or an empty list if they could not be
+  *   fetched.
+  */
+  public List<GDETReviewCommentDetails> getReviewCommentDetails() {
+    synchronized (reviewCommentDetailsLock) {
+      if (reviewCommentDetails == null) {
+        reviewCommentDetails = GithubDataExtractionTool.getPullRequestReviewCommentDetails(
+          getPullRequests(), parallelism);
+        if (reviewCommentDetails == null) {
+          reviewCommentDetails = Collections.emptyList();
+        }
+      }
+      return reviewCommentDetails;
+    }
+  }
+
+  /**getBranches
+  * @return the repository's branches, fetched on first use, or an empty list
+  *   if they could not be fetched.
+  */
+  public List<GHBranch> getBranches() {
+    synchronized (branchesLock) {
+      if (branches == null) {
+        branches = GithubDataExtractionTool.getBranches(repo);
+        if (branches == null) {
+          branches = Collections.emptyList();
+        }
+      }
+      return branches;
+    }
+  }
+
+  /**plan
+  * Adds a job to <planner> for fetching each section of the snapshot, and,
+  * unless <cache> is null, one for prefetching its users' profiles into
+  * <cache> once the sections they come from are fetched.  Review comments
+  * and pull request details read through the REST API wait for the pull
+  * request listing; every other section is independent.
+  *
+  * @return <planner>.
+  */
+  public GDETJobPlanner plan(GDETJobPlanner planner, final GDETUserProfileCache cache) {
+    planner.add("commits", () -> getCommitDetails().size());
+    planner.add("issues", () -> getIssueDetails().size());
+    planner.add("pullRequests", () -> getPullRequests().size());
+    if (graphQL != null) {
+      planner.add("pullRequestDetails", () -> getPullRequestDetails().size());
+    }
+    else {
+      planner.add("pullRequestDetails", () -> getPullRequestDetails().size(), "pullRequests");
+    }
+    planner.add("reviewComments", () -> getReviewCommentDetails().size(), "pullRequests");
+    planner.add("branches", () -> getBranches().size());
+    if (cache != null) {
+      planner.add("userProfiles", () -> {
+        prefetchUserProfiles(cache);
+        return 0;
+      }, "commits", "issues", "pullRequestDetails", "reviewComments");
+    }
+    return planner;
+  }
+
+  /**prefetchUserProfiles
+  * Fetches the profile of every distinct author of the snapshot's commits,
+  * issues, pull requests and review comments into <cache> ahead of
+  * rendering.  With a GraphQL backend the pull request details are fetched
+  * first, since they already carry their users' names.
+  */
+  public void prefetchUserProfiles(GDETUserProfileCache cache) {
+    if (graphQL != null) {
+      getPullRequestDetails();
+    }
+    getCommitDetails();
+    getIssueDetails();
+    getReviewCommentDetails();
+    try {
+      for (GHPullRequest pr : getPullRequests()) {
+        cache.register(pr.getUser());
+      }
+    }
+    catch (IOException e) {
+      System.err.println("Could not read the authors of pull requests: " + e);
+    }
+    cache.registerAll(GithubDataExtractionTool.getUserProfileCache());
+    cache.prefetchRegistered(parallelism);
+  }
+
+  public GDETUserCounter getCommitCountPerUser() {
+    return GDETCommitDetails.countPerUser(getCommitDetails());
+  }
+
+  public GDETUserCounter getIssueCountPerUser() {
+    return GDETIssueDetails.countPerUser(getIssueDetails());
+  }
+
+  /**getPullRequestCountPerUser
+  * Counts pull requests per user who opened (or merged) them, from the pull
+  * request details, since reading who merged a pull request otherwise costs
+  * a request per pull request, one at a time.
+  */
+  public GDETUserCounter getPullRequestCountPerUser(boolean mergedBy) {
+    return GDETPullRequestDetails.countPerUser(getPullRequestDetails(), mergedBy);
+  }
+}
@@ -0,0 +1,295 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.HttpConnector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**GDETResponseCache
+* An HttpConnector that keeps GET responses on local disk and revalidates
+* them with If-None-Match / If-Modified-Since.  GitHub does not count 304
+* responses against the rate limit, so re-running an extraction over an
+* unchanged repository costs almost no quota.  Entries are keyed by URL,
+* credentials and Accept header, and the least recently used entries are
+* evicted once the cache grows past its size limit.
+*/
+public class GDETResponseCache implements HttpConnector {
+
+  private static final int ENTRY_MAGIC = 0x47444331;
+  private static final String ENTRY_SUFFIX = ".entry";
+
+  private final HttpConnector delegate;
+  private final Path directory;
+  private final long maxBytes;
+
+  /* access ordered index of cache key to entry size on disk */
+  private final LinkedHashMap<String, Long> index =
+    new LinkedHashMap<String, Long>(16, 0.75f, true);
+  private long totalBytes;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  /**Constructor
+  * Opens (or creates) a response cache in <directory>.
+  *
+  * @params:
+  *   delegate - the connector used to reach GitHub
+  *   directory - where cache entries are stored
+  *   maxBytes - the size the cache is trimmed back to after each store
+  */
+  public GDETResponseCache( HttpConnector delegate, Path directory, long maxBytes )
+      throws IOException {
+    this.delegate = delegate;
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    Files.createDirectories(directory);
+    loadIndex();
+  }
+
+  /**defaultDirectory
+  * @return the cache location used by GitHubAPIDemo, ~/.gdet/cache
+  */
+  public static Path defaultDirectory() {
+    return java.nio.file.Paths.get(System.getProperty("user.home"), ".gdet", "cache");
+  }
+
+  public HttpURLConnection connect( URL url ) throws IOException {
+    return new CachingConnection(url);
+  }
+
+  /**getHitCount
+  * @return the number of requests answered from the cache after a 304.
+  */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**getMissCount
+  * @return the number of cacheable requests that needed a full response.
+  */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**getEvictionCount
+  * @return the number of entries removed to stay under the size limit.
+  */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /**getSize
+  * @return the number of bytes currently held on disk.
+  */
+  public synchronized long getSize() {
+    return totalBytes;
+  }
+
+  private void loadIndex() throws IOException {
+    List<Path> entries = new ArrayList<Path>();
+    try ( DirectoryStream<Path> dir = Files.newDirectoryStream(directory, "*" + ENTRY_SUFFIX) ) {
+      for ( Path entry : dir ) {
+        entries.add(entry);
+      }
+    }
+    Map<Path, FileTime> touched = new HashMap<Path, FileTime>();
+    for ( Path entry : entries ) {
+      touched.put(entry, Files.getLastModifiedTime(entry));
+    }
+    Collections.sort(entries, Comparator.comparing(touched::get));
+    for ( Path entry : entries ) {
+      String name = entry.getFileName().toString();
+      long size = Files.size(entry);
+      index.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), size);
+      totalBytes += size;
+    }
+  }
+
+  private Path entryPath( String key ) {
+    return directory.resolve(key + ENTRY_SUFFIX);
+  }
+
+  static String key( String url, String authorization, String accept ) {
+    try {
+      MessageDigest sha = MessageDigest.getInstance("SHA-256");
+      sha.update(url.getBytes(StandardCharsets.UTF_8));
+      sha.update((byte) 0);
+      if ( authorization != null ) {
+        sha.update(authorization.getBytes(StandardCharsets.UTF_8));
+      }
+      sha.update((byte) 0);
+      if ( accept != null ) {
+        sha.update(accept.getBytes(StandardCharsets.UTF_8));
+      }
+      StringBuilder hex = new StringBuilder();
+      for ( byte b : sha.digest() ) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+        hex.append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    } catch ( NoSuchAlgorithmException e ) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private GDETHttpConnection.Response read( String key ) {
+    synchronized ( this ) {
+      if ( index.get(key) == null ) {
+        return null;
+      }
+    }
+    Path path = entryPath(key);
+    try ( DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(path))) ) {
+      if ( in.readInt() != ENTRY_MAGIC ) {
+        return null;
+      }
+      int code = in.readInt();
+      String message = in.readUTF();
+      Map<String, List<String>> headers =
+        new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+      for ( int h = in.readInt(); h > 0; h-- ) {
+        String name = in.readUTF();
+        List<String> values = new ArrayList<String>();
+        for ( int v = in.readInt(); v > 0; v-- ) {
+          values.add(in.readUTF());
+        }
+        headers.put(name, values);
+      }
+      byte[] body = new byte[in.readInt()];
+      in.readFully(body);
+      Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+      return new GDETHttpConnection.Response(code, message, headers, body);
+    } catch ( IOException e ) {
+      remove(key);
+      return null;
+    }
+  }
+
+  private void store( String key, GDETHttpConnection.Response response ) {
+    Path path = entryPath(key);
+    try {
+      Path tmp = Files.createTempFile(directory, key, ".tmp");
+      try ( DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tmp))) ) {
+        out.writeInt(ENTRY_MAGIC);
+        out.writeInt(response.code);
+        out.writeUTF(response.message == null ? "" : response.message);
+        out.writeInt(response.headers.size());
+        for ( Map.Entry<String, List<String>> header : response.headers.entrySet() ) {
+          out.writeUTF(header.getKey());
+          out.writeInt(header.getValue().size());
+          for ( String value : header.getValue() ) {
+            out.writeUTF(value);
+          }
+        }
+        out.writeInt(response.body.length);
+        out.write(response.body);
+      }
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      long size = Files.size(path);
+      synchronized ( this ) {
+        Long old = index.put(key, size);
+        totalBytes += size - (old == null ? 0 : old);
+        evict();
+      }
+    } catch ( IOException e ) {
+      remove(key);
+    }
+  }
+
+  private synchronized void remove( String key ) {
+    Long old = index.remove(key);
+    if ( old != null ) {
+      totalBytes -= old;
+    }
+    try {
+      Files.deleteIfExists(entryPath(key));
+    } catch ( IOException e ) {}
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+    while ( totalBytes > maxBytes && eldest.hasNext() ) {
+      Map.Entry<String, Long> entry = eldest.next();
+      eldest.remove();
+      totalBytes -= entry.getValue();
+      evictions.incrementAndGet();
+      try {
+        Files.deleteIfExists(entryPath(entry.getKey()));
+      } catch ( IOException e ) {}
+    }
+  }
+
+  private class CachingConnection extends GDETHttpConnection {
+
+    CachingConnection( URL url ) {
+      super(url);
+    }
+
+    protected void execute() throws IOException {
+      HttpURLConnection target = delegate.connect(url);
+      if ( !"GET".equals(getRequestMethod()) ) {
+        Response response = forward(target, Collections.<String, String>emptyMap());
+        setResponse(response.code, response.message, response.headers, response.body);
+        return;
+      }
+      String key = key(url.toString(), requestHeader("Authorization"), requestHeader("Accept"));
+      Response cached = read(key);
+      Map<String, String> conditions = new HashMap<String, String>();
+      if ( cached != null ) {
+        if ( cached.header("ETag") != null ) {
+          conditions.put("If-None-Match", cached.header("ETag"));
+        }
+        if ( cached.header("Last-Modified") != null ) {
+          conditions.put("If-Modified-Since", cached.header("Last-Modified"));
+        }
+      }
+      Response response = forward(target, conditions);
+      if ( response.code == HTTP_NOT_MODIFIED && cached != null ) {
+        hits.incrementAndGet();
+        Map<String, List<String>> headers =
+          new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+        headers.putAll(cached.headers);
+        for ( Map.Entry<String, List<String>> header : response.headers.entrySet() ) {
+          if ( !header.getKey().regionMatches(true, 0, "Content-", 0, 8) ) {
+            headers.put(header.getKey(), header.getValue());
+          }
+        }
+        setResponse(cached.code, cached.message, headers, cached.body);
+        return;
+      }
+      misses.incrementAndGet();
+      if ( response.code == HTTP_OK &&
+          (response.header("ETag") != null || response.header("Last-Modified") != null) ) {
+        store(key, response);
+      }
+      setResponse(response.code, response.message, response.headers, response.body);
+    }
+  }
+}
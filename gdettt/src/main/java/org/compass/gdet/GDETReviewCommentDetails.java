@@ -0,0 +1,66 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import java.io.IOException;
+import java.util.Date;
+
+/**GDETReviewCommentDetails
+* The fields of a pull request review comment that the report renders and
+* exports, read out of a GHPullRequestReviewComment as its listing page is
+* parsed.  File paths and the user's login are shared through
+* GDETDictionary.SHARED, since many comments repeat them.
+*/
+public final class GDETReviewCommentDetails {
+
+  private final long id;
+  private final int userLogin;
+  private final String path;
+  private final int position;
+  private final long createdAt;
+  private final String body;
+
+  GDETReviewCommentDetails(long id, String userLogin, String path, int position,
+      Date createdAt, String body) {
+    this.id = id;
+    this.userLogin = GDETDictionary.SHARED.id(userLogin);
+    this.path = GDETDictionary.SHARED.intern(path);
+    this.position = position;
+    this.createdAt = GDETIssueDetails.toMillis(createdAt);
+    this.body = body;
+  }
+
+  /**of
+  * Reads the details of <prc> from its listing.
+  */
+  public static GDETReviewCommentDetails of(GHPullRequestReviewComment prc)
+      throws IOException {
+    GHUser user = prc.getUser();
+    GithubDataExtractionTool.getUserProfileCache().register(user);
+    return new GDETReviewCommentDetails(prc.getId(), user == null ? null : user.getLogin(),
+      prc.getPath(), prc.getPosition(), prc.getCreatedAt(), prc.getBody());
+  }
+
+  public long getId() {
+    return id;
+  }
+
+  public String getUserLogin() {
+    return GDETDictionary.SHARED.get(userLogin);
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public int getPosition() {
+    return position;
+  }
+
+  public Date getCreatedAt() {
+    return GDETIssueDetails.toDate(createdAt);
+  }
+
+  public String getBody() {
+    return body;
+  }
+}
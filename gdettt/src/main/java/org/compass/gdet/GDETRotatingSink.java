@@ -0,0 +1,568 @@
+package org.compass.gdet;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**GDETRotatingSink
+* A GDETOutputSink for long exports that writes a numbered series of files,
+* optionally gzipped, each with an index of where its records start.  Given
+* <directory>/<name>.<ext>, it writes <name>-00000.<ext>.gz,
+* <name>-00001.<ext>.gz and so on (without .gz when not compressing),
+* starting the next file at the first record boundary after a file reached
+* <maxBytes> of text or <maxRecords> records.  Writers mark record
+* boundaries with GDETOutputHandler.endRecord(); output without any is one
+* record and is never split.
+*
+* Text is encoded into blocks of at most BLOCK_SIZE bytes, cut after
+* RECORDS_PER_BLOCK records.  A single background thread compresses each
+* block into a gzip member of its own and appends it to the current file,
+* so the writer only waits for compression when BLOCKS_IN_FLIGHT blocks are
+* already queued.  A gzip file of several members is still an ordinary gzip
+* file.  Every block that starts with a record gets a line "<record>
+* <offset>" in <file>.idx, its record number within the file and the byte
+* offset of its member, so open() can start reading at any indexed block
+* without decompressing the ones before it.
+*/
+public class GDETRotatingSink implements GDETOutputSink {
+
+  public static final int BLOCK_SIZE = 256 << 10;
+  public static final int RECORDS_PER_BLOCK = 256;
+  public static final int BLOCKS_IN_FLIGHT = 4;
+  public static final String INDEX_SUFFIX = ".idx";
+
+  private static final Block CLOSE = new Block(null, -1, -1, null);
+
+  private final Path directory;
+  private final String prefix;
+  private final String suffix;
+  private final boolean compress;
+  private final long maxBytes;
+  private final long maxRecords;
+  private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+    .onMalformedInput(CodingErrorAction.REPLACE)
+    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private final BlockingQueue<ByteBuffer> free =
+    new ArrayBlockingQueue<ByteBuffer>(BLOCKS_IN_FLIGHT + 1);
+  private final BlockingQueue<Block> queue = new ArrayBlockingQueue<Block>(BLOCKS_IN_FLIGHT + 2);
+  private final List<Path> files = Collections.synchronizedList(new ArrayList<Path>());
+  private final Thread compressor;
+
+  /* written by the caller's thread only */
+  private ByteBuffer block;
+  private int fileIndex;
+  private long fileBytes;
+  private long fileRecords;
+  private long blockFirstRecord;
+  private int blockRecords;
+  private boolean inRecord;
+  private boolean closed;
+  /* a high surrogate that ended the last write, encoded with the next one */
+  private char pending;
+  private long bytesWritten;
+  private long handOffs;
+  private long stallNanos;
+  private long maxStallNanos;
+
+  /* written by the compressor thread only */
+  private volatile IOException failure;
+  private volatile long compressedBytes;
+
+  /**Constructor
+  * @params:
+  *   path - where the first file goes, before numbering, e.g. out/repo.ndjson
+  *   compress - whether to gzip the files
+  *   maxBytes - the text each file holds before the next one starts, or 0
+  *     for no limit
+  *   maxRecords - the records each file holds before the next one starts,
+  *     or 0 for no limit
+  */
+  public GDETRotatingSink( Path path, boolean compress, long maxBytes, long maxRecords )
+      throws IOException {
+    Path absolute = path.toAbsolutePath();
+    String name = absolute.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    this.directory = absolute.getParent();
+    this.prefix = dot > 0 ? name.substring(0, dot) : name;
+    this.suffix = (dot > 0 ? name.substring(dot) : "") + (compress ? ".gz" : "");
+    this.compress = compress;
+    this.maxBytes = maxBytes <= 0 ? Long.MAX_VALUE : maxBytes;
+    this.maxRecords = maxRecords <= 0 ? Long.MAX_VALUE : maxRecords;
+    Files.createDirectories(directory);
+    for ( int i = 0; i < BLOCKS_IN_FLIGHT; i++ ) {
+      free.add(ByteBuffer.allocate(BLOCK_SIZE));
+    }
+    block = ByteBuffer.allocate(BLOCK_SIZE);
+    compressor = new Thread(this::compressBlocks, "gdet-compress-" + prefix);
+    compressor.setDaemon(true);
+    compressor.start();
+  }
+
+  /**getFiles
+  * @return the files started so far, in order.
+  */
+  public List<Path> getFiles() {
+    synchronized ( files ) {
+      return new ArrayList<Path>(files);
+    }
+  }
+
+  /**fileName
+  * @return the name of file number <index> of the series.
+  */
+  String fileName( int index ) {
+    return String.format("%s-%05d%s", prefix, index, suffix);
+  }
+
+  public synchronized void write( CharSequence csq, int start, int end ) throws IOException {
+    if ( closed ) {
+      throw new IOException("Sink is closed");
+    }
+    checkFailure();
+    if ( !inRecord && start < end ) {
+      inRecord = true;
+      if ( block.position() == 0 ) {
+        blockFirstRecord = fileRecords;
+      }
+    }
+    if ( start == end ) {
+      return;
+    }
+    CharBuffer chars;
+    if ( pending != 0 ) {
+      chars = CharBuffer.wrap(new StringBuilder(end - start + 1)
+          .append(pending).append(csq, start, end));
+      pending = 0;
+    } else {
+      chars = CharBuffer.wrap(csq, start, end);
+    }
+    encode(chars, false);
+    /* the encoder leaves a high surrogate that may be paired by the next write */
+    if ( chars.hasRemaining() ) {
+      pending = chars.get();
+    }
+  }
+
+  private void encode( CharBuffer chars, boolean endOfInput ) throws IOException {
+    while ( true ) {
+      int before = block.position();
+      CoderResult result = encoder.encode(chars, block, endOfInput);
+      bytesWritten += block.position() - before;
+      fileBytes += block.position() - before;
+      if ( !result.isOverflow() ) {
+        break;
+      }
+      /* the block ends inside a record, so the next one gets no index line */
+      submit(false);
+    }
+  }
+
+  /**endRecord
+  * Ends the current record, cutting the block after RECORDS_PER_BLOCK
+  * records and starting the next file once this one is full.
+  */
+  public synchronized void endRecord() throws IOException {
+    if ( closed || !inRecord ) {
+      return;
+    }
+    if ( pending != 0 ) {
+      endText();
+    }
+    inRecord = false;
+    fileRecords++;
+    blockRecords++;
+    if ( fileRecords >= maxRecords || fileBytes >= maxBytes ) {
+      submit(true);
+      fileIndex++;
+      fileBytes = 0;
+      fileRecords = 0;
+    }
+    else if ( blockRecords >= RECORDS_PER_BLOCK ) {
+      submit(true);
+    }
+  }
+
+  /**startsSection
+  * @return true if the next record starts a file or a block that gets an
+  *   index line.
+  */
+  public synchronized boolean startsSection() {
+    return !inRecord && block.position() == 0;
+  }
+
+  /**flush
+  * Waits until everything written so far has been compressed and written
+  * to its file.
+  */
+  public synchronized void flush() throws IOException {
+    if ( closed ) {
+      return;
+    }
+    submit(!inRecord);
+    CountDownLatch written = new CountDownLatch(1);
+    enqueue(new Block(null, fileIndex, -1, written));
+    await(written);
+    checkFailure();
+  }
+
+  public synchronized void close() throws IOException {
+    if ( closed ) {
+      return;
+    }
+    try {
+      endText();
+      submit(true);
+      enqueue(CLOSE);
+      try {
+        compressor.join();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted closing " + fileName(fileIndex), e);
+      }
+    } finally {
+      closed = true;
+    }
+    checkFailure();
+  }
+
+  /* encodes a high surrogate nothing followed as a replacement and resets the
+     encoder, so that no text is carried past the end of a record */
+  private void endText() throws IOException {
+    encode(pending != 0 ? CharBuffer.wrap(new char[] { pending })
+        : CharBuffer.allocate(0), true);
+    pending = 0;
+    while ( encoder.flush(block).isOverflow() ) {
+      submit(false);
+    }
+    encoder.reset();
+  }
+
+  /* hands the current block to the compressor and takes a free one */
+  private void submit( boolean endsAtRecord ) throws IOException {
+    if ( block.position() > 0 ) {
+      block.flip();
+      enqueue(new Block(block, fileIndex, blockFirstRecord, null));
+      handOffs++;
+      long start = System.nanoTime();
+      try {
+        block = free.take();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted waiting for the compressor", e);
+      }
+      stalled(System.nanoTime() - start);
+      block.clear();
+    }
+    blockRecords = 0;
+    blockFirstRecord = endsAtRecord ? fileRecords : -1;
+  }
+
+  private void enqueue( Block next ) throws IOException {
+    long start = System.nanoTime();
+    try {
+      queue.put(next);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for the compressor", e);
+    }
+    stalled(System.nanoTime() - start);
+  }
+
+  private void await( CountDownLatch latch ) throws IOException {
+    long start = System.nanoTime();
+    try {
+      latch.await();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for the compressor", e);
+    }
+    stalled(System.nanoTime() - start);
+  }
+
+  private void stalled( long nanos ) {
+    stallNanos += nanos;
+    maxStallNanos = Math.max(maxStallNanos, nanos);
+  }
+
+  private void checkFailure() throws IOException {
+    IOException e = failure;
+    if ( e != null ) {
+      throw new IOException("Could not write " + prefix + suffix, e);
+    }
+  }
+
+  /* the compressor thread: writes each block to its file, in order */
+  private void compressBlocks() {
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    CRC32 crc = new CRC32();
+    byte[] out = new byte[BLOCK_SIZE / 2];
+    FileChannel channel = null;
+    BufferedWriter index = null;
+    int current = -1;
+    try {
+      while ( true ) {
+        Block next = queue.take();
+        if ( next == CLOSE ) {
+          break;
+        }
+        if ( next.written != null ) {
+          next.written.countDown();
+          continue;
+        }
+        try {
+          if ( failure != null ) {
+            continue;
+          }
+          if ( next.fileIndex != current ) {
+            closeFile(channel, index);
+            current = next.fileIndex;
+            Path file = directory.resolve(fileName(current));
+            files.add(file);
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            index = Files.newBufferedWriter(directory.resolve(fileName(current) + INDEX_SUFFIX),
+              StandardCharsets.UTF_8);
+          }
+          if ( next.firstRecord >= 0 ) {
+            index.write(next.firstRecord + " " + channel.position() + "\n");
+          }
+          long before = channel.position();
+          if ( compress ) {
+            writeMember(channel, next.data, deflater, crc, out);
+          }
+          else {
+            while ( next.data.hasRemaining() ) {
+              channel.write(next.data);
+            }
+          }
+          compressedBytes += channel.position() - before;
+        }
+        catch (IOException e) {
+          failure = e;
+        }
+        catch (RuntimeException e) {
+          failure = new IOException(e);
+        }
+        finally {
+          free.add(next.data);
+        }
+      }
+      closeFile(channel, index);
+    }
+    catch (InterruptedException e) {
+      failure = new IOException("Compressor interrupted", e);
+    }
+    catch (IOException e) {
+      failure = e;
+    }
+    finally {
+      deflater.end();
+    }
+  }
+
+  private static void closeFile( FileChannel channel, BufferedWriter index ) throws IOException {
+    if ( index != null ) {
+      index.close();
+    }
+    if ( channel != null ) {
+      channel.close();
+    }
+  }
+
+  /* writes <data> as one complete gzip member */
+  private static void writeMember( FileChannel channel, ByteBuffer data, Deflater deflater,
+      CRC32 crc, byte[] out ) throws IOException {
+    byte[] input = data.array();
+    int length = data.limit();
+    crc.reset();
+    crc.update(input, 0, length);
+    deflater.reset();
+    deflater.setInput(input, 0, length);
+    deflater.finish();
+    ByteBuffer header = ByteBuffer.wrap(new byte[] {
+      0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    });
+    writeFully(channel, header);
+    while ( !deflater.finished() ) {
+      int n = deflater.deflate(out);
+      writeFully(channel, ByteBuffer.wrap(out, 0, n));
+    }
+    ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    trailer.putInt((int) crc.getValue()).putInt(length).flip();
+    writeFully(channel, trailer);
+  }
+
+  private static void writeFully( FileChannel channel, ByteBuffer buffer ) throws IOException {
+    while ( buffer.hasRemaining() ) {
+      channel.write(buffer);
+    }
+  }
+
+  /**open
+  * Opens <file> of a series for reading from the start of <entry>'s block,
+  * decompressing it if it is gzipped.  The first record read is
+  * entry.getRecord().
+  */
+  public static InputStream open( Path file, Index.Entry entry ) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    InputStream in;
+    try {
+      channel.position(entry.getOffset());
+      in = Channels.newInputStream(channel);
+      if ( file.getFileName().toString().endsWith(".gz") ) {
+        in = new GZIPInputStream(in, 1 << 16);
+      }
+    }
+    catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    return in;
+  }
+
+  public synchronized long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**getCompressedBytes
+  * @return the bytes written to the files so far, after compression.
+  */
+  public long getCompressedBytes() {
+    return compressedBytes;
+  }
+
+  /**getFlushCount
+  * @return the number of blocks handed to the compressor.
+  */
+  public synchronized long getFlushCount() {
+    return handOffs;
+  }
+
+  /**getFlushNanos
+  * @return the total time writing waited for the compressor, which it only
+  *   does when BLOCKS_IN_FLIGHT blocks are queued, or to flush or close.
+  */
+  public synchronized long getFlushNanos() {
+    return stallNanos;
+  }
+
+  public synchronized long getMaxFlushNanos() {
+    return maxStallNanos;
+  }
+
+  /* a block of encoded text for one file, or a marker */
+  private static final class Block {
+    final ByteBuffer data;
+    final int fileIndex;
+    final long firstRecord;
+    final CountDownLatch written;
+
+    Block( ByteBuffer data, int fileIndex, long firstRecord, CountDownLatch written ) {
+      this.data = data;
+      this.fileIndex = fileIndex;
+      this.firstRecord = firstRecord;
+      this.written = written;
+    }
+  }
+
+  /**Index
+  * The record index of one file of a series.
+  */
+  public static final class Index {
+    private final List<Entry> entries;
+
+    private Index( List<Entry> entries ) {
+      this.entries = entries;
+    }
+
+    /**read
+    * Reads the index of <file>.  A file without one can only be read from
+    * its start.
+    */
+    public static Index read( Path file ) throws IOException {
+      List<Entry> entries = new ArrayList<Entry>();
+      Path path = file.resolveSibling(file.getFileName() + INDEX_SUFFIX);
+      if ( Files.exists(path) ) {
+        for ( String line : Files.readAllLines(path, StandardCharsets.UTF_8) ) {
+          int space = line.indexOf(' ');
+          if ( space > 0 ) {
+            entries.add(new Entry(Long.parseLong(line.substring(0, space)),
+              Long.parseLong(line.substring(space + 1))));
+          }
+        }
+      }
+      if ( entries.isEmpty() || entries.get(0).record != 0 ) {
+        entries.add(0, new Entry(0, 0));
+      }
+      return new Index(entries);
+    }
+
+    public List<Entry> getEntries() {
+      return Collections.unmodifiableList(entries);
+    }
+
+    /**entryFor
+    * @return the last entry at or before <record>.
+    */
+    public Entry entryFor( long record ) {
+      int low = 0;
+      int high = entries.size() - 1;
+      while ( low < high ) {
+        int middle = (low + high + 1) >>> 1;
+        if ( entries.get(middle).record <= record ) {
+          low = middle;
+        }
+        else {
+          high = middle - 1;
+        }
+      }
+      return entries.get(low);
+    }
+
+    /**Entry
+    * A record that starts a block, and the block's offset in the file.
+    */
+    public static final class Entry {
+      private final long record;
+      private final long offset;
+
+      Entry( long record, long offset ) {
+        this.record = record;
+        this.offset = offset;
+      }
+
+      public long getRecord() {
+        return record;
+      }
+
+      public long getOffset() {
+        return offset;
+      }
+    }
+  }
+}
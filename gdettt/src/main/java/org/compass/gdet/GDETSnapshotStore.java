@@ -0,0 +1,946 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**GDETSnapshotStore
+* A compact local copy of extracted repositories, so that they can be
+* analysed again without asking GitHub.
+*
+* Each repository is a directory of append-only segment files.  A Writer
+* fills a new segment and only renames it into place once it is complete,
+* so readers never see a partial segment and a crashed extraction leaves
+* nothing behind but a temporary file.  Segments are never rewritten: a
+* later extraction appends another segment, and readers let the newest copy
+* of a record win.  Segments are memory-mapped for reading.
+*
+* Records only keep what the per user aggregates and later analyses need.
+* Logins are written as indices into a dictionary shared by every
+* repository in the store, timestamps as epoch seconds and numbers as
+* variable length integers, so a commit takes about 30 bytes.  A store
+* directory should be written by one process at a time.
+*/
+public class GDETSnapshotStore implements Closeable {
+
+  /** the time passed to CommitVisitor for a commit without a date. */
+  public static final long NO_DATE = Long.MIN_VALUE;
+
+  /** segments are rolled over at this size so each one can be mapped whole. */
+  public static final long SEGMENT_BYTES = 128L * 1024 * 1024;
+
+  private static final int SEGMENT_MAGIC = 0x47445331;
+  private static final int VERSION = 1;
+  private static final String SEGMENT_SUFFIX = ".seg";
+  private static final String TEMP_SUFFIX = ".tmp";
+  private static final String DICTIONARY = "logins.dict";
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  static final byte COMMIT = 1;
+  static final byte ISSUE = 2;
+  static final byte PULL_REQUEST = 3;
+  static final byte REVIEW_COMMENT = 4;
+  static final byte BRANCH = 5;
+
+  private final Path directory;
+
+  /* login dictionary: ids are positions in the dictionary file */
+  private final Map<String, Integer> loginIds = new HashMap<String, Integer>();
+  private String[] logins = new String[64];
+  private int loginCount;
+  private FileChannel dictionary;
+  private final ByteBuffer pendingLogins = ByteBuffer.allocate(64 * 1024);
+
+  /**Constructor
+  * Opens (or creates) a store in <directory>, removing segments left
+  * behind by writers that never finished.
+  */
+  public GDETSnapshotStore(Path directory) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory);
+    loadDictionary();
+    try (DirectoryStream<Path> repos = Files.newDirectoryStream(directory, Files::isDirectory)) {
+      for (Path repo : repos) {
+        try (DirectoryStream<Path> unfinished =
+            Files.newDirectoryStream(repo, "*" + SEGMENT_SUFFIX + TEMP_SUFFIX)) {
+          for (Path segment : unfinished) {
+            Files.deleteIfExists(segment);
+          }
+        }
+      }
+    }
+  }
+
+  /**defaultDirectory
+  * @return the store location used by GitHubAPIDemo, ~/.gdet/store
+  */
+  public static Path defaultDirectory() {
+    return Paths.get(System.getProperty("user.home"), ".gdet", "store");
+  }
+
+  private Path repositoryDirectory(String repoName) {
+    return directory.resolve(repoName.replace('/', '_'));
+  }
+
+  /**contains
+  * @return true if at least one complete segment is stored for <repoName>.
+  */
+  public boolean contains(String repoName) throws IOException {
+    Path repo = repositoryDirectory(repoName);
+    return Files.isDirectory(repo) && !segments(repo).isEmpty();
+  }
+
+  /**writer
+  * Starts appending records for <repoName>.  Nothing becomes visible to
+  * readers until the writer is closed.
+  */
+  public Writer writer(String repoName) throws IOException {
+    Path repo = repositoryDirectory(repoName);
+    Files.createDirectories(repo);
+    return new Writer(repo);
+  }
+
+  /**read
+  * Maps every complete segment stored for <repoName>.
+  *
+  * @return:
+  *   StoredSnapshot - the stored records, or null if there are none.
+  */
+  public StoredSnapshot read(String repoName) throws IOException {
+    Path repo = repositoryDirectory(repoName);
+    if (!Files.isDirectory(repo)) {
+      return null;
+    }
+    List<Path> paths = segments(repo);
+    if (paths.isEmpty()) {
+      return null;
+    }
+    List<MappedByteBuffer> mapped = new ArrayList<MappedByteBuffer>();
+    long bytes = 0;
+    for (Path path : paths) {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (segment.remaining() < 8 || segment.getInt(0) != SEGMENT_MAGIC
+            || segment.getInt(4) != VERSION) {
+          throw new IOException("Not a snapshot segment: " + path);
+        }
+        mapped.add(segment);
+        bytes += channel.size();
+      }
+    }
+    String[] dictionary;
+    synchronized (this) {
+      dictionary = Arrays.copyOf(logins, loginCount);
+    }
+    return new StoredSnapshot(repoName, mapped, dictionary, bytes);
+  }
+
+  /* the complete segments of <repo> in the order they were written */
+  private static List<Path> segments(Path repo) throws IOException {
+    List<Path> segments = new ArrayList<Path>();
+    try (DirectoryStream<Path> dir = Files.newDirectoryStream(repo, "*" + SEGMENT_SUFFIX)) {
+      for (Path segment : dir) {
+        segments.add(segment);
+      }
+    }
+    Collections.sort(segments);
+    return segments;
+  }
+
+  /* reserves the next segment of <repo> as a temporary file */
+  private synchronized Path createSegment(Path repo) throws IOException {
+    long next = 0;
+    try (DirectoryStream<Path> dir = Files.newDirectoryStream(repo)) {
+      for (Path path : dir) {
+        String name = path.getFileName().toString();
+        int dot = name.indexOf('.');
+        if (dot > 0) {
+          try {
+            next = Math.max(next, Long.parseLong(name.substring(0, dot)) + 1);
+          }
+          catch (NumberFormatException e) {}
+        }
+      }
+    }
+    Path segment = repo.resolve(String.format("%010d%s%s", next, SEGMENT_SUFFIX, TEMP_SUFFIX));
+    Files.createFile(segment);
+    return segment;
+  }
+
+  private void loadDictionary() throws IOException {
+    Path path = directory.resolve(DICTIONARY);
+    if (!Files.exists(path)) {
+      return;
+    }
+    ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path));
+    int complete = 0;
+    try {
+      while (in.hasRemaining()) {
+        int length = readVarInt(in);
+        if (length > in.remaining()) {
+          break;
+        }
+        String login = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        addLogin(login.intern());
+        complete = in.position();
+      }
+    }
+    catch (RuntimeException e) {}
+    if (complete < in.capacity()) {
+      /* an interrupted append; no segment can refer to the partial entry */
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        channel.truncate(complete);
+      }
+    }
+  }
+
+  private int addLogin(String login) {
+    if (loginCount == logins.length) {
+      logins = Arrays.copyOf(logins, loginCount * 2);
+    }
+    logins[loginCount] = login;
+    loginIds.put(login, loginCount);
+    return loginCount++;
+  }
+
+  /**loginId
+  * @return the dictionary id of <login>, adding it if it is new, or -1 for
+  *   a missing login.
+  */
+  synchronized int loginId(String login) throws IOException {
+    if (login == null) {
+      return -1;
+    }
+    Integer id = loginIds.get(login);
+    if (id != null) {
+      return id;
+    }
+    byte[] bytes = login.getBytes(StandardCharsets.UTF_8);
+    if (pendingLogins.remaining() < bytes.length + 5) {
+      flushDictionary(false);
+    }
+    if (pendingLogins.remaining() < bytes.length + 5) {
+      throw new IOException("Login too long: " + login);
+    }
+    writeVarInt(pendingLogins, bytes.length);
+    pendingLogins.put(bytes);
+    return addLogin(login.intern());
+  }
+
+  /* appends the pending dictionary entries, making them durable if <force> */
+  private synchronized void flushDictionary(boolean force) throws IOException {
+    if (dictionary == null) {
+      dictionary = FileChannel.open(directory.resolve(DICTIONARY), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    pendingLogins.flip();
+    while (pendingLogins.hasRemaining()) {
+      dictionary.write(pendingLogins);
+    }
+    pendingLogins.clear();
+    if (force) {
+      dictionary.force(false);
+    }
+  }
+
+  /**getLoginCount
+  * @return the number of distinct logins in the dictionary.
+  */
+  public synchronized int getLoginCount() {
+    return loginCount;
+  }
+
+  public synchronized void close() throws IOException {
+    if (dictionary != null) {
+      flushDictionary(true);
+      dictionary.close();
+      dictionary = null;
+    }
+  }
+
+  static void writeVarInt(ByteBuffer out, int value) {
+    while ((value & ~0x7f) != 0) {
+      out.put((byte) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.put((byte) value);
+  }
+
+  static void writeVarLong(ByteBuffer out, long value) {
+    while ((value & ~0x7fL) != 0) {
+      out.put((byte) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.put((byte) value);
+  }
+
+  static int readVarInt(ByteBuffer in) {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = in.get();
+      value |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  static long readVarLong(ByteBuffer in) {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      byte b = in.get();
+      value |= (long) (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+  }
+
+  /* epoch seconds, zigzag encoded and shifted by one so that 0 is no date */
+  static long encodeDate(Date date) {
+    if (date == null) {
+      return 0;
+    }
+    long seconds = Math.floorDiv(date.getTime(), 1000);
+    return ((seconds << 1) ^ (seconds >> 63)) + 1;
+  }
+
+  static long decodeDate(long encoded) {
+    if (encoded == 0) {
+      return NO_DATE;
+    }
+    long zigzag = encoded - 1;
+    return (zigzag >>> 1) ^ -(zigzag & 1);
+  }
+
+  private static String loginOf(GHUser user) {
+    return user == null ? null : user.getLogin();
+  }
+
+  /**hex
+  * @return <sha> as the 40 character hex string GitHub uses.
+  */
+  public static String hex(byte[] sha) {
+    char[] hex = new char[sha.length * 2];
+    for (int i = 0; i < sha.length; i++) {
+      hex[2 * i] = Character.forDigit((sha[i] >> 4) & 0xf, 16);
+      hex[2 * i + 1] = Character.forDigit(sha[i] & 0xf, 16);
+    }
+    return new String(hex);
+  }
+
+  /* the 20 bytes of a hex SHA-1; anything else is stored as zeros */
+  private static void putSha(ByteBuffer out, String sha) {
+    for (int i = 0; i < 20; i++) {
+      int high = sha == null || sha.length() != 40 ? 0 : Character.digit(sha.charAt(2 * i), 16);
+      int low = sha == null || sha.length() != 40 ? 0 : Character.digit(sha.charAt(2 * i + 1), 16);
+      out.put((byte) ((Math.max(high, 0) << 4) | Math.max(low, 0)));
+    }
+  }
+
+  /**Writer
+  * Appends records for one repository to a new segment, which becomes
+  * visible to readers on close().  Records that cannot be read from GitHub
+  * are skipped.  Not thread safe; use one writer per thread.
+  */
+  public class Writer implements Closeable {
+
+    private final Path repo;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private Path segment;
+    private FileChannel channel;
+    private long segmentBytes;
+    private int records;
+
+    Writer(Path repo) throws IOException {
+      this.repo = repo;
+      startSegment();
+    }
+
+    private void startSegment() throws IOException {
+      segment = createSegment(repo);
+      channel = FileChannel.open(segment, StandardOpenOption.WRITE);
+      segmentBytes = 0;
+      buffer.putInt(SEGMENT_MAGIC);
+      buffer.putInt(VERSION);
+    }
+
+    /* makes room for a record of at most <size> bytes */
+    private void reserve(int size) throws IOException {
+      if (segmentBytes + buffer.position() + size > SEGMENT_BYTES) {
+        finishSegment();
+        startSegment();
+      }
+      else if (buffer.remaining() < size) {
+        drain();
+      }
+    }
+
+    private void drain() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        segmentBytes += channel.write(buffer);
+      }
+      buffer.clear();
+    }
+
+    /* completes the current segment and renames it into place */
+    private void finishSegment() throws IOException {
+      drain();
+      flushDictionary(true);
+      channel.force(false);
+      channel.close();
+      String name = segment.getFileName().toString();
+      Files.move(segment, segment.resolveSibling(
+        name.substring(0, name.length() - TEMP_SUFFIX.length())), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**writeCommit
+    * @return false if the commit's details could not be read.
+    */
+    public boolean writeCommit(GHCommit commit) throws IOException {
+      GHCommit.ShortInfo info = GithubDataExtractionTool.getCommitShortInfo(commit);
+      if (info == null) {
+        return false;
+      }
+      GHUser author;
+      try {
+        author = commit.getAuthor();
+      }
+      catch (IOException e) {
+        return false;
+      }
+      writeCommit(commit.getSHA1(), loginOf(author), info.getCommitDate());
+      return true;
+    }
+
+    public void writeCommit(GDETCommitDetails commit) throws IOException {
+      writeCommit(commit.getSha(), commit.getAuthorLogin(), commit.getCommitDate());
+    }
+
+    /**writeCommit
+    * Writes a commit that did not come from the API, such as one read from
+    * a local clone.
+    *
+    * @params:
+    *   sha - the commit's 40 character hex SHA-1
+    *   authorLogin - the author's login, or null if it is not known
+    *   committedAt - the commit date, may be null
+    */
+    public void writeCommit(String sha, String authorLogin, Date committedAt)
+        throws IOException {
+      int author = loginId(authorLogin);
+      reserve(1 + 20 + 5 + 10);
+      buffer.put(COMMIT);
+      putSha(buffer, sha);
+      writeVarInt(buffer, author + 1);
+      writeVarLong(buffer, encodeDate(committedAt));
+      records++;
+    }
+
+    /**writeIssue
+    * @return false if the issue's details could not be read.
+    */
+    public boolean writeIssue(GHIssue issue) throws IOException {
+      int user;
+      Date createdAt;
+      try {
+        user = loginId(loginOf(issue.getUser()));
+        createdAt = issue.getCreatedAt();
+      }
+      catch (IOException e) {
+        return false;
+      }
+      reserve(1 + 5 + 1 + 5 + 10 + 10);
+      buffer.put(ISSUE);
+      writeVarInt(buffer, issue.getNumber());
+      buffer.put((byte) (issue.getState() == GHIssueState.CLOSED ? 1 : 0));
+      writeVarInt(buffer, user + 1);
+      writeVarLong(buffer, encodeDate(createdAt));
+      writeVarLong(buffer, encodeDate(issue.getClosedAt()));
+      records++;
+      return true;
+    }
+
+    public void writeIssue(GDETIssueDetails issue) throws IOException {
+      int user = loginId(issue.getUserLogin());
+      reserve(1 + 5 + 1 + 5 + 10 + 10);
+      buffer.put(ISSUE);
+      writeVarInt(buffer, issue.getNumber());
+      buffer.put((byte) (issue.getState() == GHIssueState.CLOSED ? 1 : 0));
+      writeVarInt(buffer, user + 1);
+      writeVarLong(buffer, encodeDate(issue.getCreatedAt()));
+      writeVarLong(buffer, encodeDate(issue.getClosedAt()));
+      records++;
+    }
+
+    public boolean writePullRequest(GDETPullRequestDetails pr) throws IOException {
+      reserve(1 + 5 + 1 + 5 + 5 + 10 + 10 + 15);
+      int user = loginId(pr.getUserLogin());
+      int mergedBy = loginId(pr.getMergedByLogin());
+      buffer.put(PULL_REQUEST);
+      writeVarInt(buffer, pr.getNumber());
+      buffer.put((byte) ((pr.getState() == GHIssueState.CLOSED ? 1 : 0) | (pr.isMerged() ? 2 : 0)));
+      writeVarInt(buffer, user + 1);
+      writeVarInt(buffer, mergedBy + 1);
+      writeVarLong(buffer, encodeDate(pr.getCreatedAt()));
+      writeVarLong(buffer, encodeDate(pr.getMergedAt()));
+      writeVarInt(buffer, Math.max(pr.getAdditions(), 0));
+      writeVarInt(buffer, Math.max(pr.getDeletions(), 0));
+      writeVarInt(buffer, Math.max(pr.getCommits(), 0));
+      records++;
+      return true;
+    }
+
+    /**writeReviewComment
+    * @return false if the comment's details could not be read.
+    */
+    public boolean writeReviewComment(GHPullRequestReviewComment prc) throws IOException {
+      int user;
+      Date createdAt;
+      try {
+        user = loginId(loginOf(prc.getUser()));
+        createdAt = prc.getCreatedAt();
+      }
+      catch (IOException e) {
+        return false;
+      }
+      reserve(1 + 10 + 5 + 10);
+      buffer.put(REVIEW_COMMENT);
+      writeVarLong(buffer, prc.getId());
+      writeVarInt(buffer, user + 1);
+      writeVarLong(buffer, encodeDate(createdAt));
+      records++;
+      return true;
+    }
+
+    public void writeReviewComment(GDETReviewCommentDetails prc) throws IOException {
+      int user = loginId(prc.getUserLogin());
+      reserve(1 + 10 + 5 + 10);
+      buffer.put(REVIEW_COMMENT);
+      writeVarLong(buffer, prc.getId());
+      writeVarInt(buffer, user + 1);
+      writeVarLong(buffer, encodeDate(prc.getCreatedAt()));
+      records++;
+    }
+
+    /**writeBranch
+    * @return false if there is no branch.
+    */
+    public boolean writeBranch(GHBranch branch) throws IOException {
+      if (branch == null || branch.getName() == null) {
+        return false;
+      }
+      byte[] name = branch.getName().getBytes(StandardCharsets.UTF_8);
+      reserve(1 + 5 + name.length + 20);
+      if (buffer.remaining() < 1 + 5 + name.length + 20) {
+        return false;
+      }
+      buffer.put(BRANCH);
+      writeVarInt(buffer, name.length);
+      buffer.put(name);
+      putSha(buffer, branch.getSHA1());
+      records++;
+      return true;
+    }
+
+    /**writeSnapshot
+    * Writes every commit, issue, pull request, review comment and branch of
+    * <snapshot>, fetching them if they have not been yet.
+    *
+    * @return:
+    *   int - the number of records written.
+    */
+    public int writeSnapshot(GDETRepositorySnapshot snapshot) throws IOException {
+      int written = 0;
+      for (GDETCommitDetails commit : snapshot.getCommitDetails()) {
+        writeCommit(commit);
+        written++;
+      }
+      for (GDETIssueDetails issue : snapshot.getIssueDetails()) {
+        writeIssue(issue);
+        written++;
+      }
+      for (GDETPullRequestDetails pr : snapshot.getPullRequestDetails()) {
+        written += writePullRequest(pr) ? 1 : 0;
+      }
+      for (GDETReviewCommentDetails prc : snapshot.getReviewCommentDetails()) {
+        writeReviewComment(prc);
+        written++;
+      }
+      for (GHBranch branch : snapshot.getBranches()) {
+        written += writeBranch(branch) ? 1 : 0;
+      }
+      return written;
+    }
+
+    /**getRecordCount
+    * @return the number of records written so far.
+    */
+    public int getRecordCount() {
+      return records;
+    }
+
+    /**close
+    * Makes the records written visible to readers.
+    */
+    public void close() throws IOException {
+      if (channel != null) {
+        finishSegment();
+        channel = null;
+      }
+    }
+  }
+
+  /**CommitVisitor
+  * Receives each stored commit once, as stored in the newest segment that
+  * has it, newest segment first.
+  */
+  public interface CommitVisitor {
+    /**
+    * @params:
+    *   sha - the commit's SHA-1; the array is reused between calls
+    *   login - the author's login, or null if it is not linked to an account
+    *   committedAt - the commit date in epoch seconds, or NO_DATE
+    */
+    void visit(byte[] sha, String login, long committedAt);
+  }
+
+  /**StoredSnapshot
+  * The stored records of one repository, read from memory-mapped segments.
+  * Every method makes one pass over the segments without touching the
+  * network.  When a record was stored more than once, the aggregates count
+  * it once, using its newest copy.  Safe to use from several threads.
+  */
+  public static class StoredSnapshot {
+
+    private final String repoName;
+    private final List<MappedByteBuffer> segments;
+    private final String[] logins;
+    private final long bytes;
+
+    StoredSnapshot(String repoName, List<MappedByteBuffer> segments, String[] logins,
+        long bytes) {
+      this.repoName = repoName;
+      this.segments = segments;
+      this.logins = logins;
+      this.bytes = bytes;
+    }
+
+    public String getRepoName() {
+      return repoName;
+    }
+
+    public int getSegmentCount() {
+      return segments.size();
+    }
+
+    /**getSizeInBytes
+    * @return the size of every segment of the repository together.
+    */
+    public long getSizeInBytes() {
+      return bytes;
+    }
+
+    private String login(int stored) {
+      return stored == 0 ? null : logins[stored - 1];
+    }
+
+    /* walks every record in write order */
+    private void scan(RecordHandler handler) {
+      scan(handler, false);
+    }
+
+    /* walks every record, segment by segment, newest segment first if
+       <newestFirst> is set so that the first copy of a record seen wins */
+    private void scan(RecordHandler handler, boolean newestFirst) {
+      byte[] sha = new byte[20];
+      for (int s = 0; s < segments.size(); s++) {
+        MappedByteBuffer mapped = segments.get(newestFirst ? segments.size() - 1 - s : s);
+        ByteBuffer in = mapped.duplicate();
+        in.position(8);
+        while (in.hasRemaining()) {
+          byte type = in.get();
+          switch (type) {
+            case COMMIT:
+              in.get(sha);
+              handler.commit(sha, readVarInt(in), decodeDate(readVarLong(in)));
+              break;
+            case ISSUE: {
+              int number = readVarInt(in);
+              boolean closed = in.get() != 0;
+              int user = readVarInt(in);
+              readVarLong(in);
+              readVarLong(in);
+              handler.issue(number, closed, user);
+              break;
+            }
+            case PULL_REQUEST: {
+              int number = readVarInt(in);
+              byte flags = in.get();
+              int user = readVarInt(in);
+              int mergedBy = readVarInt(in);
+              readVarLong(in);
+              readVarLong(in);
+              readVarInt(in);
+              readVarInt(in);
+              readVarInt(in);
+              handler.pullRequest(number, (flags & 2) != 0, user, mergedBy);
+              break;
+            }
+            case REVIEW_COMMENT: {
+              long id = readVarLong(in);
+              int user = readVarInt(in);
+              readVarLong(in);
+              handler.reviewComment(id, user);
+              break;
+            }
+            case BRANCH: {
+              byte[] name = new byte[readVarInt(in)];
+              in.get(name);
+              in.get(sha);
+              handler.branch(new String(name, StandardCharsets.UTF_8), sha);
+              break;
+            }
+            default:
+              throw new IllegalStateException("Corrupt segment for " + repoName
+                + ": record type " + type + " at " + (in.position() - 1));
+          }
+        }
+      }
+    }
+
+    /**forEachCommit
+    * Passes every distinct stored commit to <visitor>.
+    */
+    public void forEachCommit(final CommitVisitor visitor) {
+      final LongSet seen = new LongSet();
+      scan(new RecordHandler() {
+        void commit(byte[] sha, int author, long committedAt) {
+          if (seen.add(shaKey(sha))) {
+            visitor.visit(sha, login(author), committedAt);
+          }
+        }
+      }, true);
+    }
+
+    /**getCommitCountPerUser
+    * @return the number of distinct stored commits per author login.
+    */
+    public GDETUserCounter getCommitCountPerUser() {
+      final int[] counts = new int[logins.length + 1];
+      final LongSet seen = new LongSet();
+      scan(new RecordHandler() {
+        void commit(byte[] sha, int author, long committedAt) {
+          if (seen.add(shaKey(sha))) {
+            counts[author]++;
+          }
+        }
+      }, true);
+      return counter(counts);
+    }
+
+    /**getIssueCountPerUser
+    * @return the number of stored issues per login of the user who filed
+    *   them.
+    */
+    public GDETUserCounter getIssueCountPerUser() {
+      final IntColumn users = new IntColumn();
+      scan(new RecordHandler() {
+        void issue(int number, boolean closed, int user) {
+          users.set(number, user + 1);
+        }
+      });
+      return counter(users.histogram(logins.length + 1));
+    }
+
+    /**getPullRequestCountPerUser
+    * @return the number of stored pull requests per login of the user who
+    *   opened them, or, if <mergedBy> is set, the merged ones per login of
+    *   the user who merged them.
+    */
+    public GDETUserCounter getPullRequestCountPerUser(final boolean mergedBy) {
+      final IntColumn users = new IntColumn();
+      scan(new RecordHandler() {
+        void pullRequest(int number, boolean merged, int user, int merger) {
+          if (!mergedBy) {
+            users.set(number, user + 1);
+          }
+          else {
+            users.set(number, merged ? merger + 1 : -1);
+          }
+        }
+      });
+      return counter(users.histogram(logins.length + 1));
+    }
+
+    public int getCommitCount() {
+      final LongSet seen = new LongSet();
+      scan(new RecordHandler() {
+        void commit(byte[] sha, int author, long committedAt) {
+          seen.add(shaKey(sha));
+        }
+      }, true);
+      return seen.size();
+    }
+
+    public int getIssueCount() {
+      return (int) getIssueCountPerUser().total();
+    }
+
+    public int getPullRequestCount() {
+      return (int) getPullRequestCountPerUser(false).total();
+    }
+
+    public int getReviewCommentCount() {
+      final LongSet seen = new LongSet();
+      scan(new RecordHandler() {
+        void reviewComment(long id, int user) {
+          seen.add(id);
+        }
+      });
+      return seen.size();
+    }
+
+    /**getBranches
+    * @return the head SHA of each stored branch, keyed by branch name.
+    */
+    public Map<String, String> getBranches() {
+      final Map<String, String> branches = new LinkedHashMap<String, String>();
+      scan(new RecordHandler() {
+        void branch(String name, byte[] sha) {
+          branches.put(name, hex(sha));
+        }
+      });
+      return branches;
+    }
+
+    private GDETUserCounter counter(int[] counts) {
+      GDETUserCounter counter = new GDETUserCounter();
+      for (int stored = 0; stored < counts.length; stored++) {
+        if (counts[stored] > 0) {
+          String login = login(stored);
+          counter.add(login == null ? GDETUserCounter.UNKNOWN_LOGIN : login, counts[stored]);
+        }
+      }
+      return counter;
+    }
+
+    /* a 64 bit hash of all 20 bytes; SHAs are not always uniformly spread */
+    private static long shaKey(byte[] sha) {
+      ByteBuffer bytes = ByteBuffer.wrap(sha);
+      long key = bytes.getLong() * 0x9e3779b97f4a7c15L;
+      key = Long.rotateLeft(key, 31) ^ bytes.getLong() * 0xc2b2ae3d27d4eb4fL;
+      return Long.rotateLeft(key, 27) ^ bytes.getInt() * 0x165667b19e3779f9L;
+    }
+  }
+
+  /* callbacks for the records of a scan; each ignores its records by default */
+  private abstract static class RecordHandler {
+    void commit(byte[] sha, int author, long committedAt) {}
+
+    void issue(int number, boolean closed, int user) {}
+
+    void pullRequest(int number, boolean merged, int user, int mergedBy) {}
+
+    void reviewComment(long id, int user) {}
+
+    void branch(String name, byte[] sha) {}
+  }
+
+  /* a growable int array indexed by issue or pull request number; 0 is unset */
+  private static class IntColumn {
+    private int[] values = new int[1024];
+    private int length;
+
+    void set(int index, int value) {
+      if (index < 0) {
+        return;
+      }
+      if (index >= values.length) {
+        values = Arrays.copyOf(values, Math.max(index + 1, values.length * 2));
+      }
+      values[index] = value;
+      length = Math.max(length, index + 1);
+    }
+
+    /* counts the set values, each of which is a stored login plus one */
+    int[] histogram(int size) {
+      int[] counts = new int[size];
+      for (int i = 0; i < length; i++) {
+        if (values[i] > 0) {
+          counts[values[i] - 1]++;
+        }
+      }
+      return counts;
+    }
+  }
+
+  /* an open-addressing set of longs, used to count each record once */
+  private static class LongSet {
+    private long[] keys = new long[1024];
+    private boolean zero;
+    private int size;
+
+    boolean add(long key) {
+      if (key == 0) {
+        boolean added = !zero;
+        zero = true;
+        size += added ? 1 : 0;
+        return added;
+      }
+      if ((size + 1) * 2 > keys.length) {
+        grow();
+      }
+      int mask = keys.length - 1;
+      int slot = (int) (key ^ (key >>> 32)) * 0x9e3779b9 & mask;
+      while (keys[slot] != 0) {
+        if (keys[slot] == key) {
+          return false;
+        }
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      size++;
+      return true;
+    }
+
+    int size() {
+      return size;
+    }
+
+    private void grow() {
+      long[] old = keys;
+      keys = new long[old.length * 2];
+      int mask = keys.length - 1;
+      for (long key : old) {
+        if (key != 0) {
+          int slot = (int) (key ^ (key >>> 32)) * 0x9e3779b9 & mask;
+          while (keys[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          keys[slot] = key;
+        }
+      }
+    }
+  }
+}
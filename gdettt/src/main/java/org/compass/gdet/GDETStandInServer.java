@@ -0,0 +1,1020 @@
+package org.compass.gdet;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**GDETStandInServer
+* A stand-in for the GitHub REST API that runs in process on the loopback
+* interface, so extractions can be run end to end, and timed, without
+* credentials or network access.  Point a GithubDataExtractionTool at
+* getEndpoint() to use it.
+*
+* It serves generated repositories of any size, rendering each page of a
+* listing on demand so that repositories with millions of records cost no
+* memory, and recorded responses read from a directory.  Listings are paged
+* like GitHub's: page and per_page parameters (30 by default, at most 100)
+* and a Link header pointing at the next, last, first and previous pages.
+* Every response carries X-RateLimit-* headers counted per Authorization
+* header; once a credential's limit is spent it gets 403s until its window
+* resets.  Responses have ETags, and conditional requests that match are
+* answered with a 304 that, as on GitHub, does not count against the limit.
+* A fixed latency plus random jitter can be added to every response.
+* Bodies are gzipped for requests that accept it, and the server counts the
+* connections it was sent requests on, so connection reuse can be checked.
+*
+* The GraphQL API and write requests are not served.
+*/
+public class GDETStandInServer implements Closeable {
+
+  public static final int DEFAULT_PAGE_SIZE = 30;
+  public static final int MAX_PAGE_SIZE = 100;
+  public static final int DEFAULT_RATE_LIMIT = 5000;
+  public static final long DEFAULT_RATE_LIMIT_WINDOW_SECONDS = 3600;
+
+  private static final String GITHUB_API_URL = "https://api.github.com";
+  private static final long EPOCH_SECONDS = Instant.parse("2019-01-01T00:00:00Z").getEpochSecond();
+  private static final Gson GSON = new Gson();
+  private static final Pattern LOGIN = Pattern.compile("[A-Za-z0-9][A-Za-z0-9_.-]*");
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final String endpoint;
+  private final Map<String, Repository> repositories = new ConcurrentHashMap<String, Repository>();
+  private final List<Path> recordings = new CopyOnWriteArrayList<Path>();
+  private final Map<Path, JsonElement> recorded = new ConcurrentHashMap<Path, JsonElement>();
+  private final Map<String, Quota> quotas = new HashMap<String, Quota>();
+  private final Map<String, JsonObject> users = new ConcurrentHashMap<String, JsonObject>();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong notModified = new AtomicLong();
+  private final AtomicLong rateLimited = new AtomicLong();
+  private final Map<SocketAddress, Boolean> connections =
+    new ConcurrentHashMap<SocketAddress, Boolean>();
+
+  private volatile int rateLimit = DEFAULT_RATE_LIMIT;
+  private volatile long rateLimitWindowMillis = DEFAULT_RATE_LIMIT_WINDOW_SECONDS * 1000;
+  private volatile long latencyMillis;
+  private volatile long latencyJitterMillis;
+
+  /**Constructor
+  * Binds to a free port on the loopback interface.  Nothing is served until
+  * start() is called.
+  */
+  public GDETStandInServer() throws IOException {
+    this(0);
+  }
+
+  /**Constructor
+  * @params:
+  *   port - the loopback port to bind to, or 0 for any free port
+  */
+  public GDETStandInServer(int port) throws IOException {
+    // the headers and the body of a response are written separately, which
+    // Nagle's algorithm would hold back for a delayed ACK on every request
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 128);
+    endpoint = "http://127.0.0.1:" + server.getAddress().getPort();
+    executor = Executors.newCachedThreadPool(runnable -> {
+      Thread thread = new Thread(runnable, "gdet-stand-in");
+      thread.setDaemon(true);
+      return thread;
+    });
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+  }
+
+  public GDETStandInServer start() {
+    server.start();
+    return this;
+  }
+
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  /**getEndpoint
+  * @return the API URL to point clients at, e.g. http://127.0.0.1:50123.
+  */
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  /**addRepository
+  * Serves the generated repository <repository>.
+  */
+  public GDETStandInServer addRepository(Repository repository) {
+    repository.prepare();
+    repositories.put(repository.owner + "/" + repository.name, repository);
+    return this;
+  }
+
+  /**addRecording
+  * Serves the JSON files under <directory> at the API paths they are stored
+  * at, for example <directory>/repos/owner/name/commits.json at
+  * /repos/owner/name/commits.  Arrays are paged like generated listings, and
+  * api.github.com URLs in them are rewritten to point at this server.
+  * Generated repositories take precedence.
+  */
+  public GDETStandInServer addRecording(Path directory) {
+    recordings.add(directory);
+    return this;
+  }
+
+  /**setRateLimit
+  * Allows each credential <limit> requests per <windowSeconds>.
+  */
+  public GDETStandInServer setRateLimit(int limit, long windowSeconds) {
+    synchronized (quotas) {
+      rateLimit = limit;
+      rateLimitWindowMillis = windowSeconds * 1000;
+      quotas.clear();
+    }
+    return this;
+  }
+
+  /**setLatency
+  * Delays every response by <millis> plus a random 0 to <jitterMillis>.
+  */
+  public GDETStandInServer setLatency(long millis, long jitterMillis) {
+    latencyMillis = millis;
+    latencyJitterMillis = jitterMillis;
+    return this;
+  }
+
+  /**getRequestCount
+  * @return the number of requests received so far.
+  */
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  /**getNotModifiedCount
+  * @return the number of conditional requests answered with a 304.
+  */
+  public long getNotModifiedCount() {
+    return notModified.get();
+  }
+
+  /**getRateLimitedCount
+  * @return the number of requests refused because their limit was spent.
+  */
+  public long getRateLimitedCount() {
+    return rateLimited.get();
+  }
+
+  /**getConnectionCount
+  * @return the number of connections requests were received on so far.
+  */
+  public long getConnectionCount() {
+    return connections.size();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      requests.incrementAndGet();
+      connections.put(exchange.getRemoteAddress(), Boolean.TRUE);
+      delay();
+      respond(exchange);
+    }
+    finally {
+      exchange.close();
+    }
+  }
+
+  private void delay() {
+    long millis = latencyMillis;
+    if (latencyJitterMillis > 0) {
+      millis += ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1);
+    }
+    if (millis > 0) {
+      try {
+        Thread.sleep(millis);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void respond(HttpExchange exchange) throws IOException {
+    String path = exchange.getRequestURI().getPath();
+    Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+    String credential = exchange.getRequestHeaders().getFirst("Authorization");
+
+    if (path.equals("/rate_limit")) {
+      Quota.State state = quota(credential, false);
+      JsonObject core = state.toJson();
+      JsonObject resources = new JsonObject();
+      resources.add("core", core);
+      JsonObject body = new JsonObject();
+      body.add("resources", resources);
+      body.add("rate", core);
+      send(exchange, 200, body.toString(), state, null);
+      return;
+    }
+
+    int code = 200;
+    String body;
+    String link = null;
+    Object resource = exchange.getRequestMethod().equals("GET") ? resolve(path) : null;
+    if (resource instanceof Listing) {
+      Listing listing = (Listing) resource;
+      int perPage = clamp(integer(query.get("per_page"), DEFAULT_PAGE_SIZE), 1, MAX_PAGE_SIZE);
+      int size = listing.size(query);
+      int last = Math.max(1, (size + perPage - 1) / perPage);
+      int page = clamp(integer(query.get("page"), 1), 1, Integer.MAX_VALUE);
+      JsonArray items = new JsonArray();
+      for (int i = (int) Math.min((long) (page - 1) * perPage, size),
+          end = Math.min(i + perPage, size); i < end; i++) {
+        items.add(listing.item(query, i));
+      }
+      body = toJson(items, perPage);
+      link = link(path, query, page, last);
+    }
+    else if (resource != null) {
+      body = resource.toString();
+    }
+    else {
+      code = 404;
+      body = "{\"message\":\"Not Found\","
+        + "\"documentation_url\":\"https://developer.github.com/v3\"}";
+    }
+
+    String etag = code == 200 ? etag(body) : null;
+    String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+    if (etag != null && etag.equals(ifNoneMatch)) {
+      notModified.incrementAndGet();
+      exchange.getResponseHeaders().add("ETag", etag);
+      send(exchange, 304, null, quota(credential, false), null);
+      return;
+    }
+    Quota.State state = quota(credential, true);
+    if (state.exceeded) {
+      rateLimited.incrementAndGet();
+      send(exchange, 403, "{\"message\":\"API rate limit exceeded for "
+        + (credential == null ? "127.0.0.1" : "this credential") + ".\","
+        + "\"documentation_url\":\"https://developer.github.com/v3/#rate-limiting\"}",
+        state, null);
+      return;
+    }
+    if (etag != null) {
+      exchange.getResponseHeaders().add("ETag", etag);
+    }
+    send(exchange, code, body, state, link);
+  }
+
+  private void send(HttpExchange exchange, int code, String body, Quota.State state,
+      String link) throws IOException {
+    exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+    exchange.getResponseHeaders().add("X-RateLimit-Limit", Integer.toString(state.limit));
+    exchange.getResponseHeaders().add("X-RateLimit-Remaining", Integer.toString(state.remaining));
+    exchange.getResponseHeaders().add("X-RateLimit-Reset", Long.toString(state.reset));
+    exchange.getResponseHeaders().add("X-RateLimit-Used", Integer.toString(state.used));
+    exchange.getResponseHeaders().add("X-RateLimit-Resource", "core");
+    if (link != null) {
+      exchange.getResponseHeaders().add("Link", link);
+    }
+    if (body == null) {
+      exchange.sendResponseHeaders(code, -1);
+      return;
+    }
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    String accepted = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+    if (accepted != null && accepted.contains("gzip")) {
+      ByteArrayOutputStream gzipped = new ByteArrayOutputStream(bytes.length / 4 + 64);
+      try (OutputStream out = new GZIPOutputStream(gzipped)) {
+        out.write(bytes);
+      }
+      bytes = gzipped.toByteArray();
+      exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+    }
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /**resolve
+  * @return the Listing or the JSON object served at <path>, or null.
+  */
+  private Object resolve(String path) throws IOException {
+    String[] parts = path.split("/");
+    if (parts.length <= 1) {
+      JsonObject index = new JsonObject();
+      index.addProperty("current_user_url", endpoint + "/user");
+      index.addProperty("rate_limit_url", endpoint + "/rate_limit");
+      index.addProperty("repository_url", endpoint + "/repos/{owner}/{repo}");
+      index.addProperty("user_url", endpoint + "/users/{user}");
+      return index;
+    }
+    if (parts[1].equals("repos") && parts.length >= 4) {
+      Repository repo = repositories.get(parts[2] + "/" + parts[3]);
+      if (repo != null) {
+        return repo.resolve(this, Arrays.copyOfRange(parts, 4, parts.length));
+      }
+    }
+    else if ((parts[1].equals("orgs") || parts[1].equals("users")) && parts.length >= 3
+        && LOGIN.matcher(parts[2]).matches()) {
+      final List<Repository> owned = new ArrayList<Repository>();
+      for (Repository repo : repositories.values()) {
+        if (repo.owner.equals(parts[2])) {
+          owned.add(repo);
+        }
+      }
+      if (parts.length == 4 && parts[3].equals("repos") && !owned.isEmpty()) {
+        return new Listing() {
+          public int size(Map<String, String> query) {
+            return owned.size();
+          }
+
+          public JsonElement item(Map<String, String> query, int index) {
+            return owned.get(index).toJson(GDETStandInServer.this);
+          }
+        };
+      }
+      if (parts.length == 3 && parts[1].equals("users")) {
+        return profile(parts[2]);
+      }
+      if (parts.length == 3 && !owned.isEmpty()) {
+        JsonObject org = userJson(parts[2]);
+        org.addProperty("type", "Organization");
+        org.addProperty("repos_url", endpoint + "/orgs/" + parts[2] + "/repos");
+        org.addProperty("public_repos", owned.size());
+        return org;
+      }
+    }
+    return recorded(path);
+  }
+
+  private Object recorded(String path) throws IOException {
+    for (Path directory : recordings) {
+      Path file = directory.resolve(path.substring(1) + ".json").normalize();
+      if (!file.startsWith(directory) || !Files.isRegularFile(file)) {
+        continue;
+      }
+      JsonElement json = recorded.get(file);
+      if (json == null) {
+        String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        json = new JsonParser().parse(text.replace(GITHUB_API_URL, endpoint));
+        recorded.put(file, json);
+      }
+      if (json.isJsonArray()) {
+        final JsonArray items = json.getAsJsonArray();
+        return new Listing() {
+          public int size(Map<String, String> query) {
+            return items.size();
+          }
+
+          public JsonElement item(Map<String, String> query, int index) {
+            return items.get(index);
+          }
+        };
+      }
+      return json;
+    }
+    return null;
+  }
+
+  private String link(String path, Map<String, String> query, int page, int last) {
+    List<String> links = new ArrayList<String>();
+    if (page < last) {
+      links.add("<" + pageUrl(path, query, page + 1) + ">; rel=\"next\"");
+      links.add("<" + pageUrl(path, query, last) + ">; rel=\"last\"");
+    }
+    if (page > 1) {
+      links.add("<" + pageUrl(path, query, 1) + ">; rel=\"first\"");
+      links.add("<" + pageUrl(path, query, Math.min(page, last + 1) - 1) + ">; rel=\"prev\"");
+    }
+    return links.isEmpty() ? null : String.join(", ", links);
+  }
+
+  private String pageUrl(String path, Map<String, String> query, int page) {
+    Map<String, String> params = new LinkedHashMap<String, String>(query);
+    params.put("page", Integer.toString(page));
+    StringBuilder url = new StringBuilder(endpoint).append(path);
+    char separator = '?';
+    for (Map.Entry<String, String> param : params.entrySet()) {
+      url.append(separator).append(param.getKey()).append('=').append(param.getValue());
+      separator = '&';
+    }
+    return url.toString();
+  }
+
+  /* renders <items> into a buffer sized for <perPage> records up front */
+  private static String toJson(JsonArray items, int perPage) {
+    StringWriter text = new StringWriter(perPage * 2048);
+    GSON.toJson(items, new JsonWriter(text));
+    return text.toString();
+  }
+
+  private static String etag(String body) {
+    return "\"" + Integer.toHexString(body.hashCode()) + Integer.toHexString(body.length()) + "\"";
+  }
+
+  private Quota.State quota(String credential, boolean charge) {
+    long now = System.currentTimeMillis();
+    String key = credential == null ? "" : credential;
+    synchronized (quotas) {
+      Quota quota = quotas.get(key);
+      if (quota == null || now >= quota.resetMillis) {
+        quota = new Quota(now + rateLimitWindowMillis);
+        quotas.put(key, quota);
+      }
+      boolean exceeded = charge && quota.used >= rateLimit;
+      if (charge && !exceeded) {
+        quota.used++;
+      }
+      return new Quota.State(rateLimit, quota.used, quota.resetMillis / 1000, exceeded);
+    }
+  }
+
+  private static Map<String, String> parseQuery(String query) {
+    Map<String, String> params = new LinkedHashMap<String, String>();
+    if (query != null) {
+      for (String param : query.split("&")) {
+        int equals = param.indexOf('=');
+        if (equals > 0) {
+          params.put(param.substring(0, equals),
+            URLDecoder.decode(param.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+      }
+    }
+    return params;
+  }
+
+  private static int integer(String value, int fallback) {
+    try {
+      return value == null ? fallback : Integer.parseInt(value);
+    }
+    catch (NumberFormatException e) {
+      return fallback;
+    }
+  }
+
+  private static int clamp(int value, int min, int max) {
+    return Math.max(min, Math.min(max, value));
+  }
+
+  private static String date(long secondsBeforeEpoch) {
+    return Instant.ofEpochSecond(EPOCH_SECONDS - secondsBeforeEpoch).toString();
+  }
+
+  /* a user as listings embed them, shared by every record that refers to it */
+  JsonObject user(String login) {
+    JsonObject user = users.get(login);
+    if (user == null) {
+      user = userJson(login);
+      users.put(login, user);
+    }
+    return user;
+  }
+
+  private JsonObject userJson(String login) {
+    JsonObject user = new JsonObject();
+    user.addProperty("login", login);
+    user.addProperty("id", login.hashCode() & Integer.MAX_VALUE);
+    user.addProperty("type", "User");
+    user.addProperty("url", endpoint + "/users/" + login);
+    user.addProperty("html_url", "https://github.com/" + login);
+    return user;
+  }
+
+  /* a user's full profile, as /users/{login} serves it */
+  JsonObject profile(String login) {
+    JsonObject profile = userJson(login);
+    profile.addProperty("name", "User " + login);
+    profile.addProperty("email", login + "@example.com");
+    profile.addProperty("created_at", "2015-01-01T00:00:00Z");
+    profile.addProperty("updated_at", date(0));
+    return profile;
+  }
+
+  /**Listing
+  * An array served page by page, each item built when its page is asked for.
+  */
+  private interface Listing {
+    int size(Map<String, String> query);
+
+    JsonElement item(Map<String, String> query, int index);
+  }
+
+  private static final class Quota {
+    final long resetMillis;
+    int used;
+
+    Quota(long resetMillis) {
+      this.resetMillis = resetMillis;
+    }
+
+    static final class State {
+      final int limit;
+      final int remaining;
+      final int used;
+      final long reset;
+      final boolean exceeded;
+
+      State(int limit, int used, long reset, boolean exceeded) {
+        this.limit = limit;
+        this.used = used;
+        this.remaining = Math.max(0, limit - used);
+        this.reset = reset;
+        this.exceeded = exceeded;
+      }
+
+      JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("limit", limit);
+        json.addProperty("remaining", remaining);
+        json.addProperty("reset", reset);
+        json.addProperty("used", used);
+        return json;
+      }
+    }
+  }
+
+  /**Repository
+  * A generated repository.  Records are numbered newest first and derived
+  * from their index alone: every fifth pull request is open and three in four
+  * of the closed ones are merged, every third issue is closed, and authors
+  * are drawn from <users> logins with a few of them doing most of the work.
+  */
+  public static class Repository {
+    private final String owner;
+    private final String name;
+    private int commits = 1000;
+    private int issues = 200;
+    private int pullRequests = 100;
+    private int reviewComments = 2;
+    private int branches = 10;
+    private int users = 50;
+
+    private String prefix;
+    private int[] openIssues;
+    private int[] closedIssues;
+    private int[] openPullRequests;
+    private int[] closedPullRequests;
+
+    /**Constructor
+    * @params:
+    *   fullName - the repository's name as owner/name
+    */
+    public Repository(String fullName) {
+      int slash = fullName.indexOf('/');
+      if (slash <= 0 || slash != fullName.lastIndexOf('/') || slash == fullName.length() - 1) {
+        throw new IllegalArgumentException("Not an owner/name repository: " + fullName);
+      }
+      this.owner = fullName.substring(0, slash);
+      this.name = fullName.substring(slash + 1);
+    }
+
+    public Repository setCommits(int commits) {
+      this.commits = commits;
+      return this;
+    }
+
+    public Repository setIssues(int issues) {
+      this.issues = issues;
+      return this;
+    }
+
+    public Repository setPullRequests(int pullRequests) {
+      this.pullRequests = pullRequests;
+      return this;
+    }
+
+    /**setReviewComments
+    * Gives every pull request <perPullRequest> review comments.
+    */
+    public Repository setReviewComments(int perPullRequest) {
+      this.reviewComments = perPullRequest;
+      return this;
+    }
+
+    public Repository setBranches(int branches) {
+      this.branches = branches;
+      return this;
+    }
+
+    public Repository setUsers(int users) {
+      this.users = Math.max(1, users);
+      return this;
+    }
+
+    public String getFullName() {
+      return owner + "/" + name;
+    }
+
+    /* indexes the records of each state, so filtered listings can be paged */
+    private void prepare() {
+      prefix = String.format("%08x", getFullName().hashCode());
+      int closedIssueCount = (issues + 2) / 3;
+      openIssues = new int[issues - closedIssueCount];
+      closedIssues = new int[closedIssueCount];
+      for (int i = 0, open = 0, closed = 0; i < issues; i++) {
+        if (isClosedIssue(i)) {
+          closedIssues[closed++] = i;
+        }
+        else {
+          openIssues[open++] = i;
+        }
+      }
+      int openPullRequestCount = (pullRequests + 4) / 5;
+      openPullRequests = new int[openPullRequestCount];
+      closedPullRequests = new int[pullRequests - openPullRequestCount];
+      for (int i = 0, open = 0, closed = 0; i < pullRequests; i++) {
+        if (isOpenPullRequest(i)) {
+          openPullRequests[open++] = i;
+        }
+        else {
+          closedPullRequests[closed++] = i;
+        }
+      }
+    }
+
+    private static boolean isClosedIssue(int index) {
+      return index % 3 == 0;
+    }
+
+    private static boolean isOpenPullRequest(int index) {
+      return index % 5 == 0;
+    }
+
+    private static boolean isMerged(int index) {
+      return !isOpenPullRequest(index) && index % 4 != 0;
+    }
+
+    /* a login for the index-th record, skewed towards the first few users */
+    private String login(long index) {
+      double x = (index * 0.6180339887498949) % 1.0;
+      return "user" + (int) (x * x * users);
+    }
+
+    private String sha(long index) {
+      String hex = Long.toHexString(index);
+      return prefix + "0000000000000000000000000000000".substring(hex.length() - 1) + hex;
+    }
+
+    private Object resolve(final GDETStandInServer server, String[] parts) {
+      if (parts.length == 0) {
+        return toJson(server);
+      }
+      switch (parts[0]) {
+        case "commits":
+          if (parts.length == 1) {
+            return new Listing() {
+              public int size(Map<String, String> query) {
+                return commits;
+              }
+
+              public JsonElement item(Map<String, String> query, int index) {
+                return commit(server, index);
+              }
+            };
+          }
+          if (parts.length == 2 && parts[1].length() == 40 && parts[1].startsWith(sha(0).substring(0, 8))) {
+            long index = Long.parseLong(parts[1].substring(8), 16);
+            return index < commits ? commitWithStats(server, (int) index) : null;
+          }
+          return null;
+        case "issues":
+          if (parts.length == 1) {
+            return new Listing() {
+              public int size(Map<String, String> query) {
+                int[] indexes = issueIndexes(query);
+                return indexes == null ? issues : indexes.length;
+              }
+
+              public JsonElement item(Map<String, String> query, int index) {
+                int[] indexes = issueIndexes(query);
+                return issue(server, indexes == null ? index : indexes[index]);
+              }
+            };
+          }
+          if (parts.length == 2) {
+            int index = issues - integer(parts[1], 0);
+            return index >= 0 && index < issues ? issue(server, index) : null;
+          }
+          return null;
+        case "pulls":
+          if (parts.length == 1) {
+            return new Listing() {
+              public int size(Map<String, String> query) {
+                int[] indexes = pullRequestIndexes(query);
+                return indexes == null ? pullRequests : indexes.length;
+              }
+
+              public JsonElement item(Map<String, String> query, int index) {
+                int[] indexes = pullRequestIndexes(query);
+                return pullRequest(server, indexes == null ? index : indexes[index], false);
+              }
+            };
+          }
+          if (parts.length == 2 && parts[1].equals("comments")) {
+            return new Listing() {
+              public int size(Map<String, String> query) {
+                return pullRequests * reviewComments;
+              }
+
+              public JsonElement item(Map<String, String> query, int index) {
+                return reviewComment(server, index / reviewComments, index % reviewComments);
+              }
+            };
+          }
+          final int index = issues + pullRequests - integer(parts[1], 0);
+          if (index < 0 || index >= pullRequests) {
+            return null;
+          }
+          if (parts.length == 2) {
+            return pullRequest(server, index, true);
+          }
+          if (parts.length == 3 && parts[2].equals("comments")) {
+            return new Listing() {
+              public int size(Map<String, String> query) {
+                return reviewComments;
+              }
+
+              public JsonElement item(Map<String, String> query, int comment) {
+                return reviewComment(server, index, comment);
+              }
+            };
+          }
+          return null;
+        case "branches":
+          if (parts.length == 1) {
+            return new Listing() {
+              public int size(Map<String, String> query) {
+                return branches;
+              }
+
+              public JsonElement item(Map<String, String> query, int index) {
+                return branch(server, index);
+              }
+            };
+          }
+          return null;
+        default:
+          return null;
+      }
+    }
+
+    /* the indexes of the records in the requested state, or null for all */
+    private int[] issueIndexes(Map<String, String> query) {
+      String state = query.getOrDefault("state", "open");
+      if (state.equals("all")) {
+        return null;
+      }
+      return state.equals("closed") ? closedIssues : openIssues;
+    }
+
+    private int[] pullRequestIndexes(Map<String, String> query) {
+      String state = query.getOrDefault("state", "open");
+      if (state.equals("all")) {
+        return null;
+      }
+      return state.equals("closed") ? closedPullRequests : openPullRequests;
+    }
+
+    private String url(GDETStandInServer server) {
+      return server.endpoint + "/repos/" + getFullName();
+    }
+
+    JsonObject toJson(GDETStandInServer server) {
+      JsonObject repo = new JsonObject();
+      repo.addProperty("id", getFullName().hashCode() & Integer.MAX_VALUE);
+      repo.addProperty("name", name);
+      repo.addProperty("full_name", getFullName());
+      repo.add("owner", server.user(owner));
+      repo.addProperty("private", false);
+      repo.addProperty("url", url(server));
+      repo.addProperty("html_url", "https://github.com/" + getFullName());
+      repo.addProperty("description", "Generated repository " + getFullName());
+      repo.addProperty("default_branch", "master");
+      repo.addProperty("open_issues_count", openIssues.length + openPullRequests.length);
+      repo.addProperty("created_at", date(commits * 3600L));
+      repo.addProperty("updated_at", date(0));
+      repo.addProperty("pushed_at", date(0));
+      return repo;
+    }
+
+    private JsonObject commit(GDETStandInServer server, int index) {
+      String login = login(index);
+      String date = date(index * 3600L);
+      JsonObject person = new JsonObject();
+      person.addProperty("name", "User " + login);
+      person.addProperty("email", login + "@example.com");
+      person.addProperty("date", date);
+      JsonObject tree = new JsonObject();
+      tree.addProperty("sha", sha(commits + (long) index));
+      tree.addProperty("url", url(server) + "/git/trees/" + sha(commits + (long) index));
+      JsonObject info = new JsonObject();
+      info.add("author", person);
+      info.add("committer", person);
+      info.addProperty("message", "Change " + (commits - index) + " of " + getFullName()
+        + "\n\nGenerated by the stand-in server.");
+      info.add("tree", tree);
+      info.addProperty("comment_count", 0);
+      JsonArray parents = new JsonArray();
+      if (index + 1 < commits) {
+        JsonObject parent = new JsonObject();
+        parent.addProperty("sha", sha(index + 1));
+        parent.addProperty("url", url(server) + "/commits/" + sha(index + 1));
+        parents.add(parent);
+      }
+      JsonObject commit = new JsonObject();
+      commit.addProperty("sha", sha(index));
+      commit.addProperty("url", url(server) + "/commits/" + sha(index));
+      commit.add("commit", info);
+      commit.add("author", server.user(login));
+      commit.add("committer", server.user(login));
+      commit.add("parents", parents);
+      return commit;
+    }
+
+    /* a commit as GET /commits/{sha} returns it, with its stats and files */
+    private JsonObject commitWithStats(GDETStandInServer server, int index) {
+      JsonObject commit = commit(server, index);
+      int additions = 1 + (int) ((index * 37L) % 200);
+      int deletions = (int) ((index * 11L) % 90);
+      JsonObject stats = new JsonObject();
+      stats.addProperty("additions", additions);
+      stats.addProperty("deletions", deletions);
+      stats.addProperty("total", additions + deletions);
+      JsonObject file = new JsonObject();
+      file.addProperty("filename", "src/File" + (index % 17) + ".java");
+      file.addProperty("status", "modified");
+      file.addProperty("additions", additions);
+      file.addProperty("deletions", deletions);
+      file.addProperty("changes", additions + deletions);
+      JsonArray files = new JsonArray();
+      files.add(file);
+      commit.add("stats", stats);
+      commit.add("files", files);
+      return commit;
+    }
+
+    private JsonObject issue(GDETStandInServer server, int index) {
+      int number = issues - index;
+      boolean closed = isClosedIssue(index);
+      JsonObject issue = new JsonObject();
+      issue.addProperty("id", 1000000L + number);
+      issue.addProperty("number", number);
+      issue.addProperty("title", "Issue " + number + " of " + getFullName());
+      issue.addProperty("state", closed ? "closed" : "open");
+      issue.addProperty("url", url(server) + "/issues/" + number);
+      issue.addProperty("html_url", "https://github.com/" + getFullName() + "/issues/" + number);
+      issue.add("user", server.user(login(index * 7L)));
+      issue.add("labels", new JsonArray());
+      issue.addProperty("comments", 0);
+      issue.addProperty("created_at", date(index * 7200L));
+      issue.addProperty("updated_at", date(index * 3600L));
+      issue.addProperty("closed_at", closed ? date(index * 3600L) : null);
+      issue.addProperty("body", "Generated issue.");
+      return issue;
+    }
+
+    private JsonObject pullRequest(GDETStandInServer server, int index, boolean details) {
+      int number = issues + pullRequests - index;
+      boolean open = isOpenPullRequest(index);
+      boolean merged = isMerged(index);
+      String closedAt = open ? null : date(index * 3600L);
+      JsonObject base = new JsonObject();
+      base.addProperty("ref", "master");
+      base.addProperty("sha", sha(0));
+      JsonObject head = new JsonObject();
+      head.addProperty("ref", "feature-" + number);
+      head.addProperty("sha", sha(index % Math.max(1, commits)));
+      JsonObject pr = new JsonObject();
+      pr.addProperty("id", 2000000L + number);
+      pr.addProperty("number", number);
+      pr.addProperty("title", "Pull request " + number + " of " + getFullName());
+      pr.addProperty("state", open ? "open" : "closed");
+      pr.addProperty("url", url(server) + "/pulls/" + number);
+      pr.addProperty("html_url", "https://github.com/" + getFullName() + "/pull/" + number);
+      pr.addProperty("issue_url", url(server) + "/issues/" + number);
+      pr.add("user", server.user(login(index * 3L)));
+      pr.addProperty("body", "Generated pull request.");
+      pr.addProperty("created_at", date(index * 7200L));
+      pr.addProperty("updated_at", date(index * 3600L));
+      pr.addProperty("closed_at", closedAt);
+      pr.addProperty("merged_at", merged ? closedAt : null);
+      pr.add("head", head);
+      pr.add("base", base);
+      if (details) {
+        pr.addProperty("merged", merged);
+        pr.add("merged_by", merged ? server.user(login(index * 5L + 1)) : JsonNull.INSTANCE);
+        pr.addProperty("mergeable_state", open ? "clean" : "unknown");
+        pr.addProperty("comments", 0);
+        pr.addProperty("review_comments", reviewComments);
+        pr.addProperty("commits", 1 + index % 9);
+        pr.addProperty("additions", index * 37 % 500);
+        pr.addProperty("deletions", index * 11 % 200);
+        pr.addProperty("changed_files", 1 + index % 12);
+      }
+      return pr;
+    }
+
+    private JsonObject reviewComment(GDETStandInServer server, int pullRequest, int index) {
+      int number = issues + pullRequests - pullRequest;
+      long id = 3000000L + (long) pullRequest * reviewComments + index;
+      JsonObject comment = new JsonObject();
+      comment.addProperty("id", id);
+      comment.addProperty("url", url(server) + "/pulls/comments/" + id);
+      comment.addProperty("pull_request_url", url(server) + "/pulls/" + number);
+      comment.addProperty("body", "Review comment " + (index + 1) + " on #" + number + "\n");
+      comment.addProperty("path", "src/Generated" + index + ".java");
+      comment.addProperty("position", index + 1);
+      comment.addProperty("commit_id", sha(pullRequest % Math.max(1, commits)));
+      comment.add("user", server.user(login(id)));
+      comment.addProperty("created_at", date(pullRequest * 3600L + index));
+      comment.addProperty("updated_at", date(pullRequest * 3600L + index));
+      return comment;
+    }
+
+    private JsonObject branch(GDETStandInServer server, int index) {
+      JsonObject commit = new JsonObject();
+      commit.addProperty("sha", sha(index % Math.max(1, commits)));
+      commit.addProperty("url", url(server) + "/commits/" + sha(index % Math.max(1, commits)));
+      JsonObject branch = new JsonObject();
+      branch.addProperty("name", index == 0 ? "master" : "branch-" + index);
+      branch.add("commit", commit);
+      branch.addProperty("protected", false);
+      return branch;
+    }
+  }
+
+  /**main
+  * Serves a generated repository until the process is stopped, e.g.
+  *
+  *   --port 8080 --repo owner/name --commits 100000 --issues 20000
+  *   --pulls 10000 --review-comments 2 --branches 30 --users 500
+  *   --rate-limit 5000 --latency 50 --jitter 20 --recording dir
+  *
+  * The repository defaults to the one GitHubAPIDemo extracts.
+  */
+  public static void main(String[] args) throws IOException, InterruptedException {
+    GDETStandInServer server = new GDETStandInServer(integer(argument(args, "--port"), 8080));
+    Repository repo = new Repository(argument(args, "--repo") == null
+      ? "CompassSoftware/GDET-Tremendous-Trio" : argument(args, "--repo"));
+    repo.setCommits(integer(argument(args, "--commits"), repo.commits))
+      .setIssues(integer(argument(args, "--issues"), repo.issues))
+      .setPullRequests(integer(argument(args, "--pulls"), repo.pullRequests))
+      .setReviewComments(integer(argument(args, "--review-comments"), repo.reviewComments))
+      .setBranches(integer(argument(args, "--branches"), repo.branches))
+      .setUsers(integer(argument(args, "--users"), repo.users));
+    server.addRepository(repo)
+      .setRateLimit(integer(argument(args, "--rate-limit"), DEFAULT_RATE_LIMIT),
+        DEFAULT_RATE_LIMIT_WINDOW_SECONDS)
+      .setLatency(integer(argument(args, "--latency"), 0), integer(argument(args, "--jitter"), 0));
+    if (argument(args, "--recording") != null) {
+      server.addRecording(Paths.get(argument(args, "--recording")));
+    }
+    server.start();
+    System.err.println("Serving " + repo.getFullName() + " at " + server.getEndpoint());
+    Thread.currentThread().join();
+  }
+
+  private static String argument(String[] args, String name) {
+    for (int i = 0; i + 1 < args.length; i++) {
+      if (args[i].equals(name)) {
+        return args[i + 1];
+      }
+    }
+    return null;
+  }
+}
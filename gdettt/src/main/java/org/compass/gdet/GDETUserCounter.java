@@ -0,0 +1,276 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.GHUser;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**GDETUserCounter
+* Counts events per GitHub login.  Logins are kept in an open-addressing
+* table next to a plain int array, so counting an event for a login that has
+* already been seen neither boxes nor allocates.  The first GHUser seen for a
+* login is kept alongside it so that reports can still show the user's name.
+*
+* Events without a user (for example commits whose author email is not linked
+* to an account) are counted under the empty login, which GitHub never hands
+* out.  Instances are not thread safe.
+*/
+public class GDETUserCounter {
+
+  public static final String UNKNOWN_LOGIN = "";
+
+  private static final int MIN_CAPACITY = 16;
+
+  private String[] logins;
+  private GHUser[] users;
+  private int[] counts;
+  private int size;
+  private long total;
+
+  public GDETUserCounter() {
+    this(MIN_CAPACITY);
+  }
+
+  /**Constructor
+  * @params:
+  *   expectedUsers - the number of distinct logins to size the table for.
+  */
+  public GDETUserCounter(int expectedUsers) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedUsers * 2) {
+      capacity <<= 1;
+    }
+    logins = new String[capacity];
+    users = new GHUser[capacity];
+    counts = new int[capacity];
+  }
+
+  /**loginOf
+  * @return the login of <user>, or UNKNOWN_LOGIN if there is no user.
+  */
+  public static String loginOf(GHUser user) {
+    if (user == null || user.getLogin() == null) {
+      return UNKNOWN_LOGIN;
+    }
+    return user.getLogin();
+  }
+
+  /**increment
+  * Counts one event for <user>.
+  *
+  * @return the new count for the user's login.
+  */
+  public int increment(GHUser user) {
+    return add(loginOf(user), user, 1);
+  }
+
+  /**increment
+  * Counts one event for <login>.
+  *
+  * @return the new count for <login>.
+  */
+  public int increment(String login) {
+    return add(login, null, 1);
+  }
+
+  /**add
+  * Adds <delta> events for <login>.
+  *
+  * @return the new count for <login>.
+  */
+  public int add(String login, int delta) {
+    return add(login, null, delta);
+  }
+
+  private int add(String login, GHUser user, int delta) {
+    int slot = slot(login);
+    if (logins[slot] == null) {
+      if ((size + 1) * 2 > logins.length) {
+        grow();
+        slot = slot(login);
+      }
+      logins[slot] = login;
+      size++;
+    }
+    if (users[slot] == null && user != null) {
+      users[slot] = user;
+    }
+    total += delta;
+    return counts[slot] += delta;
+  }
+
+  /**addAll
+  * Adds every count in <other> to this counter.
+  */
+  public void addAll(GDETUserCounter other) {
+    for (int i = 0; i < other.logins.length; i++) {
+      if (other.logins[i] != null) {
+        add(other.logins[i], other.users[i], other.counts[i]);
+      }
+    }
+  }
+
+  /**get
+  * @return the count for <login>, 0 if it has never been counted.
+  */
+  public int get(String login) {
+    int slot = slot(login);
+    return logins[slot] == null ? 0 : counts[slot];
+  }
+
+  /**getUser
+  * @return the first GHUser counted for <login>, or null.
+  */
+  public GHUser getUser(String login) {
+    int slot = slot(login);
+    return logins[slot] == null ? null : users[slot];
+  }
+
+  /**size
+  * @return the number of distinct logins counted.
+  */
+  public int size() {
+    return size;
+  }
+
+  /**total
+  * @return the sum of all counts.
+  */
+  public long total() {
+    return total;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**sorted
+  * @return every login with its count, highest count first and ties broken
+  *   by login.
+  */
+  public List<Entry> sorted() {
+    List<Entry> entries = entries();
+    Collections.sort(entries, Entry.BY_COUNT_DESCENDING);
+    return entries;
+  }
+
+  /**top
+  * @params:
+  *   n - how many entries to return
+  *
+  * @return the <n> logins with the highest counts, in sorted() order.
+  */
+  public List<Entry> top(int n) {
+    if (n <= 0) {
+      return new ArrayList<Entry>();
+    }
+    PriorityQueue<Entry> heap = new PriorityQueue<Entry>(n + 1,
+      Collections.reverseOrder(Entry.BY_COUNT_DESCENDING));
+    for (int i = 0; i < logins.length; i++) {
+      if (logins[i] != null) {
+        heap.add(new Entry(logins[i], users[i], counts[i]));
+        if (heap.size() > n) {
+          heap.poll();
+        }
+      }
+    }
+    List<Entry> top = new ArrayList<Entry>(heap);
+    Collections.sort(top, Entry.BY_COUNT_DESCENDING);
+    return top;
+  }
+
+  /**entries
+  * @return every login with its count, in no particular order.
+  */
+  public List<Entry> entries() {
+    List<Entry> entries = new ArrayList<Entry>(size);
+    for (int i = 0; i < logins.length; i++) {
+      if (logins[i] != null) {
+        entries.add(new Entry(logins[i], users[i], counts[i]));
+      }
+    }
+    return entries;
+  }
+
+  /**toMap
+  * @return the counts keyed by login, highest count first.
+  */
+  public Map<String, Integer> toMap() {
+    Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+    for (Entry entry : sorted()) {
+      map.put(entry.getLogin(), entry.getCount());
+    }
+    return map;
+  }
+
+  private int slot(String login) {
+    int mask = logins.length - 1;
+    int h = login.hashCode();
+    int slot = (h ^ (h >>> 16)) & mask;
+    while (logins[slot] != null && !logins[slot].equals(login)) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void grow() {
+    String[] oldLogins = logins;
+    GHUser[] oldUsers = users;
+    int[] oldCounts = counts;
+    logins = new String[oldLogins.length * 2];
+    users = new GHUser[logins.length];
+    counts = new int[logins.length];
+    for (int i = 0; i < oldLogins.length; i++) {
+      if (oldLogins[i] != null) {
+        int slot = slot(oldLogins[i]);
+        logins[slot] = oldLogins[i];
+        users[slot] = oldUsers[i];
+        counts[slot] = oldCounts[i];
+      }
+    }
+  }
+
+  public String toString() {
+    return toMap().toString();
+  }
+
+  /**Entry
+  * One login and its count.
+  */
+  public static class Entry {
+    static final Comparator<Entry> BY_COUNT_DESCENDING = (a, b) -> {
+      int order = Integer.compare(b.count, a.count);
+      return order != 0 ? order : a.login.compareTo(b.login);
+    };
+
+    private final String login;
+    private final GHUser user;
+    private final int count;
+
+    Entry(String login, GHUser user, int count) {
+      this.login = login;
+      this.user = user;
+      this.count = count;
+    }
+
+    public String getLogin() {
+      return login;
+    }
+
+    /**getUser
+    * @return the first GHUser counted for this login, or null if the login
+    *   was counted by name only.
+    */
+    public GHUser getUser() {
+      return user;
+    }
+
+    public int getCount() {
+      return count;
+    }
+  }
+}
@@ -0,0 +1,358 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.GHFileNotFoundException;
+import org.kohsuke.github.GHUser;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**GDETUserProfileCache
+* Remembers the display name of each GitHub login.  GHUser.getName() fetches
+* the user's whole profile the first time it is called on each GHUser
+* instance, and every issue, pull request and comment carries its own
+* instance, so printing many records from a few authors would otherwise
+* fetch the same profiles over and over.
+*
+* Entries expire after a time to live and the least recently used entries are
+* dropped past a maximum size.  The cache can be saved to and loaded from a
+* properties file so that names survive between runs.  It is safe to share
+* between threads.
+*
+* Records that keep only a login, such as GDETIssueDetails, register the
+* GHUser they were read from, one per login, so that the profile can still be
+* fetched by login once the record's GHUser is gone.
+*
+* Logins whose account cannot be found, such as deleted accounts, are
+* remembered as missing for the time to live too, so that records by them do
+* not fetch the profile again.  Missing logins are not saved.
+*/
+public class GDETUserProfileCache {
+
+  public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(24);
+  public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+  /* stored in place of a name for users that have not set one */
+  private static final String NO_NAME = "\u0000";
+
+  private final long ttlMillis;
+  private final Map<String, Profile> profiles;
+  private final Map<String, GHUser> users = new LinkedHashMap<String, GHUser>();
+
+  public GDETUserProfileCache() {
+    this(DEFAULT_TTL_MILLIS, DEFAULT_MAX_ENTRIES);
+  }
+
+  /**Constructor
+  * @params:
+  *   ttlMillis - how long a fetched name stays valid
+  *   maxEntries - how many logins to remember before evicting the least
+  *     recently used
+  */
+  public GDETUserProfileCache(long ttlMillis, final int maxEntries) {
+    this.ttlMillis = ttlMillis;
+    this.profiles = new LinkedHashMap<String, Profile>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String, Profile> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**defaultFile
+  * @return the location GitHubAPIDemo persists names to, ~/.gdet/users.properties
+  */
+  public static Path defaultFile() {
+    return Paths.get(System.getProperty("user.home"), ".gdet", "users.properties");
+  }
+
+  /**getName
+  * Returns <user>'s display name, fetching their profile only if the login
+  * has not been seen within the time to live.  If their account cannot be
+  * found, the login is remembered as missing and GHFileNotFoundException is
+  * thrown, now and without fetching again on later calls.
+  *
+  * @params:
+  *   user - the user to look up; must not be null
+  *
+  * @return:
+  *   String - the user's name, or null if they have not set one.
+  */
+  public String getName(GHUser user) throws IOException {
+    String login = user.getLogin();
+    Profile cached = lookup(login);
+    if (cached != null) {
+      return name(login, cached);
+    }
+    String name;
+    try {
+      name = user.getName();
+    }
+    catch (GHFileNotFoundException e) {
+      markMissing(login);
+      throw e;
+    }
+    put(login, name, System.currentTimeMillis());
+    return name;
+  }
+
+  /**getName
+  * Returns the display name of <login>, fetching the profile of the GHUser
+  * registered for it if the login has not been seen within the time to live.
+  *
+  * @return:
+  *   String - the user's name, or null if they have not set one.
+  */
+  public String getName(String login) throws IOException {
+    Profile cached = lookup(login);
+    if (cached != null) {
+      return name(login, cached);
+    }
+    GHUser user;
+    synchronized (this) {
+      user = users.get(login);
+    }
+    if (user == null) {
+      throw new IOException("No user registered for " + login);
+    }
+    return getName(user);
+  }
+
+  /**register
+  * Keeps <user> as the way to fetch its login's profile, unless a user is
+  * already registered for the login.  Null users are ignored.
+  */
+  public void register(GHUser user) {
+    if (user != null && user.getLogin() != null) {
+      synchronized (this) {
+        users.putIfAbsent(user.getLogin(), user);
+      }
+    }
+  }
+
+  /**registerAll
+  * Registers every user registered with <other>, for a cache that replaces it.
+  */
+  public void registerAll(GDETUserProfileCache other) {
+    if (other == null || other == this) {
+      return;
+    }
+    List<GHUser> registered;
+    synchronized (other) {
+      registered = new ArrayList<GHUser>(other.users.values());
+    }
+    for (GHUser user : registered) {
+      register(user);
+    }
+  }
+
+  /**prefetchRegistered
+  * Fetches the profiles of every registered login that is not cached yet,
+  * as prefetch() does.
+  */
+  public void prefetchRegistered(int parallelism) {
+    List<GHUser> registered;
+    synchronized (this) {
+      registered = new ArrayList<GHUser>(users.values());
+    }
+    prefetch(registered, parallelism);
+  }
+
+  /**getCachedName
+  * @return the cached name for <login>, or null if it is not cached (or the
+  *   user has no name).
+  */
+  public String getCachedName(String login) {
+    Profile cached = lookup(login);
+    return cached == null ? null : cached.name;
+  }
+
+  /**isMissing
+  * @return true if <login>'s account could not be found within the time to
+  *   live.
+  */
+  public boolean isMissing(String login) {
+    Profile cached = lookup(login);
+    return cached != null && cached.missing;
+  }
+
+  /**reportMissing
+  * Remembers that <login>'s account could not be found, so that it is not
+  * fetched again within the time to live.
+  *
+  * @return true the first time the missing login is reported, so that each
+  *   one is only reported once.
+  */
+  public synchronized boolean reportMissing(String login) {
+    Profile missing = markMissing(login);
+    boolean first = !missing.reported;
+    missing.reported = true;
+    return first;
+  }
+
+  /**remember
+  * Caches <name> for <login> when it was learned some other way than through
+  * a GHUser, for example from a GraphQL response.
+  */
+  public void remember(String login, String name) {
+    put(login, name, System.currentTimeMillis());
+  }
+
+  /**contains
+  * @return true if a fresh entry for <login> is cached, including one for a
+  *   missing account.
+  */
+  public boolean contains(String login) {
+    return lookup(login) != null;
+  }
+
+  public synchronized int size() {
+    return profiles.size();
+  }
+
+  /**prefetch
+  * Fetches the profiles of every distinct, not yet cached login among <users>
+  * using at most <parallelism> concurrent requests.
+  *
+  * @params:
+  *   users - the users that are about to be rendered; nulls are skipped
+  *   parallelism - the maximum number of profiles fetched at once
+  */
+  public void prefetch(Iterable<GHUser> users, int parallelism) {
+    Map<String, GHUser> missing = new LinkedHashMap<String, GHUser>();
+    for (GHUser user : users) {
+      if (user != null && user.getLogin() != null && !contains(user.getLogin())) {
+        missing.putIfAbsent(user.getLogin(), user);
+      }
+    }
+    if (missing.isEmpty()) {
+      return;
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(
+      Math.max(1, Math.min(parallelism, missing.size())));
+    try {
+      List<Future<String>> pending = new ArrayList<Future<String>>();
+      for (GHUser user : missing.values()) {
+        pending.add(pool.submit(() -> getName(user)));
+      }
+      for (Future<String> name : pending) {
+        try {
+          name.get();
+        }
+        catch (ExecutionException e) {}
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**load
+  * Adds the still fresh entries saved in <file>, if it exists.
+  */
+  public void load(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      return;
+    }
+    Properties props = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      props.load(in);
+    }
+    long now = System.currentTimeMillis();
+    for (String key : props.stringPropertyNames()) {
+      if (!key.startsWith("time.")) {
+        continue;
+      }
+      String login = key.substring(5);
+      long fetched = Long.parseLong(props.getProperty(key));
+      String name = props.getProperty("name." + login);
+      if (name != null && now - fetched < ttlMillis) {
+        put(login, NO_NAME.equals(name) ? null : name, fetched);
+      }
+    }
+  }
+
+  /**save
+  * Writes every fresh entry to <file>, replacing it atomically.
+  */
+  public void save(Path file) throws IOException {
+    Properties props = new Properties();
+    long now = System.currentTimeMillis();
+    synchronized (this) {
+      for (Map.Entry<String, Profile> entry : profiles.entrySet()) {
+        Profile profile = entry.getValue();
+        if (!profile.missing && now - profile.fetchedAt < ttlMillis) {
+          props.setProperty("name." + entry.getKey(),
+            profile.name == null ? NO_NAME : profile.name);
+          props.setProperty("time." + entry.getKey(), Long.toString(profile.fetchedAt));
+        }
+      }
+    }
+    Path dir = file.toAbsolutePath().getParent();
+    Files.createDirectories(dir);
+    Path tmp = Files.createTempFile(dir, "users", ".tmp");
+    try (OutputStream out = Files.newOutputStream(tmp)) {
+      props.store(out, "GDET user profile cache");
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private synchronized Profile lookup(String login) {
+    Profile cached = profiles.get(login);
+    if (cached != null && System.currentTimeMillis() - cached.fetchedAt >= ttlMillis) {
+      profiles.remove(login);
+      return null;
+    }
+    return cached;
+  }
+
+  private synchronized void put(String login, String name, long fetchedAt) {
+    profiles.put(login, new Profile(name, fetchedAt, false));
+  }
+
+  private synchronized Profile markMissing(String login) {
+    Profile cached = lookup(login);
+    if (cached == null || !cached.missing) {
+      cached = new Profile(null, System.currentTimeMillis(), true);
+      profiles.put(login, cached);
+    }
+    return cached;
+  }
+
+  /* the name in <cached>, or the failure of an account found missing */
+  private static String name(String login, Profile cached) throws IOException {
+    if (cached.missing) {
+      throw new GHFileNotFoundException("No account found for " + login);
+    }
+    return cached.name;
+  }
+
+  private static class Profile {
+    final String name;
+    final long fetchedAt;
+    final boolean missing;
+    /* whether the missing account has been reported, guarded by the cache */
+    boolean reported;
+
+    Profile(String name, long fetchedAt, boolean missing) {
+      this.name = name;
+      this.fetchedAt = fetchedAt;
+      this.missing = missing;
+    }
+  }
+}
@@ -1,127 +1,543 @@
 package org.compass.gdet;
 import org.kohsuke.github.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.management.JMException;
 
 public class GitHubAPIDemo {
+  private static final long CACHE_SIZE = 512L * 1024 * 1024;
+  private static final int PARALLELISM = 8;
+
   public static void main( String[] args ) {
-    System.out.println("GitHub Data Extration Tool Demo");
-    GithubDataExtractionTool git = new GithubDataExtractionTool();
+    GDETOutputHandler out = null;
+    GDETMetrics metrics = openMetrics(args);
+    try {
+      out = openOutput(args);
+      metrics.watch(out);
+      printReport(out, args, metrics);
+    }
+    catch (IOException e) {
+      System.err.println("Could not write extraction output: " + e);
+    }
+    finally {
+      if (out != null) {
+        try {
+          out.close();
+        }
+        catch (IOException e) {
+          System.err.println("Could not write extraction output: " + e);
+        }
+        System.err.printf("Output: %d bytes, %d flushes, %.1f ms flushing\n",
+          out.getBytesWritten(), out.getFlushCount(), out.getFlushNanos() / 1e6);
+        if (out.getSink() instanceof GDETRotatingSink) {
+          GDETRotatingSink archive = (GDETRotatingSink) out.getSink();
+          System.err.printf("Archived to %d files, %d bytes (%.1fx smaller)\n",
+            archive.getFiles().size(), archive.getCompressedBytes(),
+            (double) out.getBytesWritten() / Math.max(1, archive.getCompressedBytes()));
+        }
+      }
+      closeMetrics(metrics, args);
+    }
+  }
+
+  /**openMetrics
+  * Creates the run's metrics and registers them over JMX.  With --metrics,
+  * the report is also appended to that file every --metrics-interval
+  * seconds, if given.
+  */
+  private static GDETMetrics openMetrics( String[] args ) {
+    GDETMetrics metrics = new GDETMetrics("GitHubAPIDemo");
+    try {
+      metrics.register();
+    }
+    catch (JMException e) {
+      System.err.println("Could not register metrics: " + e);
+    }
+    String file = argument(args, "--metrics");
+    String interval = argument(args, "--metrics-interval");
+    if (file != null && interval != null) {
+      metrics.startReporting(Paths.get(file), (long) (Double.parseDouble(interval) * 1000));
+    }
+    return metrics;
+  }
+
+  /**closeMetrics
+  * Stops periodic reporting and appends the final report to the --metrics
+  * file, if given.
+  */
+  private static void closeMetrics( GDETMetrics metrics, String[] args ) {
+    metrics.stopReporting();
+    String file = argument(args, "--metrics");
+    if (file != null) {
+      Path path = Paths.get(file);
+      try {
+        metrics.appendReport(path);
+        System.err.println("Metrics written to " + path);
+      }
+      catch (IOException e) {
+        System.err.println("Could not write metrics: " + e);
+      }
+    }
+  }
+
+  /**openOutput
+  * Opens the file named after a --output argument, or standard output if
+  * there is none.  With --compress, --rotate-bytes or --rotate-records, the
+  * output goes to a GDETRotatingSink series named after it instead.
+  */
+  private static GDETOutputHandler openOutput( String[] args ) throws IOException {
+    String output = argument(args, "--output");
+    if (output != null && isArchive(args)) {
+      return GDETOutputHandler.toRotatingFiles(Paths.get(output),
+        Arrays.asList(args).contains("--compress"),
+        size(argument(args, "--rotate-bytes")), size(argument(args, "--rotate-records")));
+    }
+    if (output != null) {
+      return GDETOutputHandler.toFile(Paths.get(output));
+    }
+    return GDETOutputHandler.toStandardOutput();
+  }
+
+  private static boolean isArchive( String[] args ) {
+    return Arrays.asList(args).contains("--compress") || argument(args, "--rotate-bytes") != null
+      || argument(args, "--rotate-records") != null;
+  }
+
+  /**size
+  * @return <value> as a number, which may end in k, m or g, or 0 if it is
+  *   null.
+  */
+  private static long size( String value ) {
+    if (value == null) {
+      return 0;
+    }
+    String lower = value.toLowerCase();
+    long unit = 1;
+    if (lower.endsWith("k") || lower.endsWith("m") || lower.endsWith("g")) {
+      unit = lower.endsWith("k") ? 1L << 10 : lower.endsWith("m") ? 1L << 20 : 1L << 30;
+      lower = lower.substring(0, lower.length() - 1);
+    }
+    return Long.parseLong(lower) * unit;
+  }
+
+  /**argument
+  * @return the value following <name> in <args>, or null if it is not given.
+  */
+  private static String argument( String[] args, String name ) {
+    for (int i = 0; i + 1 < args.length; i++) {
+      if (args[i].equals(name)) {
+        return args[i + 1];
+      }
+    }
+    return null;
+  }
+
+  /**printReport
+  * Writes the human readable report to <out>, or, if --format names an
+  * export format (ndjson or csv), every extracted record in that format.
+  * With --org or --repos, every repository of the organization (or in the
+  * comma separated list) is extracted into --output-dir instead, and the
+  * merged per user counts are written to <out>.  --repo names the single
+  * repository to extract, and --api-url sends every request to another API
+  * URL, such as a GDETStandInServer's.  Every request and section is
+  * recorded in <metrics>.  With --store, the extracted records are also
+  * appended to a GDETSnapshotStore in that directory; with --offline, the
+  * per user counts are written from the store without contacting GitHub.
+  * Requests go through the shared GDETHttpClientConnector, or through
+  * HttpURLConnections with --url-connection.
+  * With --stream commits or --stream issues, only that section is written,
+  * streamed page by page.
+  */
+  private static void printReport( GDETOutputHandler out, String[] args,
+      GDETMetrics metrics ) throws IOException {
+    String format = argument(args, "--format");
+    boolean many = argument(args, "--org") != null || argument(args, "--repos") != null;
+    GDETRecordExporter exporter = null;
+    if (!many && format != null && !format.equals("text")) {
+      exporter = GDETRecordExporter.forFormat(format, out);
+      if (exporter == null) {
+        System.err.println("Unknown output format: " + format);
+        return;
+      }
+    }
+    if (exporter == null) {
+      out.write("GitHub Data Extration Tool Demo\n");
+    }
+    if (Arrays.asList(args).contains("--offline")) {
+      printStoredCounts(out, args);
+      return;
+    }
+    HttpConnector connector = Arrays.asList(args).contains("--url-connection")
+      ? HttpConnector.DEFAULT
+      : GDETHttpClientConnector.getDefault();
+    GDETRateLimitScheduler scheduler = null;
+    try {
+      scheduler = GDETRateLimitScheduler.fromCredentials(connector);
+      connector = scheduler;
+    }
+    catch (IOException e) {
+      System.err.println("Rate limit scheduling disabled: " + e);
+    }
+    GDETResponseCache cache = null;
+    try {
+      cache = new GDETResponseCache(connector,
+        GDETResponseCache.defaultDirectory(), CACHE_SIZE);
+      connector = cache;
+    }
+    catch (IOException e) {
+      System.err.println("Response cache disabled: " + e);
+    }
+    metrics.watch(cache);
+    GDETPrefetchingConnector prefetcher = new GDETPrefetchingConnector(connector);
+    connector = new GDETMeteredConnector(prefetcher, metrics);
+    String apiUrl = argument(args, "--api-url");
+    GithubDataExtractionTool git = apiUrl != null
+      ? new GithubDataExtractionTool(connector, apiUrl)
+      : new GithubDataExtractionTool(connector);
+    long start = System.nanoTime();
     if (!git.checkConnection()) {
-      System.out.println("Error Establishing Connection");
+      if (exporter == null) {
+        out.write("Error Establishing Connection\n");
+      }
+      else {
+        System.err.println("Error Establishing Connection");
+      }
+    }
+    if (exporter == null) {
+      out.write("Successfully Established Connection\n");
     }
-    System.out.println("Successfully Established Connection");
+    if (many) {
+      extractMany(out, git, args);
+      printConnectorStats(cache, prefetcher, scheduler, start);
+      prefetcher.close();
+      return;
+    }
+    String name = argument(args, "--repo");
     GHRepository repo = git.getRepository(
-      "CompassSoftware/GDET-Tremendous-Trio");
-    if (repo != null) {
-
-      System.out.print(GithubDataExtractionTool.getRepositoryMetaData(repo));
-      String startSection = String.format("\n\n%32s\n", "").replace(" ", "*");
-      String endSection = String.format("%32s\n\n\n", "").replace(" ", "*");
-
-      //Print Commits
-      System.out.print(startSection);
-      System.out.println();
-      System.out.println("COMMITS");
-      System.out.print(endSection);
-      List<GHCommit> commits =
-        GithubDataExtractionTool.getCommits(repo);
-      for (GHCommit commit : commits) {
-        System.out.print(GithubDataExtractionTool.commitToString(commit));
-      }
-
-      //Print Issues
-      System.out.print(startSection);
-      System.out.println("ISSUES");
-      System.out.print(endSection);
-      List<GHIssue> issues = GithubDataExtractionTool.getIssues(repo);
-      for (GHIssue issue : issues) {
-        System.out.print(GithubDataExtractionTool.issueToString(issue));
-      }
-
-      //Print Commit Count Per User
-      System.out.print(startSection);
-      System.out.println("COMMIT-COUNT-PER-USER");
-      System.out.print(endSection);
-      Map<GHUser, Integer> commitsPerUser =
-        GithubDataExtractionTool.getCommitCountPerUser(repo);
-      for (GHUser user : commitsPerUser.keySet()) {
-        System.out.printf("User: %-20s    Commit Count: %d\n",
-          GithubDataExtractionTool.getGHUserNameWithFallback(user),
-          commitsPerUser.get(user));
-      }
-
-      //Print Commit Count Per User
-      System.out.print(startSection);
-      System.out.println("PULL-REQUEST-OPENED-COUNT-PER-USER");
-      System.out.print(endSection);
-      Map<GHUser, Integer> prPerUser =
-        GithubDataExtractionTool.getPullRequestCountPerUser(repo, false);
-      for (GHUser user : prPerUser.keySet()) {
-        System.out.printf("User: %-20s    PR Opened Count: %d\n",
-          GithubDataExtractionTool.getGHUserNameWithFallback(user),
-          prPerUser.get(user));
-      }
-
-      //Print Commit Count Per User
-      System.out.print(startSection);
-      System.out.println("PULL-REQUEST-MERGED-COUNT-PER-USER");
-      System.out.print(endSection);
-      Map<GHUser, Integer> prMergedPerUser =
-        GithubDataExtractionTool.getPullRequestCountPerUser(repo, true);
-      for (GHUser user : prMergedPerUser.keySet()) {
-        System.out.printf("User: %-20s    PR Merged Count: %d\n",
-          GithubDataExtractionTool.getGHUserNameWithFallback(user),
-          prMergedPerUser.get(user));
-      }
-
-      System.out.print(startSection);
-      System.out.println("ISSUE-CREATED-COUNT-PER-USER");
-      System.out.print(endSection);
-      Map<GHUser, Integer> issuesOpenedPerUser =
-        GithubDataExtractionTool.getIssueCountPerUser(repo);
-      for (GHUser user : issuesOpenedPerUser.keySet()) {
-        System.out.printf("User: %-20s    PR Merged Count: %d\n",
-          GithubDataExtractionTool.getGHUserNameWithFallback(user),
-          issuesOpenedPerUser.get(user));
-      }
-
-      //Print Pull Requests
-      System.out.print(startSection);
-      System.out.println("Pull Requests");
-      System.out.print(endSection);
-
-      System.out.println("Open Pull Requests");
-      List<GHPullRequest> oprs = GithubDataExtractionTool.getPullRequests(repo, GHIssueState.OPEN);
-      for (GHPullRequest opr : oprs) {
-	  System.out.print(GithubDataExtractionTool.pullRequestToString(opr));
-      }
-      System.out.println("Closed Pull Requests");
-      List<GHPullRequest> cprs = GithubDataExtractionTool.getPullRequests(repo, GHIssueState.CLOSED);
-      for (GHPullRequest cpr : cprs) {
-          System.out.print(GithubDataExtractionTool.pullRequestToString(cpr));
-      }
-
-      //Print Pull Request Comments
-      System.out.print(startSection);
-      System.out.println("Pull Request Review Comments");
-      System.out.print(endSection);
-
-     List<GHPullRequestReviewComment> pcrs = GithubDataExtractionTool.getPullRequestReviewComments(repo);
-     for (GHPullRequestReviewComment pcr : pcrs) {
-       System.out.print(GithubDataExtractionTool.pullRequestReviewCommentsToString(pcr));
-    }
-
-     System.out.print(startSection);
-     System.out.println("Branches");
-     System.out.print(endSection);
-
-     List<GHBranch> gbs = GithubDataExtractionTool.getBranches(repo);
-     for(GHBranch gb : gbs)
-	   {
-		    System.out.print(GithubDataExtractionTool.branchToString(gb));
-     }
+      name != null ? name : "CompassSoftware/GDET-Tremendous-Trio");
+    if (repo != null && exporter == null && argument(args, "--stream") != null) {
+      streamSection(out, repo, argument(args, "--stream"), metrics);
+    }
+    else if (repo != null) {
+      GDETRepositorySnapshot snapshot = new GDETRepositorySnapshot(repo, PARALLELISM,
+        git.getGraphQLPullRequests());
+      if (argument(args, "--clone") != null) {
+        openClone(snapshot, args);
+      }
+      GDETUserProfileCache profiles = GithubDataExtractionTool.getUserProfileCache();
+      try {
+        profiles.load(GDETUserProfileCache.defaultFile());
+      }
+      catch (IOException e) {
+        System.err.println("Could not load user profile cache: " + e);
+      }
+      fetchSections(snapshot, profiles, metrics);
+
+      if (exporter != null) {
+        int exported = exporter.exportSnapshot(snapshot, metrics);
+        System.err.printf("Exported %d records as %s\n", exported, format);
+      }
+      else {
+        GDETReport.write(out, snapshot, metrics);
+      }
+      if (argument(args, "--store") != null) {
+        store(snapshot, repo.getFullName(), Paths.get(argument(args, "--store")));
+      }
+      if (exporter == null && Arrays.asList(args).contains("--churn")) {
+        printChurn(out, snapshot, metrics);
+      }
+
+      try {
+        profiles.save(GDETUserProfileCache.defaultFile());
+      }
+      catch (IOException e) {
+        System.err.println("Could not save user profile cache: " + e);
+      }
+
+    }
+    printConnectorStats(cache, prefetcher, scheduler, start);
+    prefetcher.close();
+  }
+
+  /**streamSection
+  * Writes the commits or issues of <repo>, as named by <section>, through a
+  * GDETPipeline, so that pages are fetched while earlier ones are written
+  * and only a few pages are ever held in memory.  Each stage's counters are
+  * printed to stderr and recorded in <metrics>.
+  */
+  private static void streamSection( GDETOutputHandler out, GHRepository repo, String section,
+      GDETMetrics metrics ) throws IOException {
+    GDETPipeline<?, ?> pipeline;
+    if (section.equals("commits")) {
+      pipeline = GDETPipeline.ofCommits(repo, out);
+    }
+    else if (section.equals("issues")) {
+      pipeline = GDETPipeline.ofIssues(repo, out);
+    }
+    else {
+      System.err.println("Cannot stream " + section + ", only commits or issues");
+      return;
+    }
+    long start = System.nanoTime();
+    long written = pipeline.run();
+    System.err.printf("Streamed %d %s in %.1f s\n", written, section,
+      (System.nanoTime() - start) / 1e9);
+    for (GDETPipeline.Stage stage : pipeline.getStages()) {
+      System.err.println("  " + stage);
+    }
+    pipeline.recordStages(metrics, "stream " + section);
+  }
+
+  /**fetchSections
+  * Fetches every section of <snapshot> and its users' profiles, running
+  * independent sections at once on a pool of PARALLELISM threads, so that
+  * the report can then be written in its usual order without waiting.
+  */
+  private static void fetchSections( GDETRepositorySnapshot snapshot,
+      GDETUserProfileCache profiles, GDETMetrics metrics ) {
+    ExecutorService pool = Executors.newFixedThreadPool(PARALLELISM);
+    long start = System.nanoTime();
+    try {
+      snapshot.plan(new GDETJobPlanner(pool, metrics), profiles).await();
+    }
+    catch (IOException e) {
+      System.err.println("Could not fetch every section: " + e.getCause());
+    }
+    finally {
+      pool.shutdown();
+    }
+    System.err.printf("Fetched sections in %.1f s\n", (System.nanoTime() - start) / 1e9);
+  }
+
+  /**openClone
+  * Reads <snapshot>'s commits from the mirror in the --clone directory,
+  * cloning it from --clone-url (the repository's clone URL by default) if
+  * it does not exist yet and fetching new commits if it does.
+  */
+  private static void openClone( GDETRepositorySnapshot snapshot, String[] args ) {
+    String url = argument(args, "--clone-url");
+    if (url == null) {
+      url = snapshot.getRepository().getHttpTransportUrl();
+    }
+    long start = System.nanoTime();
+    try {
+      GDETGitClone clone = GDETGitClone.open(url, Paths.get(argument(args, "--clone")));
+      System.err.printf("Updated clone of %s in %.1f s\n", url, (System.nanoTime() - start) / 1e9);
+      teachLogins(clone, snapshot.getRepository(), args);
+      snapshot.setLocalClone(clone);
+    }
+    catch (IOException e) {
+      System.err.println("Could not open clone, reading commits from the API: " + e);
+    }
+  }
+
+  /**teachLogins
+  * Teaches <clone> the login of every author email it can, from the commits
+  * of <repo> stored in the --store directory or, if there are none, from
+  * the most recent page of commits from the API, so that authors without a
+  * noreply email are not all counted as unknown.
+  */
+  private static void teachLogins( GDETGitClone clone, GHRepository repo, String[] args ) {
+    String directory = argument(args, "--store");
+    try {
+      if (directory != null) {
+        try (GDETSnapshotStore store = new GDETSnapshotStore(Paths.get(directory))) {
+          GDETSnapshotStore.StoredSnapshot stored = store.read(repo.getFullName());
+          if (stored != null) {
+            Map<String, String> logins = new HashMap<String, String>();
+            stored.forEachCommit((sha, login, committedAt) -> {
+              if (login != null) {
+                logins.put(GDETSnapshotStore.hex(sha), login);
+              }
+            });
+            clone.learnLogins(logins);
+            return;
+          }
+        }
+      }
+      List<GDETCommitDetails> recent = new ArrayList<GDETCommitDetails>();
+      for (GHCommit commit : repo.listCommits()
+          .withPageSize(GithubDataExtractionTool.MAX_PAGE_SIZE).iterator().nextPage()) {
+        recent.add(GDETCommitDetails.of(commit));
+      }
+      clone.learnLogins(recent);
+    }
+    catch (IOException | RuntimeException e) {
+      System.err.println("Could not learn the logins of commit authors: " + e);
+    }
+  }
+
+  /**printChurn
+  * Writes the lines added and deleted per user and per week of <snapshot>'s
+  * commits to <out>.  Commit stats are cached in
+  * ~/.gdet/commit-stats.properties, so only new commits are fetched.
+  */
+  private static void printChurn( GDETOutputHandler out, GDETRepositorySnapshot snapshot,
+      GDETMetrics metrics ) throws IOException {
+    GDETCommitStatsCache stats = new GDETCommitStatsCache();
+    try {
+      stats.load(GDETCommitStatsCache.defaultFile());
+    }
+    catch (IOException e) {
+      System.err.println("Could not load commit stats cache: " + e);
+    }
+    long start = System.nanoTime();
+    GDETChurnAggregator.Churn churn = new GDETChurnAggregator(stats, PARALLELISM)
+      .aggregate(snapshot.getRepository(), snapshot.getCommitDetails());
+    int written = GDETReport.writeChurn(out, churn);
+    metrics.recordSection("churn", written, System.nanoTime() - start);
+    System.err.printf("Churn: %d commits fetched, %d cached, %d failed\n",
+      stats.getFetchCount(), churn.getTotal().getCommits() - stats.getFetchCount(),
+      churn.getFailedCount());
+    try {
+      stats.save(GDETCommitStatsCache.defaultFile());
+    }
+    catch (IOException e) {
+      System.err.println("Could not save commit stats cache: " + e);
+    }
+  }
+
+  /**store
+  * Appends every record of <snapshot> to the snapshot store in <directory>.
+  */
+  private static void store( GDETRepositorySnapshot snapshot, String repoName,
+      Path directory ) {
+    try (GDETSnapshotStore store = new GDETSnapshotStore(directory);
+        GDETSnapshotStore.Writer writer = store.writer(repoName)) {
+      writer.writeSnapshot(snapshot);
+      System.err.printf("Stored %d records of %s in %s\n",
+        writer.getRecordCount(), repoName, directory);
+    }
+    catch (IOException e) {
+      System.err.println("Could not store snapshot: " + e);
+    }
+  }
+
+  /**printStoredCounts
+  * Writes the per user counts of the --repo stored in the --store directory
+  * (~/.gdet/store by default) to <out>, without contacting GitHub.  Users'
+  * names come from the saved user profile cache.
+  */
+  private static void printStoredCounts( GDETOutputHandler out, String[] args )
+      throws IOException {
+    String name = argument(args, "--repo");
+    if (name == null) {
+      name = "CompassSoftware/GDET-Tremendous-Trio";
+    }
+    String directory = argument(args, "--store");
+    long start = System.nanoTime();
+    GDETSnapshotStore.StoredSnapshot stored = new GDETSnapshotStore(
+      directory == null ? GDETSnapshotStore.defaultDirectory() : Paths.get(directory)).read(name);
+    if (stored == null) {
+      System.err.println("Nothing stored for " + name);
+      return;
+    }
+    try {
+      GithubDataExtractionTool.getUserProfileCache().load(GDETUserProfileCache.defaultFile());
+    }
+    catch (IOException e) {
+      System.err.println("Could not load user profile cache: " + e);
+    }
+    GDETReport.writeCounts(out, "COMMIT-COUNT-PER-USER", "Commit Count",
+      stored.getCommitCountPerUser());
+    GDETReport.writeCounts(out, "PULL-REQUEST-OPENED-COUNT-PER-USER", "PR Opened Count",
+      stored.getPullRequestCountPerUser(false));
+    GDETReport.writeCounts(out, "PULL-REQUEST-MERGED-COUNT-PER-USER", "PR Merged Count",
+      stored.getPullRequestCountPerUser(true));
+    GDETReport.writeCounts(out, "ISSUE-CREATED-COUNT-PER-USER", "Issue Count",
+      stored.getIssueCountPerUser());
+    System.err.printf("Read %d segments (%d bytes) of %s in %.1f s\n", stored.getSegmentCount(),
+      stored.getSizeInBytes(), name, (System.nanoTime() - start) / 1e9);
+  }
+
+  private static void printConnectorStats( GDETResponseCache cache,
+      GDETPrefetchingConnector prefetcher, GDETRateLimitScheduler scheduler, long startNanos ) {
+    System.err.printf("Extracted in %.1f s\n", (System.nanoTime() - startNanos) / 1e9);
+    GDETHttpClientConnector client = GDETHttpClientConnector.getDefault();
+    if (client.getRequestCount() > 0) {
+      System.err.printf("HTTP client: %d responses, %d over HTTP/2, %d gzipped\n",
+        client.getRequestCount(), client.getHttp2RequestCount(),
+        client.getGzippedResponseCount());
+    }
+    System.err.printf("Prefetched pages: %d requested, %d used, %d wasted\n",
+      prefetcher.getPrefetchCount(), prefetcher.getHitCount(), prefetcher.getWastedCount());
+    if (cache != null) {
+      System.err.printf("Response cache: %d hits, %d misses\n",
+        cache.getHitCount(), cache.getMissCount());
+    }
+    if (scheduler != null) {
+      System.err.printf("Rate limits: %d requests, %d retries, %.1f s throttled\n",
+        scheduler.getRequestCount(), scheduler.getRetryCount(),
+        scheduler.getThrottleNanos() / 1e9);
+      for (GDETRateLimitScheduler.State state : scheduler.getStates()) {
+        System.err.println("  " + state);
+      }
+    }
+  }
+
+  /**extractMany
+  * Extracts the repositories named by --org or --repos with a
+  * GDETOrganizationExtractor, writing each to --output-dir (gdet-output by
+  * default) in --format, and the merged per user counts to <out>.  With
+  * --compress, --rotate-bytes or --rotate-records, each repository is
+  * written to a GDETRotatingSink series.
+  */
+  private static void extractMany( GDETOutputHandler out, GithubDataExtractionTool git,
+      String[] args ) throws IOException {
+    String format = argument(args, "--format");
+    String directory = argument(args, "--output-dir");
+    GDETOrganizationExtractor extractor =
+      new GDETOrganizationExtractor(git.getGitHub(), GDETOrganizationExtractor.DEFAULT_PARALLELISM)
+        .setGraphQL(git.getGraphQLPullRequests())
+        .setOutput(Paths.get(directory == null ? "gdet-output" : directory),
+          format == null ? "text" : format);
+    if (isArchive(args)) {
+      extractor.setArchive(Arrays.asList(args).contains("--compress"),
+        size(argument(args, "--rotate-bytes")), size(argument(args, "--rotate-records")));
+    }
+    GDETUserProfileCache profiles = GithubDataExtractionTool.getUserProfileCache();
+    try {
+      profiles.load(GDETUserProfileCache.defaultFile());
+    }
+    catch (IOException e) {
+      System.err.println("Could not load user profile cache: " + e);
+    }
+
+    GDETOrganizationExtractor.Result result;
+    if (argument(args, "--org") != null) {
+      result = extractor.extractOrganization(argument(args, "--org"));
+    }
+    else {
+      result = extractor.extract(Arrays.asList(argument(args, "--repos").split(",")));
+    }
 
+    GDETReport.writeCounts(out, "COMMIT-COUNT-PER-USER", "Commit Count",
+      result.getCommitCountPerUser());
+    GDETReport.writeCounts(out, "PULL-REQUEST-OPENED-COUNT-PER-USER", "PR Opened Count",
+      result.getPullRequestCountPerUser(false));
+    GDETReport.writeCounts(out, "PULL-REQUEST-MERGED-COUNT-PER-USER", "PR Merged Count",
+      result.getPullRequestCountPerUser(true));
+    GDETReport.writeCounts(out, "ISSUE-CREATED-COUNT-PER-USER", "Issue Count",
+      result.getIssueCountPerUser());
+
+    System.err.printf("Extracted %d repositories, %d failed\n",
+      result.getRepositories().size(), result.getFailures().size());
+    for (GDETOrganizationExtractor.RepositoryResult failure : result.getFailures()) {
+      System.err.println("  " + failure.getName() + ": " + failure.getError());
+    }
+    try {
+      profiles.save(GDETUserProfileCache.defaultFile());
+    }
+    catch (IOException e) {
+      System.err.println("Could not save user profile cache: " + e);
     }
   }
 }
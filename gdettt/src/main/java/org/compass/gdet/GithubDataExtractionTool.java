@@ -1,30 +1,108 @@
 package org.compass.gdet;
 import org.kohsuke.github.*;
+import java.io.Closeable;
 import java.io.IOException;
 import java.lang.NullPointerException;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class GithubDataExtractionTool
+public class GithubDataExtractionTool implements Closeable
 {
+  /** The system property that points the tool at another API URL. */
+  public static final String API_URL_PROPERTY = "gdet.api.url";
+
+  /** The largest page size GitHub's REST listings accept. */
+  public static final int MAX_PAGE_SIZE = 100;
+
   private GitHub github;
+  private HttpConnector connector;
+  private String apiUrl;
+  /* whether the connector was made by the tool, which then closes it */
+  private boolean ownsConnector;
   private GDETOutputHandler outputController;
+  /* volatile so that threads see a cache set by setUserProfileCache() */
+  private static volatile GDETUserProfileCache userProfiles = new GDETUserProfileCache();
+
+  private static final int INITIAL_RENDER_BUFFER = 512;
+  private static final int MAX_RETAINED_RENDER_BUFFER = 64 << 10;
+  private static final ThreadLocal<StringBuilder> RENDER_BUFFER =
+    ThreadLocal.withInitial(() -> new StringBuilder(INITIAL_RENDER_BUFFER));
 
   /**Constructor
   * This constructor will try to establish a connection to gthub with the
   * username and password held in ~/.github and will print an error message
-  * if it is unable to.
+  * if it is unable to.  Requests are paced by a GDETRateLimitScheduler over
+  * every credential in ~/.github and ~/.gdet/tokens, and listing pages are
+  * fetched ahead by a GDETPrefetchingConnector.  Requests are sent through
+  * the shared GDETHttpClientConnector.  close() stops the prefetching
+  * threads.
   */
   public GithubDataExtractionTool()
   {
+    this(defaultConnector());
+    ownsConnector = true;
+  }
+
+  /**defaultConnector
+  * @return a rate limit scheduler over the configured credentials, or the
+  *   plain HttpClient connector if they cannot be read, with listing pages
+  *   prefetched ahead of the caller.
+  */
+  private static HttpConnector defaultConnector() {
+    HttpConnector client = GDETHttpClientConnector.getDefault();
+    try {
+      return new GDETPrefetchingConnector(GDETRateLimitScheduler.fromCredentials(client));
+    }
+    catch (IOException e) {
+      return new GDETPrefetchingConnector(client);
+    }
+  }
+
+  /**Constructor
+  * This constructor will try to establish a connection to github with the
+  * username and password held in ~/.github, sending every request through
+  * <connector> (for example a GDETResponseCache).  When github reports a
+  * rate limit anyway, the client waits for it to pass instead of failing.
+  * If the gdet.api.url system property is set, requests go to that API URL.
+  *
+  * @params:
+  *   connector - the HttpConnector the GitHub client should use.
+  */
+  public GithubDataExtractionTool(HttpConnector connector)
+  {
+    this(connector, System.getProperty(API_URL_PROPERTY));
+  }
+
+  /**Constructor
+  * This constructor works like GithubDataExtractionTool(HttpConnector), but
+  * sends every request to <apiUrl> instead of the endpoint configured in
+  * ~/.github, for example to a GitHub Enterprise server or to a
+  * GDETStandInServer.  The credentials in ~/.github are used if there are
+  * any; with an API URL given, the tool connects anonymously otherwise.
+  *
+  * @params:
+  *   connector - the HttpConnector the GitHub client should use.
+  *   apiUrl - the REST API URL to use, or null for the configured one.
+  */
+  public GithubDataExtractionTool(HttpConnector connector, String apiUrl)
+  {
+    this.connector = connector;
+    this.apiUrl = apiUrl;
     try {
-      github = GitHubBuilder.fromCredentials()
-                            .withAbuseLimitHandler( AbuseLimitHandler.FAIL )
-                            .withRateLimitHandler( RateLimitHandler.FAIL )
+      github = builder(apiUrl)
+                            .withConnector( connector )
+                            .withAbuseLimitHandler( AbuseLimitHandler.WAIT )
+                            .withRateLimitHandler( RateLimitHandler.WAIT )
                             .build();
-      outputController = new GDETOutputHandler( java.io.OutputStreamWriter.class );
+      outputController = GDETOutputHandler.toStandardOutput();
     }
     catch (IOException e) {
       System.err.println("Could not access ~/.github with exception " + e);
@@ -33,6 +111,41 @@ public class GithubDataExtractionTool
     }
   }
 
+  /**builder
+  * @return a builder with the configured credentials, sending requests to
+  *   <apiUrl> if it is set.
+  */
+  private static GitHubBuilder builder(String apiUrl) throws IOException {
+    if (apiUrl == null) {
+      return GitHubBuilder.fromCredentials();
+    }
+    GitHubBuilder builder;
+    try {
+      builder = GitHubBuilder.fromCredentials();
+    }
+    catch (IOException e) {
+      builder = new GitHubBuilder();
+    }
+    return builder.withEndpoint(apiUrl);
+  }
+
+  /**close
+  * Closes the connector the tool made for itself, if it was constructed
+  * without one.  Connectors passed in are left for the caller to close.
+  */
+  public void close() throws IOException {
+    if (ownsConnector && connector instanceof Closeable) {
+      ((Closeable) connector).close();
+    }
+  }
+
+  /**getApiUrl
+  * @return the API URL given in place of the configured one, or null.
+  */
+  public String getApiUrl() {
+    return apiUrl;
+  }
+
   /**checkConnection
   * This method will check the connection to github and will return false if a
   * connection has not been established.
@@ -55,6 +168,62 @@ public class GithubDataExtractionTool
     }
   }
 
+  /**getGitHub
+  * @return:
+  *   GitHub - the underlying github-api client, or null if no connection
+  *     could be established.
+  */
+  public GitHub getGitHub() {
+    return github;
+  }
+
+  /**getOutputHandler
+  * @return:
+  *   GDETOutputHandler - the handler this tool's output is written through.
+  */
+  public GDETOutputHandler getOutputHandler() {
+    return outputController;
+  }
+
+  /**setOutputHandler
+  * Sends this tool's output through <handler> instead of standard output.
+  */
+  public void setOutputHandler(GDETOutputHandler handler) {
+    outputController = handler;
+  }
+
+  /**getIncrementalExtractor
+  * This method will return an extractor that only fetches what changed in a
+  * repository since the checkpoint kept for it in <store>.
+  *
+  * @params:
+  *   store - the checkpoint store to load and save checkpoints with
+  *
+  * @return:
+  *   GDETIncrementalExtractor - an incremental extractor for this connection.
+  */
+  public GDETIncrementalExtractor getIncrementalExtractor(GDETCheckpointStore store) {
+    return new GDETIncrementalExtractor(github, store);
+  }
+
+  /**getGraphQLPullRequests
+  * This method will return a backend that fetches pull request details a
+  * hundred at a time through the GraphQL API, with the credentials in
+  * ~/.github and through the same connector as every other request.
+  *
+  * @return:
+  *   GDETGraphQLPullRequests - the backend, or null if there are no
+  *     credentials to use it with.
+  */
+  public GDETGraphQLPullRequests getGraphQLPullRequests() {
+    try {
+      return GDETGraphQLPullRequests.fromCredentials(connector, apiUrl);
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
   /**getRepository
   * This method will try to get a repository with the name <reponame> and return
   * a GHRepository object if successful or null if not.
@@ -86,7 +255,37 @@ public class GithubDataExtractionTool
   *   List<GHIssue> - a list of the GHIssues queried or null if the query fails.
   */
   public static List<GHIssue> getIssues(GHRepository repo) {
-    return repo.listIssues(GHIssueState.ALL).asList();
+    return repo.listIssues(GHIssueState.ALL).withPageSize(MAX_PAGE_SIZE).asList();
+  }
+
+  /**streamIssues
+  * This method will lazily stream all issues for a given repository.  Pages
+  * are only requested from github as the stream is consumed, so memory use
+  * stays flat no matter how many issues the repository has.
+  *
+  * @params:
+  *   repo - the GHRepository object to get Issues from
+  *
+  * @return:
+  *   Stream<GHIssue> - a lazy stream of the repository's issues.
+  */
+  public static Stream<GHIssue> streamIssues(GHRepository repo) {
+    return stream(repo.listIssues(GHIssueState.ALL).withPageSize(MAX_PAGE_SIZE));
+  }
+
+  /**getIssueDetails
+  * This method will get the details of all issues for a given repository,
+  * reading each issue's details as its page arrives so that only the
+  * details are kept.  Issues whose details cannot be read are left out.
+  *
+  * @params:
+  *   repo - the GHRepository object to get Issues from
+  *
+  * @return:
+  *   List<GDETIssueDetails> - the details of the repository's issues.
+  */
+  public static List<GDETIssueDetails> getIssueDetails(GHRepository repo) {
+    return project(streamIssues(repo), GDETIssueDetails::of);
   }
 
   /**getBranches
@@ -122,8 +321,23 @@ public class GithubDataExtractionTool
   */
   public static List<GHCommitComment> getCommitComments(GHRepository repo)
   {
-	  	return repo.listCommitComments().asList();
+	  	return repo.listCommitComments().withPageSize(MAX_PAGE_SIZE).asList();
   }
+
+  /**streamCommitComments
+  * This method will lazily stream the commit comments for a given repository.
+  *
+  * @params:
+  *   repo - the GHRepository object to get commits comments from.
+  *
+  * @return:
+  *   Stream<GHCommitComment> - a lazy stream of the commit comments for this repo
+  */
+  public static Stream<GHCommitComment> streamCommitComments(GHRepository repo)
+  {
+    return stream(repo.listCommitComments().withPageSize(MAX_PAGE_SIZE));
+  }
+
   /**getPullRequests
   * This method will try to get a list of pull requests for a given reposito
 ry based on a given state..
@@ -137,7 +351,23 @@ ry based on a given state..
   */
   public static List<GHPullRequest> getPullRequests(GHRepository repo, GHIssueState state)
   {
-          return repo.listPullRequests(state).asList();
+          return repo.listPullRequests(state).withPageSize(MAX_PAGE_SIZE).asList();
+  }
+
+  /**streamPullRequests
+  * This method will lazily stream the pull requests for a given repository
+  * based on a given state.
+  *
+  * @params:
+  *   repo - the GHRepository object to get pull requests from.
+  *   state - the state of the pull requests you want
+  *
+  * @return:
+  *   Stream<GHPullRequest> - a lazy stream of the pull requests for this repo
+  */
+  public static Stream<GHPullRequest> streamPullRequests(GHRepository repo, GHIssueState state)
+  {
+    return stream(repo.listPullRequests(state).withPageSize(MAX_PAGE_SIZE));
   }
 
   /**getPullRequestComments
@@ -172,7 +402,7 @@ ry based on a given state..
 
 	for(GHPullRequest pr : prs)
 	{
-		List<GHPullRequestReviewComment> prc = pr.listReviewComments().asList();
+		List<GHPullRequestReviewComment> prc = pr.listReviewComments().withPageSize(MAX_PAGE_SIZE).asList();
 		prct.addAll(prc);
 	}
 		return prct;
@@ -184,6 +414,181 @@ ry based on a given state..
 
   }
 
+  /**getPullRequestComments
+  * This method will fetch the review comments of the given pull requests
+  * concurrently, using at most <parallelism> requests in flight at a time.
+  * The comments are returned grouped in the same order as <prs>.
+  *
+  * @params:
+  *   prs - A list of pull requests to get the comments from
+  *   parallelism - the maximum number of pull requests fetched at once
+  *
+  * @return:
+  *   List<GHPullRequestReviewComment> - the pull request comments for this
+  *     repo or null if any of the lists could not be fetched
+  */
+  public static List<GHPullRequestReviewComment> getPullRequestReviewComments(
+    List<GHPullRequest> prs, int parallelism)
+  {
+    if (parallelism <= 1 || prs.size() <= 1) {
+      return getPullRequestReviewComments(prs);
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(
+      Math.min(parallelism, prs.size()));
+    try {
+      List<Future<List<GHPullRequestReviewComment>>> pending =
+        new ArrayList<Future<List<GHPullRequestReviewComment>>>(prs.size());
+      for (GHPullRequest pr : prs) {
+        pending.add(pool.submit(() -> pr.listReviewComments().withPageSize(MAX_PAGE_SIZE).asList()));
+      }
+      List<GHPullRequestReviewComment> prct = new ArrayList<GHPullRequestReviewComment>();
+      for (Future<List<GHPullRequestReviewComment>> prc : pending) {
+        prct.addAll(prc.get());
+      }
+      return prct;
+    }
+    catch (ExecutionException e) {
+      return null;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**getPullRequestReviewCommentDetails
+  * This method will fetch the details of the review comments of the given
+  * pull requests like getPullRequestReviewComments(prs, parallelism), reading
+  * each comment's details as its page arrives so that only the details are
+  * kept.
+  *
+  * @params:
+  *   prs - A list of pull requests to get the comments from
+  *   parallelism - the maximum number of pull requests fetched at once
+  *
+  * @return:
+  *   List<GDETReviewCommentDetails> - the details of the pull request
+  *     comments, or null if any of the lists could not be fetched
+  */
+  public static List<GDETReviewCommentDetails> getPullRequestReviewCommentDetails(
+    List<GHPullRequest> prs, int parallelism)
+  {
+    ExecutorService pool = Executors.newFixedThreadPool(
+      Math.max(1, Math.min(parallelism, prs.size())));
+    try {
+      List<Future<List<GDETReviewCommentDetails>>> pending =
+        new ArrayList<Future<List<GDETReviewCommentDetails>>>(prs.size());
+      for (GHPullRequest pr : prs) {
+        pending.add(pool.submit(() -> project(
+          stream(pr.listReviewComments().withPageSize(MAX_PAGE_SIZE)),
+          GDETReviewCommentDetails::of)));
+      }
+      List<GDETReviewCommentDetails> prct = new ArrayList<GDETReviewCommentDetails>();
+      for (Future<List<GDETReviewCommentDetails>> prc : pending) {
+        prct.addAll(prc.get());
+      }
+      return prct;
+    }
+    catch (ExecutionException e) {
+      return null;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**getPullRequestDetails
+  * This method will read the details of the given pull requests through the
+  * REST API, which costs one request per pull request, using at most
+  * <parallelism> requests in flight at a time.
+  *
+  * @params:
+  *   prs - the pull requests to read the details of
+  *   parallelism - the maximum number of pull requests read at once
+  *
+  * @return:
+  *   List<GDETPullRequestDetails> - the details, in the same order as <prs>;
+  *     pull requests whose details cannot be read are reported on stderr and
+  *     left out.
+  */
+  public static List<GDETPullRequestDetails> getPullRequestDetails(
+    List<GHPullRequest> prs, int parallelism)
+  {
+    ExecutorService pool = Executors.newFixedThreadPool(
+      Math.max(1, Math.min(parallelism, prs.size())));
+    try {
+      List<Future<GDETPullRequestDetails>> pending =
+        new ArrayList<Future<GDETPullRequestDetails>>(prs.size());
+      for (GHPullRequest pr : prs) {
+        pending.add(pool.submit(() -> GDETPullRequestDetails.of(pr)));
+      }
+      List<GDETPullRequestDetails> details = new ArrayList<GDETPullRequestDetails>(prs.size());
+      for (int i = 0; i < pending.size(); i++) {
+        try {
+          details.add(pending.get(i).get());
+        }
+        catch (ExecutionException e) {
+          System.err.println("Could not read the details of pull request #"
+            + prs.get(i).getNumber() + ": " + e.getCause());
+        }
+      }
+      return details;
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new ArrayList<GDETPullRequestDetails>();
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**streamPullRequestReviewComments
+  * This method will lazily stream the review comments of every pull request
+  * in a repository.  Each pull request's comments are only requested once the
+  * stream reaches that pull request.
+  *
+  * @params:
+  *   repo - the GHRepository object to get pull requests from.
+  *
+  * @return:
+  *   Stream<GHPullRequestReviewComment> - a lazy stream of the review comments
+  *     for this repo
+  */
+  public static Stream<GHPullRequestReviewComment> streamPullRequestReviewComments(GHRepository repo)
+  {
+    return streamPullRequestReviewComments(streamPullRequests(repo, GHIssueState.ALL));
+  }
+
+  /**streamPullRequestReviewComments
+  * This method will lazily stream the review comments of the given pull
+  * requests.  Pull requests whose comments cannot be listed are skipped.
+  *
+  * @params:
+  *   prs - a stream of pull requests to get the comments from
+  *
+  * @return:
+  *   Stream<GHPullRequestReviewComment> - a lazy stream of the review comments
+  */
+  public static Stream<GHPullRequestReviewComment> streamPullRequestReviewComments(Stream<GHPullRequest> prs)
+  {
+    return prs.flatMap(pr -> {
+      try {
+        return stream(pr.listReviewComments().withPageSize(MAX_PAGE_SIZE));
+      }
+      catch (IOException e) {
+        return Stream.empty();
+      }
+    });
+  }
+
   /**getCommits
   *
   * @return:
@@ -191,7 +596,78 @@ ry based on a given state..
   *     or null if a list could not be found.
   */
   public static List<GHCommit> getCommits(GHRepository repo) {
-    return repo.listCommits().asList();
+    return repo.listCommits().withPageSize(MAX_PAGE_SIZE).asList();
+  }
+
+  /**streamCommits
+  * This method will lazily stream the commits for a given repository.
+  *
+  * @params:
+  *   repo - the GHRepository object to get commits from.
+  *
+  * @return:
+  *   Stream<GHCommit> - a lazy stream of the commits for this repo.
+  */
+  public static Stream<GHCommit> streamCommits(GHRepository repo) {
+    return stream(repo.listCommits().withPageSize(MAX_PAGE_SIZE));
+  }
+
+  /**getCommitDetails
+  * This method will get the details of the commits for a given repository,
+  * reading each commit's details as its page arrives so that only the
+  * details are kept.  Commits whose author's account cannot be fetched are
+  * kept without a login.
+  *
+  * @params:
+  *   repo - the GHRepository object to get commits from.
+  *
+  * @return:
+  *   List<GDETCommitDetails> - the details of the commits for this repo.
+  */
+  public static List<GDETCommitDetails> getCommitDetails(GHRepository repo) {
+    return project(streamCommits(repo), GDETCommitDetails::of);
+  }
+
+  /**Projection
+  * Reads the details of a record, such as GDETCommitDetails::of.
+  */
+  public interface Projection<T, R> {
+    R of(T record) throws IOException;
+  }
+
+  /**project
+  * Applies <projection> to each record as <records> streams in, so that the
+  * records themselves can be dropped page by page.  Records the projection
+  * fails on are reported on stderr and left out.
+  *
+  * @return:
+  *   List<R> - the projected records, in stream order.
+  */
+  static <T, R> List<R> project(Stream<T> records, Projection<T, R> projection) {
+    List<R> projected = new ArrayList<R>();
+    for (Iterator<T> it = records.iterator(); it.hasNext();) {
+      try {
+        projected.add(projection.of(it.next()));
+      }
+      catch (IOException e) {
+        System.err.println("Could not read the details of a record: " + e);
+      }
+    }
+    return projected;
+  }
+
+  /**stream
+  * Wraps a paged listing in a sequential stream that fetches each page only
+  * when the previous one has been consumed.
+  *
+  * @params:
+  *   iterable - the paged listing to stream.
+  *
+  * @return:
+  *   Stream<T> - a lazy stream over the listing.
+  */
+  static <T> Stream<T> stream(PagedIterable<T> iterable) {
+    return StreamSupport.stream(iterable.spliterator(), false);
   }
 
   /** getCommitCountPerUser
@@ -202,13 +678,12 @@ ry based on a given state..
   *   repo - the GHRepository object to get a list of commits from.
   *
   * @return:
-  *   Map<GHUser, Integer> - a map between all users that have committed to the
-  *     repository and the number of commits they've made.Returns an empty map
-  *     if an IOException is encountered.
+  *   GDETUserCounter - the number of commits made by each login that has
+  *     committed to the repository.  Returns an empty counter if an
+  *     IOException is encountered.
   */
-  public static Map<GHUser, Integer> getCommitCountPerUser(GHRepository repo) {
-    List<GHCommit> commits = getCommits(repo);
-    return getCommitCountPerUser(commits);
+  public static GDETUserCounter getCommitCountPerUser(GHRepository repo) {
+    return getCommitCountPerUser(streamCommits(repo));
   }
 
   /** getCommitCountPerUser
@@ -219,26 +694,36 @@ ry based on a given state..
   *   commits - a list of commits to find the commits counts per user from.
   *
   * @return:
-  *   Map<GHUser, Integer> - a map between all users that have committed to the
-  *     repository and the number of commits they've made.  Returns an empty map
-  *     if an IOException is encountered.
+  *   GDETUserCounter - the number of commits made by each login that has
+  *     committed to the repository.  Returns an empty counter if an
+  *     IOException is encountered.
   */
-  public static Map<GHUser, Integer> getCommitCountPerUser(List<GHCommit> commits) {
+  public static GDETUserCounter getCommitCountPerUser(List<GHCommit> commits) {
+    return getCommitCountPerUser(commits.stream());
+  }
+
+  /** getCommitCountPerUser
+  * Gets a list of all users who have committed to the repository along with
+  * the number of commits they've made, consuming the commits as they stream in.
+  *
+  * @params:
+  *   commits - a stream of commits to find the commits counts per user from.
+  *
+  * @return:
+  *   GDETUserCounter - the number of commits made by each login that has
+  *     committed to the repository.  Returns an empty counter if an
+  *     IOException is encountered.
+  */
+  public static GDETUserCounter getCommitCountPerUser(Stream<GHCommit> commits) {
     try {
-      Map<GHUser, Integer> map = new WeakHashMap<GHUser, Integer>();
-      for (GHCommit commit : commits) {
-        GHUser committer = commit.getAuthor();
-        if (map.containsKey(committer)) {
-          map.put(committer, map.get(committer) + 1);
-        }
-        else {
-          map.put(committer, 1);
-        }
+      GDETUserCounter counter = new GDETUserCounter();
+      for (Iterator<GHCommit> it = commits.iterator(); it.hasNext();) {
+        counter.increment(it.next().getAuthor());
       }
-      return map;
+      return counter;
     }
     catch (IOException e) {
-      return new WeakHashMap<GHUser, Integer>();
+      return new GDETUserCounter();
     }
   }
 
@@ -251,13 +736,12 @@ ry based on a given state..
   *   repo- a repository to find the issues counts per user from.
   *
   * @return:
-  *   Map<GHUser, Integer> - a map of users to issue count
-  *     Returns an empty map
+  *   GDETUserCounter - the number of issues filed by each login.
+  *     Returns an empty counter
   *     if an IOException is encountered.
   */
-  public static Map<GHUser, Integer> getIssueCountPerUser(GHRepository repo) {
-    List<GHIssue> commits = getIssues(repo);
-    return getIssueCountPerUser(commits);
+  public static GDETUserCounter getIssueCountPerUser(GHRepository repo) {
+    return getIssueCountPerUser(streamIssues(repo));
   }
 
   /** getIssueCountPerUser
@@ -268,26 +752,37 @@ ry based on a given state..
   *   issues - a list of issues to find the issues counts per user from.
   *
   * @return:
-  *   Map<GHUser, Integer> - a map of users to issue count
-  *     Returns an empty map
+  *   GDETUserCounter - the number of issues filed by each login.
+  *     Returns an empty counter
+  *     if an IOException is encountered.
+  */
+  public static GDETUserCounter getIssueCountPerUser(List<GHIssue> issues) {
+    return getIssueCountPerUser(issues.stream());
+  }
+
+  /** getIssueCountPerUser
+  * Generates a mapping between all users who have filed issues with
+  * the repository and the number of issues they've made, consuming the issues
+  * as they stream in.
+  *
+  * @params:
+  *   issues - a stream of issues to find the issues counts per user from.
+  *
+  * @return:
+  *   GDETUserCounter - the number of issues filed by each login.
+  *     Returns an empty counter
   *     if an IOException is encountered.
   */
-  public static Map<GHUser, Integer> getIssueCountPerUser(List<GHIssue> issues) {
+  public static GDETUserCounter getIssueCountPerUser(Stream<GHIssue> issues) {
     try {
-      Map<GHUser, Integer> map = new WeakHashMap<GHUser, Integer>();
-      for (GHIssue issue : issues) {
-        GHUser issueOpener = issue.getUser();
-        if (map.containsKey(issueOpener)) {
-          map.put(issueOpener, map.get(issueOpener) + 1);
-        }
-        else {
-          map.put(issueOpener, 1);
-        }
+      GDETUserCounter counter = new GDETUserCounter();
+      for (Iterator<GHIssue> it = issues.iterator(); it.hasNext();) {
+        counter.increment(it.next().getUser());
       }
-      return map;
+      return counter;
     }
     catch (IOException e) {
-      return new WeakHashMap<GHUser, Integer>();
+      return new GDETUserCounter();
     }
   }
 
@@ -301,12 +796,12 @@ ry based on a given state..
   *     pull request opened count for each user from.
   *
   * @return:
-  *   Map<GHUser, Integer> - a map of GHUsers to the number of pull requests
-  *     they've opened.
+  *   GDETUserCounter - the number of pull requests each login has opened
+  *     (or merged, if <mergedBy> is set).
   */
-  public static Map<GHUser, Integer> getPullRequestCountPerUser(
+  public static GDETUserCounter getPullRequestCountPerUser(
     GHRepository repo, boolean mergedBy) {
-    return getPullRequestCountPerUser(getPullRequests(repo,
+    return getPullRequestCountPerUser(streamPullRequests(repo,
       GHIssueState.ALL), mergedBy);
   }
 
@@ -319,31 +814,43 @@ ry based on a given state..
   *   List<GHPullRequest - a list of pull GHPullRequest objects.
   *
   * @return:
-  *   Map<GHUser, Integer> - a map of GHUsers to the number of pull requests
-  *     they've opened.
+  *   GDETUserCounter - the number of pull requests each login has opened
+  *     (or merged, if <mergedBy> is set).
   */
-  public static Map<GHUser, Integer> getPullRequestCountPerUser(
+  public static GDETUserCounter getPullRequestCountPerUser(
     List<GHPullRequest> prs, boolean mergedBy) {
+    return getPullRequestCountPerUser(prs.stream(), mergedBy);
+  }
+
+  /**getPullRequestOpenedCountPerUser
+  *
+  * This method will return a map of users and the count of pull requests
+  *   opened per user, consuming the pull requests as they stream in.
+  *
+  * @params:
+  *   Stream<GHPullRequest> - a stream of GHPullRequest objects.
+  *
+  * @return:
+  *   GDETUserCounter - the number of pull requests each login has opened
+  *     (or merged, if <mergedBy> is set).
+  */
+  public static GDETUserCounter getPullRequestCountPerUser(
+    Stream<GHPullRequest> prs, boolean mergedBy) {
     try {
-      Map<GHUser, Integer> map = new WeakHashMap<GHUser, Integer>();
-      for (GHPullRequest pr : prs) {
-        if ((mergedBy && pr.isMerged()) || !mergedBy) {
-          GHUser prOpener = pr.getUser();
-          if (mergedBy) {
-            prOpener = pr.getMergedBy();
-          }
-          if (map.containsKey(prOpener)) {
-            map.put(prOpener, map.get(prOpener) + 1);
-          }
-          else {
-            map.put(prOpener, 1);
-          }
+      GDETUserCounter counter = new GDETUserCounter();
+      for (Iterator<GHPullRequest> it = prs.iterator(); it.hasNext();) {
+        GHPullRequest pr = it.next();
+        if (!mergedBy) {
+          counter.increment(pr.getUser());
+        }
+        else if (pr.isMerged()) {
+          counter.increment(pr.getMergedBy());
         }
       }
-      return map;
+      return counter;
     }
     catch (IOException e) {
-      return new WeakHashMap<GHUser, Integer>();
+      return new GDETUserCounter();
     }
   }
 
@@ -365,6 +872,78 @@ ry based on a given state..
     }
   }
 
+  /**getUserProfileCache
+  * @return the cache every user name lookup in this class goes through.
+  */
+  public static GDETUserProfileCache getUserProfileCache() {
+    return userProfiles;
+  }
+
+  /**setUserProfileCache
+  * Replaces the cache every user name lookup in this class goes through, for
+  * example with one loaded from disk.
+  */
+  public static synchronized void setUserProfileCache(GDETUserProfileCache cache) {
+    cache.registerAll(userProfiles);
+    userProfiles = cache;
+  }
+
+  /**getGHUserName
+  * gets a GHUser's name through the shared user profile cache, so each login's
+  * profile is only fetched once.
+  *
+  * @return the GHUser's name, or null if it is not set.
+  */
+  static String getGHUserName(GHUser user) throws IOException {
+    return userProfiles.getName(user);
+  }
+
+  /**getUserName
+  * gets the name of the user with <login> through the shared user profile
+  * cache, fetching the profile of the GHUser registered for the login.
+  *
+  * @return the user's name, or null if it is not set.
+  */
+  static String getUserName(String login) throws IOException {
+    return userProfiles.getName(login);
+  }
+
+  /**getUserNameWithFallback
+  * gets the name of a counted user, or their login if their name is not set.
+  * Users counted by login alone are looked up in the user profile cache,
+  * through the GHUser registered for the login if it is not cached yet.
+  *
+  * @return the user's name if it is known, their login if not, or
+  *   "Unknown User" for pull requests and issues without a user.
+  */
+  public static String getUserNameWithFallback(GDETUserCounter.Entry entry) {
+    if (entry.getUser() != null) {
+      return getGHUserNameWithFallback(entry.getUser());
+    }
+    return getUserNameWithFallback(entry.getLogin());
+  }
+
+  /**getUserNameWithFallback
+  * gets the name of the user with <login> through the user profile cache, or
+  * their login if their name is not set or cannot be fetched.
+  *
+  * @return the user's name or login, or "Unknown User" for
+  *   GDETUserCounter.UNKNOWN_LOGIN.
+  */
+  public static String getUserNameWithFallback(String login) {
+    if (GDETUserCounter.UNKNOWN_LOGIN.equals(login)) {
+      return "Unknown User";
+    }
+    String name;
+    try {
+      name = getUserName(login);
+    }
+    catch (IOException e) {
+      name = null;
+    }
+    return name == null ? login : name;
+  }
+
   /**getGHUserNameWithFallback
   * gets a GHUser's name or their login if their name is not set!
   *
@@ -373,7 +952,7 @@ ry based on a given state..
   */
   public static String getGHUserNameWithFallback(GHUser user) {
     try {
-      String name = user.getName();
+      String name = getGHUserName(user);
       if (name == null) {
         name = user.getLogin();
       }
@@ -397,13 +976,9 @@ ry based on a given state..
   *   string - a string representation of the issue.
   */
   public static String issueToString(GHIssue issue) {
+    StringBuilder response = renderBuffer();
     try {
-      String response = "";
-      response += String.format("%32s\n", "").replace(" ", "-");
-      response += "#" + issue.getNumber() + " " + issue.getTitle() + "\n";
-      response += issue.getUser().getName() + "\n";
-      response += String.format("%32s\n\n", "").replace(" ", "-");
-      return response;
+      return GDETRecordRenderer.renderIssue(issue, response) ? response.toString() : "";
     }
     catch (IOException e) {
       return "";
@@ -419,16 +994,11 @@ ry based on a given state..
   *   string - a string representation of the branch.
   */
   public static String branchToString(GHBranch branch) {
+    StringBuilder response = renderBuffer();
     try {
-      String response = "";
-      response += String.format("%64s\n", "").replace(" ", "-");
-      response += branch.getName() + "\n";
-      response += "SHA: " + branch.getSHA1() + "\n";
-      response += String.format("%64s\n\n", "").replace(" ", "-");
-
-      return response;
+      return GDETRecordRenderer.renderBranch(branch, response) ? response.toString() : "";
     }
-    catch (NullPointerException e) {
+    catch (IOException e) {
       return "";
     }
   }
@@ -442,15 +1012,14 @@ ry based on a given state..
   *   string - a formatted string representation of the commit.
   */
   public static String commitToString(GHCommit commit) {
-    String response = "";
-    response += String.format("%32s\n", "").replace(" ", "-");
-    GHCommit.ShortInfo cinfo =
-      GithubDataExtractionTool.getCommitShortInfo(commit);
-    response += cinfo.getAuthor().getName() + "\n";
-    response += cinfo.getCommitDate() + "\n";
-    response += cinfo.getMessage() + "\n";
-    response += String.format("%32s\n\n", "").replace(" ", "-");
-    return response;
+    StringBuilder response = renderBuffer();
+    try {
+      GDETRecordRenderer.renderCommit(commit, response);
+      return response.toString();
+    }
+    catch (IOException e) {
+      return "";
+    }
   }
   /**pullRequestToString
   * converts a pull request to a formatted string representing the pull request.
@@ -462,31 +1031,14 @@ ry based on a given state..
   *   string - a formatted string representation of the pull request..
   */
   public static String pullRequestToString(GHPullRequest pr) {
+    StringBuilder response = renderBuffer();
     try {
-      String response = "";
-      response += String.format("%64s\n", "").replace(" ", "-");
-      response += pr.getTitle() + "\n";
-      response += "Created By: "  + pr.getUser().getName() + "\n";
-      response += "Created Date: " + pr.getCreatedAt() + "\n";
-      response += "Merged By: " + pr.getMergedBy().getName() + "\n";
-      response += "Merged Date:" + pr.getMergedAt() + "\n";
-      response += "\nAdditions: ";
-      response += pr.getAdditions();
-      response += "\nDeletions: ";
-      response += pr.getDeletions();
-      response += "\nNumber of Commits: ";
-      response += pr.getCommits() + "\n";
-      response += String.format("%64s\n\n", "").replace(" ", "-");
-      return response;
-    }
-    catch(IOException e)
-    {
-	return "";
+      return GDETRecordRenderer.renderPullRequest(pr, response) ? response.toString() : "";
     }
-    catch (NullPointerException e) {
+    catch (IOException e) {
       return "";
     }
- }
+  }
   /**pullRequestCommentToString
   * converts a pull request comment to a formatted string representing the pull request.
   *
@@ -496,22 +1048,15 @@ ry based on a given state..
   *   string - a formatted string representation of the pull request comment.
   */
   public static String pullRequestReviewCommentsToString(GHPullRequestReviewComment prc) {
+    StringBuilder response = renderBuffer();
     try {
-      String response = "";
-      response += String.format("%64s\n", "").replace(" ", "-");
-      response += "Comment Created By: "  + prc.getUser().getName() + "\n";
-      response += prc.getBody();
-      response += String.format("%64s\n\n", "").replace(" ", "-");
-      return response;
-    }
-    catch(IOException e)
-    {
-        return "";
+      return GDETRecordRenderer.renderPullRequestReviewComment(prc, response)
+        ? response.toString() : "";
     }
-    catch (NullPointerException e) {
+    catch (IOException e) {
       return "";
     }
- }
+  }
 
   /**getRepositoryMetaData
   * This method will return a string representation of the repository's details.
@@ -523,13 +1068,28 @@ ry based on a given state..
   *   string - a foratted stirng representation of the repo's metadata
   */
   public static String getRepositoryMetaData(GHRepository repo) {
-    String response = "";
-    response += String.format("%32s\n", "").replace(" ", "-");
-    if (repo != null) {
-      response += repo.getName() + "\n";
-      response += String.format("Owned by: %s\n", repo.getOwnerName());
+    StringBuilder response = renderBuffer();
+    try {
+      GDETRecordRenderer.renderRepositoryMetaData(repo, response);
+      return response.toString();
+    }
+    catch (IOException e) {
+      return "";
     }
-    response += String.format("%32s\n", "").replace(" ", "-");
-    return response;
+  }
+
+  /**renderBuffer
+  * @return this thread's reusable StringBuilder for the *ToString wrappers,
+  *   emptied, and shrunk again if an unusually large record grew it.
+  */
+  private static StringBuilder renderBuffer() {
+    StringBuilder buffer = RENDER_BUFFER.get();
+    if (buffer.capacity() > MAX_RETAINED_RENDER_BUFFER) {
+      buffer = new StringBuilder(INITIAL_RENDER_BUFFER);
+      RENDER_BUFFER.set(buffer);
+    }
+    buffer.setLength(0);
+    return buffer;
   }
 }
+
@@ -0,0 +1,75 @@
+package org.compass.gdet;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETCheckpointStoreTest
+{
+  private Path directory;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("gdet-checkpoints");
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    Files.walk(directory).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+  }
+
+  /*
+  * A saved checkpoint should load back with the same branch heads, times
+  * and counts, including logins that need escaping in a properties file.
+  */
+  @Test
+  public void shouldLoadWhatWasSaved() throws IOException {
+    GDETCheckpointStore store = new GDETCheckpointStore(directory);
+    GDETCheckpointStore.Checkpoint checkpoint = store.load("owner/repo");
+    checkpoint.branchHeads.put("main", "0123456789abcdef0123456789abcdef01234567");
+    checkpoint.branchHeads.put("feature/x", "89abcdef0123456789abcdef0123456789abcdef");
+    checkpoint.issuesUpdatedAt = 1546300800000L;
+    checkpoint.pullRequestsUpdatedAt = 1546387200000L;
+    checkpoint.commitCounts.add("alice", 3);
+    checkpoint.commitCounts.add(GDETUserCounter.UNKNOWN_LOGIN, 2);
+    checkpoint.issueCounts.add("bob", 1);
+    checkpoint.pullRequestOpenedCounts.add("carol", 4);
+    checkpoint.pullRequestMergedCounts.add("a=b:c", 5);
+    store.save(checkpoint);
+
+    GDETCheckpointStore.Checkpoint loaded = new GDETCheckpointStore(directory).load("owner/repo");
+    assertEquals("owner/repo", loaded.getRepoName());
+    assertEquals(checkpoint.getBranchHeads(), loaded.getBranchHeads());
+    assertEquals(1546300800000L, loaded.getIssuesUpdatedAt());
+    assertEquals(1546387200000L, loaded.getPullRequestsUpdatedAt());
+    assertEquals(checkpoint.getCommitCounts().toMap(), loaded.getCommitCounts().toMap());
+    assertEquals(checkpoint.getIssueCounts().toMap(), loaded.getIssueCounts().toMap());
+    assertEquals(checkpoint.getPullRequestOpenedCounts().toMap(),
+      loaded.getPullRequestOpenedCounts().toMap());
+    assertEquals(5, loaded.getPullRequestMergedCounts().get("a=b:c"));
+  }
+
+  /*
+  * A repository without a checkpoint should load as an empty one, and
+  * saving should leave no temporary files behind.
+  */
+  @Test
+  public void shouldStartEmptyAndReplaceAtomically() throws IOException {
+    GDETCheckpointStore store = new GDETCheckpointStore(directory.resolve("nested"));
+    GDETCheckpointStore.Checkpoint checkpoint = store.load("owner/other");
+    assertTrue(checkpoint.getBranchHeads().isEmpty());
+    assertEquals(0, checkpoint.getIssuesUpdatedAt());
+    assertTrue(checkpoint.getCommitCounts().isEmpty());
+    store.save(checkpoint);
+    checkpoint.issuesUpdatedAt = 42;
+    store.save(checkpoint);
+    try (Stream<Path> files = Files.list(directory.resolve("nested"))) {
+      assertEquals(1, files.count());
+    }
+    assertEquals(42, store.load("owner/other").getIssuesUpdatedAt());
+  }
+}
@@ -0,0 +1,106 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETChurnAggregatorTest
+{
+  private GDETStandInServer server;
+  private GHRepository repo;
+  private List<GDETCommitDetails> commits;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = new GDETStandInServer()
+      .addRepository(new GDETStandInServer.Repository("owner/repo")
+        .setCommits(300)
+        .setUsers(6))
+      .start();
+    GithubDataExtractionTool tool =
+      new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint());
+    repo = tool.getRepository("owner/repo");
+    commits = GithubDataExtractionTool.getCommitDetails(repo);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.close();
+  }
+
+  private static long churn(Iterable<GDETChurnAggregator.Totals> groups) {
+    long churn = 0;
+    for (GDETChurnAggregator.Totals group : groups) {
+      churn += group.getChurn();
+    }
+    return churn;
+  }
+
+  /*
+  * Every commit's stats should be fetched once, and the per author and per
+  * week totals should add up to the stats GitHub reports for each commit.
+  */
+  @Test
+  public void shouldTotalChurnPerAuthorAndWeek() throws IOException {
+    GDETCommitStatsCache cache = new GDETCommitStatsCache();
+    GDETChurnAggregator.Churn churn = new GDETChurnAggregator(cache, 4).aggregate(repo, commits);
+    assertEquals(300, cache.getFetchCount());
+    assertEquals(300, churn.getTotal().getCommits());
+    assertEquals(0, churn.getFailedCount());
+
+    long expected = 0;
+    for (GDETCommitDetails commit : commits) {
+      GHCommit full = repo.getCommit(commit.getSha());
+      expected += full.getLinesAdded() + full.getLinesDeleted();
+    }
+    assertEquals(expected, churn.getTotal().getChurn());
+    assertEquals(expected, churn(churn.getPerAuthor().values()));
+    assertEquals(expected, churn(churn.getPerWeek().values()));
+    assertEquals(6, churn.getPerAuthor().size());
+    long previous = Long.MAX_VALUE;
+    for (GDETChurnAggregator.Totals author : churn.getPerAuthor().values()) {
+      assertTrue(author.getChurn() <= previous);
+      previous = author.getChurn();
+    }
+    for (LocalDate week : churn.getPerWeek().keySet()) {
+      assertEquals(DayOfWeek.MONDAY, week.getDayOfWeek());
+    }
+    assertEquals(LocalDate.of(2024, 1, 1), GDETChurnAggregator.weekOf(new Date(1704326400000L)));
+  }
+
+  /*
+  * Stats fetched once should never be fetched again, including after the
+  * cache is saved and loaded into a new one.
+  */
+  @Test
+  public void shouldNeverRefetchCachedCommits() throws IOException {
+    GDETCommitStatsCache cache = new GDETCommitStatsCache();
+    GDETChurnAggregator.Churn first = new GDETChurnAggregator(cache, 4).aggregate(repo, commits);
+    Path file = Files.createTempFile("gdet-commit-stats", ".properties");
+    try {
+      cache.save(file);
+      GDETCommitStatsCache loaded = new GDETCommitStatsCache();
+      loaded.load(file);
+      long requests = server.getRequestCount();
+      GDETChurnAggregator.Churn again = new GDETChurnAggregator(cache, 4).aggregate(repo, commits);
+      GDETChurnAggregator.Churn reloaded =
+        new GDETChurnAggregator(loaded, 4).aggregate(repo, commits);
+      assertEquals(requests, server.getRequestCount());
+      assertEquals(0, loaded.getFetchCount());
+      assertEquals(first.getTotal().getChurn(), again.getTotal().getChurn());
+      assertEquals(first.getTotal().getChurn(), reloaded.getTotal().getChurn());
+      assertEquals(first.getPerWeek().keySet(), reloaded.getPerWeek().keySet());
+    }
+    finally {
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package org.compass.gdet;
+
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class GDETGitCloneTest
+{
+  private Path directory;
+  private Path origin;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    directory = Files.createTempDirectory("gdet-clone");
+    origin = directory.resolve("origin");
+    Files.createDirectories(origin);
+    git(origin, "init", "--quiet");
+    commit("Alice", "12345+alice@users.noreply.github.com", 1000, "First\n\nWith a body.");
+    commit("Bob", "bob@example.com", 2000, "Second");
+    commit("Alice", "alice@users.noreply.github.com", 3000, "Third");
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    Files.walk(directory).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+  }
+
+  private static void git(Path in, String... args) throws Exception {
+    gitAt(null, in, args);
+  }
+
+  /* runs git in <in> with its author and committer dates set to <date> */
+  private static void gitAt(String date, Path in, String... args) throws Exception {
+    String[] command = new String[args.length + 1];
+    command[0] = "git";
+    System.arraycopy(args, 0, command, 1, args.length);
+    ProcessBuilder builder = new ProcessBuilder(command).directory(in.toFile())
+      .redirectErrorStream(true);
+    if (date != null) {
+      builder.environment().put("GIT_AUTHOR_DATE", date);
+      builder.environment().put("GIT_COMMITTER_DATE", date);
+    }
+    Process process = builder.start();
+    process.getInputStream().readAllBytes();
+    assertEquals(0, process.waitFor());
+  }
+
+  private void commit(String name, String email, long seconds, String message) throws Exception {
+    gitAt("@" + seconds + " +0000", origin, "-c", "user.name=" + name,
+      "-c", "user.email=" + email, "-c", "commit.gpgsign=false",
+      "commit", "--quiet", "--allow-empty", "-m", message);
+  }
+
+  /*
+  * A mirror should list every commit from HEAD, newest first, with the
+  * fields the API gives and logins taken from noreply addresses.
+  */
+  @Test
+  public void shouldReadCommitsLikeTheApi() throws Exception {
+    GDETGitClone clone = GDETGitClone.mirror(origin.toUri().toString(), directory.resolve("mirror"));
+    List<GDETCommitDetails> commits = clone.getCommitDetails();
+    assertEquals(3, commits.size());
+    assertEquals("Third", commits.get(0).getMessage());
+    assertEquals("First\n\nWith a body.", commits.get(2).getMessage());
+    assertEquals("Bob", commits.get(1).getAuthorName());
+    assertEquals("bob@example.com", commits.get(1).getAuthorEmail());
+    assertEquals(40, commits.get(0).getSha().length());
+    assertEquals("alice", commits.get(0).getAuthorLogin());
+    assertEquals("alice", commits.get(2).getAuthorLogin());
+    assertNull(commits.get(1).getAuthorLogin());
+
+    Map<String, Integer> counts = clone.getCommitCountPerUser().toMap();
+    assertEquals(2, (int) counts.get("alice"));
+    assertEquals(1, (int) counts.get(GDETUserCounter.UNKNOWN_LOGIN));
+    clone.setLogin("Bob@Example.com", "bob");
+    assertEquals(1, (int) clone.getCommitCountPerUser().toMap().get("bob"));
+  }
+
+  /*
+  * Logins stored by SHA, as a snapshot store keeps them, should be learned
+  * for their commits' author emails.
+  */
+  @Test
+  public void shouldLearnLoginsBySha() throws Exception {
+    GDETGitClone clone = GDETGitClone.mirror(origin.toUri().toString(), directory.resolve("mirror"));
+    String bob = clone.getCommitDetails().get(1).getSha();
+    clone.learnLogins(Collections.singletonMap(bob, "bobby"));
+    assertEquals("bobby", clone.loginOf("bob@example.com"));
+    assertEquals(1, (int) clone.getCommitCountPerUser().toMap().get("bobby"));
+    assertNull(clone.getCommitCountPerUser().toMap().get(GDETUserCounter.UNKNOWN_LOGIN));
+  }
+
+  /*
+  * Updating the mirror should pick up commits pushed to its remote since it
+  * was cloned.
+  */
+  @Test
+  public void shouldFetchNewCommitsOnUpdate() throws Exception {
+    Path mirror = directory.resolve("mirror");
+    GDETGitClone clone = GDETGitClone.open(origin.toUri().toString(), mirror);
+    commit("Carol", "carol@users.noreply.github.com", 4000, "Fourth");
+    assertEquals(3, clone.getCommitDetails().size());
+    clone = GDETGitClone.open(origin.toUri().toString(), mirror);
+    assertEquals(1, clone.getUpdateCount());
+    List<GDETCommitDetails> commits = clone.getCommitDetails();
+    assertEquals(4, commits.size());
+    assertEquals("carol", commits.get(0).getAuthorLogin());
+    assertEquals(new Date(4000 * 1000L), commits.get(0).getCommitDate());
+  }
+}
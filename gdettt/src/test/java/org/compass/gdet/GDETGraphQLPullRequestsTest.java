@@ -0,0 +1,180 @@
+package org.compass.gdet;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETGraphQLPullRequestsTest
+{
+  private static final int PULL_REQUESTS = 250;
+
+  private HttpServer server;
+  private List<JsonObject> requests = new CopyOnWriteArrayList<JsonObject>();
+  private List<String> authorizations = new CopyOnWriteArrayList<String>();
+  private String endpoint;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/graphql", exchange -> {
+      JsonObject request = new JsonParser().parse(new InputStreamReader(
+        exchange.getRequestBody(), StandardCharsets.UTF_8)).getAsJsonObject();
+      requests.add(request);
+      authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+      JsonObject variables = request.getAsJsonObject("variables");
+      byte[] body;
+      if (variables.get("name").getAsString().equals("missing")) {
+        body = "{\"data\":{\"repository\":null},\"errors\":[{\"message\":\"Could not resolve\"}]}"
+          .getBytes(StandardCharsets.UTF_8);
+      }
+      else {
+        int from = variables.get("after").isJsonNull() ? 0
+          : Integer.parseInt(variables.get("after").getAsString());
+        body = page(from, variables.get("first").getAsInt()).getBytes(StandardCharsets.UTF_8);
+      }
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/graphql";
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  /* pull request i is merged by "merger" when i is even; pull request 5 was opened by a bot */
+  private static String page(int from, int first) {
+    JsonArray nodes = new JsonArray();
+    int to = Math.min(PULL_REQUESTS, from + first);
+    for (int i = from; i < to; i++) {
+      JsonObject node = new JsonObject();
+      node.addProperty("number", PULL_REQUESTS - i);
+      node.addProperty("title", "Change " + i);
+      node.addProperty("state", i % 2 == 0 ? "MERGED" : i % 3 == 0 ? "OPEN" : "CLOSED");
+      node.addProperty("merged", i % 2 == 0);
+      node.addProperty("createdAt", Instant.ofEpochSecond(1500000000L + i).toString());
+      node.addProperty("mergedAt", i % 2 == 0 ? Instant.ofEpochSecond(1600000000L + i).toString() : null);
+      node.addProperty("additions", i);
+      node.addProperty("deletions", 2 * i);
+      JsonObject commits = new JsonObject();
+      commits.addProperty("totalCount", 1 + i % 4);
+      node.add("commits", commits);
+      JsonObject author = new JsonObject();
+      author.addProperty("login", i == 5 ? "robot" : "author" + (i % 3));
+      if (i != 5) {
+        author.addProperty("name", "Author " + (i % 3));
+      }
+      node.add("author", author);
+      if (i % 2 == 0) {
+        JsonObject mergedBy = new JsonObject();
+        mergedBy.addProperty("login", "merger");
+        mergedBy.addProperty("name", "Merger");
+        node.add("mergedBy", mergedBy);
+      }
+      else {
+        node.add("mergedBy", null);
+      }
+      nodes.add(node);
+    }
+    JsonObject pageInfo = new JsonObject();
+    pageInfo.addProperty("hasNextPage", to < PULL_REQUESTS);
+    pageInfo.addProperty("endCursor", Integer.toString(to));
+    JsonObject pullRequests = new JsonObject();
+    pullRequests.add("pageInfo", pageInfo);
+    pullRequests.add("nodes", nodes);
+    JsonObject repository = new JsonObject();
+    repository.add("pullRequests", pullRequests);
+    JsonObject data = new JsonObject();
+    data.add("repository", repository);
+    JsonObject response = new JsonObject();
+    response.add("data", data);
+    return response.toString();
+  }
+
+  /*
+  * Every pull request should be fetched in pages of a hundred, following the
+  * cursor, with all the fields the report needs.
+  */
+  @Test
+  public void shouldFetchPullRequestsAHundredAtATime() throws IOException {
+    GDETGraphQLPullRequests graphQL =
+      new GDETGraphQLPullRequests(HttpConnector.DEFAULT, endpoint, "token secret");
+    List<GDETPullRequestDetails> prs =
+      graphQL.getPullRequests("owner", "repo", GHIssueState.CLOSED);
+    assertEquals(PULL_REQUESTS, prs.size());
+    assertEquals(3, graphQL.getRequestCount());
+    assertEquals("token secret", authorizations.get(0));
+    assertEquals("[\"CLOSED\",\"MERGED\"]",
+      requests.get(0).getAsJsonObject("variables").get("states").toString());
+
+    GDETPullRequestDetails merged = prs.get(200);
+    assertEquals(PULL_REQUESTS - 200, merged.getNumber());
+    assertTrue(merged.isMerged());
+    assertEquals(GHIssueState.CLOSED, merged.getState());
+    assertEquals("author2", merged.getUserLogin());
+    assertEquals("Author 2", merged.getUserName());
+    assertEquals("merger", merged.getMergedByLogin());
+    assertEquals(Date.from(Instant.ofEpochSecond(1600000200L)), merged.getMergedAt());
+    assertEquals(400, merged.getDeletions());
+    assertEquals(1, merged.getCommits());
+    assertEquals("Merger", GithubDataExtractionTool.getUserProfileCache().getCachedName("merger"));
+
+    GDETPullRequestDetails bot = prs.get(5);
+    assertFalse(bot.isMerged());
+    assertNull(bot.getUserName());
+    assertNull(bot.getMergedByLogin());
+    assertFalse(GDETRecordRenderer.renderPullRequest(bot, new StringBuilder()));
+
+    StringBuilder text = new StringBuilder();
+    assertTrue(GDETRecordRenderer.renderPullRequest(merged, text));
+    assertEquals(GDETRecordRenderer.LONG_SEPARATOR + "Change 200\n"
+      + "Created By: Author 2\n"
+      + "Created Date: " + merged.getCreatedAt() + "\n"
+      + "Merged By: Merger\n"
+      + "Merged Date:" + merged.getMergedAt() + "\n"
+      + "\nAdditions: 200\nDeletions: 400\nNumber of Commits: 1\n"
+      + GDETRecordRenderer.LONG_SEPARATOR_END, text.toString());
+
+    GDETUserCounter mergers = GDETPullRequestDetails.countPerUser(prs, true);
+    assertEquals(PULL_REQUESTS / 2, mergers.get("merger"));
+    assertEquals(1, mergers.size());
+    GDETUserCounter authors = GDETPullRequestDetails.countPerUser(prs, false);
+    assertEquals(PULL_REQUESTS, authors.total());
+    assertEquals(1, authors.get("robot"));
+  }
+
+  /*
+  * Errors reported in a GraphQL response should surface as IOExceptions.
+  */
+  @Test
+  public void shouldReportGraphQLErrors() throws IOException {
+    GDETGraphQLPullRequests graphQL =
+      new GDETGraphQLPullRequests(HttpConnector.DEFAULT, endpoint, "token secret");
+    IOException e = assertThrows(IOException.class,
+      () -> graphQL.getPullRequests("owner", "missing", GHIssueState.ALL));
+    assertTrue(e.getMessage().contains("Could not resolve"));
+    assertTrue(requests.get(0).getAsJsonObject("variables").get("states").isJsonNull());
+  }
+}
@@ -0,0 +1,126 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.HttpConnector;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETHttpClientConnectorTest
+{
+  private GDETStandInServer server;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = new GDETStandInServer()
+      .addRepository(new GDETStandInServer.Repository("owner/repo")
+        .setCommits(450)
+        .setIssues(120)
+        .setUsers(5))
+      .setRateLimit(100000, GDETStandInServer.DEFAULT_RATE_LIMIT_WINDOW_SECONDS)
+      .start();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.close();
+  }
+
+  /*
+  * github-api should read the same records through the HttpClient connector
+  * as through HttpURLConnections, with gzipped responses decoded by the
+  * library.
+  */
+  @Test
+  public void shouldExtractLikeHttpUrlConnection() throws IOException {
+    GDETHttpClientConnector connector = new GDETHttpClientConnector();
+    GDETRepositorySnapshot expected = new GDETRepositorySnapshot(
+      new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint())
+        .getRepository("owner/repo"), 2);
+    GDETRepositorySnapshot actual = new GDETRepositorySnapshot(
+      new GithubDataExtractionTool(connector, server.getEndpoint())
+        .getRepository("owner/repo"), 2);
+    assertEquals(render(expected), render(actual));
+    assertEquals(connector.getRequestCount(), connector.getGzippedResponseCount());
+    assertTrue(connector.getRequestCount() >= 1 + 5 + 2);
+  }
+
+  private static String render(GDETRepositorySnapshot snapshot) throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (GDETCommitDetails commit : snapshot.getCommitDetails()) {
+      GDETRecordRenderer.renderCommit(commit, text);
+    }
+    for (GDETIssueDetails issue : snapshot.getIssueDetails()) {
+      GDETRecordRenderer.renderIssue(issue, text);
+    }
+    return text.toString();
+  }
+
+  /*
+  * Callers that do not ask for an encoding themselves should get the body
+  * decoded, without a Content-Encoding header.
+  */
+  @Test
+  public void shouldDecodeForCallersThatAskedForNoEncoding() throws IOException {
+    GDETHttpClientConnector connector = new GDETHttpClientConnector();
+    HttpURLConnection connection =
+      connector.connect(new URL(server.getEndpoint() + "/repos/owner/repo"));
+    assertEquals(200, connection.getResponseCode());
+    String body = new String(GDETHttpConnection.readFully(connection.getInputStream()),
+      StandardCharsets.UTF_8);
+    assertTrue(body.startsWith("{"), body);
+    assertTrue(body.contains("\"full_name\":\"owner/repo\""), body);
+    assertNull(connection.getHeaderField("Content-Encoding"));
+    assertEquals(1, connector.getGzippedResponseCount());
+  }
+
+  /*
+  * Parallel requests should reuse a pool of kept alive connections rather
+  * than open one per request.
+  */
+  @Test
+  public void shouldReuseConnectionsAcrossParallelRequests() throws Exception {
+    final GDETHttpClientConnector connector = new GDETHttpClientConnector();
+    final URL url = new URL(server.getEndpoint() + "/repos/owner/repo/commits?per_page=10");
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Integer>> codes = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < 200; i++) {
+        codes.add(pool.submit(() -> connector.connect(url).getResponseCode()));
+      }
+      for (Future<Integer> code : codes) {
+        assertEquals(200, (int) code.get());
+      }
+    }
+    finally {
+      pool.shutdownNow();
+    }
+    assertEquals(200, server.getRequestCount());
+    assertTrue(server.getConnectionCount() <= 8, server.getConnectionCount() + " connections");
+  }
+
+  /*
+  * A connection's read timeout should bound the whole request.
+  */
+  @Test
+  public void shouldTimeOutSlowResponses() throws IOException {
+    server.setLatency(2000, 0);
+    GDETHttpClientConnector connector =
+      new GDETHttpClientConnector(Duration.ofSeconds(1), Duration.ofSeconds(30));
+    HttpURLConnection connection =
+      connector.connect(new URL(server.getEndpoint() + "/repos/owner/repo"));
+    connection.setReadTimeout(100);
+    assertThrows(IOException.class, connection::getResponseCode);
+  }
+}
@@ -0,0 +1,323 @@
+package org.compass.gdet;
+
+import com.sun.net.httpserver.HttpServer;
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETIncrementalExtractorTest
+{
+  private HttpServer server;
+  private String endpoint;
+  private Path directory;
+
+  /*
+  * the repository owner/repo, newest first; commits are {sha, login, parent
+  * SHAs...} and search results are capped at <searchTotal>
+  */
+  private final List<String[]> commits = new ArrayList<String[]>();
+  private final List<String[]> issues = new ArrayList<String[]>();
+  private final List<String[]> pulls = new ArrayList<String[]>();
+  private volatile int searchTotal = -1;
+  private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      String path = exchange.getRequestURI().getPath();
+      String query = exchange.getRequestURI().getRawQuery();
+      requests.add(path);
+      String body;
+      synchronized (this) {
+        body = respond(path, query == null ? "" : URLDecoder.decode(query, "UTF-8"));
+      }
+      byte[] bytes = (body == null ? "{\"message\":\"Not Found\"}" : body)
+        .getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(body == null ? 404 : 200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    server.start();
+    endpoint = "http://127.0.0.1:" + server.getAddress().getPort();
+    directory = Files.createTempDirectory("gdet-checkpoints");
+  }
+
+  @AfterEach
+  public void stopServer() throws IOException {
+    server.stop(0);
+    Files.walk(directory).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+  }
+
+  private String respond(String path, String query) {
+    if (path.startsWith("/users/")) {
+      return "{\"login\":\"" + path.substring(7) + "\"}";
+    }
+    if (path.startsWith("/repos/owner/repo/compare/")) {
+      String[] range = path.substring(26).split("\\.\\.\\.");
+      return compare(range[0], range[1]);
+    }
+    if (path.equals("/search/issues")) {
+      String since = query.replaceAll(".*updated:>=(\\S+).*", "$1");
+      List<String> items = new ArrayList<String>();
+      for (String[] issue : issues) {
+        if (issue[3].compareTo(since) >= 0) {
+          items.add(issue(issue));
+        }
+      }
+      return "{\"total_count\":" + (searchTotal >= 0 ? searchTotal : items.size())
+        + ",\"incomplete_results\":false,\"items\":" + items + "}";
+    }
+    switch (path) {
+      case "/repos/owner/repo":
+        return "{\"name\":\"repo\",\"full_name\":\"owner/repo\",\"owner\":{\"login\":\"owner\"},"
+          + "\"default_branch\":\"main\"}";
+      case "/repos/owner/repo/branches":
+        return "[{\"name\":\"main\",\"commit\":{\"sha\":\"" + commits.get(0)[0] + "\"}}]";
+      case "/repos/owner/repo/commits": {
+        List<String> items = new ArrayList<String>();
+        for (String[] commit : commits) {
+          items.add(commit(commit));
+        }
+        return items.toString();
+      }
+      case "/repos/owner/repo/issues": {
+        List<String> items = new ArrayList<String>();
+        for (String[] issue : issues) {
+          items.add(issue(issue));
+        }
+        return items.toString();
+      }
+      case "/repos/owner/repo/pulls": {
+        List<String> items = new ArrayList<String>();
+        for (String[] pr : pulls) {
+          items.add("{\"number\":" + pr[0] + ",\"user\":{\"login\":\"" + pr[1] + "\"},"
+            + "\"created_at\":\"" + pr[2] + "\",\"updated_at\":\"" + pr[3] + "\","
+            + "\"mergeable_state\":\"clean\","
+            + (pr[4] == null ? "\"merged_at\":null,\"merged_by\":null}"
+              : "\"merged_at\":\"" + pr[3] + "\",\"merged_by\":{\"login\":\"" + pr[4] + "\"}}"));
+        }
+        return items.toString();
+      }
+      default:
+        return null;
+    }
+  }
+
+  private static String commit(String[] commit) {
+    return "{\"sha\":\"" + commit[0] + "\",\"commit\":{\"message\":\"m\"},"
+      + "\"author\":{\"login\":\"" + commit[1] + "\"}}";
+  }
+
+  /* the commits reachable from <sha>, following every parent */
+  private Set<String> reachable(String sha) {
+    Map<String, String[]> bySha = new HashMap<String, String[]>();
+    for (String[] commit : commits) {
+      bySha.put(commit[0], commit);
+    }
+    Set<String> seen = new HashSet<String>();
+    Deque<String> pending = new ArrayDeque<String>(Collections.singleton(sha));
+    while (!pending.isEmpty()) {
+      String[] commit = bySha.get(pending.pop());
+      if (commit != null && seen.add(commit[0])) {
+        pending.addAll(Arrays.asList(commit).subList(2, commit.length));
+      }
+    }
+    return seen;
+  }
+
+  /* GitHub's comparison of <base> with <head>, oldest commit first */
+  private String compare(String base, String head) {
+    Set<String> fromHead = reachable(head);
+    Set<String> fromBase = reachable(base);
+    if (fromBase.isEmpty() || fromHead.isEmpty()) {
+      return null;
+    }
+    List<String> items = new ArrayList<String>();
+    for (String[] commit : commits) {
+      if (fromHead.contains(commit[0]) && !fromBase.contains(commit[0])) {
+        items.add(0, commit(commit));
+      }
+    }
+    String status = fromHead.contains(base) ? "ahead" : "diverged";
+    String baseCommit = "{\"sha\":\"" + base + "\",\"commit\":{\"message\":\"m\"}}";
+    return "{\"status\":\"" + status + "\",\"ahead_by\":" + items.size()
+      + ",\"behind_by\":0,\"total_commits\":" + items.size()
+      + ",\"base_commit\":" + baseCommit + ",\"merge_base_commit\":" + baseCommit
+      + ",\"commits\":" + items + "}";
+  }
+
+  private static String issue(String[] issue) {
+    return "{\"number\":" + issue[0] + ",\"title\":\"t\",\"state\":\"open\","
+      + "\"user\":{\"login\":\"" + issue[1] + "\"},"
+      + "\"created_at\":\"" + issue[2] + "\",\"updated_at\":\"" + issue[3] + "\"}";
+  }
+
+  private static String day(int day) {
+    return String.format("2019-01-%02dT00:00:00Z", day);
+  }
+
+  private static String sha(int n) {
+    return String.format("%040x", n);
+  }
+
+  private GDETIncrementalExtractor.Delta extract() throws IOException {
+    GitHub github = new GitHubBuilder().withEndpoint(endpoint).build();
+    return new GDETIncrementalExtractor(github, new GDETCheckpointStore(directory))
+      .extract(github.getRepository("owner/repo"));
+  }
+
+  /* three commits, two issues and two pull requests, all from the first days */
+  private synchronized void firstRun() {
+    commits.add(new String[] {sha(3), "bob", sha(2)});
+    commits.add(new String[] {sha(2), "alice", sha(1)});
+    commits.add(new String[] {sha(1), "alice"});
+    issues.add(new String[] {"2", "bob", day(2), day(3)});
+    issues.add(new String[] {"1", "alice", day(1), day(1)});
+    pulls.add(new String[] {"11", "carol", day(3), day(4), null});
+    pulls.add(new String[] {"10", "alice", day(1), day(2), "bob"});
+  }
+
+  /*
+  * A second run should only fetch what changed since the first, through
+  * the search API for issues, and add it to the counts saved with the
+  * checkpoint.
+  */
+  @Test
+  public void shouldMergeOnlyWhatChanged() throws IOException {
+    firstRun();
+    GDETIncrementalExtractor.Delta first = extract();
+    assertEquals(3, first.getCommits().size());
+    assertEquals(2, first.getIssues().size());
+    assertEquals(2, first.getPullRequests().size());
+    assertEquals(2, first.getCheckpoint().getCommitCounts().get("alice"));
+
+    synchronized (this) {
+      commits.add(0, new String[] {sha(4), "carol", sha(3)});
+      issues.add(0, new String[] {"3", "carol", day(5), day(5)});
+      issues.set(1, new String[] {"2", "bob", day(2), day(6)});
+      issues.add(0, issues.remove(1));
+      pulls.add(0, new String[] {"12", "bob", day(5), day(7), "alice"});
+    }
+    requests.clear();
+    GDETIncrementalExtractor.Delta second = extract();
+
+    assertEquals(1, second.getCommits().size());
+    assertEquals(sha(4), second.getCommits().get(0).getSHA1());
+    assertEquals(2, second.getIssues().size());
+    assertEquals(2, second.getPullRequests().size());
+    assertTrue(requests.contains("/search/issues"));
+    assertFalse(requests.contains("/repos/owner/repo/issues"));
+
+    GDETCheckpointStore.Checkpoint checkpoint = second.getCheckpoint();
+    assertEquals(2, checkpoint.getCommitCounts().get("alice"));
+    assertEquals(1, checkpoint.getCommitCounts().get("bob"));
+    assertEquals(1, checkpoint.getCommitCounts().get("carol"));
+    /* issue 2 was updated, not opened, since the checkpoint */
+    assertEquals(1, checkpoint.getIssueCounts().get("bob"));
+    assertEquals(1, checkpoint.getIssueCounts().get("carol"));
+    assertEquals(3, checkpoint.getIssueCounts().total());
+    assertEquals(1, checkpoint.getPullRequestOpenedCounts().get("bob"));
+    assertEquals(3, checkpoint.getPullRequestOpenedCounts().total());
+    assertEquals(1, checkpoint.getPullRequestMergedCounts().get("alice"));
+    assertEquals(1, checkpoint.getPullRequestMergedCounts().get("bob"));
+    assertEquals(sha(4), checkpoint.getBranchHeads().get("main"));
+
+    GDETCheckpointStore.Checkpoint saved = new GDETCheckpointStore(directory).load("owner/repo");
+    assertEquals(checkpoint.getCommitCounts().toMap(), saved.getCommitCounts().toMap());
+    assertEquals(checkpoint.getIssuesUpdatedAt(), saved.getIssuesUpdatedAt());
+  }
+
+  /*
+  * When search reports more issues than it will return, the full listing
+  * should be read instead, still keeping only the updated issues.
+  */
+  @Test
+  public void shouldListIssuesWhenSearchIsCapped() throws IOException {
+    firstRun();
+    extract();
+    synchronized (this) {
+      issues.add(0, new String[] {"3", "carol", day(5), day(5)});
+      searchTotal = 1000;
+    }
+    requests.clear();
+    GDETIncrementalExtractor.Delta second = extract();
+
+    assertTrue(requests.contains("/repos/owner/repo/issues"));
+    assertEquals(0, second.getCommits().size());
+    /* issue 2 was last updated at the checkpoint itself */
+    assertEquals(2, second.getIssues().size());
+    assertEquals(3, second.getIssues().get(0).getNumber());
+    assertEquals(3, second.getCheckpoint().getIssueCounts().total());
+    assertEquals(3, second.getCheckpoint().getCommitCounts().total());
+  }
+
+  /*
+  * A head that is no longer reachable, as after a force push, should make
+  * the commit walk recount every commit rather than add to the old counts.
+  */
+  @Test
+  public void shouldRecountRewrittenHistory() throws IOException {
+    firstRun();
+    extract();
+    synchronized (this) {
+      commits.set(0, new String[] {sha(5), "carol", sha(2)});
+    }
+    GDETIncrementalExtractor.Delta second = extract();
+
+    assertEquals(3, second.getCommits().size());
+    GDETUserCounter counts = second.getCheckpoint().getCommitCounts();
+    assertEquals(3, counts.total());
+    assertEquals(1, counts.get("carol"));
+    assertEquals(0, counts.get("bob"));
+  }
+
+  /*
+  * Commits of a branch merged since the checkpoint should be counted even
+  * when they are dated before the old head, and so come after it in the
+  * commit listing.
+  */
+  @Test
+  public void shouldCountCommitsOfAMergedOlderBranch() throws IOException {
+    firstRun();
+    extract();
+    synchronized (this) {
+      /* sha(6) was written on a branch off sha(1) before sha(2) and sha(3) */
+      commits.add(0, new String[] {sha(7), "bob", sha(3), sha(6)});
+      commits.add(3, new String[] {sha(6), "carol", sha(1)});
+    }
+    requests.clear();
+    GDETIncrementalExtractor.Delta second = extract();
+
+    assertTrue(requests.contains("/repos/owner/repo/compare/" + sha(3) + "..." + sha(7)));
+    assertEquals(2, second.getCommits().size());
+    assertEquals(sha(7), second.getCommits().get(0).getSHA1());
+    assertEquals(sha(6), second.getCommits().get(1).getSHA1());
+    GDETUserCounter counts = second.getCheckpoint().getCommitCounts();
+    assertEquals(5, counts.total());
+    assertEquals(2, counts.get("alice"));
+    assertEquals(2, counts.get("bob"));
+    assertEquals(1, counts.get("carol"));
+  }
+}
@@ -0,0 +1,124 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.HttpConnector;
+import org.junit.jupiter.api.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETJobPlannerTest
+{
+  private ExecutorService pool;
+
+  @BeforeEach
+  public void setUp() {
+    pool = Executors.newFixedThreadPool(2);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  /*
+  * Independent jobs should run at the same time, and a job should only start
+  * once everything it depends on has finished.
+  */
+  @Test
+  public void shouldRunIndependentJobsTogether() throws IOException {
+    final CountDownLatch bothRunning = new CountDownLatch(2);
+    final AtomicInteger finished = new AtomicInteger();
+    final AtomicInteger seenByLast = new AtomicInteger(-1);
+    GDETJobPlanner.Job waitForOther = () -> {
+      bothRunning.countDown();
+      assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+      finished.incrementAndGet();
+      return 1;
+    };
+    GDETJobPlanner planner = new GDETJobPlanner(pool)
+      .add("a", waitForOther)
+      .add("b", waitForOther)
+      .add("c", () -> {
+        seenByLast.set(finished.get());
+        return 0;
+      }, "a", "b");
+    planner.await();
+    assertEquals(2, seenByLast.get());
+    assertEquals(3, planner.getElapsedNanos().size());
+    assertThrows(IllegalArgumentException.class,
+      () -> new GDETJobPlanner(pool).add("x", () -> 0, "y"));
+  }
+
+  /*
+  * A failed job should skip the jobs that depend on it, but not the others,
+  * and be reported by await().
+  */
+  @Test
+  public void shouldSkipJobsThatDependOnAFailure() {
+    final AtomicBoolean dependentRan = new AtomicBoolean();
+    final AtomicBoolean independentRan = new AtomicBoolean();
+    GDETJobPlanner planner = new GDETJobPlanner(pool)
+      .add("failing", () -> {
+        throw new IOException("boom");
+      })
+      .add("dependent", () -> {
+        dependentRan.set(true);
+        return 0;
+      }, "failing")
+      .add("independent", () -> {
+        independentRan.set(true);
+        return 0;
+      });
+    IOException failure = assertThrows(IOException.class, planner::await);
+    assertEquals("boom", failure.getCause().getMessage());
+    assertFalse(dependentRan.get());
+    assertTrue(independentRan.get());
+  }
+
+  /*
+  * A report written after its sections were fetched concurrently should be
+  * identical to one that fetches its sections as it writes them.
+  */
+  @Test
+  public void shouldWriteTheSameReportAfterAPlannedFetch() throws IOException {
+    try (GDETStandInServer server = new GDETStandInServer()
+        .addRepository(new GDETStandInServer.Repository("owner/repo")
+          .setCommits(150)
+          .setIssues(40)
+          .setPullRequests(12)
+          .setReviewComments(2)
+          .setBranches(3)
+          .setUsers(5))
+        .start()) {
+      GithubDataExtractionTool tool =
+        new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint());
+      GDETRepositorySnapshot sequential =
+        new GDETRepositorySnapshot(tool.getRepository("owner/repo"), 2);
+      GDETRepositorySnapshot planned =
+        new GDETRepositorySnapshot(tool.getRepository("owner/repo"), 2);
+      GDETJobPlanner planner =
+        planned.plan(new GDETJobPlanner(pool), GithubDataExtractionTool.getUserProfileCache());
+      planner.await();
+      assertEquals(7, planner.getElapsedNanos().size());
+      assertEquals(report(sequential), report(planned));
+    }
+  }
+
+  private static String report(GDETRepositorySnapshot snapshot) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GDETOutputHandler out = new GDETOutputHandler(GDETChannelSink.toStream(bytes, 4096))) {
+      GDETReport.write(out, snapshot);
+    }
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,107 @@
+package org.compass.gdet;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.Map;
+import javax.management.ObjectName;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETMetricsTest
+{
+  private GDETStandInServer server;
+
+  @BeforeEach
+  public void startServer() throws Exception {
+    server = new GDETStandInServer()
+      .addRepository(new GDETStandInServer.Repository("owner/repo")
+        .setCommits(250)
+        .setIssues(40)
+        .setPullRequests(10)
+        .setReviewComments(2)
+        .setBranches(5)
+        .setUsers(12))
+      .start();
+    server.setRateLimit(10000, 3600);
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.close();
+  }
+
+  /*
+  * Request paths should be grouped into endpoint templates.
+  */
+  @Test
+  public void shouldTemplateEndpoints() throws Exception {
+    assertEquals("GET /repos/{owner}/{repo}/commits",
+      GDETMetrics.endpointOf("GET", new URL("https://api.github.com/repos/a/b/commits?page=2")));
+    assertEquals("GET /repos/{owner}/{repo}/pulls/{number}/comments",
+      GDETMetrics.endpointOf("GET", new URL("https://api.github.com/repos/a/b/pulls/7/comments")));
+    assertEquals("GET /repos/{owner}/{repo}/commits/{sha}", GDETMetrics.endpointOf("GET",
+      new URL("https://api.github.com/repos/a/b/commits/0123456789abcdef0123456789abcdef01234567")));
+    assertEquals("GET /users/{login}",
+      GDETMetrics.endpointOf("GET", new URL("https://api.github.com/users/octocat")));
+    assertEquals("GET /", GDETMetrics.endpointOf("GET", new URL("https://api.github.com")));
+  }
+
+  /*
+  * Extracting through a metered connector should count requests, pages and
+  * bytes per endpoint, the remaining rate limit and the records written per
+  * section, and expose them over JMX and as a one line JSON report.
+  */
+  @Test
+  public void shouldMeterAnExtraction() throws Exception {
+    GDETMetrics metrics = new GDETMetrics("test-" + System.nanoTime());
+    GithubDataExtractionTool tool = new GithubDataExtractionTool(
+      new GDETMeteredConnector(HttpConnector.DEFAULT, metrics), server.getEndpoint());
+    GDETRepositorySnapshot snapshot =
+      new GDETRepositorySnapshot(tool.getRepository("owner/repo"), 2);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GDETOutputHandler out = new GDETOutputHandler(GDETChannelSink.toStream(bytes, 1024));
+    metrics.watch(out);
+    GDETReport.write(out, snapshot, metrics);
+    out.close();
+
+    assertEquals(server.getRequestCount(), metrics.getRequestCount());
+    assertEquals(0, metrics.getErrorCount());
+    Map<String, Long> requests = metrics.getRequestsPerEndpoint();
+    assertEquals(3, (long) requests.get("GET /repos/{owner}/{repo}/commits"));
+    assertEquals(10, (long) requests.get("GET /repos/{owner}/{repo}/pulls/{number}"));
+    assertTrue(metrics.getPagesFetched() >= 3 + 1 + 1 + 10 + 1);
+    assertTrue(metrics.getBytesReceived() > 0);
+    assertEquals(10000 - server.getRequestCount(),
+      (long) metrics.getRateLimitRemaining().get("core"));
+    assertEquals(250, (long) metrics.getRecordsPerSection().get("commits"));
+    assertEquals(40, (long) metrics.getRecordsPerSection().get("issues"));
+    assertEquals(10, (long) metrics.getRecordsPerSection().get("pullRequests"));
+    assertEquals(20, (long) metrics.getRecordsPerSection().get("reviewComments"));
+    assertEquals(5, (long) metrics.getRecordsPerSection().get("branches"));
+    assertEquals(-1, metrics.getCacheHitRatio());
+
+    ObjectName name = metrics.register();
+    try {
+      assertEquals(metrics.getRequestCount(),
+        ManagementFactory.getPlatformMBeanServer().getAttribute(name, "RequestCount"));
+    }
+    finally {
+      metrics.unregister();
+    }
+
+    String report = metrics.getReport();
+    assertTrue(report.indexOf('\n') < 0);
+    JsonObject json = new JsonParser().parse(report).getAsJsonObject();
+    assertEquals(metrics.getRequestCount(), json.get("requests").getAsLong());
+    assertEquals(bytes.size(), json.getAsJsonObject("output").get("bytes").getAsLong());
+    JsonObject commits = json.getAsJsonObject("endpoints")
+      .getAsJsonObject("GET /repos/{owner}/{repo}/commits");
+    assertEquals(3, commits.getAsJsonObject("latencyMillis").get("count").getAsLong());
+    assertEquals(3, commits.getAsJsonObject("status").get("200").getAsLong());
+  }
+}
@@ -0,0 +1,90 @@
+package org.compass.gdet;
+
+import com.sun.net.httpserver.HttpServer;
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETOrganizationExtractorTest
+{
+  private HttpServer server;
+  private String endpoint;
+
+  /* repositories named ok* exist and are empty; every other repository is missing */
+  @BeforeEach
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      String[] path = exchange.getRequestURI().getPath().split("/");
+      byte[] body;
+      int code = 200;
+      if (path.length >= 4 && path[1].equals("repos") && path[3].startsWith("ok")) {
+        body = (path.length == 4
+          ? "{\"name\":\"" + path[3] + "\",\"full_name\":\"owner/" + path[3]
+            + "\",\"owner\":{\"login\":\"owner\"}}"
+          : "[]").getBytes(StandardCharsets.UTF_8);
+      }
+      else {
+        code = 404;
+        body = "{\"message\":\"Not Found\"}".getBytes(StandardCharsets.UTF_8);
+      }
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(code, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    endpoint = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  /*
+  * Repositories that fail should be recorded without stopping the others,
+  * and every successful repository should get its own output file.
+  */
+  @Test
+  public void shouldIsolateFailedRepositories() throws IOException {
+    GitHub github = new GitHubBuilder().withEndpoint(endpoint).build();
+    Path dir = Files.createTempDirectory("gdet-org");
+    GDETOrganizationExtractor extractor = new GDETOrganizationExtractor(github, 3)
+      .setOutput(dir, "ndjson");
+    GDETOrganizationExtractor.Result result = extractor.extract(Arrays.asList(
+      "owner/ok-one", "owner/missing", "owner/ok-two", "owner/gone", "owner/ok-three"));
+
+    List<GDETOrganizationExtractor.RepositoryResult> repositories = result.getRepositories();
+    assertEquals(5, repositories.size());
+    assertEquals(2, result.getFailures().size());
+    for (GDETOrganizationExtractor.RepositoryResult repository : repositories) {
+      boolean ok = repository.getName().startsWith("owner/ok");
+      assertEquals(ok, repository.isSuccessful(), repository.getName());
+      if (ok) {
+        assertTrue(Files.exists(repository.getOutput()));
+        assertEquals(dir.resolve(repository.getName() + ".ndjson"), repository.getOutput());
+      }
+      else {
+        assertNotNull(repository.getError());
+      }
+    }
+    assertTrue(result.getCommitCountPerUser().isEmpty());
+    /* the merged counts handed out are copies */
+    result.getCommitCountPerUser().increment("someone");
+    assertTrue(result.getCommitCountPerUser().isEmpty());
+    assertFalse(Files.exists(dir.resolve("owner/missing.ndjson")));
+  }
+}
@@ -0,0 +1,78 @@
+package org.compass.gdet;
+
+import org.junit.jupiter.api.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.InputMismatchException;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETOutputHandlerTest
+{
+  /*
+  * Output larger than the buffer should reach the file intact once the
+  * handler is closed, in several batches.
+  */
+  @Test
+  public void shouldWriteBufferedOutputToAFile() throws IOException {
+    Path file = Files.createTempFile("gdet-output", ".txt");
+    GDETOutputHandler out = new GDETOutputHandler(GDETChannelSink.toFile(file, 64));
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      String line = "record " + i + " é中\n";
+      out.write(line);
+      expected.append(line);
+    }
+    out.close();
+    byte[] written = Files.readAllBytes(file);
+    assertEquals(expected.toString(), new String(written, StandardCharsets.UTF_8));
+    assertEquals(written.length, out.getBytesWritten());
+    assertTrue(out.getFlushCount() > 1);
+  }
+
+  /*
+  * flush() should push buffered output through without closing the handler.
+  */
+  @Test
+  public void shouldFlushWithoutClosing() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GDETOutputHandler out = new GDETOutputHandler(GDETChannelSink.toStream(bytes, 1024));
+    out.append("first\n");
+    assertEquals(0, bytes.size());
+    out.flush();
+    assertEquals("first\n", bytes.toString("UTF-8"));
+    out.append("second\n").append('!');
+    out.flush();
+    assertEquals("first\nsecond\n!", bytes.toString("UTF-8"));
+  }
+
+  /*
+  * A surrogate pair split across writes should be encoded as one character,
+  * and a high surrogate left at the end as a replacement.
+  */
+  @Test
+  public void shouldJoinSurrogatePairsSplitAcrossWrites() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GDETOutputHandler out = new GDETOutputHandler(GDETChannelSink.toStream(bytes, 1024));
+    for (char c : "x\uD83D\uDE00y\uD83D\uD83D\uDE00".toCharArray()) {
+      out.write(c);
+    }
+    out.write("\uD83D");
+    out.close();
+    assertEquals("x\uD83D\uDE00y?\uD83D\uDE00?", bytes.toString("UTF-8"));
+    assertEquals(bytes.size(), out.getBytesWritten());
+  }
+
+  /*
+  * Writer classes other than OutputStreamWriter should still be rejected.
+  */
+  @Test
+  public void shouldRejectUnsupportedWriterClasses() {
+    assertThrows(InputMismatchException.class,
+      () -> new GDETOutputHandler(java.io.StringWriter.class));
+  }
+}
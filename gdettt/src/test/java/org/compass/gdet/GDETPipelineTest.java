@@ -0,0 +1,193 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETPipelineTest
+{
+  private GDETStandInServer server;
+  private GHRepository repo;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = new GDETStandInServer()
+      .addRepository(new GDETStandInServer.Repository("owner/repo")
+        .setCommits(2500)
+        .setIssues(250)
+        .setUsers(5))
+      .start();
+    repo = new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint())
+      .getRepository("owner/repo");
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.close();
+  }
+
+  /*
+  * A streamed section should be written exactly as the report renders it
+  * from the fetched details, and every stage should see every record.
+  */
+  @Test
+  public void shouldWriteWhatTheReportRenders() throws IOException {
+    StringBuilder expected = new StringBuilder();
+    for (GDETIssueDetails issue : GithubDataExtractionTool.getIssueDetails(repo)) {
+      GDETRecordRenderer.renderIssue(issue, expected);
+    }
+    StringWriter out = new StringWriter();
+    GDETPipeline<GHIssue, GDETIssueDetails> pipeline = GDETPipeline.ofIssues(repo, out);
+    assertEquals(250, pipeline.run());
+    assertEquals(expected.toString(), out.toString());
+    for (GDETPipeline.Stage stage : pipeline.getStages()) {
+      assertEquals(3, stage.getPages(), stage.getName());
+      assertEquals(250, stage.getRecords(), stage.getName());
+    }
+  }
+
+  /*
+  * Streaming to rotating files should mark every record, so files start
+  * between records every <maxRecords> and are indexed past their first.
+  */
+  @Test
+  public void shouldStreamIntoRotatingFiles() throws IOException {
+    StringWriter expected = new StringWriter();
+    GDETPipeline.ofCommits(repo, expected).run();
+    Path directory = Files.createTempDirectory("gdet-stream");
+    try {
+      GDETOutputHandler out =
+        GDETOutputHandler.toRotatingFiles(directory.resolve("commits.txt"), true, 0, 1000);
+      try (out) {
+        assertEquals(2500, GDETPipeline.ofCommits(repo, out).run());
+      }
+      List<Path> files = ((GDETRotatingSink) out.getSink()).getFiles();
+      assertEquals(3, files.size());
+      StringBuilder archived = new StringBuilder();
+      for (Path file : files) {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+          archived.append(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+      }
+      assertEquals(expected.toString(), archived.toString());
+      GDETRotatingSink.Index index = GDETRotatingSink.Index.read(files.get(0));
+      assertEquals(1000 / GDETRotatingSink.RECORDS_PER_BLOCK * GDETRotatingSink.RECORDS_PER_BLOCK,
+        index.entryFor(999).getRecord());
+    }
+    finally {
+      Files.walk(directory).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  /*
+  * While the writer is stuck, fetching should stop once the buffers between
+  * the stages are full, and resume when the writer catches up.
+  */
+  @Test
+  public void shouldStopFetchingWhileTheWriterIsStuck() throws Exception {
+    final CountDownLatch unstuck = new CountDownLatch(1);
+    final StringBuilder written = new StringBuilder();
+    Writer stuck = new Writer() {
+      public void write(char[] cbuf, int off, int len) throws IOException {
+        try {
+          unstuck.await();
+        }
+        catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        written.append(cbuf, off, len);
+      }
+      public void flush() {}
+      public void close() {}
+    };
+    final GDETPipeline<GHCommit, GDETCommitDetails> pipeline = new GDETPipeline<>(
+      repo.listCommits().withPageSize(100), GDETCommitDetails::of,
+      GDETRecordRenderer::renderCommit, stuck, 1);
+    Thread running = new Thread(() -> {
+      try {
+        pipeline.run();
+      }
+      catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    running.start();
+    GDETPipeline.Stage fetch = pipeline.getStages().get(0);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (fetch.getPages() < 4 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(300);
+    long fetched = fetch.getPages();
+    assertTrue(fetched >= 4 && fetched <= 8, "fetched " + fetched + " pages");
+    assertEquals(0, pipeline.getStages().get(3).getPages());
+    unstuck.countDown();
+    running.join(10000);
+    assertEquals(25, fetch.getPages());
+    assertEquals(2500, pipeline.getStages().get(3).getRecords());
+    assertEquals(2500, written.toString().split(GDETRecordRenderer.SHORT_SEPARATOR_END, -1).length - 1);
+  }
+
+  /*
+  * Commits whose author's account cannot be found should keep the login the
+  * listing gave, both when the report reads them and when they are streamed,
+  * and the missing account should only be asked for once.
+  */
+  @Test
+  public void shouldKeepCommitsWhoseAuthorIsGone() throws IOException {
+    AtomicInteger lookups = new AtomicInteger();
+    HttpConnector missingUser0 = url -> {
+      if (url.getPath().equals("/users/user0")) {
+        lookups.incrementAndGet();
+        url = new URL(server.getEndpoint() + "/users");
+      }
+      return HttpConnector.DEFAULT.connect(url);
+    };
+    GDETUserProfileCache original = GithubDataExtractionTool.getUserProfileCache();
+    GDETUserProfileCache profiles = new GDETUserProfileCache();
+    GithubDataExtractionTool.setUserProfileCache(profiles);
+    try {
+      GHRepository repo = new GithubDataExtractionTool(missingUser0, server.getEndpoint())
+        .getRepository("owner/repo");
+      List<GDETCommitDetails> commits = GithubDataExtractionTool.getCommitDetails(repo);
+      assertEquals(2500, commits.size());
+      int byUser0 = GDETCommitDetails.countPerUser(commits).get("user0");
+      assertTrue(byUser0 > 1);
+      assertNull(GDETCommitDetails.countPerUser(commits).toMap().get(GDETUserCounter.UNKNOWN_LOGIN));
+      assertTrue(profiles.isMissing("user0"));
+      assertEquals(2500, GDETPipeline.ofCommits(repo, new StringWriter()).run());
+      assertEquals(1, lookups.get());
+    }
+    finally {
+      GithubDataExtractionTool.setUserProfileCache(original);
+    }
+  }
+
+  /*
+  * A failed fetch should be thrown by run() rather than end the section
+  * early.
+  */
+  @Test
+  public void shouldThrowAFailedFetch() {
+    GDETPipeline<GHCommit, GDETCommitDetails> pipeline = GDETPipeline.ofCommits(repo,
+      new StringWriter());
+    server.close();
+    assertThrows(IOException.class, pipeline::run);
+  }
+}
@@ -0,0 +1,91 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class GDETPrefetchingConnectorTest
+{
+  private GDETStandInServer server;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    server = new GDETStandInServer()
+      .addRepository(new GDETStandInServer.Repository("owner/repo")
+        .setCommits(1000)
+        .setIssues(10)
+        .setPullRequests(0)
+        .setUsers(12))
+      .setLatency(20, 0)
+      .start();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.close();
+  }
+
+  /*
+  * Link headers should be parsed into their URLs, and page numbers read and
+  * replaced.
+  */
+  @Test
+  public void shouldReadLinkHeaders() {
+    Map<String, String> links = GDETPrefetchingConnector.links(
+      "<https://api.github.com/repositories/1/commits?per_page=100&page=2>; rel=\"next\", "
+      + "<https://api.github.com/repositories/1/commits?per_page=100&page=34>; rel=\"last\"");
+    assertEquals(2, GDETPrefetchingConnector.pageOf(links.get("next")));
+    assertEquals(34, GDETPrefetchingConnector.pageOf(links.get("last")));
+    assertEquals("https://api.github.com/repositories/1/commits?per_page=100&page=7",
+      GDETPrefetchingConnector.withPage(links.get("next"), 7));
+    assertEquals("https://api.github.com/x?page=3&per_page=100",
+      GDETPrefetchingConnector.withPage("https://api.github.com/x?page=2&per_page=100", 3));
+    assertEquals(-1, GDETPrefetchingConnector.pageOf("https://api.github.com/x?per_page=100"));
+  }
+
+  /*
+  * Every page after the first should be served from a prefetch, in order,
+  * without requesting any page twice.
+  */
+  @Test
+  public void shouldServeListingPagesFromPrefetches() throws IOException {
+    GDETPrefetchingConnector prefetcher = new GDETPrefetchingConnector(HttpConnector.DEFAULT, 4);
+    GithubDataExtractionTool tool = new GithubDataExtractionTool(prefetcher, server.getEndpoint());
+    GHRepository repo = tool.getRepository("owner/repo");
+    long before = server.getRequestCount();
+
+    List<GHCommit> commits = GithubDataExtractionTool.getCommits(repo);
+    assertEquals(1000, commits.size());
+    assertEquals(10, server.getRequestCount() - before);
+    assertEquals(9, prefetcher.getPrefetchCount());
+    assertEquals(9, prefetcher.getHitCount());
+    assertEquals(0, prefetcher.getWastedCount());
+
+    List<GHCommit> expected = new GitHubBuilder().withEndpoint(server.getEndpoint()).build()
+      .getRepository("owner/repo").listCommits().withPageSize(100).asList();
+    for (int i = 0; i < commits.size(); i++) {
+      assertEquals(expected.get(i).getSHA1(), commits.get(i).getSHA1());
+    }
+    assertEquals(10, GithubDataExtractionTool.getIssues(repo).size());
+  }
+
+  /*
+  * A closed prefetcher should stop prefetching but still serve every page,
+  * one request at a time.
+  */
+  @Test
+  public void shouldFetchWithoutPrefetchingOnceClosed() throws IOException {
+    GDETPrefetchingConnector prefetcher = new GDETPrefetchingConnector(HttpConnector.DEFAULT, 4);
+    GithubDataExtractionTool tool = new GithubDataExtractionTool(prefetcher, server.getEndpoint());
+    GHRepository repo = tool.getRepository("owner/repo");
+    prefetcher.close();
+    long before = server.getRequestCount();
+
+    assertEquals(1000, GithubDataExtractionTool.getCommits(repo).size());
+    assertEquals(10, server.getRequestCount() - before);
+    assertEquals(0, prefetcher.getPrefetchCount());
+  }
+}
@@ -0,0 +1,132 @@
+package org.compass.gdet;
+
+import com.sun.net.httpserver.HttpServer;
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETRateLimitSchedulerTest
+{
+  private HttpServer server;
+  private String endpoint;
+  private List<String> authorizations = new CopyOnWriteArrayList<String>();
+  private AtomicInteger secondaryLimits = new AtomicInteger();
+  private volatile int remaining = 5000;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+      authorizations.add(String.valueOf(authorization));
+      long reset = System.currentTimeMillis() / 1000 + 2;
+      int code = 200;
+      int left = remaining;
+      if ("token exhausted".equals(authorization)) {
+        code = 403;
+        left = 0;
+        reset += 3600;
+      }
+      else if (exchange.getRequestURI().getPath().equals("/abuse")
+          && secondaryLimits.getAndIncrement() == 0) {
+        code = 403;
+        exchange.getResponseHeaders().add("Retry-After", "0");
+      }
+      exchange.getResponseHeaders().add("X-RateLimit-Limit", "5000");
+      exchange.getResponseHeaders().add("X-RateLimit-Remaining", Integer.toString(left));
+      exchange.getResponseHeaders().add("X-RateLimit-Reset", Long.toString(reset));
+      byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(code, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    endpoint = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  private int get(HttpConnector connector, String path) throws IOException {
+    HttpURLConnection connection = connector.connect(new URL(endpoint + path));
+    connection.setRequestProperty("Authorization", "token client");
+    return connection.getResponseCode();
+  }
+
+  /*
+  * A credential that runs out of requests should be parked and the request
+  * retried on another credential of the pool.
+  */
+  @Test
+  public void shouldMoveToAnotherCredentialWhenOneRunsOut() throws IOException {
+    GDETRateLimitScheduler scheduler = new GDETRateLimitScheduler(HttpConnector.DEFAULT,
+      Arrays.asList("token exhausted", "token spare"));
+    for (int i = 0; i < 5; i++) {
+      assertEquals(200, get(scheduler, "/repos/owner/repo"));
+    }
+    assertEquals(1, scheduler.getPrimaryLimitHits());
+    assertEquals(1, scheduler.getRetryCount());
+    assertEquals(Arrays.asList("token exhausted", "token spare", "token spare",
+      "token spare", "token spare", "token spare"), authorizations);
+    boolean parked = false;
+    for (GDETRateLimitScheduler.State state : scheduler.getStates()) {
+      assertEquals("core", state.getResource());
+      if (state.getRemaining() == 0) {
+        parked = state.getBlockedUntil() != null;
+      }
+    }
+    assertTrue(parked);
+  }
+
+  /*
+  * A secondary rate limit should be backed off for Retry-After and retried
+  * transparently.
+  */
+  @Test
+  public void shouldRetryAfterSecondaryLimits() throws IOException {
+    GDETRateLimitScheduler scheduler = new GDETRateLimitScheduler(HttpConnector.DEFAULT,
+      Collections.<String>emptyList());
+    assertEquals(200, get(scheduler, "/abuse"));
+    assertEquals(1, scheduler.getSecondaryLimitHits());
+    assertEquals(2, scheduler.getRequestCount());
+    assertEquals(Arrays.asList("token client", "token client"), authorizations);
+  }
+
+  /*
+  * Once the burst is spent, requests should be paced to spread the remaining
+  * quota over the time until it resets.
+  */
+  @Test
+  public void shouldPaceRequestsToTheRemainingQuota() throws IOException {
+    remaining = 20;
+    GDETRateLimitScheduler scheduler = new GDETRateLimitScheduler(HttpConnector.DEFAULT,
+      Collections.singletonList("token paced"), 1, 0);
+    long start = System.nanoTime();
+    for (int i = 0; i < 4; i++) {
+      assertEquals(200, get(scheduler, "/search/issues"));
+    }
+    long elapsedMillis = (System.nanoTime() - start) / 1000000;
+    assertTrue(scheduler.getThrottleNanos() > 0);
+    assertTrue(elapsedMillis < 2000, "paced for " + elapsedMillis + " ms");
+    GDETRateLimitScheduler.State state = scheduler.getStates().get(0);
+    assertEquals("search", state.getResource());
+    assertEquals(4, state.getRequests());
+    assertNotNull(state.getReset());
+  }
+}
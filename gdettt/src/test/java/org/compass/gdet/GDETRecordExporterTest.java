@@ -0,0 +1,75 @@
+package org.compass.gdet;
+
+import org.junit.jupiter.api.*;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETRecordExporterTest
+{
+  private ByteArrayOutputStream bytes;
+  private GDETOutputHandler out;
+
+  @BeforeEach
+  public void openOutput() {
+    bytes = new ByteArrayOutputStream();
+    out = new GDETOutputHandler(GDETChannelSink.toStream(bytes, 32));
+  }
+
+  private String written() throws Exception {
+    out.close();
+    return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /*
+  * Each record should be one JSON object on its own line, with nulls kept.
+  */
+  @Test
+  public void shouldWriteOneJsonObjectPerLine() throws Exception {
+    GDETRecordExporter exporter = GDETRecordExporter.forFormat("ndjson", out);
+    for (int i = 0; i < 3; i++) {
+      exporter.beginRecord(GDETRecordExporter.BRANCH, GDETRecordExporter.BRANCH_FIELDS);
+      exporter.string("branch \"" + i + "\"\n");
+      exporter.string(i == 1 ? null : "abc" + i);
+      exporter.endRecord();
+    }
+    String[] lines = written().split("\n");
+    assertEquals(3, lines.length);
+    for (int i = 0; i < 3; i++) {
+      JsonObject record = new JsonParser().parse(lines[i]).getAsJsonObject();
+      assertEquals("branch", record.get("type").getAsString());
+      assertEquals("branch \"" + i + "\"\n", record.get("name").getAsString());
+      assertTrue(i == 1 ? record.get("sha").isJsonNull()
+        : record.get("sha").getAsString().equals("abc" + i));
+    }
+  }
+
+  /*
+  * CSV fields should only be quoted when they need it, and a header should
+  * be written whenever the record type changes.
+  */
+  @Test
+  public void shouldWriteRfc4180Csv() throws Exception {
+    GDETRecordExporter exporter = GDETRecordExporter.forFormat("csv", out);
+    exporter.beginRecord(GDETRecordExporter.BRANCH, GDETRecordExporter.BRANCH_FIELDS);
+    exporter.string("main");
+    exporter.string(null);
+    exporter.endRecord();
+    exporter.beginRecord(GDETRecordExporter.BRANCH, GDETRecordExporter.BRANCH_FIELDS);
+    exporter.string("a,b");
+    exporter.string("say \"hi\"\r\nbye");
+    exporter.endRecord();
+    exporter.beginRecord(GDETRecordExporter.COMMIT, new String[] {"sha", "count"});
+    exporter.string("f00");
+    exporter.number(42);
+    exporter.endRecord();
+    assertEquals("type,name,sha\r\n"
+      + "branch,main,\r\n"
+      + "branch,\"a,b\",\"say \"\"hi\"\"\r\nbye\"\r\n"
+      + "type,sha,count\r\n"
+      + "commit,f00,42\r\n", written());
+  }
+}
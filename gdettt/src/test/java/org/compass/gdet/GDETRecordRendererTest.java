@@ -0,0 +1,122 @@
+package org.compass.gdet;
+
+import org.junit.jupiter.api.*;
+import org.kohsuke.github.*;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class GDETRecordRendererTest
+{
+  /*
+  * The precomputed separators should match the ones the renderers used to
+  * format on every call.
+  */
+  @Test
+  public void shouldPrecomputeTheOriginalSeparators() {
+    assertEquals(String.format("%32s\n", "").replace(" ", "-"),
+      GDETRecordRenderer.SHORT_SEPARATOR);
+    assertEquals(String.format("%32s\n\n", "").replace(" ", "-"),
+      GDETRecordRenderer.SHORT_SEPARATOR_END);
+    assertEquals(String.format("%64s\n", "").replace(" ", "-"),
+      GDETRecordRenderer.LONG_SEPARATOR);
+    assertEquals(String.format("%64s\n\n", "").replace(" ", "-"),
+      GDETRecordRenderer.LONG_SEPARATOR_END);
+  }
+
+  /*
+  * A record that cannot be rendered should leave the output untouched, and
+  * the wrappers should render the same text as the Appendable form.
+  */
+  @Test
+  public void shouldRenderTheSameTextThroughEitherForm() throws Exception {
+    StringBuilder out = new StringBuilder("x");
+    assertFalse(GDETRecordRenderer.renderBranch(null, out));
+    assertFalse(GDETRecordRenderer.renderPullRequest((GHPullRequest) null, out));
+    assertEquals("x", out.toString());
+    assertEquals("", GithubDataExtractionTool.branchToString(null));
+    assertEquals("", GithubDataExtractionTool.pullRequestToString(null));
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GDETOutputHandler handler =
+        new GDETOutputHandler(GDETChannelSink.toStream(bytes, 16))) {
+      GDETRecordRenderer.renderRepositoryMetaData(null, handler);
+    }
+    String expected = String.format("%32s\n", "").replace(" ", "-")
+      + String.format("%32s\n", "").replace(" ", "-");
+    assertEquals(expected, GithubDataExtractionTool.getRepositoryMetaData(null));
+    assertEquals(expected, new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  /*
+  * The details a snapshot keeps should render, export and count exactly like
+  * the GH* records they were read from.
+  */
+  @Test
+  public void shouldRenderDetailsLikeTheRecordsTheyWereReadFrom() throws Exception {
+    try (GDETStandInServer server = new GDETStandInServer()
+        .addRepository(new GDETStandInServer.Repository("owner/repo")
+          .setCommits(120)
+          .setIssues(30)
+          .setPullRequests(4)
+          .setReviewComments(2)
+          .setUsers(7))
+        .start()) {
+      GithubDataExtractionTool tool =
+        new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint());
+      GDETRepositorySnapshot snapshot =
+        new GDETRepositorySnapshot(tool.getRepository("owner/repo"), 2);
+
+      StringBuilder records = new StringBuilder();
+      StringBuilder details = new StringBuilder();
+      ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+      ByteArrayOutputStream detailBytes = new ByteArrayOutputStream();
+      try (GDETOutputHandler recordOut =
+            new GDETOutputHandler(GDETChannelSink.toStream(recordBytes, 1024));
+          GDETOutputHandler detailOut =
+            new GDETOutputHandler(GDETChannelSink.toStream(detailBytes, 1024))) {
+        GDETRecordExporter recordExporter = GDETRecordExporter.forFormat("ndjson", recordOut);
+        GDETRecordExporter detailExporter = GDETRecordExporter.forFormat("ndjson", detailOut);
+
+        List<GDETCommitDetails> commits = snapshot.getCommitDetails();
+        assertEquals(snapshot.getCommits().size(), commits.size());
+        for (int i = 0; i < commits.size(); i++) {
+          GDETRecordRenderer.renderCommit(snapshot.getCommits().get(i), records);
+          GDETRecordRenderer.renderCommit(commits.get(i), details);
+          recordExporter.exportCommit(snapshot.getCommits().get(i));
+          detailExporter.exportCommit(commits.get(i));
+        }
+        List<GDETIssueDetails> issues = snapshot.getIssueDetails();
+        assertEquals(30, issues.size());
+        for (int i = 0; i < issues.size(); i++) {
+          GDETRecordRenderer.renderIssue(snapshot.getIssues().get(i), records);
+          GDETRecordRenderer.renderIssue(issues.get(i), details);
+          recordExporter.exportIssue(snapshot.getIssues().get(i));
+          detailExporter.exportIssue(issues.get(i));
+        }
+        List<GDETReviewCommentDetails> comments = snapshot.getReviewCommentDetails();
+        assertEquals(8, comments.size());
+        for (int i = 0; i < comments.size(); i++) {
+          GHPullRequestReviewComment prc = snapshot.getPullRequestReviewComments().get(i);
+          GDETRecordRenderer.renderPullRequestReviewComment(prc, records);
+          GDETRecordRenderer.renderPullRequestReviewComment(comments.get(i), details);
+          recordExporter.exportReviewComment(prc);
+          detailExporter.exportReviewComment(comments.get(i));
+        }
+        recordExporter.flush();
+        detailExporter.flush();
+      }
+      assertEquals(records.toString(), details.toString());
+      String exported = new String(detailBytes.toByteArray(), StandardCharsets.UTF_8);
+      assertEquals(120 + 30 + 8, exported.split("\n").length);
+      assertFalse(exported.contains("\"user_name\":null"));
+      assertEquals(new String(recordBytes.toByteArray(), StandardCharsets.UTF_8), exported);
+      assertEquals(GithubDataExtractionTool.getCommitCountPerUser(snapshot.getCommits()).toMap(),
+        snapshot.getCommitCountPerUser().toMap());
+      assertEquals(GithubDataExtractionTool.getIssueCountPerUser(snapshot.getIssues()).toMap(),
+        snapshot.getIssueCountPerUser().toMap());
+    }
+  }
+}
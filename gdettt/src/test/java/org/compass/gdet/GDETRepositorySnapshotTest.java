@@ -0,0 +1,140 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETRepositorySnapshotTest
+{
+  private GDETStandInServer server;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    server = new GDETStandInServer()
+      .addRepository(new GDETStandInServer.Repository("owner/repo")
+        .setCommits(250)
+        .setIssues(90)
+        .setPullRequests(40)
+        .setReviewComments(3)
+        .setBranches(5)
+        .setUsers(12))
+      .start();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.close();
+  }
+
+  private GDETRepositorySnapshot snapshot() {
+    return new GDETRepositorySnapshot(
+      new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint())
+        .getRepository("owner/repo"), 4);
+  }
+
+  /* reads every section of <snapshot>, and every aggregate over them */
+  private static void readAll(GDETRepositorySnapshot snapshot) {
+    snapshot.getCommits();
+    snapshot.getCommitDetails();
+    snapshot.getIssues();
+    snapshot.getIssueDetails();
+    snapshot.getPullRequests();
+    snapshot.getPullRequests(GHIssueState.OPEN);
+    snapshot.getPullRequests(GHIssueState.CLOSED);
+    snapshot.getPullRequestDetails();
+    snapshot.getPullRequestDetails(GHIssueState.OPEN);
+    snapshot.getPullRequestReviewComments();
+    snapshot.getReviewCommentDetails();
+    snapshot.getBranches();
+    snapshot.getCommitCountPerUser();
+    snapshot.getIssueCountPerUser();
+    snapshot.getPullRequestCountPerUser(false);
+    snapshot.getPullRequestCountPerUser(true);
+  }
+
+  /*
+  * Once every section has been read, reading them again, or any aggregate
+  * or filtered view of them, should not send another request.
+  */
+  @Test
+  public void shouldFetchEachSectionOnce() {
+    GDETRepositorySnapshot snapshot = snapshot();
+    List<GDETCommitDetails> commits = snapshot.getCommitDetails();
+    readAll(snapshot);
+    long fetched = server.getRequestCount();
+    readAll(snapshot);
+    readAll(snapshot);
+    assertEquals(fetched, server.getRequestCount());
+    assertSame(commits, snapshot.getCommitDetails());
+    assertEquals(250, snapshot.getCommits().size());
+    assertEquals(40, snapshot.getPullRequests().size());
+  }
+
+  /*
+  * Threads reading the same section at once should share a single fetch
+  * of it: the 250 commits are three pages of a hundred.
+  */
+  @Test
+  public void shouldShareAFetchBetweenThreads() throws Exception {
+    GDETRepositorySnapshot snapshot = snapshot();
+    long before = server.getRequestCount();
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<List<GHCommit>>> pending = new ArrayList<Future<List<GHCommit>>>();
+      for (int i = 0; i < 4; i++) {
+        pending.add(pool.submit(() -> snapshot.getCommits()));
+      }
+      for (Future<List<GHCommit>> commits : pending) {
+        assertSame(pending.get(0).get(), commits.get());
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+    assertEquals(3, server.getRequestCount() - before);
+  }
+
+  /*
+  * Pull requests whose users' profiles cannot be fetched, as for a deleted
+  * account, should be kept with their login and no name, so that they are
+  * still listed and counted.
+  */
+  @Test
+  public void shouldKeepPullRequestsWhoseUserIsGone() {
+    HttpConnector missingUser0 = url -> HttpConnector.DEFAULT.connect(
+      url.getPath().equals("/users/user0") ? new URL(server.getEndpoint() + "/users") : url);
+    GDETUserProfileCache original = GithubDataExtractionTool.getUserProfileCache();
+    GithubDataExtractionTool.setUserProfileCache(new GDETUserProfileCache());
+    try {
+      GDETRepositorySnapshot snapshot = new GDETRepositorySnapshot(
+        new GithubDataExtractionTool(missingUser0, server.getEndpoint())
+          .getRepository("owner/repo"), 4);
+      List<GDETPullRequestDetails> prs = snapshot.getPullRequestDetails();
+      assertEquals(40, prs.size());
+      int byUser0 = 0;
+      for (GDETPullRequestDetails pr : prs) {
+        if ("user0".equals(pr.getUserLogin())) {
+          assertNull(pr.getUserName());
+          byUser0++;
+        }
+      }
+      assertTrue(byUser0 > 0);
+      assertEquals(byUser0, snapshot.getPullRequestCountPerUser(false).get("user0"));
+      assertEquals(40, snapshot.getPullRequestCountPerUser(false).total());
+      assertEquals(24, snapshot.getPullRequestCountPerUser(true).total());
+    }
+    finally {
+      GithubDataExtractionTool.setUserProfileCache(original);
+    }
+  }
+}
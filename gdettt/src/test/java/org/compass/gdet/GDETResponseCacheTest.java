@@ -0,0 +1,110 @@
+package org.compass.gdet;
+
+import com.sun.net.httpserver.HttpServer;
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETResponseCacheTest
+{
+  private HttpServer server;
+  private AtomicInteger fullResponses = new AtomicInteger();
+  private String endpoint;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      String path = exchange.getRequestURI().getPath();
+      String etag = "\"" + path.hashCode() + "\"";
+      exchange.getResponseHeaders().add("ETag", etag);
+      exchange.getResponseHeaders().add("X-RateLimit-Remaining", "4999");
+      if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+        return;
+      }
+      fullResponses.incrementAndGet();
+      String name = path.substring(path.lastIndexOf('/') + 1);
+      byte[] body = ("{\"name\":\"" + name + "\",\"full_name\":\"owner/" + name +
+        "\",\"owner\":{\"login\":\"owner\"}}").getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+    endpoint = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.stop(0);
+  }
+
+  /*
+  * A second request for the same URL should be revalidated with the stored
+  * ETag and answered from disk.
+  */
+  @Test
+  public void shouldServeRevalidatedResponsesFromDisk() throws IOException {
+    Path dir = Files.createTempDirectory("gdet-cache");
+    GDETResponseCache cache = new GDETResponseCache(HttpConnector.DEFAULT, dir, 1 << 20);
+    String first = read(cache, "/repos/owner/one");
+    String second = read(cache, "/repos/owner/one");
+    assertEquals(first, second);
+    assertEquals(1, fullResponses.get());
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+
+    GDETResponseCache reopened = new GDETResponseCache(HttpConnector.DEFAULT, dir, 1 << 20);
+    assertEquals(first, read(reopened, "/repos/owner/one"));
+    assertEquals(1, reopened.getHitCount());
+    assertEquals(1, fullResponses.get());
+  }
+
+  /*
+  * Storing past the size limit should evict the least recently used entries.
+  */
+  @Test
+  public void shouldEvictLeastRecentlyUsedEntries() throws IOException {
+    Path dir = Files.createTempDirectory("gdet-cache");
+    GDETResponseCache cache = new GDETResponseCache(HttpConnector.DEFAULT, dir, 1);
+    read(cache, "/repos/owner/one");
+    read(cache, "/repos/owner/two");
+    assertTrue(cache.getEvictionCount() >= 1);
+    assertTrue(cache.getSize() <= 1);
+  }
+
+  /*
+  * The GitHub client should work unchanged on top of the cache.
+  */
+  @Test
+  public void shouldWorkAsTheGitHubConnector() throws IOException {
+    Path dir = Files.createTempDirectory("gdet-cache");
+    GDETResponseCache cache = new GDETResponseCache(HttpConnector.DEFAULT, dir, 1 << 20);
+    GitHub github = new GitHubBuilder().withEndpoint(endpoint)
+      .withConnector(cache).build();
+    assertEquals("one", github.getRepository("owner/one").getName());
+    assertEquals("one", github.getRepository("owner/one").getName());
+    assertEquals(1, cache.getHitCount());
+  }
+
+  private String read(GDETResponseCache cache, String path) throws IOException {
+    HttpURLConnection uc = cache.connect(new URL(endpoint + path));
+    uc.setRequestMethod("GET");
+    return new String(GDETHttpConnection.readFully(uc.getInputStream()),
+      StandardCharsets.UTF_8);
+  }
+}
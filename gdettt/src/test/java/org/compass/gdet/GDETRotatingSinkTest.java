@@ -0,0 +1,248 @@
+package org.compass.gdet;
+
+import org.junit.jupiter.api.*;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.kohsuke.github.HttpConnector;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETRotatingSinkTest
+{
+  private Path directory;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("gdet-archive");
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    Files.walk(directory).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+  }
+
+  private static String read(Path file) throws IOException {
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static String readText(Path file) throws IOException {
+    return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+  }
+
+  private static String record(int i) {
+    return "{\"type\":\"commit\",\"n\":" + i + ",\"message\":\"é中 change " + i + "\"}\n";
+  }
+
+  /*
+  * Files should be gzipped, start after every <maxRecords> records and
+  * together hold exactly what was written.
+  */
+  @Test
+  public void shouldRotateBetweenRecords() throws IOException {
+    GDETOutputHandler out =
+      GDETOutputHandler.toRotatingFiles(directory.resolve("commits.ndjson"), true, 0, 400);
+    StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      /* written in two parts, so records span writes */
+      String record = record(i);
+      out.write(record.substring(0, 10));
+      out.write(record.substring(10));
+      out.endRecord();
+      expected.append(record);
+    }
+    out.close();
+    List<Path> files = ((GDETRotatingSink) out.getSink()).getFiles();
+    assertEquals(3, files.size());
+    assertEquals("commits-00000.ndjson.gz", files.get(0).getFileName().toString());
+    assertEquals("commits-00002.ndjson.gz", files.get(2).getFileName().toString());
+    StringBuilder actual = new StringBuilder();
+    for (Path file : files) {
+      actual.append(read(file));
+    }
+    assertEquals(expected.toString(), actual.toString());
+    assertEquals(400, read(files.get(1)).split("\n").length);
+    assertTrue(read(files.get(1)).startsWith(record(400)));
+    assertEquals(expected.toString().getBytes(StandardCharsets.UTF_8).length,
+      out.getBytesWritten());
+  }
+
+  /*
+  * Size limits should start a new file at the next record boundary, and
+  * uncompressed series should be written as they are.
+  */
+  @Test
+  public void shouldRotateBySizeWithoutCompression() throws IOException {
+    GDETOutputHandler out =
+      GDETOutputHandler.toRotatingFiles(directory.resolve("log"), false, 4096, 0);
+    for (int i = 0; i < 1000; i++) {
+      out.write(record(i));
+      out.endRecord();
+    }
+    out.close();
+    List<Path> files = ((GDETRotatingSink) out.getSink()).getFiles();
+    assertTrue(files.size() > 10);
+    assertEquals("log-00000", files.get(0).getFileName().toString());
+    for (Path file : files.subList(0, files.size() - 1)) {
+      String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+      assertTrue(text.getBytes(StandardCharsets.UTF_8).length >= 4096);
+      assertTrue(text.startsWith("{") && text.endsWith("}\n"));
+    }
+  }
+
+  /*
+  * A surrogate pair split across writes should be encoded as one character,
+  * and one left unpaired at the end of a record as a replacement.
+  */
+  @Test
+  public void shouldJoinSurrogatePairsSplitAcrossWrites() throws IOException {
+    GDETOutputHandler out =
+      GDETOutputHandler.toRotatingFiles(directory.resolve("text"), false, 0, 1);
+    out.write("x\uD83D");
+    out.write("\uDE00y");
+    out.endRecord();
+    out.write("z\uD83D");
+    out.endRecord();
+    out.write("\uDE00");
+    out.endRecord();
+    out.close();
+    List<Path> files = ((GDETRotatingSink) out.getSink()).getFiles();
+    assertEquals(3, files.size());
+    assertEquals("x\uD83D\uDE00y", readText(files.get(0)));
+    assertEquals("z?", readText(files.get(1)));
+    assertEquals("?", readText(files.get(2)));
+  }
+
+  /*
+  * Reading from an index entry should start at that entry's record without
+  * reading the blocks before it.
+  */
+  @Test
+  public void shouldSeekToIndexedRecords() throws IOException {
+    GDETOutputHandler out =
+      GDETOutputHandler.toRotatingFiles(directory.resolve("commits.ndjson"), true, 0, 0);
+    for (int i = 0; i < 2000; i++) {
+      out.write(record(i));
+      out.endRecord();
+    }
+    out.close();
+    Path file = ((GDETRotatingSink) out.getSink()).getFiles().get(0);
+    GDETRotatingSink.Index index = GDETRotatingSink.Index.read(file);
+    assertEquals((2000 + GDETRotatingSink.RECORDS_PER_BLOCK - 1) / GDETRotatingSink.RECORDS_PER_BLOCK,
+      index.getEntries().size());
+    GDETRotatingSink.Index.Entry entry = index.entryFor(1234);
+    assertEquals(1234 / GDETRotatingSink.RECORDS_PER_BLOCK * GDETRotatingSink.RECORDS_PER_BLOCK,
+      entry.getRecord());
+    assertTrue(entry.getOffset() > 0);
+    try (BufferedReader in = new BufferedReader(new InputStreamReader(
+        GDETRotatingSink.open(file, entry), StandardCharsets.UTF_8))) {
+      for (long i = entry.getRecord(); i < 1234; i++) {
+        in.readLine();
+      }
+      assertEquals(record(1234), in.readLine() + "\n");
+    }
+  }
+
+  /*
+  * An export written to a compressed series should decompress to the same
+  * records as one written to a single file, several times smaller.
+  */
+  @Test
+  public void shouldArchiveAnExport() throws IOException {
+    try (GDETStandInServer server = new GDETStandInServer()
+        .addRepository(new GDETStandInServer.Repository("owner/repo")
+          .setCommits(3000)
+          .setIssues(500)
+          .setUsers(20))
+        .start()) {
+      GDETRepositorySnapshot snapshot = new GDETRepositorySnapshot(
+        new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint())
+          .getRepository("owner/repo"), 2);
+      ByteArrayOutputStream plain = new ByteArrayOutputStream();
+      try (GDETOutputHandler out = new GDETOutputHandler(GDETChannelSink.toStream(plain, 4096))) {
+        GDETRecordExporter.forFormat("ndjson", out).exportSnapshot(snapshot);
+      }
+      GDETOutputHandler out =
+        GDETOutputHandler.toRotatingFiles(directory.resolve("repo.ndjson"), true, 0, 1000);
+      try (out) {
+        GDETRecordExporter.forFormat("ndjson", out).exportSnapshot(snapshot);
+      }
+      GDETRotatingSink sink = (GDETRotatingSink) out.getSink();
+      StringBuilder archived = new StringBuilder();
+      for (Path file : sink.getFiles()) {
+        archived.append(read(file));
+      }
+      assertEquals(4, sink.getFiles().size());
+      assertEquals(new String(plain.toByteArray(), StandardCharsets.UTF_8), archived.toString());
+      assertTrue(sink.getCompressedBytes() * 5 < plain.size(),
+        sink.getCompressedBytes() + " of " + plain.size() + " bytes");
+    }
+  }
+
+  /*
+  * A CSV export written to a series should repeat its header row at the
+  * start of every file and of every indexed block, so that each can be
+  * read on its own, and hold the same rows as one written to a single file.
+  */
+  @Test
+  public void shouldRepeatTheCsvHeaderInEverySection() throws IOException {
+    try (GDETStandInServer server = new GDETStandInServer()
+        .addRepository(new GDETStandInServer.Repository("owner/repo")
+          .setCommits(3000)
+          .setUsers(20))
+        .start()) {
+      GDETRepositorySnapshot snapshot = new GDETRepositorySnapshot(
+        new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint())
+          .getRepository("owner/repo"), 2);
+      List<GDETCommitDetails> commits = snapshot.getCommitDetails();
+      ByteArrayOutputStream plain = new ByteArrayOutputStream();
+      try (GDETOutputHandler out = new GDETOutputHandler(GDETChannelSink.toStream(plain, 4096))) {
+        GDETRecordExporter exporter = GDETRecordExporter.forFormat("csv", out);
+        for (GDETCommitDetails commit : commits) {
+          exporter.exportCommit(commit);
+        }
+      }
+      String[] rows = new String(plain.toByteArray(), StandardCharsets.UTF_8).split("\r\n");
+      String header = rows[0];
+      assertTrue(header.startsWith("type,"));
+
+      GDETOutputHandler out =
+        GDETOutputHandler.toRotatingFiles(directory.resolve("repo.csv"), true, 0, 1000);
+      try (out) {
+        GDETRecordExporter exporter = GDETRecordExporter.forFormat("csv", out);
+        for (GDETCommitDetails commit : commits) {
+          exporter.exportCommit(commit);
+        }
+      }
+      List<Path> files = ((GDETRotatingSink) out.getSink()).getFiles();
+      assertEquals(3, files.size());
+      StringBuilder archived = new StringBuilder();
+      for (Path file : files) {
+        String text = read(file);
+        assertTrue(text.startsWith(header + "\r\n"), file.toString());
+        archived.append(text.replace(header + "\r\n", ""));
+      }
+      assertEquals(String.join("\r\n", Arrays.asList(rows).subList(1, rows.length)) + "\r\n",
+        archived.toString());
+
+      Path second = files.get(1);
+      GDETRotatingSink.Index.Entry entry = GDETRotatingSink.Index.read(second).entryFor(600);
+      assertTrue(entry.getRecord() > 0);
+      try (InputStream in = GDETRotatingSink.open(second, entry)) {
+        String block = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        String row = rows[1 + 1000 + (int) entry.getRecord()];
+        assertTrue(block.startsWith(header + "\r\n" + row + "\r\n"));
+      }
+    }
+  }
+}
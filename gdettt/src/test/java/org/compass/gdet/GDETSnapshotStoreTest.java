@@ -0,0 +1,171 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETSnapshotStoreTest
+{
+  private GDETStandInServer server;
+  private Path directory;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = new GDETStandInServer()
+      .addRepository(new GDETStandInServer.Repository("owner/repo")
+        .setCommits(250)
+        .setIssues(90)
+        .setPullRequests(40)
+        .setReviewComments(3)
+        .setBranches(5)
+        .setUsers(12))
+      .start();
+    directory = Files.createTempDirectory("gdet-store");
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    server.close();
+    Files.walk(directory).sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+  }
+
+  private GDETRepositorySnapshot extract() {
+    GithubDataExtractionTool tool =
+      new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint());
+    return new GDETRepositorySnapshot(tool.getRepository("owner/repo"), 4);
+  }
+
+  /*
+  * A stored snapshot should give the same per user counts as the extraction
+  * it was written from, after the store is reopened and with no server.
+  */
+  @Test
+  public void shouldAggregateOfflineLikeTheExtraction() throws IOException {
+    GDETRepositorySnapshot snapshot = extract();
+    try (GDETSnapshotStore store = new GDETSnapshotStore(directory);
+        GDETSnapshotStore.Writer writer = store.writer("owner/repo")) {
+      assertEquals(250 + 90 + 40 + 120 + 5, writer.writeSnapshot(snapshot));
+      assertFalse(store.contains("owner/repo"));
+    }
+    server.close();
+
+    GDETSnapshotStore store = new GDETSnapshotStore(directory);
+    assertTrue(store.contains("owner/repo"));
+    assertEquals(12, store.getLoginCount());
+    GDETSnapshotStore.StoredSnapshot stored = store.read("owner/repo");
+    assertEquals(snapshot.getCommitCountPerUser().toMap(),
+      stored.getCommitCountPerUser().toMap());
+    assertEquals(snapshot.getIssueCountPerUser().toMap(), stored.getIssueCountPerUser().toMap());
+    assertEquals(snapshot.getPullRequestCountPerUser(false).toMap(),
+      stored.getPullRequestCountPerUser(false).toMap());
+    assertEquals(snapshot.getPullRequestCountPerUser(true).toMap(),
+      stored.getPullRequestCountPerUser(true).toMap());
+    assertEquals(120, stored.getReviewCommentCount());
+    assertEquals(5, stored.getBranches().size());
+    assertEquals(snapshot.getBranches().get(0).getSHA1(),
+      stored.getBranches().get(snapshot.getBranches().get(0).getName()));
+
+    final Set<String> shas = new HashSet<String>();
+    stored.forEachCommit((sha, login, committedAt) -> {
+      shas.add(GDETSnapshotStore.hex(sha));
+      assertTrue(committedAt != GDETSnapshotStore.NO_DATE);
+    });
+    Set<String> extracted = new HashSet<String>();
+    for (GDETCommitDetails commit : snapshot.getCommitDetails()) {
+      extracted.add(commit.getSha());
+    }
+    assertEquals(extracted, shas);
+    assertNull(store.read("owner/missing"));
+  }
+
+  /*
+  * Storing a repository again should append a segment, and records stored
+  * twice should only be counted once.
+  */
+  @Test
+  public void shouldCountRecordsStoredTwiceOnce() throws IOException {
+    GDETRepositorySnapshot snapshot = extract();
+    try (GDETSnapshotStore store = new GDETSnapshotStore(directory)) {
+      for (int run = 0; run < 2; run++) {
+        try (GDETSnapshotStore.Writer writer = store.writer("owner/repo")) {
+          writer.writeSnapshot(snapshot);
+        }
+      }
+      GDETSnapshotStore.StoredSnapshot stored = store.read("owner/repo");
+      assertEquals(2, stored.getSegmentCount());
+      assertEquals(250, stored.getCommitCount());
+      assertEquals(90, stored.getIssueCount());
+      assertEquals(40, stored.getPullRequestCount());
+      assertEquals(120, stored.getReviewCommentCount());
+      assertTrue(stored.getSizeInBytes() < 2 * (250 + 90 + 40 + 120 + 5) * 48);
+    }
+  }
+
+  /*
+  * A commit stored again with a different author should be counted and
+  * visited with the author of its newest copy.
+  */
+  @Test
+  public void shouldLetTheNewestCopyOfACommitWin() throws IOException {
+    String sha = "0123456789abcdef0123456789abcdef01234567";
+    try (GDETSnapshotStore store = new GDETSnapshotStore(directory)) {
+      String[] logins = {null, "octocat", "hubot"};
+      for (int run = 0; run < logins.length; run++) {
+        try (GDETSnapshotStore.Writer writer = store.writer("owner/repo")) {
+          writer.writeCommit(sha, logins[run], new Date(0));
+          writer.writeCommit(String.format("%040x", run + 1), logins[run], new Date(0));
+        }
+      }
+      GDETSnapshotStore.StoredSnapshot stored = store.read("owner/repo");
+      assertEquals(3, stored.getSegmentCount());
+      assertEquals(4, stored.getCommitCount());
+      Map<String, Integer> counts = stored.getCommitCountPerUser().toMap();
+      assertEquals(Integer.valueOf(2), counts.get("hubot"));
+      assertEquals(Integer.valueOf(1), counts.get("octocat"));
+      assertEquals(Integer.valueOf(1), counts.get(GDETUserCounter.UNKNOWN_LOGIN));
+      final Map<String, String> authors = new HashMap<String, String>();
+      stored.forEachCommit((commit, login, committedAt) ->
+        authors.put(GDETSnapshotStore.hex(commit), login));
+      assertEquals(4, authors.size());
+      assertEquals("hubot", authors.get(sha));
+    }
+  }
+
+  /*
+  * Unfinished segments and a partially appended dictionary entry should be
+  * discarded when the store is reopened.
+  */
+  @Test
+  public void shouldDiscardUnfinishedWrites() throws IOException {
+    try (GDETSnapshotStore store = new GDETSnapshotStore(directory);
+        GDETSnapshotStore.Writer writer = store.writer("owner/repo")) {
+      for (GHBranch branch : extract().getBranches()) {
+        writer.writeBranch(branch);
+      }
+    }
+    GDETSnapshotStore store = new GDETSnapshotStore(directory);
+    store.writer("owner/repo").writeSnapshot(extract());
+    Path dictionary = directory.resolve("logins.dict");
+    long length = Files.size(dictionary);
+    Files.write(dictionary, new byte[] {9, 'p', 'a', 'r'}, StandardOpenOption.APPEND);
+
+    GDETSnapshotStore reopened = new GDETSnapshotStore(directory);
+    assertEquals(length, Files.size(dictionary));
+    GDETSnapshotStore.StoredSnapshot stored = reopened.read("owner/repo");
+    assertEquals(1, stored.getSegmentCount());
+    assertEquals(0, stored.getCommitCount());
+    assertEquals(5, stored.getBranches().size());
+  }
+}
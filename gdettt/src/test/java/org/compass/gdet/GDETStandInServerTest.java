@@ -0,0 +1,205 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETStandInServerTest
+{
+  private GDETStandInServer server;
+
+  @BeforeEach
+  public void startServer() throws IOException {
+    server = new GDETStandInServer()
+      .addRepository(new GDETStandInServer.Repository("owner/repo")
+        .setCommits(250)
+        .setIssues(90)
+        .setPullRequests(40)
+        .setReviewComments(3)
+        .setBranches(5)
+        .setUsers(12))
+      .start();
+  }
+
+  @AfterEach
+  public void stopServer() {
+    server.close();
+  }
+
+  private HttpURLConnection get(String path, String etag) throws IOException {
+    HttpURLConnection connection =
+      (HttpURLConnection) new URL(server.getEndpoint() + path).openConnection();
+    if (etag != null) {
+      connection.setRequestProperty("If-None-Match", etag);
+    }
+    connection.getResponseCode();
+    return connection;
+  }
+
+  /*
+  * Listings should be paged with Link headers that github-api follows, and
+  * filtered by state.
+  */
+  @Test
+  public void shouldPageListingsWithLinkHeaders() throws IOException {
+    HttpURLConnection first = get("/repos/owner/repo/commits?per_page=100", null);
+    assertEquals(server.getEndpoint() + "/repos/owner/repo/commits?per_page=100&page=2",
+      first.getHeaderField("Link").split(">")[0].substring(1));
+    assertFalse(get("/repos/owner/repo/commits?per_page=100&page=3", null)
+      .getHeaderField("Link").contains("rel=\"next\""));
+
+    GitHub github = new GitHubBuilder().withEndpoint(server.getEndpoint()).build();
+    GHRepository repo = github.getRepository("owner/repo");
+    long before = server.getRequestCount();
+    List<GHCommit> commits = repo.listCommits().withPageSize(100).asList();
+    assertEquals(250, commits.size());
+    assertEquals(3, server.getRequestCount() - before);
+    Set<String> shas = new HashSet<String>();
+    for (GHCommit commit : commits) {
+      shas.add(commit.getSHA1());
+    }
+    assertEquals(250, shas.size());
+    assertEquals(60, repo.listIssues(GHIssueState.OPEN).asList().size());
+    assertEquals(30, repo.listIssues(GHIssueState.CLOSED).asList().size());
+    assertEquals(8, repo.listPullRequests(GHIssueState.OPEN).asList().size());
+  }
+
+  /*
+  * Requests past the limit should be refused with a 403, while conditional
+  * requests answered with a 304 should not count against it.
+  */
+  @Test
+  public void shouldEnforceRateLimitsButNotChargeNotModified() throws IOException {
+    server.setRateLimit(2, 60);
+    HttpURLConnection first = get("/repos/owner/repo", null);
+    assertEquals(200, first.getResponseCode());
+    assertEquals("1", first.getHeaderField("X-RateLimit-Remaining"));
+    String etag = first.getHeaderField("ETag");
+    assertNotNull(etag);
+
+    HttpURLConnection cached = get("/repos/owner/repo", etag);
+    assertEquals(304, cached.getResponseCode());
+    assertEquals("1", cached.getHeaderField("X-RateLimit-Remaining"));
+
+    assertEquals(200, get("/repos/owner/repo/branches", null).getResponseCode());
+    HttpURLConnection refused = get("/repos/owner/repo/branches", null);
+    assertEquals(403, refused.getResponseCode());
+    assertEquals("0", refused.getHeaderField("X-RateLimit-Remaining"));
+    assertTrue(Long.parseLong(refused.getHeaderField("X-RateLimit-Reset"))
+      > System.currentTimeMillis() / 1000);
+    assertEquals(1, server.getNotModifiedCount());
+    assertEquals(1, server.getRateLimitedCount());
+  }
+
+  /*
+  * The tool should extract a whole repository from the stand-in through its
+  * API URL override.
+  */
+  @Test
+  public void shouldExtractARepositoryEndToEnd() {
+    GithubDataExtractionTool tool =
+      new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint());
+    assertTrue(tool.checkConnection());
+    GDETRepositorySnapshot snapshot =
+      new GDETRepositorySnapshot(tool.getRepository("owner/repo"), 4);
+
+    assertEquals(250, snapshot.getCommits().size());
+    assertEquals(90, snapshot.getIssues().size());
+    assertEquals(40, snapshot.getPullRequestDetails().size());
+    assertEquals(120, snapshot.getPullRequestReviewComments().size());
+    assertEquals(5, snapshot.getBranches().size());
+    assertEquals(250, total(snapshot.getCommitCountPerUser()));
+    assertEquals(40, total(snapshot.getPullRequestCountPerUser(false)));
+    assertEquals(24, total(snapshot.getPullRequestCountPerUser(true)));
+    assertNull(tool.getRepository("owner/missing"));
+  }
+
+  /*
+  * Fetching review comments in parallel should return every pull request's
+  * comments exactly once, grouped in the order of the pull requests.
+  */
+  @Test
+  public void shouldFetchEachReviewCommentOnceInParallel() {
+    server.setLatency(5, 5);
+    GHRepository repo = new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint())
+      .getRepository("owner/repo");
+    List<GHPullRequest> prs = GithubDataExtractionTool.getPullRequests(repo, GHIssueState.ALL);
+    assertEquals(40, prs.size());
+
+    List<GHPullRequestReviewComment> comments =
+      GithubDataExtractionTool.getPullRequestReviewComments(prs, 8);
+    List<GDETReviewCommentDetails> details =
+      GithubDataExtractionTool.getPullRequestReviewCommentDetails(prs, 8);
+    assertEquals(120, comments.size());
+    assertEquals(120, details.size());
+    Set<Long> ids = new HashSet<Long>();
+    Set<Long> detailIds = new HashSet<Long>();
+    for (int i = 0; i < comments.size(); i++) {
+      String number = "#" + prs.get(i / 3).getNumber();
+      assertTrue(comments.get(i).getBody().trim().endsWith(number));
+      assertTrue(details.get(i).getBody().trim().endsWith(number));
+      assertTrue(ids.add(comments.get(i).getId()));
+      assertTrue(detailIds.add(details.get(i).getId()));
+    }
+    assertEquals(ids, detailIds);
+  }
+
+  /*
+  * The per user counts should come out the same whether they are read from
+  * a repository's streamed listings, from lists or from streams over them,
+  * and should agree with counting the listings by login by hand.
+  */
+  @Test
+  public void shouldCountPerUserAlikeFromListsAndStreams() throws IOException {
+    GHRepository repo = new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint())
+      .getRepository("owner/repo");
+    List<GHCommit> commits = GithubDataExtractionTool.getCommits(repo);
+    List<GHIssue> issues = GithubDataExtractionTool.getIssues(repo);
+    List<GHPullRequest> prs = GithubDataExtractionTool.getPullRequests(repo, GHIssueState.ALL);
+
+    GDETUserCounter commitCounts = GithubDataExtractionTool.getCommitCountPerUser(repo);
+    assertEquals(commitCounts.toMap(),
+      GithubDataExtractionTool.getCommitCountPerUser(commits).toMap());
+    assertEquals(commitCounts.toMap(),
+      GithubDataExtractionTool.getCommitCountPerUser(commits.stream()).toMap());
+    assertEquals(250, commitCounts.total());
+
+    GDETUserCounter issueCounts = GithubDataExtractionTool.getIssueCountPerUser(repo);
+    assertEquals(issueCounts.toMap(),
+      GithubDataExtractionTool.getIssueCountPerUser(issues).toMap());
+    assertEquals(issueCounts.toMap(),
+      GithubDataExtractionTool.getIssueCountPerUser(issues.stream()).toMap());
+    GDETUserCounter byHand = new GDETUserCounter();
+    for (GHIssue issue : issues) {
+      byHand.increment(issue.getUser().getLogin());
+    }
+    assertEquals(byHand.toMap(), issueCounts.toMap());
+
+    for (boolean mergedBy : new boolean[] {false, true}) {
+      GDETUserCounter prCounts = GithubDataExtractionTool.getPullRequestCountPerUser(repo, mergedBy);
+      assertEquals(prCounts.toMap(),
+        GithubDataExtractionTool.getPullRequestCountPerUser(prs, mergedBy).toMap());
+      assertEquals(prCounts.toMap(),
+        GithubDataExtractionTool.getPullRequestCountPerUser(prs.stream(), mergedBy).toMap());
+      assertEquals(mergedBy ? 24 : 40, prCounts.total());
+    }
+  }
+
+  private static int total(GDETUserCounter counter) {
+    int total = 0;
+    for (GDETUserCounter.Entry entry : counter.sorted()) {
+      total += entry.getCount();
+    }
+    return total;
+  }
+}
@@ -0,0 +1,80 @@
+package org.compass.gdet;
+
+import org.junit.jupiter.api.*;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETUserCounterTest
+{
+  /*
+  * Counts should accumulate per login and survive the table growing.
+  */
+  @Test
+  public void shouldCountPerLoginAcrossResizes() {
+    GDETUserCounter counter = new GDETUserCounter();
+    for (int i = 0; i < 1000; i++) {
+      for (int j = 0; j <= i % 7; j++) {
+        counter.increment("user" + i);
+      }
+    }
+    assertEquals(1000, counter.size());
+    assertEquals(1, counter.get("user0"));
+    assertEquals(7, counter.get("user6"));
+    assertEquals(0, counter.get("nobody"));
+    long expected = 0;
+    for (int i = 0; i < 1000; i++) {
+      expected += i % 7 + 1;
+    }
+    assertEquals(expected, counter.total());
+  }
+
+  /*
+  * Events without a user should be counted under the unknown login.
+  */
+  @Test
+  public void shouldCountMissingUsersAsUnknown() {
+    GDETUserCounter counter = new GDETUserCounter();
+    counter.increment((org.kohsuke.github.GHUser) null);
+    counter.increment((org.kohsuke.github.GHUser) null);
+    assertEquals(2, counter.get(GDETUserCounter.UNKNOWN_LOGIN));
+  }
+
+  /*
+  * sorted() and top() should order by count, then by login.
+  */
+  @Test
+  public void shouldReturnSortedAndTopViews() {
+    GDETUserCounter counter = new GDETUserCounter();
+    counter.add("carol", 5);
+    counter.add("alice", 9);
+    counter.add("bob", 5);
+    counter.add("dave", 1);
+    List<GDETUserCounter.Entry> sorted = counter.sorted();
+    assertEquals("alice", sorted.get(0).getLogin());
+    assertEquals("bob", sorted.get(1).getLogin());
+    assertEquals("carol", sorted.get(2).getLogin());
+    assertEquals("dave", sorted.get(3).getLogin());
+    List<GDETUserCounter.Entry> top = counter.top(2);
+    assertEquals(2, top.size());
+    assertEquals("alice", top.get(0).getLogin());
+    assertEquals("bob", top.get(1).getLogin());
+    assertTrue(counter.top(0).isEmpty());
+  }
+
+  /*
+  * addAll should merge another counter's totals into this one.
+  */
+  @Test
+  public void shouldMergeCounters() {
+    GDETUserCounter a = new GDETUserCounter();
+    a.add("alice", 2);
+    GDETUserCounter b = new GDETUserCounter();
+    b.add("alice", 3);
+    b.add("bob", 1);
+    a.addAll(b);
+    assertEquals(5, a.get("alice"));
+    assertEquals(1, a.get("bob"));
+    assertEquals(6, a.total());
+  }
+}
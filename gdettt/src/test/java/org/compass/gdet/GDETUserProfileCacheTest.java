@@ -0,0 +1,188 @@
+package org.compass.gdet;
+
+import org.kohsuke.github.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GDETUserProfileCacheTest
+{
+  private GDETStandInServer server;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = new GDETStandInServer()
+      .addRepository(new GDETStandInServer.Repository("owner/repo")
+        .setIssues(200)
+        .setUsers(7))
+      .start();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.close();
+  }
+
+  /* the users who opened the stand-in's issues, one GHUser per issue */
+  private List<GHUser> issueUsers() throws IOException {
+    GHRepository repo = new GithubDataExtractionTool(HttpConnector.DEFAULT, server.getEndpoint())
+      .getRepository("owner/repo");
+    List<GHUser> users = new ArrayList<GHUser>();
+    for (GHIssue issue : GithubDataExtractionTool.getIssues(repo)) {
+      users.add(issue.getUser());
+    }
+    return users;
+  }
+
+  /*
+  * Prefetching should fetch each distinct login's profile once, however
+  * many records carry it, and not again once it is cached.
+  */
+  @Test
+  public void shouldPrefetchEachLoginOnce() throws IOException {
+    List<GHUser> users = issueUsers();
+    Set<String> logins = new HashSet<String>();
+    for (GHUser user : users) {
+      logins.add(user.getLogin());
+    }
+    assertTrue(users.size() > logins.size());
+    GDETUserProfileCache cache = new GDETUserProfileCache();
+    long before = server.getRequestCount();
+    cache.prefetch(users, 4);
+    assertEquals(logins.size(), server.getRequestCount() - before);
+    assertEquals(logins.size(), cache.size());
+
+    before = server.getRequestCount();
+    cache.prefetch(users, 4);
+    for (GHUser user : users) {
+      assertEquals("User " + user.getLogin(), cache.getName(user));
+    }
+    assertEquals(0, server.getRequestCount() - before);
+  }
+
+  /*
+  * Names should be fetched again once their time to live has passed.
+  */
+  @Test
+  public void shouldExpireNamesAfterTheirTimeToLive() throws Exception {
+    GDETUserProfileCache cache = new GDETUserProfileCache(100, 10);
+    cache.remember("alice", "Alice");
+    assertTrue(cache.contains("alice"));
+    assertEquals("Alice", cache.getCachedName("alice"));
+    Thread.sleep(150);
+    assertFalse(cache.contains("alice"));
+    assertNull(cache.getCachedName("alice"));
+    assertEquals(0, cache.size());
+  }
+
+  /*
+  * Past its maximum size, the cache should drop the least recently used
+  * logins first.
+  */
+  @Test
+  public void shouldEvictTheLeastRecentlyUsedLogins() {
+    GDETUserProfileCache cache = new GDETUserProfileCache(TimeUnit.HOURS.toMillis(1), 3);
+    cache.remember("a", "A");
+    cache.remember("b", "B");
+    cache.remember("c", "C");
+    assertEquals("A", cache.getCachedName("a"));
+    cache.remember("d", "D");
+    assertEquals(3, cache.size());
+    assertTrue(cache.contains("a"));
+    assertFalse(cache.contains("b"));
+    assertTrue(cache.contains("c"));
+    assertTrue(cache.contains("d"));
+  }
+
+  /*
+  * Saved names should load back, including users without a name, while
+  * names older than the loading cache's time to live are left out.
+  */
+  @Test
+  public void shouldLoadWhatWasSaved() throws Exception {
+    Path file = Files.createTempDirectory("gdet-users").resolve("users.properties");
+    try {
+      GDETUserProfileCache cache = new GDETUserProfileCache();
+      cache.remember("alice", "Alice Liddell");
+      cache.remember("nameless", null);
+      cache.save(file);
+
+      GDETUserProfileCache loaded = new GDETUserProfileCache();
+      loaded.load(file);
+      assertEquals(2, loaded.size());
+      assertEquals("Alice Liddell", loaded.getCachedName("alice"));
+      assertTrue(loaded.contains("nameless"));
+      assertNull(loaded.getName("nameless"));
+
+      Thread.sleep(20);
+      GDETUserProfileCache strict = new GDETUserProfileCache(10, 10);
+      strict.load(file);
+      assertEquals(0, strict.size());
+    }
+    finally {
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(file.getParent());
+    }
+  }
+
+  /*
+  * Replacing the shared cache should keep the users registered with the
+  * old one, so their names can still be fetched by login.
+  */
+  @Test
+  public void shouldKeepRegisteredUsersWhenReplaced() throws IOException {
+    GDETUserProfileCache original = GithubDataExtractionTool.getUserProfileCache();
+    try {
+      GHUser user = issueUsers().get(0);
+      original.register(user);
+      GDETUserProfileCache replacement = new GDETUserProfileCache();
+      GithubDataExtractionTool.setUserProfileCache(replacement);
+      assertSame(replacement, GithubDataExtractionTool.getUserProfileCache());
+      assertEquals("User " + user.getLogin(), replacement.getName(user.getLogin()));
+    }
+    finally {
+      GithubDataExtractionTool.setUserProfileCache(original);
+    }
+  }
+
+  /*
+  * A login whose account is missing should be reported once, fail later
+  * lookups without fetching again, and not be saved.
+  */
+  @Test
+  public void shouldRememberMissingAccounts() throws Exception {
+    GDETUserProfileCache cache = new GDETUserProfileCache();
+    assertFalse(cache.isMissing("gone"));
+    assertTrue(cache.reportMissing("gone"));
+    assertFalse(cache.reportMissing("gone"));
+    assertTrue(cache.isMissing("gone"));
+    assertTrue(cache.contains("gone"));
+    assertThrows(GHFileNotFoundException.class, () -> cache.getName("gone"));
+
+    Path file = Files.createTempDirectory("gdet-users").resolve("users.properties");
+    try {
+      cache.remember("alice", "Alice");
+      cache.save(file);
+      GDETUserProfileCache loaded = new GDETUserProfileCache();
+      loaded.load(file);
+      assertEquals(1, loaded.size());
+      assertFalse(loaded.contains("gone"));
+    }
+    finally {
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(file.getParent());
+    }
+  }
+}